@@ -367,6 +367,12 @@ public interface NeuralNetwork {
 	 */
 	void accGradParameters();
 	
+	/**
+	 * Move the parameters towards those of another instance of the same neural network, 
+	 * i.e. parameters = tau*source + (1-tau)*parameters. Use tau 1 to copy the parameters.
+	 */
+	void syncParameters(NeuralNetwork source, float tau);
+	
 	/**
 	 * Reset memory
 	 */
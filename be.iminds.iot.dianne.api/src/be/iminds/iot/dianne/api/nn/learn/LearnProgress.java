@@ -59,6 +59,11 @@ public class LearnProgress {
 		extra = Collections.unmodifiableMap(map);
 	}
 	
+	public LearnProgress(long iteration, float loss, Map<String, Float> extra){
+		this(iteration, loss);
+		this.extra = Collections.unmodifiableMap(new HashMap<>(extra));
+	}
+	
 	@Override
 	public String toString(){
 		StringBuilder builder = new StringBuilder(); 
@@ -40,4 +40,10 @@ public interface LearningStrategy {
 
 	LearnProgress processIteration(long i) throws Exception;
 
+	/**
+	 * Release any resources of the strategy, such as prefetch threads. Called when 
+	 * learning stops, before the dataset is released.
+	 */
+	default void cleanup(){}
+	
 }
@@ -258,6 +258,100 @@ public abstract class AbstractModule implements Module {
 	
 	protected abstract void backward();
 
+	/**
+	 * Synchronous forward pass, used when a neural network is executed as a compiled plan
+	 * on the calling thread. No next modules are called and no listeners are notified.
+	 *
+	 * @param inputs the inputs, ordered as the previous modules
+	 * @throws ModuleException in case the forward fails
+	 */
+	public synchronized void forwardSync(final Tensor... inputs) throws ModuleException {
+		this.input = inputs[0];
+		this.exception = null;
+
+		try {
+			forward();
+		} catch(Exception e){
+			exception = new ModuleException(this.id, this.getClass().getName(), true, e);
+			throw exception;
+		}
+
+		train = false;
+	}
+
+	/**
+	 * @param index the index of the next module
+	 * @return the output of the latest synchronous forward for the next module at index
+	 */
+	public Tensor outputSync(final int index){
+		return output;
+	}
+
+	/**
+	 * Synchronous backward pass, used when a neural network is executed as a compiled plan
+	 * on the calling thread. No previous modules are called and no listeners are notified.
+	 *
+	 * @param gradOutputs the gradOutputs, ordered as the next modules
+	 * @throws ModuleException in case the backward fails
+	 */
+	public synchronized void backwardSync(final Tensor... gradOutputs) throws ModuleException {
+		this.train = true;
+
+		this.gradOutput = gradOutputs[0];
+		this.exception = null;
+
+		try {
+			backward();
+		} catch(Exception e){
+			exception = new ModuleException(this.id, this.getClass().getName(), false, e);
+			throw exception;
+		}
+	}
+
+	/**
+	 * @param index the index of the previous module
+	 * @return the gradInput of the latest synchronous backward for the previous module at index
+	 */
+	public Tensor gradInputSync(final int index){
+		return gradInput;
+	}
+
+	/**
+	 * Notify the forward listeners of the latest synchronous forward (or its failure),
+	 * as is done after an asynchronous forward.
+	 *
+	 * @param tags the tags to pass to the listeners
+	 */
+	public void notifyForwardSync(final String... tags){
+		if(fwdListeners.size()>0){
+			this.tags = tags;
+			notifyForwardListeners();
+		}
+	}
+
+	/**
+	 * Notify the backward listeners of the latest synchronous backward (or its failure),
+	 * as is done after an asynchronous backward.
+	 *
+	 * @param tags the tags to pass to the listeners
+	 */
+	public void notifyBackwardSync(final String... tags){
+		if(bwListeners.size()>0){
+			this.tags = tags;
+			notifyBackwardListeners();
+		}
+	}
+
+	/**
+	 * Modules that dispatch to their next modules in a custom way (e.g. multiple times
+	 * per input) cannot be part of a compiled execution plan.
+	 *
+	 * @return whether this module can be executed using forwardSync/backwardSync
+	 */
+	public boolean supportsSync(){
+		return true;
+	}
+
 	@Override
 	public void setNext(final Module... next) {
 		this.next = next;
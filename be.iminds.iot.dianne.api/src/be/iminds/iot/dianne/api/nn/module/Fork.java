@@ -218,6 +218,19 @@ public abstract class Fork extends AbstractModule {
 
 	}
 	
+	@Override
+	public Tensor outputSync(final int index){
+		return outputs.get(nextIds[index]);
+	}
+	
+	@Override
+	public synchronized void backwardSync(final Tensor... gradOutputs) throws ModuleException {
+		for(int i=0;i<gradOutputs.length;i++){
+			this.gradOutputs.put(nextIds[i], gradOutputs[i]);
+		}
+		super.backwardSync(gradOutputs);
+	}
+	
 	@Override
 	public void setNext(final Module... next) {
 		if(next==null){
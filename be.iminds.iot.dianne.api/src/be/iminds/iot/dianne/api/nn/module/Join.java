@@ -178,6 +178,19 @@ public abstract class Join extends AbstractModule {
 	
 	}
 	
+	@Override
+	public synchronized void forwardSync(final Tensor... inputs) throws ModuleException {
+		for(int i=0;i<inputs.length;i++){
+			this.inputs.put(prevIds[i], inputs[i]);
+		}
+		super.forwardSync(inputs);
+	}
+	
+	@Override
+	public Tensor gradInputSync(final int index){
+		return gradInputs.get(prevIds[index]);
+	}
+	
 	@Override
 	public void setPrevious(final Module... prev) {
 		if(prev==null){
@@ -46,6 +46,12 @@ public interface Memory extends Module {
 	 */
 	public void triggerBackward(final String... tags);
 	
+	/**
+	 * Update the output from the current memory on the calling thread, without
+	 * dispatching to the next Module. Used when executing a compiled plan.
+	 */
+	public void triggerForwardSync();
+	
 	/**
 	 * Reset the memory to initial state (and zero out any gradOut)
 	 */
@@ -75,6 +75,18 @@ public interface DianneRuntime {
 	 */
 	ModuleInstanceDTO deployModule(ModuleDTO dto, UUID nnId, Tensor parameters);
 	
+	/**
+	 * Deploy a number of Modules of one neural network instance on this runtime. The parameters 
+	 * of all trainable modules are kept in a single flat Tensor, ordered by module id, of which 
+	 * each module gets a narrowed view.
+	 * 
+	 * @param nnId the neural network instance these module instances will belong to
+	 * @param dtos the ModuleDTOs describing which Modules to deploy
+	 * @param tags the tags of parameters to load for these modules
+	 * @return the ModuleInstanceDTOs of the deployed modules
+	 */
+	List<ModuleInstanceDTO> deployModules(UUID nnId, List<ModuleDTO> dtos, String... tags);
+	
 	/**
 	 * Undeploy a single ModuleInstance on this runtime
 	 * 
@@ -103,6 +115,14 @@ public interface DianneRuntime {
 	 */
 	Tensor getModuleParameters(ModuleInstanceDTO module);
 	
+	/**
+	 * Get the flat parameters Tensor of a neural network instance deployed with deployModules
+	 * 
+	 * @param nnId the neural network instance id
+	 * @return the flat parameters Tensor, or null if the modules of this instance have no shared parameters on this runtime
+	 */
+	Tensor getNeuralNetworkParameters(UUID nnId);
+	
 	/**
 	 * Get a list of supported module types that this runtime can deploy. 
 	 * 
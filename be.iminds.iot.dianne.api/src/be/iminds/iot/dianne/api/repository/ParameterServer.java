@@ -0,0 +1,78 @@
+/*******************************************************************************
+ * DIANNE  - Framework for distributed artificial neural networks
+ * Copyright (C) 2015  iMinds - IBCN - UGent
+ *
+ * This file is part of DIANNE.
+ *
+ * DIANNE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contributors:
+ *     Tim Verbelen, Steven Bohez
+ *******************************************************************************/
+package be.iminds.iot.dianne.api.repository;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.UUID;
+
+import be.iminds.iot.dianne.tensor.Tensor;
+
+/**
+ * The ParameterServer keeps the latest parameters of modules in memory, so that multiple
+ * learners can synchronize their parameters without a round trip to the file system.
+ *
+ * Parameters are identified by moduleId and tags, just like in the DianneRepository, and are
+ * periodically written back to the DianneRepository. Parameters updated via accParameters are
+ * therefore only visible in the DianneRepository, and notified to its listeners, once written 
+ * back, so anyone requiring the latest parameters of a learning run should read these from the 
+ * ParameterServer instead.
+ *
+ * @author tverbele
+ *
+ */
+public interface ParameterServer {
+
+	/**
+	 * Get the latest parameters of a number of modules. Modules for which no parameters are
+	 * available are omitted.
+	 *
+	 * @param moduleIds the modules to get the parameters for
+	 * @param tag optional tags
+	 * @return the parameters mapped by moduleId
+	 * @throws Exception in case no parameters are available for any of the modules
+	 */
+	Map<UUID, Tensor> loadParameters(Collection<UUID> moduleIds, String... tag) throws Exception;
+
+	/**
+	 * Overwrite the parameters of a number of modules. These are immediately written
+	 * through to the DianneRepository.
+	 *
+	 * @param nnId the nn instance these parameters originate from
+	 * @param parameters the parameters mapped by moduleId
+	 * @param tag optional tags
+	 */
+	void storeParameters(UUID nnId, Map<UUID, Tensor> parameters, String... tag);
+
+	/**
+	 * Atomically add deltas to the parameters of a number of modules, and return the
+	 * updated parameters.
+	 *
+	 * @param nnId the nn instance these deltas originate from
+	 * @param accParameters the deltas mapped by moduleId
+	 * @param tag optional tags
+	 * @return the updated parameters mapped by moduleId
+	 */
+	Map<UUID, Tensor> accParameters(UUID nnId, Map<UUID, Tensor> accParameters, String... tag);
+
+}
@@ -34,4 +34,31 @@ public interface ActionStrategy {
 	
 	Tensor processIteration(long s, long i, Tensor state) throws Exception;
 	
+	/**
+	 * Select the actions for a batch of states, each coming from a different environment instance.
+	 * 
+	 * By default the states are processed one by one, strategies that can process the batch
+	 * in a single forward pass or that keep state per environment should override this.
+	 * 
+	 * @param s the current sequence for each environment
+	 * @param i the current iteration in the sequence for each environment
+	 * @param states batch of states, the first dimension is the batch dimension
+	 * @return batch of actions
+	 */
+	default Tensor processIteration(long[] s, long[] i, Tensor states) throws Exception {
+		Tensor actions = null;
+		for(int k=0;k<s.length;k++){
+			Tensor state = states.select(0, k);
+			Tensor action = processIteration(s[k], i[k], state);
+			if(actions == null){
+				actions = new Tensor(s.length, action.dims());
+			}
+			Tensor row = actions.select(0, k);
+			action.copyInto(row);
+			row.release();
+			state.release();
+		}
+		return actions;
+	}
+	
 }
@@ -155,6 +155,41 @@ public interface ExperiencePool extends SequenceDataset<ExperiencePoolSample, Ex
 		return new RawBatchedExperiencePoolSequence(data);
 	}
 	
+	/**
+	 * Number of positions in the (ring) buffer backing this experience pool
+	 * 
+	 * @return buffer capacity
+	 */
+	default int capacity(){
+		return size();
+	}
+	
+	/**
+	 * Get the buffer positions of a number of samples. In contrast to the index of a sample, 
+	 * which shifts once older sequences are overwritten, the position of a sample remains 
+	 * the same as long as it is in the experience pool.
+	 * 
+	 * @param indices the sample indices, should be smaller then size()
+	 * @return the buffer positions, smaller than capacity()
+	 */
+	default int[] getPositions(final int... indices){
+		return indices;
+	}
+	
+	/**
+	 * Get the current sample indices for a number of buffer positions.
+	 * 
+	 * @param positions the buffer positions, should be smaller than capacity()
+	 * @return the sample indices, or -1 for positions that do not contain a valid sample
+	 */
+	default int[] getIndices(final int... positions){
+		int[] indices = new int[positions.length];
+		for(int i=0;i<positions.length;i++){
+			indices[i] = positions[i] < size() ? positions[i] : -1;
+		}
+		return indices;
+	}
+	
 	/**
 	 * Add a new sequence of interactions to the experience pool
 	 * 
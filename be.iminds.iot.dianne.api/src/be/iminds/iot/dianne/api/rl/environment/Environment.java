@@ -84,4 +84,15 @@ public interface Environment {
 	 */
 	void cleanup();
 	
+	/**
+	 * Create a new, independent instance of this environment, for example to act on multiple 
+	 * instances in parallel. The new instance should be set up and cleaned up separately.
+	 * 
+	 * @return a new instance of this environment
+	 * @throws UnsupportedOperationException in case the environment cannot have multiple instances
+	 */
+	default Environment newInstance(){
+		throw new UnsupportedOperationException("Environment "+getClass().getName()+" does not support multiple instances");
+	}
+	
 }
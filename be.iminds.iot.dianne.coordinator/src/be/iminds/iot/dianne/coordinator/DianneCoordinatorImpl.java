@@ -83,6 +83,7 @@ import be.iminds.iot.dianne.api.nn.learn.Learner;
 import be.iminds.iot.dianne.api.nn.module.dto.NeuralNetworkDTO;
 import be.iminds.iot.dianne.api.nn.platform.DiannePlatform;
 import be.iminds.iot.dianne.api.repository.DianneRepository;
+import be.iminds.iot.dianne.api.repository.ParameterServer;
 import be.iminds.iot.dianne.api.rl.agent.Agent;
 import be.iminds.iot.dianne.api.rl.agent.AgentProgress;
 import be.iminds.iot.dianne.coordinator.util.DianneCoordinatorWriter;
@@ -98,6 +99,8 @@ public class DianneCoordinatorImpl implements DianneCoordinator {
 
 	DiannePlatform platform;
 	DianneRepository repository;
+	// in case learners synchronize via a parameter server, the latest parameters are read from there
+	volatile ParameterServer parameterServer;
 	DianneDatasets datasets;
 	
 	PlatformManager aiolos;
@@ -703,6 +706,18 @@ public class DianneCoordinatorImpl implements DianneCoordinator {
 		this.datasets = datasets;
 	}
 	
+	@Reference(cardinality=ReferenceCardinality.OPTIONAL, 
+			policy=ReferencePolicy.DYNAMIC)
+	void setParameterServer(ParameterServer ps){
+		this.parameterServer = ps;
+	}
+	
+	void unsetParameterServer(ParameterServer ps){
+		if(this.parameterServer == ps){
+			this.parameterServer = null;
+		}
+	}
+	
 	Device addDevice(UUID id){
 		Device device = devices.get(id);
 		if(device == null){
@@ -29,7 +29,12 @@ import java.util.HashMap;
 import java.util.Hashtable;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Collectors;
 
 import org.osgi.framework.ServiceRegistration;
@@ -44,6 +49,8 @@ import be.iminds.iot.dianne.api.nn.learn.Learner;
 import be.iminds.iot.dianne.api.nn.learn.LearnerListener;
 import be.iminds.iot.dianne.api.nn.module.dto.NeuralNetworkDTO;
 import be.iminds.iot.dianne.api.nn.module.dto.NeuralNetworkInstanceDTO;
+import be.iminds.iot.dianne.api.repository.ParameterServer;
+import be.iminds.iot.dianne.tensor.Tensor;
 
 public class LearnJob extends AbstractJob<LearnResult> implements LearnerListener {
 
@@ -62,18 +69,42 @@ public class LearnJob extends AbstractJob<LearnResult> implements LearnerListene
 	private NeuralNetworkInstanceDTO[] validationNns;
 	private int validationInterval = 1000;
 	private float bestValidationLoss = Float.MAX_VALUE;
+	// validation losses by iteration, to check the stop condition
+	private TreeMap<Long, Float> validationLosses = new TreeMap<>();
+	
+	// validations run on a single thread while learning continues
+	private ExecutorService validationExecutor = Executors.newSingleThreadExecutor();
+	private AtomicReference<Validation> pendingValidation = new AtomicReference<>();
 	
 	
 	private float minibatchLossThreshold = -Float.MAX_VALUE;
 	private float validationLossThreshold = -Float.MAX_VALUE;
 	private int thresholdWindow = 10;
 	
+	/**
+	 * A parameter snapshot taken at a given iteration, waiting to be validated
+	 */
+	private static class Validation {
+		final UUID learnerId;
+		final LearnProgress progress;
+		final Map<UUID, Tensor> parameters;
+		
+		Validation(UUID learnerId, LearnProgress progress, Map<UUID, Tensor> parameters){
+			this.learnerId = learnerId;
+			this.progress = progress;
+			this.parameters = parameters;
+		}
+	}
+	
 	public LearnJob(DianneCoordinatorImpl coord, 
 			String dataset,
 			Map<String, String> config,
 			NeuralNetworkDTO[] nns){
 		super(coord, Type.LEARN, dataset, config, nns);
 		
+		// validations are added from the validation executor
+		result.validations = new ConcurrentHashMap<>();
+		
 		if(config.containsKey("strategy") && config.get("strategy").equals("FeedForwardLearningStrategy")){
 			// set FF category when explicitly using FF strategy
 			category = LearnCategory.FF;
@@ -183,52 +214,32 @@ public class LearnJob extends AbstractJob<LearnResult> implements LearnerListene
 		// run validations / publish progress and check stop condition on
 		// elected 'master' node
 		if(learnerId.equals(master)){
-			// run validation
-			Evaluation validation = null;
+			// snapshot the parameters and validate asynchronously, 
+			// a newer snapshot supersedes the one still waiting for validation
 			if(validator != null
 					&& progress.iteration % validationInterval == 0){
-				Map<String, String> c = new HashMap<>();
-				c.put("range", config.get("validationSet"));
-				if(config.containsKey("tag")){
-					c.put("tag", config.get("tag"));
-				} else {
-					c.put("tag", jobId.toString());
-				}
-				if(config.containsKey("validationStrategy")){
-					c.put("strategy", config.get("validationStrategy"));
-				} else {
-					c.put("strategy", "CriterionEvaluationStrategy");
-				}
-				if(config.containsKey("criterion")){
-					c.put("criterion", config.get("criterion"));
-				}
-				// TODO use separate (bigger?) batchSize here?
-				if(config.containsKey("batchSize")){
-					c.put("batchSize", config.get("batchSize"));
-				}
-				c.put("storeIfBetterThan", ""+bestValidationLoss);
-				
 				try {
-					validation = validator.eval(dataset, c, validationNns);
-					
-					if(Float.isNaN(validation.metric)){
-						validation = null;
-						throw new Exception("Validation loss became NaN");
+					// the parameter server has the latest parameters, the repository only gets these periodically
+					ParameterServer ps = coordinator.parameterServer;
+					Map<UUID, Tensor> snapshot = new HashMap<>();
+					for(NeuralNetworkDTO nn : nns){
+						if(ps != null){
+							snapshot.putAll(ps.loadParameters(nn.modules.keySet(), config.get("tag")));
+						} else {
+							snapshot.putAll(coordinator.repository.loadParameters(nn.name, config.get("tag")));
+						}
 					}
 					
-					if(validation.metric < bestValidationLoss){
-						bestValidationLoss = validation.metric;
+					if(pendingValidation.getAndSet(new Validation(learnerId, progress, snapshot)) == null){
+						validationExecutor.execute(this::validate);
 					}
 				} catch(Exception e){
-					System.err.println("Error running validation: "+e.getMessage());
-					onException(learnerId, e);
-					return;
+					System.err.println("Failed to snapshot parameters for validation: "+e.getMessage());
 				}
-				result.validations.put(progress.iteration, validation);
 			}
 
 			// TODO how frequently send out the progress
-			coordinator.sendLearnProgress(this.jobId, progress, validation);
+			coordinator.sendLearnProgress(this.jobId, progress, null);
 			
 			// maxIterations stop condition
 			// what in case of multiple learners?!
@@ -245,24 +256,83 @@ public class LearnJob extends AbstractJob<LearnResult> implements LearnerListene
 				}
 			}
 			
-			// threshold on validation threshold
-			Evaluation last = result.validations.get(progress.iteration);
-			Evaluation prev = result.validations.get(progress.iteration - thresholdWindow*validationInterval);
-			if(last != null & prev != null){
-				float deltaValidationLoss = prev.metric - last.metric;
-				if(deltaValidationLoss < validationLossThreshold){
-					stop = true;
-				}
-			}
-			
 			// if stop ... assemble result object and resolve
 			if(stop){
-				for(Learner learner : learners.values()){
-					learner.stop();
-				}
+				stopLearners();
 			}
 		}
 	}
+	
+	/**
+	 * Validate the latest parameter snapshot, runs on the validation executor
+	 */
+	private void validate(){
+		Validation v = pendingValidation.getAndSet(null);
+		if(v == null || deferred.getPromise().isDone())
+			return;
+		
+		String snapshotTag = config.get("tag")+"-validation";
+		
+		Map<String, String> c = new HashMap<>();
+		c.put("range", config.get("validationSet"));
+		c.put("tag", snapshotTag);
+		if(config.containsKey("validationStrategy")){
+			c.put("strategy", config.get("validationStrategy"));
+		} else {
+			c.put("strategy", "CriterionEvaluationStrategy");
+		}
+		if(config.containsKey("criterion")){
+			c.put("criterion", config.get("criterion"));
+		}
+		// TODO use separate (bigger?) batchSize here?
+		if(config.containsKey("batchSize")){
+			c.put("batchSize", config.get("batchSize"));
+		}
+		c.put("storeIfBetterThan", ""+bestValidationLoss);
+		
+		Evaluation validation = null;
+		try {
+			// the snapshot contains the parameters of all neural networks
+			coordinator.repository.storeParameters(validationNns[0].id, v.parameters, snapshotTag);
+			
+			validation = validator.eval(dataset, c, validationNns);
+			
+			if(Float.isNaN(validation.metric)){
+				validation = null;
+				throw new Exception("Validation loss became NaN");
+			}
+			
+			if(validation.metric < bestValidationLoss){
+				bestValidationLoss = validation.metric;
+			}
+		} catch(Exception e){
+			System.err.println("Error running validation: "+e.getMessage());
+			onException(v.learnerId, e);
+			return;
+		}
+		
+		// attach the result to the iteration the snapshot was taken
+		long iteration = v.progress.iteration;
+		result.validations.put(iteration, validation);
+		validationLosses.put(iteration, validation.metric);
+		coordinator.sendLearnProgress(this.jobId, v.progress, validation);
+		
+		// threshold on validation threshold, compared to the last validation
+		// at least thresholdWindow validation intervals earlier
+		Map.Entry<Long, Float> prev = validationLosses.floorEntry(iteration - thresholdWindow*validationInterval);
+		if(prev != null){
+			float deltaValidationLoss = prev.getValue() - validation.metric;
+			if(deltaValidationLoss < validationLossThreshold){
+				stopLearners();
+			}
+		}
+	}
+	
+	private void stopLearners(){
+		for(Learner learner : learners.values()){
+			learner.stop();
+		}
+	}
 
 	@Override
 	public void onException(UUID learnerId, Throwable e) {
@@ -277,7 +347,8 @@ public class LearnJob extends AbstractJob<LearnResult> implements LearnerListene
 		if(deferred.getPromise().isDone()){
 			return;
 		}
-		done(result);
+		// resolve after the pending validation is finished
+		validationExecutor.execute(() -> done(result));
 	}
 
 	@Override
@@ -292,6 +363,8 @@ public class LearnJob extends AbstractJob<LearnResult> implements LearnerListene
 			} catch(Exception e){}
 		}
 		
+		validationExecutor.shutdownNow();
+		
 		if(validationNns != null){
 			for(NeuralNetworkInstanceDTO nn : validationNns)
 				coordinator.platform.undeployNeuralNetwork(nn);
@@ -28,6 +28,7 @@ import java.io.FileReader;
 import java.io.IOException;
 import java.lang.reflect.Proxy;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Hashtable;
 import java.util.List;
@@ -59,6 +60,11 @@ import be.iminds.iot.dianne.api.dataset.DianneDatasets;
 	property={"aiolos.export=false"})
 public class DatasetConfigurator implements DianneDatasets {
 
+	// configuration keys handled by the AugmentationAdapter
+	private static final List<String> AUGMENTATIONS = Arrays.asList("vflip", "hflip", 
+			"rotationTheta", "rotationCenter", "cropWidth", "cropHeight", "cropPadding", 
+			"frame", "binarize", "augmentationSeed", "augmentationThreads");
+	
 	private ConfigurationAdmin ca;
 	
 	private String path = "datasets";
@@ -138,6 +144,9 @@ public class DatasetConfigurator implements DianneDatasets {
 				if(config.containsKey("maxSize")){
 					props.put("maxSize", config.get("maxSize"));
 				} 
+				if(config.containsKey("frameStack")){
+					props.put("frameStack", config.get("frameStack"));
+				}
 				
 				try {
 					Configuration c = ca.createFactoryConfiguration(pid, null);
@@ -154,7 +163,6 @@ public class DatasetConfigurator implements DianneDatasets {
 		
 		
 		// TODO type safe creation of dataset adapter configurations?
-		// flip -> rotate -> crop -> frame?
 		String adapter = name;
 		// TODO range adapter
 		
@@ -180,75 +188,9 @@ public class DatasetConfigurator implements DianneDatasets {
 				e.printStackTrace();
 			}
 		}
-		if(config.containsKey("vflip") || config.containsKey("hflip")){
-			String pid = "be.iminds.iot.dianne.dataset.adapters.RandomFlipAdapter";
-			Hashtable<String, Object> props = new Hashtable<>();
-			props.put("Dataset.target", "(name="+adapter+")");
-			adapter = name+"-"+UUID.randomUUID();
-			props.put("name", adapter);
-			props.put("aiolos.instance.id", adapter);
-			props.put("aiolos.combine", "*");
-			props.put("aiolos.export", "false");
-
-			if(config.containsKey("vflip")){
-				String s = config.get("vflip");
-				props.put("vflip", s);
-				System.out.println("* vflip = "+s);
-			}
-
-			if(config.containsKey("hflip")){
-				String s = config.get("hflip");
-				props.put("hflip", s);
-				System.out.println("* hflip = "+s);
-			}
-			
-			try {
-				Configuration c = ca.createFactoryConfiguration(pid, null);
-				c.update(props);
-				adapterConfigurations.add(c);
-			} catch(Exception e){
-				e.printStackTrace();
-			}
-		} 
-		if(config.containsKey("rotationTheta")){
-			String pid = "be.iminds.iot.dianne.dataset.adapters.RandomRotationAdapter";
-			Hashtable<String, Object> props = new Hashtable<>();
-			props.put("Dataset.target", "(name="+adapter+")");
-			adapter = name+"-"+UUID.randomUUID();
-			props.put("name", adapter);
-			props.put("aiolos.instance.id", adapter);
-			props.put("aiolos.combine", "*");
-			props.put("aiolos.export", "false");
-
-			if(config.containsKey("rotationTheta")){
-				String s = config.get("rotationTheta");
-				if(s.contains(",")){
-					props.put("rotationTheta", s.split(","));
-				} else {
-					props.put("rotationTheta", s);
-				}
-				System.out.println("* rotationTheta = "+s);
-			}
-			if(config.containsKey("rotationCenter")){
-				String s = config.get("rotationCenter");
-				if(s.contains(",")){
-					props.put("rotationCenter", s.split(","));
-				} else {
-					props.put("rotationCenter", s);
-				}
-				System.out.println("* rotationCenter = "+s);
-			}
-			
-			try {
-				Configuration c = ca.createFactoryConfiguration(pid, null);
-				c.update(props);
-				adapterConfigurations.add(c);
-			} catch(Exception e){
-				e.printStackTrace();
-			}
-		}
-		if(config.containsKey("cropWidth") || config.containsKey("cropHeight")){
-			String pid = "be.iminds.iot.dianne.dataset.adapters.RandomCropAdapter";
+		// flip -> rotate -> crop -> frame -> binarize are fused in a single augmentation adapter
+		if(AUGMENTATIONS.stream().anyMatch(config::containsKey)){
+			String pid = "be.iminds.iot.dianne.dataset.adapters.AugmentationAdapter";
 			Hashtable<String, Object> props = new Hashtable<>();
 			props.put("Dataset.target", "(name="+adapter+")");
 			adapter = name+"-"+UUID.randomUUID();
@@ -257,76 +199,16 @@ public class DatasetConfigurator implements DianneDatasets {
 			props.put("aiolos.combine", "*");
 			props.put("aiolos.export", "false");
 
-			if(config.containsKey("cropWidth")){
-				String s = config.get("cropWidth");
-				if(s.contains(",")){
-					props.put("cropWidth", s.split(","));
-				} else {
-					props.put("cropWidth", s);
-				}
-				System.out.println("* cropWidth = "+s);
-			}
-			if(config.containsKey("cropHeight")){
-				String s = config.get("cropHeight");
-				if(s.contains(",")){
-					props.put("cropHeight", s.split(","));
-				} else {
-					props.put("cropHeight", s);
+			for(String key : AUGMENTATIONS){
+				if(config.containsKey(key)){
+					String s = config.get(key);
+					if(s.contains(",")){
+						props.put(key, s.split(","));
+					} else {
+						props.put(key, s);
+					}
+					System.out.println("* "+key+" = "+s);
 				}
-				System.out.println("* cropHeight = "+s);
-			}
-			if(config.containsKey("cropPadding")){
-				String s = config.get("cropPadding");
-				props.put("cropPadding", s);
-				System.out.println("* cropPadding = "+s);
-			}
-			
-			try {
-				Configuration c = ca.createFactoryConfiguration(pid, null);
-				c.update(props);
-				adapterConfigurations.add(c);
-			} catch(Exception e){
-				e.printStackTrace();
-			}
-		}
-		if(config.containsKey("frame")){
-			String pid = "be.iminds.iot.dianne.dataset.adapters.FrameAdapter";
-			Hashtable<String, Object> props = new Hashtable<>();
-			props.put("Dataset.target", "(name="+adapter+")");
-			adapter = name+"-"+UUID.randomUUID();
-			props.put("name", adapter);
-			props.put("aiolos.instance.id", adapter);
-			props.put("aiolos.combine", "*");
-			props.put("aiolos.export", "false");
-
-			if(config.containsKey("frame")){
-				String s = config.get("frame");
-				props.put("frame", s.split(","));
-				System.out.println("* frame = "+s);
-			}
-			
-			try {
-				Configuration c = ca.createFactoryConfiguration(pid, null);
-				c.update(props);
-				adapterConfigurations.add(c);
-			} catch(Exception e){
-				e.printStackTrace();
-			}
-		}
-		if(config.containsKey("binarize")){
-			String pid = "be.iminds.iot.dianne.dataset.adapters.BinarizeAdapter";
-			Hashtable<String, Object> props = new Hashtable<>();
-			props.put("Dataset.target", "(name="+adapter+")");
-			adapter = name+"-"+UUID.randomUUID();
-			props.put("name", adapter);
-			props.put("aiolos.instance.id", adapter);
-			props.put("aiolos.combine", "*");
-			props.put("aiolos.export", "false");
-
-			if(config.containsKey("binarize")){
-				String s = config.get("binarize");
-				props.put("binarize", s);
-				System.out.println("* binarize = "+s);
 			}
 			
 			try {
@@ -30,6 +30,7 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.nio.FloatBuffer;
 import java.util.Map;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -170,9 +171,8 @@ public abstract class FileDataset extends AbstractDataset {
 		checkLoaded();
 
 		if(t == null)
-			t = new Tensor(inputs[index], inputDims);
-		else 
-			t.set(inputs[index]);
+			t = new Tensor(inputDims);
+		t.copyFrom(FloatBuffer.wrap(inputs[index]), 0);
 		return t;
 	}
 
@@ -181,9 +181,8 @@ public abstract class FileDataset extends AbstractDataset {
 		checkLoaded();
 
 		if(t == null)
-			t = new Tensor(targets[index], targetDims);
-		else 
-			t.set(targets[index]);
+			t = new Tensor(targetDims);
+		t.copyFrom(FloatBuffer.wrap(targets[index]), 0);
 		return t;
 	}
 	
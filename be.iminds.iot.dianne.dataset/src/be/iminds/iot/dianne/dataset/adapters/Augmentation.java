@@ -0,0 +1,463 @@
+/*******************************************************************************
+ * DIANNE  - Framework for distributed artificial neural networks
+ * Copyright (C) 2015  iMinds - IBCN - UGent
+ *
+ * This file is part of DIANNE.
+ *
+ * DIANNE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contributors:
+ *     Tim Verbelen, Steven Bohez
+ *******************************************************************************/
+package be.iminds.iot.dianne.dataset.adapters;
+
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Random;
+
+import be.iminds.iot.dianne.api.dataset.Sample;
+import be.iminds.iot.dianne.tensor.Tensor;
+
+/**
+ * Specification of a data augmentation that combines the random flip, random rotation, 
+ * random crop, frame and binarize adapters. Instead of materializing an intermediate
+ * sample per step, each output element is mapped back through all steps to the original
+ * sample, so the augmented sample is calculated in a single pass directly into the
+ * output Tensor.
+ * 
+ * The steps are applied in this order, configured with the same properties as the 
+ * separate adapters: 
+ * 
+ * vflip, hflip : probability to flip the sample vertically/horizontally
+ * rotationTheta, rotationCenter : range of the random rotation angle and the rotation center
+ * cropWidth, cropHeight, cropPadding : (range of) size of the random crop and padding
+ * frame : dimensions to scale the sample to, after cropping to the target aspect ratio
+ * binarize : threshold to binarize the input
+ * 
+ * In case the target has the same dimensions as the input, the target undergoes the
+ * same geometric transformation (without binarization).
+ * 
+ * @author tverbele
+ *
+ */
+public class Augmentation {
+
+	private float vflip = 0;
+	private float hflip = 0;
+	
+	private boolean rotate = false;
+	private float minTheta = (float)-Math.PI;
+	private float maxTheta = (float)Math.PI;
+	private int[] center = null;
+	private boolean middle = false;
+	
+	private boolean crop = false;
+	private int minWidth;
+	private int maxWidth;
+	private int minHeight;
+	private int maxHeight;
+	private int padding = 0;
+	
+	private int[] frame = null;
+	
+	private boolean binarize = false;
+	private float threshold = 0.5f;
+	
+	public Augmentation(Map<String, Object> properties){
+		if(properties.containsKey("vflip")){
+			vflip = Float.parseFloat(((String)properties.get("vflip")).trim());
+		}
+		if(properties.containsKey("hflip")){
+			hflip = Float.parseFloat(((String)properties.get("hflip")).trim());
+		}
+		
+		if(properties.containsKey("rotationTheta")){
+			rotate = true;
+			Object t = properties.get("rotationTheta");
+			if(t instanceof String[]){
+				minTheta = Float.parseFloat(((String[]) t)[0].trim());
+				maxTheta = Float.parseFloat(((String[]) t)[1].trim());
+			} else {
+				maxTheta = Float.parseFloat(((String) t).trim());
+				minTheta = -maxTheta;
+			}
+		}
+		if(properties.containsKey("rotationCenter")){
+			Object c = properties.get("rotationCenter");
+			if(c instanceof String[]){
+				center = new int[2];
+				center[0] = Integer.parseInt(((String[])c)[0].trim());
+				center[1] = Integer.parseInt(((String[])c)[1].trim());
+			} else {
+				middle = Boolean.parseBoolean(((String)c).trim());
+			}
+		}
+		
+		if(properties.containsKey("cropWidth") || properties.containsKey("cropHeight")){
+			crop = true;
+			int[] w = parseRange(properties.get("cropWidth"), properties.get("cropHeight"));
+			minWidth = w[0];
+			maxWidth = w[1];
+			int[] h = parseRange(properties.get("cropHeight"), properties.get("cropWidth"));
+			minHeight = h[0];
+			maxHeight = h[1];
+		}
+		if(properties.containsKey("cropPadding")){
+			padding = Integer.parseInt(((String) properties.get("cropPadding")).trim());
+		}
+		
+		if(properties.containsKey("frame")){
+			Object f = properties.get("frame");
+			String[] d = f instanceof String[] ? (String[]) f : ((String) f).split(",");
+			frame = new int[d.length];
+			for(int i=0;i<d.length;i++){
+				frame[i] = Integer.parseInt(d[i].trim());
+			}
+		}
+		
+		if(properties.containsKey("binarize")){
+			binarize = true;
+			threshold = Float.parseFloat(((String) properties.get("binarize")).trim());
+		}
+	}
+	
+	private static int[] parseRange(Object o, Object fallback){
+		if(o == null)
+			o = fallback;
+		
+		if(o instanceof String[]){
+			return new int[]{Integer.parseInt(((String[]) o)[0].trim()), Integer.parseInt(((String[]) o)[1].trim())};
+		} 
+		int v = Integer.parseInt(((String) o).trim());
+		return new int[]{v, v};
+	}
+	
+	/**
+	 * @param dims dimensions of the original samples, null if these vary
+	 * @return the dimensions of the augmented samples, null if these vary
+	 */
+	public int[] outputDims(int[] dims){
+		if(frame != null)
+			return frame;
+		
+		if(crop){
+			if(minWidth != maxWidth || minHeight != maxHeight)
+				return null;
+			
+			if(dims == null){
+				// assume 3d images
+				return new int[]{3, maxHeight, maxWidth};
+			} else if(dims.length == 3){
+				return new int[]{dims[0], maxHeight, maxWidth};
+			} else {
+				return new int[]{maxHeight, maxWidth};
+			}
+		}
+		
+		return dims;
+	}
+	
+	/**
+	 * Creates a Transform to augment samples with. A Transform reuses its
+	 * buffers and is not thread safe, so use one Transform per thread.
+	 * 
+	 * @param seed seed for the random generator of this Transform
+	 */
+	public Transform createTransform(long seed){
+		return new Transform(new Random(seed));
+	}
+	
+	/**
+	 * Applies the augmentation with randomly drawn parameters per sample
+	 */
+	public class Transform {
+		
+		private final Random r;
+		
+		// original sample
+		private FloatBuffer src;
+		private int channels;
+		private int height;
+		private int width;
+		
+		// flip
+		private boolean vertical;
+		private boolean horizontal;
+		
+		// rotation
+		private double sinTheta;
+		private double cosTheta;
+		private int centerX;
+		private int centerY;
+		
+		// scale up factor in case the crop is larger than the original
+		private int scale;
+		// crop size and offset in the (scaled) padded sample
+		private int cropHeight;
+		private int cropWidth;
+		private int cropHeightOffset;
+		private int cropWidthOffset;
+		
+		// dims of the framed output
+		private boolean scaleFrame;
+		private int frameChannels;
+		private int frameHeight;
+		private int frameWidth;
+		// window of the cropped sample that is scaled to the frame
+		private int frameHeightOffset;
+		private int frameWidthOffset;
+		private float frameSy;
+		private float frameSx;
+		private int frameWindowHeight;
+		private int frameWindowWidth;
+		
+		// fallback buffer in case the Tensor data is not directly accessible
+		private float[] buffer;
+		
+		private Transform(Random r){
+			this.r = r;
+		}
+		
+		/**
+		 * Augment the original sample into adapted, in place if the adapted Tensors
+		 * already have the correct size.
+		 */
+		public void apply(Sample original, Sample adapted, boolean sameTarget){
+			int[] dims = original.input.dims();
+			draw(dims);
+			
+			adapted.input = transform(adapted.input, original.input, binarize);
+			if(sameTarget){
+				adapted.target = transform(adapted.target, original.target, false);
+			} else {
+				adapted.target = original.target.copyInto(adapted.target);
+			}
+		}
+		
+		/**
+		 * Draw the random parameters for a sample with dims
+		 */
+		private void draw(int[] dims){
+			channels = dims.length == 3 ? dims[0] : 1;
+			height = dims.length == 3 ? dims[1] : dims[0];
+			width = dims.length == 3 ? dims[2] : dims[1];
+			
+			vertical = vflip > 0 && r.nextFloat() <= vflip;
+			horizontal = hflip > 0 && r.nextFloat() <= hflip;
+			
+			if(rotate){
+				float theta = minTheta+r.nextFloat()*(maxTheta-minTheta);
+				sinTheta = Math.sin(theta);
+				cosTheta = Math.cos(theta);
+				if(middle){
+					centerX = width/2;
+					centerY = height/2;
+				} else if(center != null){
+					centerX = center[0];
+					centerY = center[1];
+				} else {
+					centerX = r.nextInt(width);
+					centerY = r.nextInt(height);
+				}
+			}
+			
+			scale = 1;
+			if(crop){
+				cropWidth = (int)Math.floor(minWidth + r.nextFloat()*(maxWidth-minWidth));
+				cropHeight = (int)Math.floor(minHeight + r.nextFloat()*(maxHeight-minHeight));
+				
+				// if original dims are smaller than requested crop, scale up first
+				while(height*scale < cropHeight || width*scale < cropWidth){
+					scale *= 2;
+				}
+				
+				cropWidthOffset = (int)Math.floor((width*scale+2*padding - cropWidth)*r.nextFloat());
+				cropHeightOffset = (int)Math.floor((height*scale+2*padding - cropHeight)*r.nextFloat());
+			} else {
+				cropHeight = height;
+				cropWidth = width;
+			}
+			
+			if(frame != null){
+				frameChannels = frame.length == 3 ? frame[0] : 1;
+				frameHeight = frame.length == 3 ? frame[1] : frame[0];
+				frameWidth = frame.length == 3 ? frame[2] : frame[1];
+				scaleFrame = frameChannels != channels || frameHeight != cropHeight || frameWidth != cropWidth;
+				
+				if(scaleFrame){
+					// narrow to the aspect ratio of the frame
+					float sx = (float)cropWidth/frameWidth;
+					float sy = (float)cropHeight/frameHeight;
+					float s = sx < sy ? sx : sy;
+					
+					frameWindowHeight = (int)(frameHeight*s);
+					frameHeightOffset = (cropHeight-frameWindowHeight)/2;
+					frameWindowWidth = (int)(frameWidth*s);
+					frameWidthOffset = (cropWidth-frameWindowWidth)/2;
+					
+					frameSy = frameHeight > 1 ? (frameWindowHeight-1)/(float)(frameHeight-1) : 0;
+					frameSx = frameWidth > 1 ? (frameWindowWidth-1)/(float)(frameWidth-1) : 0;
+				}
+			} else {
+				scaleFrame = false;
+				frameChannels = channels;
+				frameHeight = cropHeight;
+				frameWidth = cropWidth;
+			}
+		}
+		
+		private Tensor transform(Tensor res, Tensor t, boolean binarize){
+			src = t.asFloatBuffer();
+			if(src == null){
+				src = FloatBuffer.wrap(t.get());
+			}
+			
+			int[] dims;
+			if(frame != null){
+				dims = frame;
+			} else if(t.dim() == 3){
+				dims = new int[]{channels, frameHeight, frameWidth};
+			} else {
+				dims = new int[]{frameHeight, frameWidth};
+			}
+			int size = frameChannels*frameHeight*frameWidth;
+			
+			if(res == null || res.size() != size){
+				res = new Tensor(dims);
+			} else if(!Arrays.equals(res.dims(), dims)){
+				res.reshape(dims);
+			}
+			
+			FloatBuffer dst = res.asFloatBuffer();
+			boolean copy = dst == null;
+			if(copy){
+				if(buffer == null || buffer.length != size){
+					buffer = new float[size];
+				}
+				dst = FloatBuffer.wrap(buffer);
+			}
+			
+			int i = 0;
+			for(int c=0;c<frameChannels;c++){
+				for(int y=0;y<frameHeight;y++){
+					for(int x=0;x<frameWidth;x++){
+						float v = framed(c, y, x);
+						if(binarize){
+							v = v > threshold ? 1 : 0;
+						}
+						dst.put(i++, v);
+					}
+				}
+			}
+			
+			if(copy){
+				res.set(buffer);
+			}
+			src = null;
+			return res;
+		}
+		
+		/**
+		 * Value of the framed sample, scaled bilinearly from a window of the cropped sample
+		 */
+		private float framed(int c, int y, int x){
+			if(!scaleFrame)
+				return cropped(c, y, x);
+			
+			// replicate the first channel in case the input has less channels
+			int cc = c < channels ? c : 0;
+			
+			float yy = y*frameSy;
+			int y1 = (int)yy;
+			int y2 = y1+1 == frameWindowHeight ? y1 : y1+1;
+			float dy = yy-y1;
+			
+			float xx = x*frameSx;
+			int x1 = (int)xx;
+			int x2 = x1+1 == frameWindowWidth ? x1 : x1+1;
+			float dx = xx-x1;
+			
+			return bilinear(cropped(cc, frameHeightOffset+y1, frameWidthOffset+x1), 
+					cropped(cc, frameHeightOffset+y1, frameWidthOffset+x2),
+					cropped(cc, frameHeightOffset+y2, frameWidthOffset+x1),
+					cropped(cc, frameHeightOffset+y2, frameWidthOffset+x2), dy, dx);
+		}
+		
+		/**
+		 * Value of the cropped sample, zero in the padding
+		 */
+		private float cropped(int c, int y, int x){
+			if(!crop)
+				return scaled(c, y, x);
+			
+			int yy = y + cropHeightOffset - padding;
+			int xx = x + cropWidthOffset - padding;
+			if(yy < 0 || yy >= height*scale || xx < 0 || xx >= width*scale)
+				return 0;
+			
+			return scaled(c, yy, xx);
+		}
+		
+		/**
+		 * Value of the rotated sample scaled up by a factor scale
+		 */
+		private float scaled(int c, int y, int x){
+			if(scale == 1)
+				return rotated(c, y, x);
+			
+			float yy = y*(height-1)/(float)(height*scale-1);
+			int y1 = (int)yy;
+			int y2 = y1+1 == height ? y1 : y1+1;
+			float dy = yy-y1;
+			
+			float xx = x*(width-1)/(float)(width*scale-1);
+			int x1 = (int)xx;
+			int x2 = x1+1 == width ? x1 : x1+1;
+			float dx = xx-x1;
+			
+			return bilinear(rotated(c, y1, x1), rotated(c, y1, x2), 
+					rotated(c, y2, x1), rotated(c, y2, x2), dy, dx);
+		}
+		
+		/**
+		 * Value of the flipped and rotated original sample
+		 */
+		private float rotated(int c, int y, int x){
+			if(rotate){
+				int yy = (int)((x - centerX)*sinTheta + (y - centerY)*cosTheta + centerY);
+				int xx = (int)((x - centerX)*cosTheta - (y - centerY)*sinTheta + centerX);
+				if(yy < 0 || yy >= height || xx < 0 || xx >= width)
+					return 0;
+				
+				y = yy;
+				x = xx;
+			}
+			
+			if(vertical)
+				y = height-y-1;
+			if(horizontal)
+				x = width-x-1;
+			
+			return src.get(c*height*width + y*width + x);
+		}
+		
+		private float bilinear(float v1, float v2, float v3, float v4, float dy, float dx){
+			return v1*(1-dy)*(1-dx)
+					+ v2*(1-dy)*dx
+					+ v3*dy*(1-dx)
+					+ v4*dx*dy;
+		}
+	}
+}
@@ -0,0 +1,191 @@
+/*******************************************************************************
+ * DIANNE  - Framework for distributed artificial neural networks
+ * Copyright (C) 2015  iMinds - IBCN - UGent
+ *
+ * This file is part of DIANNE.
+ *
+ * DIANNE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contributors:
+ *     Tim Verbelen, Steven Bohez
+ *******************************************************************************/
+package be.iminds.iot.dianne.dataset.adapters;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.ConfigurationPolicy;
+import org.osgi.service.component.annotations.Deactivate;
+
+import be.iminds.iot.dianne.api.dataset.Batch;
+import be.iminds.iot.dianne.api.dataset.Dataset;
+import be.iminds.iot.dianne.api.dataset.Sample;
+
+/**
+ * This Dataset adapter applies an Augmentation, combining flip, rotation, crop, frame 
+ * and binarize in a single pass per sample, instead of chaining the separate adapters.
+ * 
+ * The samples of a batch are augmented in parallel by augmentationThreads workers, each
+ * with its own random generator seeded from augmentationSeed, so that a fixed seed gives
+ * reproducible augmentations for the same sequence of batches. Each worker reuses its
+ * buffers and augments directly into the batch Tensors.
+ * 
+ * @author tverbele
+ *
+ */
+@Component(
+	service={Dataset.class},
+	configurationPolicy=ConfigurationPolicy.REQUIRE,
+	configurationPid="be.iminds.iot.dianne.dataset.adapters.AugmentationAdapter")
+public class DatasetAugmentationAdapter extends AbstractDatasetAdapter {
+
+	private Augmentation augmentation;
+	
+	private long seed = System.currentTimeMillis();
+	private int threads = Runtime.getRuntime().availableProcessors();
+	
+	// workers augmenting the parts of a batch
+	private Worker[] workers;
+	private ExecutorService pool;
+	
+	// workers for threads fetching individual samples
+	private final AtomicInteger count = new AtomicInteger();
+	private final ThreadLocal<Worker> local = ThreadLocal.withInitial(() -> new Worker(seed+threads+count.getAndIncrement()));
+	
+	protected void configure(Map<String, Object> properties) {
+		augmentation = new Augmentation(properties);
+		
+		if(properties.containsKey("augmentationSeed")){
+			seed = Long.parseLong(((String) properties.get("augmentationSeed")).trim());
+		}
+		if(properties.containsKey("augmentationThreads")){
+			threads = Math.max(1, Integer.parseInt(((String) properties.get("augmentationThreads")).trim()));
+		}
+		
+		workers = new Worker[threads];
+		for(int i=0;i<threads;i++){
+			workers[i] = new Worker(seed+i);
+		}
+		if(threads > 1){
+			pool = Executors.newFixedThreadPool(threads-1, r -> {
+				Thread t = new Thread(r, "Dianne Augmentation "+name);
+				t.setDaemon(true);
+				return t;
+			});
+		}
+	}
+	
+	@Deactivate
+	void deactivate(){
+		if(pool != null){
+			pool.shutdownNow();
+		}
+	}
+	
+	@Override
+	public int[] inputDims(){
+		return augmentation.outputDims(data.inputDims());
+	}
+	
+	@Override
+	public int[] targetDims(){
+		if(!targetDimsSameAsInput){
+			return data.targetDims();
+		} else {
+			return inputDims();
+		}
+	}
+	
+	@Override
+	public Sample getSample(Sample s, int index) {
+		return local.get().getSample(s, index);
+	}
+	
+	@Override
+	public Batch getBatch(Batch b, final int... indices){
+		if(b == null){
+			int[] inputDims = inputDims();
+			int[] targetDims = targetDims();
+
+			if(inputDims == null){
+				throw new InstantiationError("Cannot create a batch when dataset has no fixed input dimensions");
+			} else {
+				b = new Batch(indices.length, inputDims, targetDims);
+			}
+		}
+		final Batch batch = b;
+		
+		// the calling thread augments the first part
+		int n = (indices.length + workers.length - 1) / workers.length;
+		List<Future<?>> parts = new ArrayList<>(workers.length);
+		for(int w=1; w<workers.length && w*n<indices.length; w++){
+			final Worker worker = workers[w];
+			final int from = w*n;
+			final int to = Math.min(from + n, indices.length);
+			parts.add(pool.submit(() -> worker.getSamples(batch, indices, from, to)));
+		}
+		workers[0].getSamples(batch, indices, 0, Math.min(n, indices.length));
+		
+		try {
+			for(Future<?> part : parts){
+				part.get();
+			}
+		} catch(InterruptedException e){
+			throw new RuntimeException("Interrupted while augmenting batch", e);
+		} catch(ExecutionException e){
+			throw new RuntimeException("Failed to augment batch", e.getCause());
+		}
+		return b;
+	}
+	
+	@Override
+	protected void adaptSample(Sample original, Sample adapted) {
+		local.get().transform.apply(original, adapted, targetDimsSameAsInput);
+	}
+
+	/**
+	 * Fetches and augments samples with its own random generator and buffers
+	 */
+	private class Worker {
+		
+		private final Augmentation.Transform transform;
+		private Sample temp;
+		
+		Worker(long seed){
+			transform = augmentation.createTransform(seed);
+		}
+		
+		synchronized Sample getSample(Sample s, int index){
+			temp = data.getSample(temp, index);
+			if(s == null){
+				s = new Sample();
+			}
+			transform.apply(temp, s, targetDimsSameAsInput);
+			return s;
+		}
+		
+		synchronized void getSamples(Batch b, int[] indices, int from, int to){
+			for(int i=from;i<to;i++){
+				getSample(b.samples[i], indices[i]);
+			}
+		}
+	}
+}
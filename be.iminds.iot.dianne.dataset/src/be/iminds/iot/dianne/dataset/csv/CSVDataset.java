@@ -22,23 +22,49 @@
  *******************************************************************************/
 package be.iminds.iot.dianne.dataset.csv;
 
-import java.io.BufferedReader;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileReader;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.LineNumberReader;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.osgi.service.component.annotations.Component;
 import org.osgi.service.component.annotations.ConfigurationPolicy;
 
 import be.iminds.iot.dianne.api.dataset.Dataset;
-import be.iminds.iot.dianne.dataset.FileDataset;
+import be.iminds.iot.dianne.dataset.packed.PackedDataset;
+import be.iminds.iot.dianne.dataset.packed.PackedFormat;
+import be.iminds.iot.dianne.dataset.packed.PackedFormat.Encoding;
 
 /**
  * Generic CSV Dataset
  * 
+ * On first activation the CSV file is parsed into a packed binary cache next to the 
+ * CSV file, which is then memory mapped as a PackedDataset. Later activations reuse the
+ * cache as long as the CSV file is not modified and the column configuration is the same.
+ * 
+ * By default the CSV file is memory mapped and split in newline aligned chunks that are
+ * parsed in parallel by parseThreads threads, writing their samples straight into the cache.
+ * In streaming mode the CSV file is read sequentially through a fixed size window instead.
+ * Neither mode keeps the parsed samples on the heap, so files larger than memory are supported.
+ * 
  * @author tverbele
  *
  */
@@ -47,22 +73,29 @@ import be.iminds.iot.dianne.dataset.FileDataset;
 		immediate=true, 
 		configurationPolicy=ConfigurationPolicy.REQUIRE,
 		configurationPid="be.iminds.iot.dianne.dataset.CSVDataset")
-public class CSVDataset extends FileDataset{
+public class CSVDataset extends PackedDataset {
 
-	private String separator = ",";
+	// size of the chunks the CSV file is split in for parallel parsing
+	private static final int CHUNK_SIZE = 1 << 28;
+	// size of the buffers used for reading and writing
+	private static final int BUFFER_SIZE = 1 << 20;
+	
+	private char separator = ',';
 	private int inputOffset = 0;
 	private int targetOffset = 0;
 	private boolean classification = false;
 	
+	private Encoding cacheEncoding = Encoding.FLOAT32;
+	private int parseThreads = Runtime.getRuntime().availableProcessors();
+	private boolean streaming = false;
+	
 	@Override
 	protected void init(Map<String, Object> properties){
 		String file = (String)properties.get("file");
-		if(file != null)
-			inputFiles = new String[]{file};
 		
 		String s = (String)properties.get("separator");
 		if(s != null){
-			separator = s;
+			separator = s.equals("\\t") ? '\t' : s.charAt(0);
 		}
 		
 		// how many columns to skip before input begins
@@ -83,39 +116,279 @@ public class CSVDataset extends FileDataset{
 			classification = Boolean.parseBoolean(c);
 		}
 		
-		if(!properties.containsKey("noSamples")){
-			// count line numbers in file
+		String ce = (String)properties.get("cacheEncoding");
+		if(ce != null){
+			cacheEncoding = Encoding.valueOf(ce.trim().toUpperCase());
+		}
+		
+		String pt = (String)properties.get("parseThreads");
+		if(pt != null){
+			parseThreads = Math.max(1, Integer.parseInt(pt.trim()));
+		}
+		
+		String st = (String)properties.get("streaming");
+		if(st != null){
+			streaming = Boolean.parseBoolean(st);
+		}
+		
+		int inputSize = size(inputDims);
+		int targetSize = size(targetDims);
+		CSVParser parser = new CSVParser(separator, inputOffset, inputSize, targetOffset, targetSize, classification);
+		
+		PackedFormat format = new PackedFormat();
+		format.inputEncoding = cacheEncoding;
+		format.inputDims = inputDims;
+		format.targetEncoding = classification ? Encoding.CLASS : Encoding.FLOAT32;
+		format.targetDims = targetDims;
+		format.labels = labels;
+		
+		// the cache depends on the column configuration
+		String key = Arrays.toString(inputDims)+Arrays.toString(targetDims)+separator
+				+inputOffset+","+targetOffset+","+classification+","+cacheEncoding;
+		String cacheFile = file+"."+Integer.toHexString(key.hashCode())+".pack";
+		
+		File csv = new File(dir+File.separator+file);
+		File cache = new File(dir+File.separator+cacheFile);
+		if(!cache.exists() || cache.lastModified() < csv.lastModified()){
 			try {
-				File f = new File(dir+File.separator+file);
-				LineNumberReader lineNumberReader = new LineNumberReader(new FileReader(f));
-				lineNumberReader.skip(Long.MAX_VALUE);
-				noSamples = lineNumberReader.getLineNumber();
-				lineNumberReader.close();
-			} catch(Exception e){ }
+				long t1 = System.currentTimeMillis();
+				if(streaming){
+					packStreaming(csv, cache, format, parser);
+				} else {
+					packParallel(csv, cache, format, parser, parseThreads);
+				}
+				long t2 = System.currentTimeMillis();
+				System.out.println("Parsed "+format.noSamples+" samples of "+file+" into "+cacheFile+" in "+(t2-t1)+" ms");
+			} catch(Exception e){
+				throw new RuntimeException("Failed to parse CSV dataset "+csv.getAbsolutePath(), e);
+			}
 		}
+		
+		Map<String, Object> packed = new HashMap<>(properties);
+		packed.put("file", cacheFile);
+		super.init(packed);
 	}
 	
-	@Override
-	protected void parse(InputStream in, InputStream targ) throws Exception{
-		BufferedReader reader = new BufferedReader(new InputStreamReader(in));
-		String s;
-		while ((s = reader.readLine()) != null) {
-			String[] data = s.split(separator);
-			int i=inputOffset;
-			for(;i<inputOffset+inputSize;i++){
-				inputs[count][i] = Float.parseFloat(data[i]);
+	/**
+	 * Parse the CSV file in parallel into a packed file
+	 */
+	static void packParallel(File csv, File cache, PackedFormat format, CSVParser parser, int threads) throws Exception {
+		File tmp = new File(cache.getPath()+".tmp");
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		try(RandomAccessFile in = new RandomAccessFile(csv, "r");
+			RandomAccessFile out = new RandomAccessFile(tmp, "rw")){
+			FileChannel input = in.getChannel();
+			
+			// split in chunks ending on a newline, and map each chunk
+			long size = input.size();
+			long chunkSize = Math.max(1, Math.min(CHUNK_SIZE, (size + threads - 1)/threads));
+			List<MappedByteBuffer> chunks = new ArrayList<>();
+			long start = 0;
+			while(start < size){
+				long end = Math.min(size, start + chunkSize);
+				// extend to just after the next newline
+				ByteBuffer b = ByteBuffer.allocate(4096);
+				while(end < size){
+					b.clear();
+					int read = input.read(b, end);
+					if(read <= 0)
+						break;
+					int next = CSVParser.nextLine(b, 0, read);
+					end += next;
+					if(b.get(next-1) == '\n')
+						break;
+				}
+				end = Math.min(end, size);
+				if(end - start > Integer.MAX_VALUE)
+					throw new IOException("Line too long at position "+start);
+				chunks.add(input.map(MapMode.READ_ONLY, start, end-start));
+				start = end;
+			}
+			
+			// count the samples per chunk
+			List<Future<Integer>> counts = new ArrayList<>();
+			for(MappedByteBuffer chunk : chunks){
+				counts.add(pool.submit(() -> {
+					int count = 0;
+					int limit = chunk.limit();
+					for(int l=0;l<limit;){
+						int next = CSVParser.nextLine(chunk, l, limit);
+						if(!CSVParser.isEmpty(chunk, l, next))
+							count++;
+						l = next;
+					}
+					return count;
+				}));
+			}
+			int[] first = new int[chunks.size()];
+			int noSamples = 0;
+			for(int k=0;k<chunks.size();k++){
+				first[k] = noSamples;
+				noSamples += get(counts.get(k));
+			}
+			format.noSamples = noSamples;
+			
+			// write header and parse all chunks into their position in the cache
+			ByteArrayOutputStream header = new ByteArrayOutputStream();
+			format.write(header);
+			out.write(header.toByteArray());
+			out.setLength(format.dataOffset + (long)noSamples*format.sampleBytes());
+			
+			FileChannel output = out.getChannel();
+			List<Future<Integer>> parts = new ArrayList<>();
+			for(int k=0;k<chunks.size();k++){
+				final MappedByteBuffer chunk = chunks.get(k);
+				final long position = format.dataOffset + (long)first[k]*format.sampleBytes();
+				parts.add(pool.submit(() -> {
+					return parse(chunk, 0, chunk.limit(), format, parser, (records, offset) -> {
+						long p = position + offset;
+						while(records.hasRemaining()){
+							p += output.write(records, p);
+						}
+					});
+				}));
+			}
+			for(Future<Integer> part : parts){
+				get(part);
+			}
+		} finally {
+			pool.shutdownNow();
+		}
+		
+		Files.move(tmp.toPath(), cache.toPath(), StandardCopyOption.REPLACE_EXISTING);
+	}
+	
+	/**
+	 * Parse the CSV file sequentially into a packed file
+	 */
+	static void packStreaming(File csv, File cache, PackedFormat format, CSVParser parser) throws Exception {
+		File tmp = new File(cache.getPath()+".tmp");
+		
+		// write header, the number of samples is filled in afterwards
+		format.noSamples = 0;
+		int noSamples = 0;
+		try(RandomAccessFile in = new RandomAccessFile(csv, "r");
+			OutputStream out = new BufferedOutputStream(new FileOutputStream(tmp), BUFFER_SIZE)){
+			format.write(out);
+
+			FileChannel input = in.getChannel();
+			ByteBuffer window = ByteBuffer.allocateDirect(BUFFER_SIZE);
+			boolean eof = false;
+			while(!eof){
+				eof = input.read(window) < 0;
+				window.flip();
+				
+				// only parse complete lines, unless at the end of the file
+				int end = window.limit();
+				if(!eof){
+					while(end > 0 && window.get(end-1) != '\n')
+						end--;
+					if(end == 0){
+						if(window.limit() == window.capacity()){
+							// line does not fit the window, grow
+							ByteBuffer larger = ByteBuffer.allocateDirect(window.capacity()*2);
+							larger.put(window);
+							window = larger;
+						} else {
+							window.position(window.limit());
+							window.limit(window.capacity());
+						}
+						continue;
+					}
+				}
+				
+				noSamples += parse(window, 0, end, format, parser, (records, offset) -> {
+					out.write(records.array(), 0, records.limit());
+				});
+				
+				window.position(end);
+				window.compact();
 			}
-			i += targetOffset;
-			if(classification){
-				// threat as class index?
-				int index = Integer.parseInt(data[i]);
-				targets[count][index] = 1;
-			} else {
-				for(int k=0;k<targetSize;k++){
-					targets[count][k] = Float.parseFloat(data[i+k]);
+		}
+		
+		// fill in the number of samples
+		format.noSamples = noSamples;
+		try(RandomAccessFile out = new RandomAccessFile(tmp, "rw")){
+			ByteArrayOutputStream header = new ByteArrayOutputStream();
+			format.write(header);
+			out.write(header.toByteArray());
+		}
+		
+		Files.move(tmp.toPath(), cache.toPath(), StandardCopyOption.REPLACE_EXISTING);
+	}
+	
+	/**
+	 * Writes a buffer of encoded samples, offset is the position of these
+	 * samples relative to the first sample of the parsed region
+	 */
+	private interface RecordWriter {
+		void write(ByteBuffer records, long offset) throws IOException;
+	}
+	
+	/**
+	 * Parse all lines between start and end, encode the samples and write them in batches
+	 * 
+	 * @return number of samples parsed
+	 */
+	private static int parse(ByteBuffer b, int start, int end, PackedFormat format, CSVParser parser, RecordWriter writer) throws IOException {
+		float[] input = new float[format.inputSize()];
+		float[] target = new float[format.targetSize()];
+		int sampleBytes = format.sampleBytes();
+		ByteBuffer records = ByteBuffer.allocate(Math.max(1, BUFFER_SIZE/sampleBytes)*sampleBytes);
+		
+		long offset = 0;
+		int count = 0;
+		for(int l=start;l<end;){
+			int next = CSVParser.nextLine(b, l, end);
+			if(!CSVParser.isEmpty(b, l, next)){
+				try {
+					parser.parseLine(b, l, next, input, target);
+				} catch(IllegalArgumentException e){
+					throw new IOException("Failed to parse sample "+count+": "+e.getMessage(), e);
+				}
+				
+				format.inputEncoding.encode(records, input);
+				format.targetEncoding.encode(records, target);
+				count++;
+				
+				if(!records.hasRemaining()){
+					offset = flush(records, offset, writer);
 				}
 			}
-			count++;
+			l = next;
+		}
+		flush(records, offset, writer);
+		return count;
+	}
+	
+	private static long flush(ByteBuffer records, long offset, RecordWriter writer) throws IOException {
+		int length = records.position();
+		if(length > 0){
+			records.flip();
+			writer.write(records, offset);
+			records.clear();
+		}
+		return offset + length;
+	}
+	
+	private static int size(int[] dims){
+		if(dims == null)
+			throw new RuntimeException("CSV dataset requires inputDims and targetDims to be configured");
+		
+		int size = 1;
+		for(int d : dims){
+			size *= d;
+		}
+		return size;
+	}
+	
+	private static <T> T get(Future<T> f) throws Exception {
+		try {
+			return f.get();
+		} catch(ExecutionException e){
+			if(e.getCause() instanceof Exception)
+				throw (Exception)e.getCause();
+			throw e;
 		}
 	}
 }
@@ -0,0 +1,218 @@
+/*******************************************************************************
+ * DIANNE  - Framework for distributed artificial neural networks
+ * Copyright (C) 2015  iMinds - IBCN - UGent
+ *
+ * This file is part of DIANNE.
+ *
+ * DIANNE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contributors:
+ *     Tim Verbelen, Steven Bohez
+ *******************************************************************************/
+package be.iminds.iot.dianne.dataset.csv;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Parses lines of a CSV file directly from a (memory mapped) ByteBuffer into 
+ * input and target float arrays, without creating intermediate Strings.
+ * 
+ * All positions are absolute, so multiple threads can parse different parts 
+ * of a shared buffer concurrently.
+ * 
+ * @author tverbele
+ *
+ */
+class CSVParser {
+
+	private static final double[] POW10 = new double[23];
+	static {
+		POW10[0] = 1;
+		for(int i=1;i<POW10.length;i++){
+			POW10[i] = POW10[i-1]*10;
+		}
+	}
+	
+	private final byte separator;
+	private final int inputOffset;
+	private final int inputSize;
+	private final int targetStart;
+	private final int targetSize;
+	private final boolean classification;
+	// last column that has to be parsed
+	private final int lastColumn;
+	
+	CSVParser(char separator, int inputOffset, int inputSize, int targetOffset, int targetSize, boolean classification){
+		this.separator = (byte)separator;
+		this.inputOffset = inputOffset;
+		this.inputSize = inputSize;
+		this.targetStart = inputOffset+inputSize+targetOffset;
+		this.targetSize = targetSize;
+		this.classification = classification;
+		this.lastColumn = targetStart + (classification ? 1 : targetSize) - 1;
+	}
+	
+	/**
+	 * @return the position after the next newline starting from start, or end if there is none
+	 */
+	static int nextLine(ByteBuffer b, int start, int end){
+		for(int i=start;i<end;i++){
+			if(b.get(i) == '\n')
+				return i+1;
+		}
+		return end;
+	}
+	
+	/**
+	 * @return whether the line between start and end contains anything else than whitespace
+	 */
+	static boolean isEmpty(ByteBuffer b, int start, int end){
+		for(int i=start;i<end;i++){
+			byte c = b.get(i);
+			if(c != ' ' && c != '\t' && c != '\r' && c != '\n')
+				return false;
+		}
+		return true;
+	}
+	
+	/**
+	 * Parse the line between start and end (excluding the newline)
+	 */
+	void parseLine(ByteBuffer b, int start, int end, float[] input, float[] target){
+		if(classification){
+			for(int i=0;i<target.length;i++){
+				target[i] = 0;
+			}
+		}
+		
+		int column = 0;
+		int fieldStart = start;
+		for(int i=start;i<=end && column<=lastColumn;i++){
+			if(i < end && b.get(i) != separator)
+				continue;
+			
+			if(column >= inputOffset && column < inputOffset+inputSize){
+				input[column-inputOffset] = parseFloat(b, fieldStart, i);
+			} else if(column >= targetStart){
+				if(classification){
+					int index = (int)parseFloat(b, fieldStart, i);
+					if(index < 0 || index >= target.length)
+						throw new IllegalArgumentException("Class index "+index+" out of range");
+					target[index] = 1;
+				} else {
+					target[column-targetStart] = parseFloat(b, fieldStart, i);
+				}
+			}
+			column++;
+			fieldStart = i+1;
+		}
+		
+		if(column <= lastColumn)
+			throw new IllegalArgumentException("Line has "+column+" columns, expected at least "+(lastColumn+1));
+	}
+	
+	/**
+	 * Parse a decimal float between start and end, only falls back to Float.parseFloat
+	 * for special values like NaN and Infinity
+	 */
+	static float parseFloat(ByteBuffer b, int start, int end){
+		// trim whitespace and quotes
+		while(start < end && isTrimmed(b.get(start)))
+			start++;
+		while(end > start && isTrimmed(b.get(end-1)))
+			end--;
+		
+		if(start == end)
+			throw new NumberFormatException("Empty value");
+		
+		int i = start;
+		boolean negative = false;
+		byte c = b.get(i);
+		if(c == '-' || c == '+'){
+			negative = c == '-';
+			i++;
+		}
+		
+		long mantissa = 0;
+		int digits = 0;
+		int exponent = 0;
+		boolean dot = false;
+		boolean any = false;
+		for(;i<end;i++){
+			c = b.get(i);
+			if(c >= '0' && c <= '9'){
+				any = true;
+				if(digits < 18){
+					if(mantissa != 0 || c != '0')
+						digits++;
+					mantissa = mantissa*10 + (c-'0');
+					if(dot)
+						exponent--;
+				} else if(!dot){
+					// ignore digits beyond precision
+					exponent++;
+				}
+			} else if(c == '.' && !dot){
+				dot = true;
+			} else {
+				break;
+			}
+		}
+		
+		if(i < end && any && (c == 'e' || c == 'E')){
+			i++;
+			boolean negativeExponent = false;
+			if(i < end && (b.get(i) == '-' || b.get(i) == '+')){
+				negativeExponent = b.get(i) == '-';
+				i++;
+			}
+			int e = 0;
+			int start2 = i;
+			for(;i<end;i++){
+				c = b.get(i);
+				if(c < '0' || c > '9')
+					break;
+				if(e < 10000)
+					e = e*10 + (c-'0');
+			}
+			if(i == start2)
+				return fallback(b, start, end);
+			exponent += negativeExponent ? -e : e;
+		}
+		
+		if(i != end || !any)
+			return fallback(b, start, end);
+		
+		double v = mantissa;
+		if(exponent > 0){
+			v = exponent < POW10.length ? v*POW10[exponent] : v*Math.pow(10, exponent);
+		} else if(exponent < 0){
+			v = -exponent < POW10.length ? v/POW10[-exponent] : v/Math.pow(10, -exponent);
+		}
+		return (float)(negative ? -v : v);
+	}
+	
+	private static boolean isTrimmed(byte c){
+		return c == ' ' || c == '\t' || c == '\r' || c == '\n' || c == '"';
+	}
+	
+	private static float fallback(ByteBuffer b, int start, int end){
+		byte[] bytes = new byte[end-start];
+		for(int i=0;i<bytes.length;i++){
+			bytes[i] = b.get(start+i);
+		}
+		return Float.parseFloat(new String(bytes, StandardCharsets.US_ASCII));
+	}
+}
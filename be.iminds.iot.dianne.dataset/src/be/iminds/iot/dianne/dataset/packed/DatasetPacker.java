@@ -0,0 +1,184 @@
+/*******************************************************************************
+ * DIANNE  - Framework for distributed artificial neural networks
+ * Copyright (C) 2015  iMinds - IBCN - UGent
+ *
+ * This file is part of DIANNE.
+ *
+ * DIANNE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contributors:
+ *     Tim Verbelen, Steven Bohez
+ *******************************************************************************/
+package be.iminds.iot.dianne.dataset.packed;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+
+import org.osgi.framework.BundleContext;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Reference;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+
+import be.iminds.iot.dianne.api.dataset.Dataset;
+import be.iminds.iot.dianne.api.dataset.DianneDatasets;
+import be.iminds.iot.dianne.api.dataset.Sample;
+import be.iminds.iot.dianne.dataset.packed.PackedFormat.Encoding;
+
+/**
+ * Packs any available Dataset into a single file that can be memory mapped by
+ * a PackedDataset. 
+ * 
+ * Next to the packed file a .json config is written in the datasets directory, 
+ * so the packed dataset is picked up by the DatasetConfigurator.
+ * 
+ * @author tverbele
+ *
+ */
+@Component(
+		service=Object.class,
+		property={"osgi.command.scope=dianne",
+				  "osgi.command.function=pack"},
+		immediate=true)
+public class DatasetPacker {
+
+	private DianneDatasets datasets;
+	
+	private String path = "datasets";
+	
+	@Activate
+	void activate(BundleContext context) {
+		String d = context.getProperty("be.iminds.iot.dianne.datasets.location");
+		if(d != null){
+			path = d;
+		}
+	}
+	
+	public void pack(String dataset, String name){
+		pack(dataset, name, Encoding.FLOAT32.toString(), Encoding.CLASS.toString());
+	}
+	
+	public void pack(String dataset, String name, String inputEncoding){
+		pack(dataset, name, inputEncoding, Encoding.CLASS.toString());
+	}
+	
+	public void pack(String dataset, String name, String inputEncoding, String targetEncoding){
+		Dataset d = datasets.getDataset(dataset);
+		if(d==null){
+			System.out.println("Dataset "+dataset+" not available");
+			return;
+		}
+		
+		File dir = new File(path+File.separator+name);
+		dir.mkdirs();
+		
+		try {
+			long t1 = System.currentTimeMillis();
+			pack(d, new File(dir, name+".pack"), 
+					Encoding.valueOf(inputEncoding.toUpperCase()), 
+					Encoding.valueOf(targetEncoding.toUpperCase()));
+			long t2 = System.currentTimeMillis();
+			
+			JsonObject config = new JsonObject();
+			config.add("name", new JsonPrimitive(name));
+			config.add("type", new JsonPrimitive("PackedDataset"));
+			config.add("file", new JsonPrimitive(name+".pack"));
+			if(d.inputType() != null)
+				config.add("inputType", new JsonPrimitive(d.inputType()));
+			if(d.targetType() != null)
+				config.add("targetType", new JsonPrimitive(d.targetType()));
+			try(Writer writer = new FileWriter(new File(dir, name+".json"))){
+				writer.write(config.toString());
+			}
+			
+			System.out.println("Packed "+d.size()+" samples of "+dataset+" into "+name+" in "+(t2-t1)+" ms");
+		} catch(Exception e){
+			System.out.println("Failed to pack dataset "+dataset+": "+e.getMessage());
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Write all samples of the dataset into a packed file. Packing fails in case UINT8 
+	 * encoding is requested for values outside [0,1], as these cannot be represented.
+	 */
+	public static void pack(Dataset d, File file, Encoding inputEncoding, Encoding targetEncoding) throws IOException {
+		PackedFormat format = new PackedFormat();
+		format.inputEncoding = inputEncoding;
+		format.targetEncoding = targetEncoding;
+		format.noSamples = d.size();
+		format.labels = d.getLabels();
+		
+		// take the dimensions from the first sample in case the dataset does not define them
+		Sample s = d.getSample(0);
+		format.inputDims = d.inputDims() != null ? d.inputDims() : s.input.dims();
+		format.targetDims = d.targetDims() != null ? d.targetDims() : s.target.dims();
+
+		int inputSize = format.inputSize();
+		int targetSize = format.targetSize();
+		float[] inputData = new float[inputSize];
+		float[] targetData = new float[targetSize];
+		FloatBuffer input = FloatBuffer.wrap(inputData);
+		FloatBuffer target = FloatBuffer.wrap(targetData);
+		ByteBuffer record = ByteBuffer.allocate(format.sampleBytes());
+		
+		try(OutputStream out = new BufferedOutputStream(new FileOutputStream(file), 1 << 20)){
+			format.write(out);
+			
+			for(int i=0;i<format.noSamples;i++){
+				s = d.getSample(s, i);
+				if(s.input.size() != inputSize || s.target.size() != targetSize){
+					throw new IOException("Sample "+i+" does not match dimensions "
+							+Arrays.toString(format.inputDims)+" "+Arrays.toString(format.targetDims));
+				}
+				s.input.copyTo(input, 0);
+				s.target.copyTo(target, 0);
+				if((inputEncoding == Encoding.UINT8 && !inUnitRange(inputData))
+					|| (targetEncoding == Encoding.UINT8 && !inUnitRange(targetData))){
+					throw new IOException("Sample "+i+" has values outside [0,1] that cannot be encoded as "
+							+Encoding.UINT8+", use "+Encoding.FLOAT32+" or "+Encoding.FLOAT16+" instead");
+				}
+				
+				record.clear();
+				inputEncoding.encode(record, inputData);
+				targetEncoding.encode(record, targetData);
+				out.write(record.array(), 0, record.position());
+			}
+		}
+	}
+	
+	private static boolean inUnitRange(float[] data){
+		for(float f : data){
+			if(!(f >= 0.0f && f <= 1.0f))
+				return false;
+		}
+		return true;
+	}
+	
+	@Reference
+	void setDianneDatasets(DianneDatasets d){
+		datasets = d;
+	}
+}
@@ -0,0 +1,160 @@
+/*******************************************************************************
+ * DIANNE  - Framework for distributed artificial neural networks
+ * Copyright (C) 2015  iMinds - IBCN - UGent
+ *
+ * This file is part of DIANNE.
+ *
+ * DIANNE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contributors:
+ *     Tim Verbelen, Steven Bohez
+ *******************************************************************************/
+package be.iminds.iot.dianne.dataset.packed;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.Map;
+
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.ConfigurationPolicy;
+
+import be.iminds.iot.dianne.api.dataset.AbstractDataset;
+import be.iminds.iot.dianne.api.dataset.Dataset;
+import be.iminds.iot.dianne.tensor.Tensor;
+
+/**
+ * Dataset backed by a single packed file, as created by the dianne:pack command.
+ * 
+ * The file is memory mapped read-only, so only the samples that are accessed are
+ * paged in by the OS and datasets larger than the available RAM are supported. Samples
+ * are kept in their packed encoding (i.e. uint8 or float16) and only converted to
+ * float when the sample tensors are filled.
+ * 
+ * @author tverbele
+ *
+ */
+@Component(
+		service={Dataset.class},
+		immediate=true, 
+		configurationPolicy=ConfigurationPolicy.REQUIRE,
+		configurationPid="be.iminds.iot.dianne.dataset.PackedDataset")
+public class PackedDataset extends AbstractDataset {
+
+	private String file;
+	
+	private PackedFormat format;
+	private int inputBytes;
+	private int sampleBytes;
+	
+	// a single mapping is limited to 2GB, so map in chunks of whole samples
+	private MappedByteBuffer[] buffers;
+	private int samplesPerBuffer;
+
+	// scratch arrays to decode into
+	private ThreadLocal<float[]> inputData;
+	private ThreadLocal<float[]> targetData;
+	
+	@Override
+	protected void init(Map<String, Object> properties) {
+		file = (String)properties.get("file");
+		if(file == null)
+			file = name+".pack";
+		
+		File f = new File(dir+File.separator+file);
+		try(InputStream in = new BufferedInputStream(new FileInputStream(f))){
+			format = PackedFormat.read(in);
+		} catch(IOException e){
+			throw new RuntimeException("Failed to read packed dataset "+f.getAbsolutePath(), e);
+		}
+		
+		// dimensions are defined by the packed file
+		inputDims = format.inputDims;
+		targetDims = format.targetDims;
+		noSamples = format.noSamples;
+		if(labels == null && labelsFile == null)
+			labels = format.labels;
+
+		inputBytes = format.inputBytes();
+		sampleBytes = format.sampleBytes();
+		
+		final int inputSize = format.inputSize();
+		final int targetSize = format.targetSize();
+		inputData = ThreadLocal.withInitial(() -> new float[inputSize]);
+		targetData = ThreadLocal.withInitial(() -> new float[targetSize]);
+		
+		samplesPerBuffer = Integer.MAX_VALUE / sampleBytes;
+		int noBuffers = (noSamples + samplesPerBuffer - 1) / samplesPerBuffer;
+		buffers = new MappedByteBuffer[noBuffers];
+		try(RandomAccessFile raf = new RandomAccessFile(f, "r")){
+			FileChannel channel = raf.getChannel();
+			for(int i=0;i<noBuffers;i++){
+				long position = format.dataOffset + (long)i*samplesPerBuffer*sampleBytes;
+				int samples = Math.min(samplesPerBuffer, noSamples - i*samplesPerBuffer);
+				buffers[i] = channel.map(MapMode.READ_ONLY, position, (long)samples*sampleBytes);
+			}
+		} catch(IOException e){
+			throw new RuntimeException("Failed to map packed dataset "+f.getAbsolutePath(), e);
+		}
+	}
+
+	@Override
+	protected void readLabels(String file) {
+		labels = new String[targetSize];
+		try {
+			InputStream labelInput = new FileInputStream(dir+File.separator+file);
+				
+			BufferedReader reader = new BufferedReader(new InputStreamReader(labelInput));
+			for(int i=0;i<targetSize;i++){
+				labels[i] = reader.readLine();
+			}
+			reader.close();
+		} catch(IOException e){
+			e.printStackTrace();
+		}
+	}
+
+	@Override
+	protected Tensor getInputSample(Tensor t, int index) {
+		if(t == null)
+			t = new Tensor(inputDims);
+		
+		float[] data = inputData.get();
+		format.inputEncoding.decode(buffers[index / samplesPerBuffer], 
+				(index % samplesPerBuffer)*sampleBytes, data);
+		t.copyFrom(FloatBuffer.wrap(data), 0);
+		return t;
+	}
+
+	@Override
+	protected Tensor getTargetSample(Tensor t, int index) {
+		if(t == null)
+			t = new Tensor(targetDims);
+		
+		float[] data = targetData.get();
+		format.targetEncoding.decode(buffers[index / samplesPerBuffer], 
+				(index % samplesPerBuffer)*sampleBytes + inputBytes, data);
+		t.copyFrom(FloatBuffer.wrap(data), 0);
+		return t;
+	}
+}
@@ -0,0 +1,317 @@
+/*******************************************************************************
+ * DIANNE  - Framework for distributed artificial neural networks
+ * Copyright (C) 2015  iMinds - IBCN - UGent
+ *
+ * This file is part of DIANNE.
+ *
+ * DIANNE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contributors:
+ *     Tim Verbelen, Steven Bohez
+ *******************************************************************************/
+package be.iminds.iot.dianne.dataset.packed;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Binary format of a packed dataset file.
+ * 
+ * A packed file starts with a header containing the magic number, the format version,
+ * the header length, the encoding and dimensions of inputs and targets, the number of 
+ * samples and the labels. The header is followed by all samples, each sample being a
+ * fixed size record of the encoded input followed by the encoded target, so that the
+ * offset of a sample is directly derived from its index.
+ * 
+ * @author tverbele
+ *
+ */
+public class PackedFormat {
+
+	public static final int MAGIC = 0x44504B31; // DPK1
+	public static final int VERSION = 1;
+	
+	/**
+	 * The encoding of the input or target of a sample
+	 */
+	public enum Encoding {
+		// unsigned byte per element, values in [0,1] are scaled to [0,255]
+		UINT8,
+		// IEEE 754 half precision float per element
+		FLOAT16,
+		// full precision float per element
+		FLOAT32,
+		// single int representing the index of a one-hot vector
+		CLASS;
+		
+		/**
+		 * @return number of bytes required to encode a tensor of the given size
+		 */
+		public int bytes(int size){
+			switch(this){
+			case UINT8:
+				return size;
+			case FLOAT16:
+				return 2*size;
+			case FLOAT32:
+				return 4*size;
+			case CLASS:
+				return 4;
+			}
+			return -1;
+		}
+		
+		/**
+		 * Encode the data into the buffer at the current position
+		 */
+		public void encode(ByteBuffer buffer, float[] data){
+			switch(this){
+			case UINT8:
+				for(int i=0;i<data.length;i++){
+					int v = Math.round(data[i]*255f);
+					buffer.put((byte)(v < 0 ? 0 : v > 255 ? 255 : v));
+				}
+				break;
+			case FLOAT16:
+				for(int i=0;i<data.length;i++){
+					buffer.putShort(toHalf(data[i]));
+				}
+				break;
+			case FLOAT32:
+				for(int i=0;i<data.length;i++){
+					buffer.putFloat(data[i]);
+				}
+				break;
+			case CLASS:
+				int max = 0;
+				for(int i=1;i<data.length;i++){
+					if(data[i] > data[max])
+						max = i;
+				}
+				buffer.putInt(max);
+				break;
+			}
+		}
+		
+		/**
+		 * Decode the data from the buffer at an absolute offset, this does not change
+		 * the buffer position so it can be called concurrently on a shared buffer
+		 */
+		public void decode(ByteBuffer buffer, int offset, float[] data){
+			switch(this){
+			case UINT8:
+				for(int i=0;i<data.length;i++){
+					data[i] = (buffer.get(offset+i) & 0xFF)/255f;
+				}
+				break;
+			case FLOAT16:
+				for(int i=0;i<data.length;i++){
+					data[i] = fromHalf(buffer.getShort(offset+2*i));
+				}
+				break;
+			case FLOAT32:
+				for(int i=0;i<data.length;i++){
+					data[i] = buffer.getFloat(offset+4*i);
+				}
+				break;
+			case CLASS:
+				for(int i=0;i<data.length;i++){
+					data[i] = 0;
+				}
+				data[buffer.getInt(offset)] = 1;
+				break;
+			}
+		}
+	}
+	
+	public Encoding inputEncoding;
+	public int[] inputDims;
+	public Encoding targetEncoding;
+	public int[] targetDims;
+	public int noSamples;
+	public String[] labels;
+	
+	// byte offset of the first sample
+	public int dataOffset;
+	
+	public int inputSize(){
+		return size(inputDims);
+	}
+	
+	public int targetSize(){
+		return size(targetDims);
+	}
+	
+	public int inputBytes(){
+		return inputEncoding.bytes(inputSize());
+	}
+	
+	public int targetBytes(){
+		return targetEncoding.bytes(targetSize());
+	}
+	
+	public int sampleBytes(){
+		return inputBytes()+targetBytes();
+	}
+	
+	/**
+	 * Write the header, returns the number of bytes written
+	 */
+	public int write(OutputStream out) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream header = new DataOutputStream(bytes);
+		header.writeByte(inputEncoding.ordinal());
+		writeDims(header, inputDims);
+		header.writeByte(targetEncoding.ordinal());
+		writeDims(header, targetDims);
+		header.writeInt(noSamples);
+		if(labels == null){
+			header.writeInt(0);
+		} else {
+			header.writeInt(labels.length);
+			for(String l : labels){
+				header.writeUTF(l);
+			}
+		}
+		header.flush();
+
+		DataOutputStream o = new DataOutputStream(out);
+		o.writeInt(MAGIC);
+		o.writeInt(VERSION);
+		o.writeInt(bytes.size());
+		bytes.writeTo(o);
+		o.flush();
+		
+		dataOffset = 12+bytes.size();
+		return dataOffset;
+	}
+	
+	/**
+	 * Read the header
+	 */
+	public static PackedFormat read(InputStream in) throws IOException {
+		DataInputStream i = new DataInputStream(in);
+		if(i.readInt() != MAGIC)
+			throw new IOException("Not a packed dataset file");
+		
+		int version = i.readInt();
+		if(version != VERSION)
+			throw new IOException("Unsupported packed dataset version "+version);
+		
+		int length = i.readInt();
+		
+		PackedFormat f = new PackedFormat();
+		f.inputEncoding = Encoding.values()[i.readByte()];
+		f.inputDims = readDims(i);
+		f.targetEncoding = Encoding.values()[i.readByte()];
+		f.targetDims = readDims(i);
+		f.noSamples = i.readInt();
+		int l = i.readInt();
+		if(l > 0){
+			f.labels = new String[l];
+			for(int k=0;k<l;k++){
+				f.labels[k] = i.readUTF();
+			}
+		}
+		f.dataOffset = 12+length;
+		return f;
+	}
+	
+	private static void writeDims(DataOutputStream out, int[] dims) throws IOException {
+		out.writeInt(dims.length);
+		for(int d : dims){
+			out.writeInt(d);
+		}
+	}
+	
+	private static int[] readDims(DataInputStream in) throws IOException {
+		int[] dims = new int[in.readInt()];
+		for(int k=0;k<dims.length;k++){
+			dims[k] = in.readInt();
+		}
+		return dims;
+	}
+	
+	private static int size(int[] dims){
+		int size = 1;
+		for(int d : dims){
+			size *= d;
+		}
+		return size;
+	}
+	
+	/**
+	 * Convert a float to the bits of a half precision float, rounding to nearest
+	 */
+	public static short toHalf(float f){
+		int bits = Float.floatToIntBits(f);
+		int sign = (bits >>> 16) & 0x8000;
+		int value = (bits & 0x7fffffff) + 0x1000; // round
+		
+		if(value >= 0x47800000){
+			// NaN, infinity or overflow
+			if((bits & 0x7fffffff) >= 0x47800000){
+				if(value < 0x7f800000)
+					return (short)(sign | 0x7c00);
+				return (short)(sign | 0x7c00 | ((bits & 0x007fffff) >>> 13));
+			}
+			return (short)(sign | 0x7bff);
+		}
+		if(value >= 0x38800000){
+			// normal
+			return (short)(sign | ((value - 0x38000000) >>> 13));
+		}
+		if(value < 0x33000000){
+			// underflow to zero
+			return (short)sign;
+		}
+		// subnormal
+		value = (bits & 0x7fffffff) >>> 23;
+		return (short)(sign | ((((bits & 0x7fffff) | 0x800000) 
+				+ (0x800000 >>> (value - 102))) >>> (126 - value)));
+	}
+	
+	/**
+	 * Convert the bits of a half precision float to a float
+	 */
+	public static float fromHalf(short h){
+		int bits = h & 0xffff;
+		int sign = (bits & 0x8000) << 16;
+		int exp = (bits >>> 10) & 0x1f;
+		int mantissa = bits & 0x3ff;
+		
+		if(exp == 0){
+			if(mantissa == 0)
+				return Float.intBitsToFloat(sign);
+			// subnormal, normalize
+			exp = 127 - 15 + 1;
+			while((mantissa & 0x400) == 0){
+				mantissa <<= 1;
+				exp--;
+			}
+			mantissa &= 0x3ff;
+			return Float.intBitsToFloat(sign | (exp << 23) | (mantissa << 13));
+		}
+		if(exp == 0x1f){
+			// infinity or NaN
+			return Float.intBitsToFloat(sign | 0x7f800000 | (mantissa << 13));
+		}
+		return Float.intBitsToFloat(sign | ((exp + 127 - 15) << 23) | (mantissa << 13));
+	}
+}
@@ -0,0 +1,167 @@
+/*******************************************************************************
+ * DIANNE  - Framework for distributed artificial neural networks
+ * Copyright (C) 2015  iMinds - IBCN - UGent
+ *
+ * This file is part of DIANNE.
+ *
+ * DIANNE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contributors:
+ *     Tim Verbelen, Steven Bohez
+ *******************************************************************************/
+package be.iminds.iot.dianne.dataset.adapters;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import be.iminds.iot.dianne.api.dataset.Sample;
+import be.iminds.iot.dianne.tensor.NativeTensorLoader;
+import be.iminds.iot.dianne.tensor.Tensor;
+import be.iminds.iot.dianne.tensor.TensorOps;
+
+public class AugmentationTest {
+	
+	@BeforeClass
+	public static void setup() {
+		NativeTensorLoader loader = new NativeTensorLoader();
+		loader.activate(null);
+	}
+	
+	private Sample sample(int... dims){
+		Tensor input = new Tensor(dims);
+		float[] data = new float[input.size()];
+		for(int i=0;i<data.length;i++){
+			data[i] = i;
+		}
+		input.set(data);
+		Tensor target = new Tensor(new float[]{0, 1}, 2);
+		return new Sample(input, target);
+	}
+	
+	private Sample augment(Map<String, Object> config, Sample original, long seed){
+		Augmentation a = new Augmentation(config);
+		Sample adapted = new Sample();
+		a.createTransform(seed).apply(original, adapted, false);
+		return adapted;
+	}
+	
+	@Test
+	public void testFlip() {
+		Map<String, Object> config = new HashMap<>();
+		config.put("hflip", "1");
+		config.put("vflip", "1");
+		Sample s = sample(2, 3, 4);
+		Sample a = augment(config, s, 0);
+		
+		Assert.assertArrayEquals(new int[]{2, 3, 4}, a.input.dims());
+		for(int c=0;c<2;c++){
+			for(int y=0;y<3;y++){
+				for(int x=0;x<4;x++){
+					Assert.assertEquals(s.input.get(c, 2-y, 3-x), a.input.get(c, y, x), 0.0f);
+				}
+			}
+		}
+		Assert.assertEquals(s.target, a.target);
+	}
+	
+	@Test
+	public void testCropPadding() {
+		Map<String, Object> config = new HashMap<>();
+		config.put("cropWidth", "4");
+		config.put("cropHeight", "4");
+		config.put("cropPadding", "1");
+		Sample s = sample(1, 4, 4);
+		
+		Tensor padded = new Tensor(1, 6, 6);
+		padded.fill(0.0f);
+		s.input.copyInto(padded.narrow(1, 1, 4).narrow(2, 1, 4));
+		
+		// result should be a crop of the zero padded sample
+		for(long seed=0;seed<10;seed++){
+			Sample a = augment(config, s, seed);
+			Assert.assertArrayEquals(new int[]{1, 4, 4}, a.input.dims());
+			
+			boolean found = false;
+			for(int y=0;y<=2;y++){
+				for(int x=0;x<=2;x++){
+					if(padded.narrow(1, y, 4).narrow(2, x, 4).equals(a.input)){
+						found = true;
+					}
+				}
+			}
+			Assert.assertTrue(found);
+		}
+	}
+	
+	@Test
+	public void testCropScale() {
+		Map<String, Object> config = new HashMap<>();
+		config.put("cropWidth", "8");
+		config.put("cropHeight", "8");
+		Sample s = sample(1, 4, 4);
+		Sample a = augment(config, s, 0);
+		
+		// crop larger than sample, scale up first
+		Tensor expected = TensorOps.scale2D(null, s.input, 1, 8, 8);
+		Assert.assertTrue(expected.equals(a.input, 0.0001f));
+	}
+	
+	@Test
+	public void testFrame() {
+		Map<String, Object> config = new HashMap<>();
+		config.put("frame", new String[]{"3", "3", "5"});
+		Sample s = sample(3, 6, 8);
+		Sample a = augment(config, s, 0);
+		
+		Tensor expected = TensorOps.frame(null, s.input, 3, 3, 5);
+		Assert.assertTrue(expected.equals(a.input, 0.0001f));
+	}
+	
+	@Test
+	public void testBinarize() {
+		Map<String, Object> config = new HashMap<>();
+		config.put("binarize", "5");
+		Sample s = sample(1, 3, 3);
+		Sample a = augment(config, s, 0);
+		
+		for(int i=0;i<9;i++){
+			Assert.assertEquals(i > 5 ? 1.0f : 0.0f, a.input.get(0, i/3, i%3), 0.0f);
+		}
+	}
+	
+	@Test
+	public void testSeed() {
+		Map<String, Object> config = new HashMap<>();
+		config.put("cropWidth", "4");
+		config.put("cropHeight", "4");
+		config.put("hflip", "0.5");
+		config.put("rotationTheta", "0.5");
+		Sample s = sample(3, 10, 10);
+		
+		Augmentation a = new Augmentation(config);
+		Augmentation.Transform t1 = a.createTransform(42);
+		Augmentation.Transform t2 = a.createTransform(42);
+		Sample a1 = new Sample();
+		Sample a2 = new Sample();
+		for(int i=0;i<10;i++){
+			t1.apply(s, a1, false);
+			t2.apply(s, a2, false);
+			Assert.assertEquals(a1.input, a2.input);
+		}
+	}
+}
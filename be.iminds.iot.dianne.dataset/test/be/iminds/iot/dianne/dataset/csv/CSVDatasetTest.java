@@ -0,0 +1,134 @@
+/*******************************************************************************
+ * DIANNE  - Framework for distributed artificial neural networks
+ * Copyright (C) 2015  iMinds - IBCN - UGent
+ *
+ * This file is part of DIANNE.
+ *
+ * DIANNE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contributors:
+ *     Tim Verbelen, Steven Bohez
+ *******************************************************************************/
+package be.iminds.iot.dianne.dataset.csv;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import be.iminds.iot.dianne.dataset.packed.PackedFormat;
+import be.iminds.iot.dianne.dataset.packed.PackedFormat.Encoding;
+
+public class CSVDatasetTest {
+
+	@Test
+	public void testParseFloat() {
+		String[] values = new String[]{"0", "1", "-1", "3.14159", "-0.0001", "1e-3", "2.5E+10", 
+				" 42.5 ", "\"7\"", "123456789012345678901234", "0.000000000123456789", "NaN", "-Infinity"};
+		for(String v : values){
+			ByteBuffer b = ByteBuffer.wrap(v.getBytes(StandardCharsets.US_ASCII));
+			float expected = Float.parseFloat(v.trim().replace("\"", ""));
+			Assert.assertEquals(v, expected, CSVParser.parseFloat(b, 0, b.limit()), Math.abs(expected)*1e-6f);
+		}
+	}
+	
+	@Test
+	public void testParseLine() {
+		ByteBuffer b = ByteBuffer.wrap("id,0.5,1.5,x,2\r\n".getBytes(StandardCharsets.US_ASCII));
+		
+		float[] input = new float[2];
+		float[] target = new float[3];
+		CSVParser parser = new CSVParser(',', 1, 2, 1, 3, true);
+		parser.parseLine(b, 0, b.limit(), input, target);
+		Assert.assertArrayEquals(new float[]{0.5f, 1.5f}, input, 0.0f);
+		Assert.assertArrayEquals(new float[]{0, 0, 1}, target, 0.0f);
+		
+		target = new float[1];
+		parser = new CSVParser(',', 1, 2, 1, 1, false);
+		parser.parseLine(b, 0, b.limit(), input, target);
+		Assert.assertArrayEquals(new float[]{2}, target, 0.0f);
+		
+		try {
+			parser = new CSVParser(',', 1, 2, 2, 1, false);
+			parser.parseLine(b, 0, b.limit(), input, target);
+			Assert.fail();
+		} catch(IllegalArgumentException e){
+			// expected
+		}
+	}
+	
+	@Test
+	public void testPack() throws Exception {
+		File csv = File.createTempFile("dianne", ".csv");
+		File parallel = File.createTempFile("dianne", ".pack");
+		File streaming = File.createTempFile("dianne", ".pack");
+		try {
+			int noSamples = 1000;
+			Random r = new Random(0);
+			float[][] expected = new float[noSamples][];
+			try(PrintWriter writer = new PrintWriter(csv)){
+				for(int i=0;i<noSamples;i++){
+					expected[i] = new float[]{r.nextFloat(), r.nextFloat()*100, -r.nextFloat()};
+					writer.print(expected[i][0]+";"+expected[i][1]+";"+expected[i][2]+"\n");
+					if(i % 100 == 0){
+						writer.print("\n");
+					}
+				}
+			}
+			
+			CSVParser parser = new CSVParser(';', 0, 2, 0, 1, false);
+			CSVDataset.packParallel(csv, parallel, format(), parser, 3);
+			CSVDataset.packStreaming(csv, streaming, format(), parser);
+			
+			Assert.assertArrayEquals(Files.readAllBytes(parallel.toPath()), Files.readAllBytes(streaming.toPath()));
+			
+			PackedFormat format;
+			try(FileInputStream in = new FileInputStream(parallel)){
+				format = PackedFormat.read(in);
+			}
+			Assert.assertEquals(noSamples, format.noSamples);
+			
+			ByteBuffer data = ByteBuffer.wrap(Files.readAllBytes(parallel.toPath()));
+			float[] input = new float[2];
+			float[] target = new float[1];
+			for(int i=0;i<noSamples;i++){
+				int offset = format.dataOffset + i*format.sampleBytes();
+				format.inputEncoding.decode(data, offset, input);
+				format.targetEncoding.decode(data, offset+format.inputBytes(), target);
+				Assert.assertEquals(expected[i][0], input[0], 1e-6f);
+				Assert.assertEquals(expected[i][1], input[1], 1e-4f);
+				Assert.assertEquals(expected[i][2], target[0], 1e-6f);
+			}
+		} finally {
+			csv.delete();
+			parallel.delete();
+			streaming.delete();
+		}
+	}
+	
+	private PackedFormat format(){
+		PackedFormat format = new PackedFormat();
+		format.inputEncoding = Encoding.FLOAT32;
+		format.inputDims = new int[]{2};
+		format.targetEncoding = Encoding.FLOAT32;
+		format.targetDims = new int[]{1};
+		return format;
+	}
+}
@@ -0,0 +1,96 @@
+/*******************************************************************************
+ * DIANNE  - Framework for distributed artificial neural networks
+ * Copyright (C) 2015  iMinds - IBCN - UGent
+ *
+ * This file is part of DIANNE.
+ *
+ * DIANNE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contributors:
+ *     Tim Verbelen, Steven Bohez
+ *******************************************************************************/
+package be.iminds.iot.dianne.dataset.packed;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import be.iminds.iot.dianne.dataset.packed.PackedFormat.Encoding;
+
+public class PackedFormatTest {
+
+	@Test
+	public void testHalf() {
+		float[] values = new float[]{0.0f, 1.0f, -2.5f, 0.5f, 65504.0f};
+		for(float v : values){
+			Assert.assertEquals(v, PackedFormat.fromHalf(PackedFormat.toHalf(v)), 0.0f);
+		}
+		
+		Assert.assertEquals(0.1f, PackedFormat.fromHalf(PackedFormat.toHalf(0.1f)), 0.0001f);
+		Assert.assertEquals(1e-5f, PackedFormat.fromHalf(PackedFormat.toHalf(1e-5f)), 1e-7f);
+		Assert.assertEquals(Float.POSITIVE_INFINITY, PackedFormat.fromHalf(PackedFormat.toHalf(70000.0f)), 0.0f);
+	}
+	
+	@Test
+	public void testEncoding() {
+		float[] data = new float[]{0.0f, 0.25f, 1.0f, 0.5f};
+		for(Encoding e : Encoding.values()){
+			ByteBuffer buffer = ByteBuffer.allocate(4+e.bytes(data.length));
+			buffer.putInt(42);
+			e.encode(buffer, data);
+			Assert.assertEquals(4+e.bytes(data.length), buffer.position());
+			
+			float[] decoded = new float[data.length];
+			e.decode(buffer, 4, decoded);
+			switch(e){
+			case UINT8:
+				Assert.assertArrayEquals(data, decoded, 1/255f);
+				break;
+			case CLASS:
+				Assert.assertArrayEquals(new float[]{0, 0, 1, 0}, decoded, 0.0f);
+				break;
+			default:
+				Assert.assertArrayEquals(data, decoded, 0.0f);
+			}
+		}
+	}
+	
+	@Test
+	public void testHeader() throws Exception {
+		PackedFormat format = new PackedFormat();
+		format.inputEncoding = Encoding.UINT8;
+		format.inputDims = new int[]{3, 32, 32};
+		format.targetEncoding = Encoding.CLASS;
+		format.targetDims = new int[]{10};
+		format.noSamples = 60000;
+		format.labels = new String[]{"cat", "dog"};
+		
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		int offset = format.write(out);
+		Assert.assertEquals(out.size(), offset);
+		
+		PackedFormat read = PackedFormat.read(new ByteArrayInputStream(out.toByteArray()));
+		Assert.assertEquals(Encoding.UINT8, read.inputEncoding);
+		Assert.assertArrayEquals(format.inputDims, read.inputDims);
+		Assert.assertEquals(Encoding.CLASS, read.targetEncoding);
+		Assert.assertArrayEquals(format.targetDims, read.targetDims);
+		Assert.assertEquals(60000, read.noSamples);
+		Assert.assertArrayEquals(format.labels, read.labels);
+		Assert.assertEquals(offset, read.dataOffset);
+		Assert.assertEquals(3*32*32+4, read.sampleBytes());
+	}
+}
@@ -0,0 +1,221 @@
+/*******************************************************************************
+ * DIANNE  - Framework for distributed artificial neural networks
+ * Copyright (C) 2015  iMinds - IBCN - UGent
+ *
+ * This file is part of DIANNE.
+ *
+ * DIANNE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contributors:
+ *     Tim Verbelen, Steven Bohez
+ *******************************************************************************/
+package be.iminds.iot.dianne.nn.eval;
+
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import be.iminds.iot.dianne.api.dataset.Batch;
+import be.iminds.iot.dianne.api.dataset.Dataset;
+import be.iminds.iot.dianne.api.dataset.DatasetDTO;
+import be.iminds.iot.dianne.api.dataset.Sample;
+
+/**
+ * A view on a contiguous index range of a Dataset, used to give each worker of
+ * the Evaluator its own shard of the dataset.
+ * 
+ * When prefetching, fetching a batch of consecutive indices also starts loading the 
+ * next batch on a background thread, so that loading overlaps with the forward pass. 
+ * The prefetched batch is loaded into the Batch object that was handed in on the 
+ * previous call, hence only two Batch objects are alternated.
+ * 
+ * @author tverbele
+ *
+ */
+class DatasetShard implements Dataset {
+
+	private final Dataset data;
+	private final int offset;
+	private final int size;
+	
+	private final ExecutorService loader;
+	private Future<Batch> next;
+	private int[] nextIndices;
+	private Batch spare;
+	
+	DatasetShard(Dataset data, int offset, int size, boolean prefetch){
+		this.data = data;
+		this.offset = offset;
+		this.size = size;
+		
+		if(prefetch){
+			loader = Executors.newSingleThreadExecutor(r -> {
+				Thread t = new Thread(r, "Dianne Evaluator Prefetch "+offset);
+				t.setDaemon(true);
+				return t;
+			});
+		} else {
+			loader = null;
+		}
+	}
+	
+	@Override
+	public DatasetDTO getDTO() {
+		DatasetDTO dto = data.getDTO();
+		dto.size = size;
+		return dto;
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public int[] inputDims() {
+		return data.inputDims();
+	}
+
+	@Override
+	public String inputType() {
+		return data.inputType();
+	}
+
+	@Override
+	public int[] targetDims() {
+		return data.targetDims();
+	}
+
+	@Override
+	public String targetType() {
+		return data.targetType();
+	}
+
+	@Override
+	public Sample getSample(Sample s, int index) {
+		if(index < 0 || index >= size)
+			throw new IndexOutOfBoundsException("Index "+index+" out of range of shard with size "+size);
+		
+		return data.getSample(s, offset+index);
+	}
+	
+	@Override
+	public synchronized Batch getBatch(Batch b, int... indices) {
+		int[] shifted = new int[indices.length];
+		for(int i=0;i<indices.length;i++){
+			if(indices[i] < 0 || indices[i] >= size)
+				throw new IndexOutOfBoundsException("Index "+indices[i]+" out of range of shard with size "+size);
+			
+			shifted[i] = offset+indices[i];
+		}
+		
+		if(loader == null)
+			return data.getBatch(b, shifted);
+		
+		Batch result;
+		if(next != null && Arrays.equals(shifted, nextIndices)){
+			result = await();
+			spare = b;
+		} else {
+			// not the batch we anticipated, drop the prefetched one
+			if(next != null){
+				spare = await();
+			}
+			result = data.getBatch(b, shifted);
+		}
+
+		prefetch(shifted);
+		return result;
+	}
+
+	@Override
+	public String getName() {
+		return data.getName();
+	}
+
+	@Override
+	public String[] getLabels() {
+		return data.getLabels();
+	}
+	
+	/**
+	 * Stop the prefetch thread and wait for a batch that is still loading, after which 
+	 * the underlying dataset can be released
+	 */
+	synchronized void release(){
+		if(loader == null)
+			return;
+		
+		if(next != null){
+			next.cancel(false);
+			next = null;
+		}
+		loader.shutdownNow();
+		
+		// loading a batch cannot be interrupted, also wait when the calling thread is interrupted
+		boolean interrupted = false;
+		while(true){
+			try {
+				loader.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+				break;
+			} catch(InterruptedException e){
+				interrupted = true;
+			}
+		}
+		if(interrupted)
+			Thread.currentThread().interrupt();
+	}
+	
+	/**
+	 * Start loading the batch following the consecutive indices, clipped to the end of this shard
+	 */
+	private void prefetch(int[] shifted){
+		int start = shifted[shifted.length-1]+1;
+		for(int i=0;i<shifted.length;i++){
+			if(shifted[i] != start-shifted.length+i)
+				return;
+		}
+		
+		int length = Math.min(shifted.length, offset+size-start);
+		if(length <= 0)
+			return;
+		
+		nextIndices = new int[length];
+		for(int i=0;i<length;i++){
+			nextIndices[i] = start+i;
+		}
+		
+		final Batch target = spare != null && spare.getSize() == length ? spare : null;
+		final int[] toLoad = nextIndices;
+		spare = null;
+		next = loader.submit(() -> data.getBatch(target, toLoad));
+	}
+	
+	private Batch await(){
+		try {
+			return next.get();
+		} catch(InterruptedException e){
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Interrupted while prefetching batch", e);
+		} catch(ExecutionException e){
+			throw new RuntimeException("Failed to prefetch batch", e.getCause());
+		} finally {
+			next = null;
+			nextIndices = null;
+		}
+	}
+}
@@ -22,10 +22,13 @@
  *******************************************************************************/
 package be.iminds.iot.dianne.nn.eval;
 
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.Constants;
@@ -40,16 +43,21 @@ import be.iminds.iot.dianne.api.dataset.DianneDatasets;
 import be.iminds.iot.dianne.api.dataset.SequenceDataset;
 import be.iminds.iot.dianne.api.nn.Dianne;
 import be.iminds.iot.dianne.api.nn.NeuralNetwork;
+import be.iminds.iot.dianne.api.nn.eval.ClassificationEvaluation;
+import be.iminds.iot.dianne.api.nn.eval.ErrorEvaluation;
 import be.iminds.iot.dianne.api.nn.eval.Evaluation;
 import be.iminds.iot.dianne.api.nn.eval.EvaluationProgress;
 import be.iminds.iot.dianne.api.nn.eval.EvaluationStrategy;
 import be.iminds.iot.dianne.api.nn.eval.Evaluator;
 import be.iminds.iot.dianne.api.nn.eval.EvaluatorListener;
 import be.iminds.iot.dianne.api.nn.module.dto.NeuralNetworkInstanceDTO;
+import be.iminds.iot.dianne.api.nn.platform.DiannePlatform;
 import be.iminds.iot.dianne.api.nn.util.StrategyFactory;
 import be.iminds.iot.dianne.nn.eval.config.EvaluatorConfig;
 import be.iminds.iot.dianne.nn.eval.config.EvaluatorConfig.EvaluationGranularity;
 import be.iminds.iot.dianne.nn.util.DianneConfigHandler;
+import be.iminds.iot.dianne.tensor.Tensor;
+import be.iminds.iot.dianne.tensor.TensorOps;
 
 /**
  * The AbstractEvaluator has all mechanics to loop through (part of) a Dataset
@@ -57,6 +65,11 @@ import be.iminds.iot.dianne.nn.util.DianneConfigHandler;
  * 
  * Concrete evaluators should implement the evalOutput(index, output, expected output)
  * and update the error/confusionMatrix
+ * 
+ * With multiple workers, the dataset is split in contiguous shards that are each 
+ * evaluated by their own strategy on a replica of the neural network(s), after which
+ * the results of all shards are merged.
+ * 
  * @author tverbele
  *
  */
@@ -69,14 +82,20 @@ public class EvaluatorImpl implements Evaluator {
 	
 	private Dianne dianne;
 	private DianneDatasets datasets;
+	private volatile DiannePlatform platform;
 	
 	private EvaluatorConfig config;
 	
 	private volatile boolean evaluating = false;
 
 	private StrategyFactory<EvaluationStrategy> factory;
-	private EvaluationStrategy strategy;
-	private EvaluationProgress progress;
+	private EvaluationStrategy[] strategies;
+	private DatasetShard[] shards;
+	private EvaluationProgress[] progresses;
+	private volatile EvaluationProgress progress;
+	
+	// neural network instances deployed as replicas for the workers
+	private List<NeuralNetworkInstanceDTO> replicas = new ArrayList<>();
 	
 	private long tStart, tEnd;
 	
@@ -133,43 +152,80 @@ public class EvaluatorImpl implements Evaluator {
 				System.out.println("---");
 			}
 			
-			// Create evaluation strategy
-			strategy = factory.create(this.config.strategy);
-			if(strategy == null)
-				throw new Exception("Strategy "+this.config.strategy+" not available");
+			// Split the dataset in shards, sequence datasets are always evaluated as a whole
+			int[] offsets;
+			int[] sizes;
+			if(d instanceof SequenceDataset){
+				if(this.config.workers > 1)
+					System.out.println("Dataset "+dataset+" is a sequence dataset, evaluating with a single worker");
+				offsets = new int[]{0};
+				sizes = new int[]{d.size()};
+			} else {
+				int batchSize = config.containsKey("batchSize") ? Integer.parseInt(config.get("batchSize")) : 1;
+				int workers = Math.max(1, Math.min(this.config.workers, d.size()));
+				// align shards on batches, so only the last shard can have an incomplete batch
+				int batches = (d.size()+batchSize-1)/batchSize;
+				int shardSize = ((batches+workers-1)/workers)*batchSize;
+				workers = (d.size()+shardSize-1)/shardSize;
+				
+				offsets = new int[workers];
+				sizes = new int[workers];
+				for(int w=0;w<workers;w++){
+					offsets[w] = w*shardSize;
+					sizes[w] = Math.min(shardSize, d.size()-offsets[w]);
+				}
+			}
 			
-			strategy.setup(config, d, nns);
+			// Create an evaluation strategy per worker
+			strategies = new EvaluationStrategy[offsets.length];
+			shards = new DatasetShard[offsets.length];
+			progresses = new EvaluationProgress[offsets.length];
+			for(int w=0;w<strategies.length;w++){
+				strategies[w] = factory.create(this.config.strategy);
+				if(strategies[w] == null)
+					throw new Exception("Strategy "+this.config.strategy+" not available");
+			}
+			
+			NeuralNetwork[][] workerNns = new NeuralNetwork[strategies.length][];
+			workerNns[0] = nns;
+			if(strategies.length > 1){
+				deployReplicas(nni, nns, workerNns);
+			}
+			
+			for(int w=0;w<strategies.length;w++){
+				Dataset data = d;
+				if(!(d instanceof SequenceDataset) && (strategies.length > 1 || this.config.prefetch)){
+					shards[w] = new DatasetShard(d, offsets[w], sizes[w], this.config.prefetch);
+					data = shards[w];
+				}
+				// each worker gets its own copy, as strategies adapt the config in setup
+				strategies[w].setup(w == 0 ? config : new HashMap<>(config), data, workerNns[w]);
+			}
 			// this allows the strategy to adapt config in setup
 			this.config = DianneConfigHandler.getConfig(config, EvaluatorConfig.class);
 			
-			int size = d.size();
 			if(this.config.granularity == EvaluationGranularity.SEQUENCE){
 				if(!(d instanceof SequenceDataset))
 					throw new Exception("Dataset "+dataset+" is not a sequence dataset, granularity SEQUENCE invalid");
 				
-				size = ((SequenceDataset<?,?>)d).sequences();
+				sizes[0] = ((SequenceDataset<?,?>)d).sequences();
 			}
 		
 			tStart = System.currentTimeMillis();
-			for(long i=0; i<size;){
-				progress = strategy.processIteration(i);
-				
-				long next = progress.processed;
-				if(next == i){
-					throw new RuntimeException("Strategy is not making progress...");
-				}
-				i = next;
-				
-				// TODO how frequently publish progress
-				for(EvaluatorListener l : listeners){
-					l.onProgress(evaluatorId, progress);
-				}
+			if(strategies.length == 1){
+				evaluate(0, sizes[0], null);
+			} else {
+				evaluateParallel(sizes);
 			}
 			tEnd = System.currentTimeMillis();
 			
 			long evaluationTime = tEnd-tStart;
 			
-			Evaluation eval = strategy.getResult();
+			Evaluation[] results = new Evaluation[strategies.length];
+			for(int w=0;w<strategies.length;w++){
+				results[w] = strategies[w].getResult();
+			}
+			Evaluation eval = merge(results);
 			eval.time = evaluationTime;
 			
 			if(eval.metric < this.config.storeIfSmallerThan){
@@ -196,11 +252,205 @@ public class EvaluatorImpl implements Evaluator {
 			}
 			evaluating = false;
 			
+			if(shards != null){
+				for(DatasetShard s : shards){
+					if(s != null)
+						s.release();
+				}
+			}
+			undeployReplicas();
+			strategies = null;
+			shards = null;
+			progress = null;
+			
 			datasets.releaseDataset(d);
 			System.gc();
 		}
 	}
 	
+	/**
+	 * Evaluate the shards of all workers in parallel, the calling thread acts as the first worker
+	 */
+	private void evaluateParallel(int[] sizes) throws Exception {
+		final AtomicReference<Throwable> error = new AtomicReference<>();
+		
+		Thread[] threads = new Thread[strategies.length-1];
+		for(int w=1;w<strategies.length;w++){
+			final int index = w;
+			threads[w-1] = new Thread(() -> {
+				try {
+					evaluate(index, sizes[index], error);
+				} catch(Throwable t){
+					error.compareAndSet(null, t);
+				}
+			}, "Dianne Evaluator Worker "+w);
+			threads[w-1].start();
+		}
+		
+		try {
+			evaluate(0, sizes[0], error);
+		} catch(Throwable t){
+			error.compareAndSet(null, t);
+		} finally {
+			for(Thread t : threads){
+				t.join();
+			}
+		}
+		
+		if(error.get() != null){
+			throw new Exception("Evaluator worker failed", error.get());
+		}
+	}
+	
+	private void evaluate(int worker, long size, AtomicReference<Throwable> error) throws Exception {
+		EvaluationStrategy strategy = strategies[worker];
+		for(long i=0; i<size;){
+			// stop when another worker failed
+			if(error != null && error.get() != null)
+				return;
+			
+			EvaluationProgress p = strategy.processIteration(i);
+			
+			long next = p.processed;
+			if(next == i){
+				throw new RuntimeException("Strategy is not making progress...");
+			}
+			i = next;
+			
+			publishProgress(worker, p);
+		}
+	}
+	
+	/**
+	 * Combine the progress of all workers and notify the listeners
+	 */
+	private void publishProgress(int worker, EvaluationProgress p){
+		EvaluationProgress combined = p;
+		synchronized(progresses){
+			progresses[worker] = p;
+			
+			if(progresses.length > 1){
+				long processed = 0;
+				long size = 0;
+				float error = 0;
+				for(int w=0;w<progresses.length;w++){
+					EvaluationProgress wp = progresses[w];
+					size += shards[w].size();
+					if(wp != null){
+						long n = Math.min(wp.processed, shards[w].size());
+						processed += n;
+						error += wp.metric*n;
+					}
+				}
+				combined = new EvaluationProgress(processed, size, processed > 0 ? error/processed : 0);
+			}
+			progress = combined;
+			
+			// TODO how frequently publish progress
+			for(EvaluatorListener l : listeners){
+				l.onProgress(evaluatorId, combined);
+			}
+		}
+	}
+	
+	/**
+	 * Merge the evaluation results of all shards into a single evaluation
+	 */
+	private Evaluation merge(Evaluation[] results){
+		if(results.length == 1)
+			return results[0];
+		
+		Evaluation first = results[0];
+		Evaluation merged;
+		if(first instanceof ClassificationEvaluation){
+			merged = new ClassificationEvaluation();
+		} else if(first instanceof ErrorEvaluation){
+			merged = new ErrorEvaluation();
+		} else {
+			merged = new Evaluation();
+		}
+		
+		float metric = 0;
+		for(Evaluation r : results){
+			merged.size += r.size;
+			metric += r.metric*r.size;
+		}
+		merged.metric = metric/merged.size;
+		
+		if(merged instanceof ErrorEvaluation){
+			ErrorEvaluation m = (ErrorEvaluation) merged;
+			float forwardTime = 0;
+			List<Tensor> outputs = ((ErrorEvaluation)first).outputs == null ? null : new ArrayList<>();
+			for(Evaluation r : results){
+				ErrorEvaluation e = (ErrorEvaluation) r;
+				forwardTime += e.forwardTime*e.size;
+				if(outputs != null)
+					outputs.addAll(e.outputs);
+			}
+			m.forwardTime = forwardTime/m.size;
+			m.outputs = outputs;
+		}
+		
+		if(merged instanceof ClassificationEvaluation){
+			ClassificationEvaluation m = (ClassificationEvaluation) merged;
+			boolean rankings = ((ClassificationEvaluation)first).rankings != null;
+			int count = 0;
+			for(Evaluation r : results){
+				ClassificationEvaluation c = (ClassificationEvaluation) r;
+				if(c.confusionMatrix != null){
+					m.confusionMatrix = m.confusionMatrix == null ? c.confusionMatrix.copyInto(null) 
+							: TensorOps.add(m.confusionMatrix, m.confusionMatrix, c.confusionMatrix);
+				}
+				if(rankings)
+					count += c.rankings.length;
+			}
+			
+			if(rankings){
+				m.rankings = new int[count];
+				int offset = 0;
+				for(Evaluation r : results){
+					int[] shard = ((ClassificationEvaluation) r).rankings;
+					System.arraycopy(shard, 0, m.rankings, offset, shard.length);
+					offset += shard.length;
+				}
+			}
+		}
+		
+		return merged;
+	}
+	
+	/**
+	 * Deploy a replica of each neural network instance for each additional worker
+	 */
+	private void deployReplicas(NeuralNetworkInstanceDTO[] nni, NeuralNetwork[] nns, NeuralNetwork[][] workerNns) throws Exception {
+		DiannePlatform p = platform;
+		if(p == null)
+			throw new RuntimeException("Evaluating with "+this.config.workers+" workers requires a DiannePlatform to deploy replicas");
+		
+		for(int w=1;w<workerNns.length;w++){
+			NeuralNetwork[] r = new NeuralNetwork[nns.length];
+			int n = 0;
+			for(NeuralNetworkInstanceDTO dto : nni){
+				if(dto != null){
+					NeuralNetworkInstanceDTO replica = p.deployNeuralNetwork(dto.name, "Dianne Evaluator "+evaluatorId+" worker "+w, evaluatorId);
+					replicas.add(replica);
+					r[n] = dianne.getNeuralNetwork(replica).getValue();
+					r[n].setParameters(nns[n].getParameters());
+					n++;
+				}
+			}
+			workerNns[w] = r;
+		}
+	}
+	
+	private void undeployReplicas(){
+		DiannePlatform p = platform;
+		if(p != null && !replicas.isEmpty()){
+			replicas.forEach(p::undeployNeuralNetwork);
+		}
+		replicas.clear();
+	}
+	
 	public EvaluationProgress getProgress(){
 		if(!evaluating)
 			return null;
@@ -226,6 +476,18 @@ public class EvaluatorImpl implements Evaluator {
 	void setDianneDatasets(DianneDatasets d){
 		datasets = d;
 	}
+	
+	@Reference(cardinality=ReferenceCardinality.OPTIONAL, 
+			policy=ReferencePolicy.DYNAMIC)
+	void setDiannePlatform(DiannePlatform p){
+		platform = p;
+	}
+	
+	void unsetDiannePlatform(DiannePlatform p){
+		if(platform == p){
+			platform = null;
+		}
+	}
 
 	@Reference
 	void setEvaluationStrategyFactory(StrategyFactory<EvaluationStrategy> f){
@@ -254,4 +516,3 @@ public class EvaluatorImpl implements Evaluator {
 	}
 
 }
-
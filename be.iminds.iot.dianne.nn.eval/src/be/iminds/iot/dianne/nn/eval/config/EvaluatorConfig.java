@@ -53,4 +53,14 @@ public class EvaluatorConfig {
 	 * Store NN weights with "best" tag if the evaluation metric is more than this value
 	 */
 	public float storeIfLargerThan = Float.MAX_VALUE;
+	
+	/**
+	 * Number of workers, each evaluating a contiguous shard of the dataset on its own replica of the neural network(s)
+	 */
+	public int workers = 1;
+	
+	/**
+	 * Load the next batch in the background while forwarding the current one
+	 */
+	public boolean prefetch = true;
 }
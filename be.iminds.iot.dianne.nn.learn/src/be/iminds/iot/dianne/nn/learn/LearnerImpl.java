@@ -22,11 +22,18 @@
  *******************************************************************************/
 package be.iminds.iot.dianne.nn.learn;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.BrokenBarrierException;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.stream.Collectors;
 
 import org.osgi.framework.BundleContext;
@@ -47,10 +54,14 @@ import be.iminds.iot.dianne.api.nn.learn.LearnerListener;
 import be.iminds.iot.dianne.api.nn.learn.LearningStrategy;
 import be.iminds.iot.dianne.api.nn.module.Trainable;
 import be.iminds.iot.dianne.api.nn.module.dto.NeuralNetworkInstanceDTO;
+import be.iminds.iot.dianne.api.nn.platform.DiannePlatform;
 import be.iminds.iot.dianne.api.nn.util.StrategyFactory;
+import be.iminds.iot.dianne.api.repository.ParameterServer;
 import be.iminds.iot.dianne.nn.learn.config.LearnerConfig;
+import be.iminds.iot.dianne.nn.learn.config.LearnerConfig.ParameterUpdate;
 import be.iminds.iot.dianne.nn.util.DianneConfigHandler;
 import be.iminds.iot.dianne.tensor.Tensor;
+import be.iminds.iot.dianne.tensor.TensorOps;
 
 @Component(property={"aiolos.unique=true"})
 public class LearnerImpl implements Learner {
@@ -64,6 +75,8 @@ public class LearnerImpl implements Learner {
 	// References
 	private Dianne dianne;
 	private DianneDatasets datasets;
+	private volatile ParameterServer parameterServer;
+	private volatile DiannePlatform platform;
 	
 	// Threading
 	private Thread learnerThread;
@@ -72,6 +85,12 @@ public class LearnerImpl implements Learner {
 	// Network and data
 	private NeuralNetwork[] nns;
 	private Dataset dataset;
+	
+	// Workers in case of multi-threaded learning, each with replicas of the nns
+	private LearnerWorker[] workers;
+	private List<NeuralNetworkInstanceDTO> replicas;
+	// exclusive access to the shared parameters for publishing and storing
+	private ReadWriteLock parameterLock;
 
 	// Learning strategy
 	private StrategyFactory<LearningStrategy> factory;
@@ -86,6 +105,8 @@ public class LearnerImpl implements Learner {
 	// Training progress
 	private volatile long i = 0;
 	private LearnProgress progress;
+	private long traceIteration;
+	private long traceTime;
 
 	@Override
 	public UUID getLearnerId(){
@@ -115,7 +136,12 @@ public class LearnerImpl implements Learner {
 			// Reset
 			previousParameters = new HashMap<>();
 			nns = new NeuralNetwork[nni.length];
+			workers = null;
+			replicas = new ArrayList<>();
+			parameterLock = null;
 			i = 0;
+			traceIteration = 0;
+			traceTime = System.currentTimeMillis();
 			
 			// Read config
 			System.out.println("Learner Configuration");
@@ -159,7 +185,7 @@ public class LearnerImpl implements Learner {
 				// load parameters from init tag and store as tag
 				for(NeuralNetwork nn : nns){
 					loadParameters(nn, this.config.initTag);
-					nn.storeParameters(this.config.tag);
+					storeParameters(nn, nn.getParameters(), this.config.tag);
 				}
 			}
 			
@@ -173,6 +199,11 @@ public class LearnerImpl implements Learner {
 			if(strategy == null)
 				throw new RuntimeException("LearningStrategy "+this.config.strategy+" not available");
 			
+			// Deploy replicas for the workers
+			if(this.config.workers > 1){
+				deployWorkers(nni);
+			}
+			
 			learnerThread = new Thread(() -> {
 				try {
 					// Trigger preprocess on NN instances before the actual training starts
@@ -180,45 +211,26 @@ public class LearnerImpl implements Learner {
 						preprocess(nn, d, config);
 					}
 					
-					// Setup LearningStrategy
-					strategy.setup(config, dataset, nns);
-					// this allows the strategy to adapt config in setup
-					this.config = DianneConfigHandler.getConfig(config, LearnerConfig.class);
+					if(workers != null){
+						learnParallel(config);
+					} else {
+						// Setup LearningStrategy
+						strategy.setup(config, dataset, nns);
+						// this allows the strategy to adapt config in setup
+						this.config = DianneConfigHandler.getConfig(config, LearnerConfig.class);
 					
-					// Actual training loop
-					for(i = 0; learning; i++) {
-						// Process training sample(s) for this iteration
-						progress = strategy.processIteration(i);
+						// Actual training loop
+						for(i = 0; learning; i++) {
+							// Process training sample(s) for this iteration
+							progress = strategy.processIteration(i);
 
-						// Check for NaN
-						if(Float.isNaN(progress.minibatchLoss)){
-							throw new Exception("Learner error became NaN");
-						}
-						
-						// Publish parameters to repository
-						for(int k=0;k<nns.length;k++){
-							int syncInterval = (k < this.config.syncInterval.length) ? this.config.syncInterval[k] : this.config.syncInterval[0];
-							if(syncInterval > 0 && i > 0 && i % syncInterval == 0){
-								publishParameters(nns[k]);
-							}
-						}
-						
-						// Store intermediate parameters
-						for(int k=0;k<nns.length;k++){
-							int storeInterval = (k < this.config.storeInterval.length) ? this.config.storeInterval[k] : this.config.storeInterval[0];
-							if(storeInterval > 0 && i > 0 && i % storeInterval == 0){
-								nns[k].storeParameters(this.config.tag, ""+i);
+							// Check for NaN
+							if(Float.isNaN(progress.minibatchLoss)){
+								throw new Exception("Learner error became NaN");
 							}
-						}
 						
-						// Publish progress
-						if(i % this.config.traceInterval == 0){
-							if(this.config.trace)
-								System.out.println(progress);
-							
-							publishProgress(progress);
+							publishIteration(i, progress);
 						}
-						
 					}
 				} catch(InterruptedException e){ 
 					// ignore, just interrupt the thread
@@ -239,11 +251,14 @@ public class LearnerImpl implements Learner {
 				} finally {
 					// store final weights!
 					for(NeuralNetwork nn : nns){
-						nn.storeParameters(this.config.tag);
+						storeParameters(nn, nn.getParameters(), this.config.tag);
 					}
 					
+					// stop any prefetching before the dataset is released
+					strategy.cleanup();
+					undeployWorkers();
+					
 					datasets.releaseDataset(dataset);
-					System.gc();
 				}
 
 				System.out.println("Stopped learning");
@@ -253,11 +268,238 @@ public class LearnerImpl implements Learner {
 		} catch(Exception e){
 			System.err.println("Failed starting learner");
 			e.printStackTrace();
+			undeployWorkers();
 			learning = false;
 			throw e;
 		}	
 	}
 	
+	/**
+	 * Publish parameters, store parameters and publish progress when the respective intervals are reached
+	 */
+	private void publishIteration(long i, LearnProgress progress){
+		this.i = i;
+		this.progress = progress;
+		
+		boolean sync = false;
+		boolean store = false;
+		for(int k=0;k<nns.length;k++){
+			int syncInterval = (k < this.config.syncInterval.length) ? this.config.syncInterval[k] : this.config.syncInterval[0];
+			int storeInterval = (k < this.config.storeInterval.length) ? this.config.storeInterval[k] : this.config.storeInterval[0];
+			sync |= syncInterval > 0 && i > 0 && i % syncInterval == 0;
+			store |= storeInterval > 0 && i > 0 && i % storeInterval == 0;
+		}
+		
+		if(sync || store){
+			// workers should not update the shared parameters while publishing
+			if(parameterLock != null)
+				parameterLock.writeLock().lock();
+			try {
+				// Publish parameters to repository
+				for(int k=0;k<nns.length;k++){
+					int syncInterval = (k < this.config.syncInterval.length) ? this.config.syncInterval[k] : this.config.syncInterval[0];
+					if(syncInterval > 0 && i > 0 && i % syncInterval == 0){
+						publishParameters(nns[k]);
+					}
+				}
+				
+				// Store intermediate parameters
+				for(int k=0;k<nns.length;k++){
+					int storeInterval = (k < this.config.storeInterval.length) ? this.config.storeInterval[k] : this.config.storeInterval[0];
+					if(storeInterval > 0 && i > 0 && i % storeInterval == 0){
+						nns[k].storeParameters(this.config.tag, ""+i);
+					}
+				}
+			} finally {
+				if(parameterLock != null)
+					parameterLock.writeLock().unlock();
+			}
+		}
+		
+		// Publish progress
+		if(i % this.config.traceInterval == 0){
+			LearnProgress p = withIterationsPerSecond(i, progress);
+			
+			if(this.config.trace)
+				System.out.println(p);
+			
+			publishProgress(p);
+		}
+	}
+	
+	/**
+	 * Add the (aggregate) number of iterations per second since the last trace to the progress
+	 */
+	private synchronized LearnProgress withIterationsPerSecond(long i, LearnProgress progress){
+		long now = System.currentTimeMillis();
+		if(now == traceTime || i <= traceIteration)
+			return progress;
+		
+		Map<String, Float> extra = new HashMap<>(progress.extra);
+		extra.put("it/s", (i - traceIteration)*1000.0f/(now - traceTime));
+		traceIteration = i;
+		traceTime = now;
+		return new LearnProgress(progress.iteration, progress.minibatchLoss, extra);
+	}
+	
+	/**
+	 * Deploy a replica of each neural network instance and a learning strategy per worker
+	 */
+	private void deployWorkers(NeuralNetworkInstanceDTO[] nni) throws Exception {
+		DiannePlatform p = platform;
+		if(p == null)
+			throw new RuntimeException("Learning with "+this.config.workers+" workers requires a DiannePlatform to deploy replicas");
+		
+		workers = new LearnerWorker[this.config.workers];
+		for(int w=0;w<workers.length;w++){
+			NeuralNetwork[] r = new NeuralNetwork[nns.length];
+			int n = 0;
+			for(NeuralNetworkInstanceDTO dto : nni){
+				if(dto != null){
+					NeuralNetworkInstanceDTO replica = p.deployNeuralNetwork(dto.name, "Dianne Learner "+learnerId+" worker "+w, learnerId);
+					replicas.add(replica);
+					r[n++] = dianne.getNeuralNetwork(replica).getValue();
+				}
+			}
+			
+			LearningStrategy s = factory.create(this.config.strategy);
+			workers[w] = new LearnerWorker(s, r);
+		}
+		
+		if(this.config.parameterUpdate != ParameterUpdate.AVERAGE){
+			parameterLock = new ReentrantReadWriteLock();
+		}
+	}
+	
+	private void undeployWorkers(){
+		if(workers != null){
+			for(LearnerWorker w : workers){
+				if(w != null)
+					w.release();
+			}
+		}
+		
+		DiannePlatform p = platform;
+		if(p != null && replicas != null){
+			replicas.forEach(p::undeployNeuralNetwork);
+			replicas.clear();
+		}
+	}
+	
+	/**
+	 * Train with multiple workers, the calling thread acts as the first worker
+	 */
+	private void learnParallel(Map<String, String> config) throws Exception {
+		// Setup the LearningStrategy of each worker and initialize the replicas
+		for(LearnerWorker w : workers){
+			w.setup(config, dataset);
+			w.initialize(nns);
+		}
+		// this allows the strategy to adapt config in setup
+		this.config = DianneConfigHandler.getConfig(config, LearnerConfig.class);
+		
+		final AtomicLong iteration = new AtomicLong();
+		final AtomicReference<Throwable> error = new AtomicReference<>();
+		
+		final CyclicBarrier barrier;
+		final LearnProgress[] round = new LearnProgress[workers.length];
+		if(this.config.parameterUpdate == ParameterUpdate.AVERAGE){
+			barrier = new CyclicBarrier(workers.length, () -> {
+				// apply the average update once all workers are done with this round
+				LearnerWorker.pushAverageDelta(nns, workers);
+				
+				long it = iteration.get();
+				float loss = 0;
+				for(LearnProgress p : round){
+					loss += p.minibatchLoss;
+				}
+				publishIteration(it, new LearnProgress(it, loss/round.length, round[0].extra));
+				iteration.incrementAndGet();
+			});
+		} else {
+			barrier = null;
+		}
+		
+		Thread[] threads = new Thread[workers.length-1];
+		for(int w=1;w<workers.length;w++){
+			final int index = w;
+			threads[w-1] = new Thread(() -> {
+				try {
+					work(index, iteration, barrier, round);
+				} catch(Throwable t){
+					if(learning){
+						error.compareAndSet(null, t);
+						learning = false;
+					}
+					if(barrier != null)
+						barrier.reset();
+				}
+			}, "Dianne Learner Worker "+w);
+			threads[w-1].start();
+		}
+		
+		try {
+			work(0, iteration, barrier, round);
+		} finally {
+			// stop the other workers
+			learning = false;
+			if(barrier != null)
+				barrier.reset();
+			for(Thread t : threads){
+				t.interrupt();
+			}
+			for(Thread t : threads){
+				t.join();
+			}
+		}
+		
+		if(error.get() != null){
+			throw new Exception("Learner worker failed", error.get());
+		}
+	}
+	
+	private void work(int index, AtomicLong iteration, CyclicBarrier barrier, LearnProgress[] round) throws Exception {
+		LearnerWorker worker = workers[index];
+		boolean locked = this.config.parameterUpdate == ParameterUpdate.LOCKED;
+		
+		while(learning){
+			long it = barrier == null ? iteration.getAndIncrement() : iteration.get();
+			
+			// Process training sample(s) for this iteration on the replica
+			LearnProgress p = worker.processIteration(it);
+
+			// Check for NaN
+			if(Float.isNaN(p.minibatchLoss)){
+				throw new Exception("Learner error became NaN");
+			}
+			
+			worker.calculateDelta();
+			
+			if(barrier == null){
+				// Update the shared parameters and continue from there
+				parameterLock.readLock().lock();
+				try {
+					worker.pushDelta(nns, locked);
+					worker.refresh(nns);
+				} finally {
+					parameterLock.readLock().unlock();
+				}
+				
+				publishIteration(it, p);
+			} else {
+				// Wait for all workers to apply the average update
+				round[index] = p;
+				try {
+					barrier.await();
+				} catch(BrokenBarrierException e){
+					// barrier is broken when stopping or when another worker failed
+					return;
+				}
+				worker.refresh(nns);
+			}
+		}
+	}
+	
 	@Override
 	public void stop() {
 		if(!learning)
@@ -306,7 +548,7 @@ public class LearnerImpl implements Learner {
 			
 			Map<UUID, Tensor> preprocessorParameters = new HashMap<>();
 			nn.getPreprocessors().entrySet().stream().forEach(e -> preprocessorParameters.put(e.getKey(), e.getValue().getParameters()));
-			nn.storeParameters(preprocessorParameters, config.tag);
+			storeParameters(nn, preprocessorParameters, config.tag);
 		} finally {
 			datasets.releaseDataset(preprocessSet);
 		}
@@ -334,6 +576,28 @@ public class LearnerImpl implements Learner {
 	 * Publish parameters (or deltas ) to the repository
 	 */
 	private void publishParameters(NeuralNetwork nn){
+		ParameterServer ps = parameterServer;
+		if(ps != null){
+			// Publish delta and fetch the merged parameters in a single call
+			Map<UUID, Tensor> previous = previousParameters.get(nn.getId());
+			Map<UUID, Tensor> deltaParameters = nn.getTrainables().entrySet().stream()
+					.filter(e -> previous.containsKey(e.getKey()))
+					.collect(Collectors.toMap(e -> e.getKey(), e -> TensorOps.sub(null,
+							e.getValue().getParameters(), previous.get(e.getKey()))));
+			
+			Map<UUID, Tensor> parameters = ps.accParameters(nn.getId(), deltaParameters, config.tag);
+			deltaParameters.values().forEach(Tensor::release);
+			
+			nn.setParameters(parameters);
+			parameters.entrySet().forEach(e -> {
+				Tensor old = previous.put(e.getKey(), e.getValue());
+				if(old != null){
+					old.release();
+				}
+			});
+			return;
+		}
+		
 		// Publish delta
 		nn.storeDeltaParameters(previousParameters.get(nn.getId()), config.tag);
 				
@@ -354,7 +618,7 @@ public class LearnerImpl implements Learner {
 		nn.randomizeParameters();
 		
 		// Store new parameters
-		nn.storeParameters(config.tag);
+		storeParameters(nn, nn.getParameters(), config.tag);
 		
 		// Update previous parameters
 		previousParameters.put(nn.getId(), nn.getParameters().entrySet().stream().collect(
@@ -365,7 +629,14 @@ public class LearnerImpl implements Learner {
 	 * Load parameters from the repository and store in previousParameters
 	 */
 	private void loadParameters(NeuralNetwork nn, String tag) throws Exception {
-		previousParameters.put(nn.getId(), nn.loadParameters(tag));
+		ParameterServer ps = parameterServer;
+		if(ps != null){
+			Map<UUID, Tensor> parameters = ps.loadParameters(nn.getNeuralNetworkInstance().modules.keySet(), tag);
+			nn.setParameters(parameters);
+			previousParameters.put(nn.getId(), parameters);
+		} else {
+			previousParameters.put(nn.getId(), nn.loadParameters(tag));
+		}
 		
 		// TODO should this be handled somewhere else?
 		
@@ -379,12 +650,24 @@ public class LearnerImpl implements Learner {
 			}
 			
 			// store and update previous again
-			nn.storeParameters(tag);
+			storeParameters(nn, nn.getParameters(), tag);
 			previousParameters.put(nn.getId(), nn.getParameters().entrySet().stream().collect(
 					Collectors.toMap(e -> e.getKey(), e -> e.getValue().copyInto(null))));
 		}
 	}
 	
+	/**
+	 * Store parameters, via the parameter server if available
+	 */
+	private void storeParameters(NeuralNetwork nn, Map<UUID, Tensor> parameters, String tag){
+		ParameterServer ps = parameterServer;
+		if(ps != null){
+			ps.storeParameters(nn.getId(), parameters, tag);
+		} else {
+			nn.storeParameters(parameters, tag);
+		}
+	}
+	
 	@Activate
 	void activate(BundleContext context){
 		this.learnerId = UUID.fromString(context.getProperty(Constants.FRAMEWORK_UUID));
@@ -399,6 +682,30 @@ public class LearnerImpl implements Learner {
 	void setDianneDatasets(DianneDatasets d){
 		datasets = d;
 	}
+	
+	@Reference(cardinality=ReferenceCardinality.OPTIONAL, 
+			policy=ReferencePolicy.DYNAMIC)
+	void setParameterServer(ParameterServer ps){
+		parameterServer = ps;
+	}
+	
+	void unsetParameterServer(ParameterServer ps){
+		if(parameterServer == ps){
+			parameterServer = null;
+		}
+	}
+	
+	@Reference(cardinality=ReferenceCardinality.OPTIONAL, 
+			policy=ReferencePolicy.DYNAMIC)
+	void setDiannePlatform(DiannePlatform p){
+		platform = p;
+	}
+	
+	void unsetDiannePlatform(DiannePlatform p){
+		if(platform == p){
+			platform = null;
+		}
+	}
 
 	@Reference
 	void setLearningStrategyFactory(StrategyFactory<LearningStrategy> f){
@@ -0,0 +1,176 @@
+/*******************************************************************************
+ * DIANNE  - Framework for distributed artificial neural networks
+ * Copyright (C) 2015  iMinds - IBCN - UGent
+ *
+ * This file is part of DIANNE.
+ *
+ * DIANNE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contributors:
+ *     Tim Verbelen, Steven Bohez
+ *******************************************************************************/
+package be.iminds.iot.dianne.nn.learn;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import be.iminds.iot.dianne.api.dataset.Dataset;
+import be.iminds.iot.dianne.api.nn.NeuralNetwork;
+import be.iminds.iot.dianne.api.nn.learn.LearnProgress;
+import be.iminds.iot.dianne.api.nn.learn.LearningStrategy;
+import be.iminds.iot.dianne.api.nn.module.Trainable;
+import be.iminds.iot.dianne.tensor.Tensor;
+import be.iminds.iot.dianne.tensor.TensorOps;
+
+/**
+ * A worker of a multi-threaded Learner. Each worker runs its own LearningStrategy
+ * on its own replica of the neural network(s), and exchanges parameter updates
+ * with the shared parameters of the Learner.
+ * 
+ * The update of a worker is the difference between its replica parameters and 
+ * the parameters at the last refresh, which makes this independent of the 
+ * gradient processor used by the strategy.
+ * 
+ * @author tverbele
+ *
+ */
+class LearnerWorker {
+
+	private final NeuralNetwork[] replicas;
+	private final LearningStrategy strategy;
+	
+	// parameters of the replicas at the last refresh
+	private final List<Map<UUID, Tensor>> previous;
+	// update calculated by this worker since the last refresh
+	private final List<Map<UUID, Tensor>> deltas;
+	
+	LearnerWorker(LearningStrategy strategy, NeuralNetwork... replicas){
+		this.strategy = strategy;
+		this.replicas = replicas;
+		this.previous = new ArrayList<>(replicas.length);
+		this.deltas = new ArrayList<>(replicas.length);
+		for(int k=0;k<replicas.length;k++){
+			previous.add(new HashMap<>());
+			deltas.add(new HashMap<>());
+		}
+	}
+	
+	void setup(Map<String, String> config, Dataset dataset) throws Exception {
+		strategy.setup(config, dataset, replicas);
+	}
+	
+	LearnProgress processIteration(long i) throws Exception {
+		return strategy.processIteration(i);
+	}
+	
+	/**
+	 * Calculate the update of this worker since the last refresh
+	 */
+	void calculateDelta(){
+		for(int k=0;k<replicas.length;k++){
+			for(Map.Entry<UUID, Trainable> e : replicas[k].getTrainables().entrySet()){
+				Trainable t = e.getValue();
+				if(t.isFixed())
+					continue;
+				
+				UUID moduleId = e.getKey();
+				deltas.get(k).put(moduleId, TensorOps.sub(deltas.get(k).get(moduleId), t.getParameters(), previous.get(k).get(moduleId)));
+			}
+		}
+	}
+	
+	/**
+	 * Add the update of this worker to the shared parameters, 
+	 * synchronizing on the shared module parameters when locked.
+	 */
+	void pushDelta(NeuralNetwork[] shared, boolean locked){
+		for(int k=0;k<replicas.length;k++){
+			Map<UUID, Trainable> trainables = shared[k].getTrainables();
+			for(Map.Entry<UUID, Tensor> e : deltas.get(k).entrySet()){
+				Tensor parameters = trainables.get(e.getKey()).getParameters();
+				if(locked){
+					synchronized(parameters){
+						TensorOps.add(parameters, parameters, e.getValue());
+					}
+				} else {
+					TensorOps.add(parameters, parameters, e.getValue());
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Add the average update of all workers to the shared parameters
+	 */
+	static void pushAverageDelta(NeuralNetwork[] shared, LearnerWorker[] workers){
+		float scale = 1.0f/workers.length;
+		for(int k=0;k<shared.length;k++){
+			Map<UUID, Trainable> trainables = shared[k].getTrainables();
+			for(LearnerWorker w : workers){
+				for(Map.Entry<UUID, Tensor> e : w.deltas.get(k).entrySet()){
+					Tensor parameters = trainables.get(e.getKey()).getParameters();
+					TensorOps.add(parameters, parameters, scale, e.getValue());
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Copy the shared parameters into the replicas
+	 */
+	void refresh(NeuralNetwork[] shared){
+		for(int k=0;k<replicas.length;k++){
+			Map<UUID, Trainable> trainables = shared[k].getTrainables();
+			for(Map.Entry<UUID, Trainable> e : replicas[k].getTrainables().entrySet()){
+				Trainable t = e.getValue();
+				if(t.isFixed())
+					continue;
+				
+				UUID moduleId = e.getKey();
+				Tensor parameters = trainables.get(moduleId).getParameters();
+				parameters.copyInto(t.getParameters());
+				previous.get(k).put(moduleId, parameters.copyInto(previous.get(k).get(moduleId)));
+			}
+		}
+	}
+	
+	/**
+	 * Copy all shared parameters into the replicas, including preprocessor and fixed module parameters
+	 */
+	void initialize(NeuralNetwork[] shared){
+		for(int k=0;k<replicas.length;k++){
+			replicas[k].setParameters(shared[k].getParameters());
+			for(Map.Entry<UUID, Trainable> e : shared[k].getTrainables().entrySet()){
+				Trainable t = replicas[k].getTrainables().get(e.getKey());
+				if(t != null)
+					t.setFixed(e.getValue().isFixed());
+			}
+		}
+		refresh(shared);
+	}
+	
+	void release(){
+		strategy.cleanup();
+		
+		for(int k=0;k<replicas.length;k++){
+			previous.get(k).values().forEach(Tensor::release);
+			deltas.get(k).values().forEach(Tensor::release);
+			previous.get(k).clear();
+			deltas.get(k).clear();
+		}
+	}
+}
@@ -26,6 +26,12 @@ import java.util.UUID;
 
 public class LearnerConfig {
 
+	public enum ParameterUpdate {
+		HOGWILD,
+		LOCKED,
+		AVERAGE
+	}
+
 	/**
 	 * The tag under which to publish the trained parameters
 	 */
@@ -75,4 +81,16 @@ public class LearnerConfig {
 	 * module UUIDs to fix in this learn job - these modules won't get parameter updates
 	 */
 	public UUID[] fixed = new UUID[]{};
+	
+	/**
+	 * Number of worker threads, each training on its own replica of the neural network(s)
+	 */
+	public int workers = 1;
+	
+	/**
+	 * How workers update the shared parameters in case of multiple workers: 
+	 * HOGWILD adds the updates without locking, LOCKED locks per module 
+	 * and AVERAGE synchronously applies the average update of all workers
+	 */
+	public ParameterUpdate parameterUpdate = ParameterUpdate.HOGWILD;
 }
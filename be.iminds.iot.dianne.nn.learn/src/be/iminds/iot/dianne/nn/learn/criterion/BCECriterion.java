@@ -76,7 +76,9 @@ public class BCECriterion implements Criterion {
 		if(b.batchSize > 1){
 			loss.reshape(b.batchSize);
 			for(int i=0;i<b.batchSize;i++){
-				loss.set(-TensorOps.sum(l.select(0, i)), i);
+				Tensor s = l.select(0, i);
+				loss.set(-TensorOps.sum(s), i);
+				s.release();
 			}
 		} else {
 			loss.set(-TensorOps.sum(l), 0);
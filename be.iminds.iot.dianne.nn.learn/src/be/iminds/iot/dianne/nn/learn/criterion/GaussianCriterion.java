@@ -62,9 +62,12 @@ public class GaussianCriterion implements Criterion {
 		int size = params.size(dim)/2;
 		
 		Tensor mean = params.narrow(dim, 0, size);
-		stdev = TensorOps.add(stdev, params.narrow(dim, size, size), EPS);
+		Tensor s = params.narrow(dim, size, size);
+		stdev = TensorOps.add(stdev, s, EPS);
 		
 		meanDiff = TensorOps.sub(meanDiff, data, mean);
+		mean.release();
+		s.release();
 		
 		l = TensorOps.cdiv(l, meanDiff, stdev);
 		TensorOps.cmul(l, l, l);
@@ -76,7 +79,9 @@ public class GaussianCriterion implements Criterion {
 		if(b.batchSize > 1){
 			loss.reshape(b.batchSize);
 			for(int i=0;i<b.batchSize;i++){
-				loss.set(TensorOps.sum(l.select(0, i)), i);
+				Tensor li = l.select(0, i);
+				loss.set(TensorOps.sum(li), i);
+				li.release();
 			}
 		} else {
 			loss.set(TensorOps.sum(l), 0);
@@ -92,7 +97,9 @@ public class GaussianCriterion implements Criterion {
 		
 		grad = params.copyInto(grad);
 		
-		stdev = TensorOps.add(stdev, params.narrow(dim, size, size), EPS);
+		Tensor s = params.narrow(dim, size, size);
+		stdev = TensorOps.add(stdev, s, EPS);
+		s.release();
 		Tensor gradMean = grad.narrow(dim, 0, size);
 		Tensor gradStdev = grad.narrow(dim, size, size);
 		
@@ -107,6 +114,9 @@ public class GaussianCriterion implements Criterion {
 		TensorOps.add(gradStdev, gradStdev, 1);
 		TensorOps.div(gradStdev, gradStdev, 2);
 		
+		gradMean.release();
+		gradStdev.release();
+		
 		if(b.batchAverage){
 			TensorOps.div(grad, grad, b.batchSize);
 		}
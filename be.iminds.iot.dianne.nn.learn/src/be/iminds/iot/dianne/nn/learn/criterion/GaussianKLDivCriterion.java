@@ -62,8 +62,12 @@ public class GaussianKLDivCriterion implements Criterion {
 		//      = ((s_out / s_tar)^2 + ((mu_out - mu_tar) / s_tar)^2 - log((s_out / s_tar)^2) - 1) / 2
 		Tensor outMean = output.narrow(dim, 0, size);
 		Tensor tarMean = target.narrow(dim, 0, size);
-		outStdev = TensorOps.add(outStdev, output.narrow(dim, size, size), EPS);
-		tarStdev = TensorOps.add(tarStdev, target.narrow(dim, size, size), EPS);
+		Tensor outS = output.narrow(dim, size, size);
+		Tensor tarS = target.narrow(dim, size, size);
+		outStdev = TensorOps.add(outStdev, outS, EPS);
+		tarStdev = TensorOps.add(tarStdev, tarS, EPS);
+		outS.release();
+		tarS.release();
 		
 		l = TensorOps.sub(l, outMean, tarMean);
 		l = TensorOps.cdiv(l, l, tarStdev);
@@ -79,10 +83,15 @@ public class GaussianKLDivCriterion implements Criterion {
 		TensorOps.sub(l, l, 1);
 		TensorOps.div(l, l, 2);
 		
+		outMean.release();
+		tarMean.release();
+		
 		if(b.batchSize > 1){
 			loss.reshape(b.batchSize);
 			for(int i=0;i<b.batchSize;i++){
-				loss.set(TensorOps.sum(l.select(0, i)), i);
+				Tensor li = l.select(0, i);
+				loss.set(TensorOps.sum(li), i);
+				li.release();
 			}
 		} else {
 			loss.set(TensorOps.sum(l), 0);
@@ -100,8 +109,12 @@ public class GaussianKLDivCriterion implements Criterion {
 		
 		Tensor outMean = output.narrow(dim, 0, size);
 		Tensor tarMean = target.narrow(dim, 0, size);
-		outStdev = TensorOps.add(outStdev, output.narrow(dim, size, size), EPS);
-		tarStdev = TensorOps.add(tarStdev, target.narrow(dim, size, size), EPS);
+		Tensor outS = output.narrow(dim, size, size);
+		Tensor tarS = target.narrow(dim, size, size);
+		outStdev = TensorOps.add(outStdev, outS, EPS);
+		tarStdev = TensorOps.add(tarStdev, tarS, EPS);
+		outS.release();
+		tarS.release();
 		Tensor gradMean = grad.narrow(dim, 0, size);
 		Tensor gradStdev = grad.narrow(dim, size, size);
 		
@@ -116,6 +129,11 @@ public class GaussianKLDivCriterion implements Criterion {
 		TensorOps.cdiv(gradStdev, outStdev, sqTarStdev);
 		TensorOps.sub(gradStdev, gradStdev, invOutStdev);
 		
+		outMean.release();
+		tarMean.release();
+		gradMean.release();
+		gradStdev.release();
+		
 		if(b.batchAverage){
 			TensorOps.div(grad, grad, b.batchSize);
 		}
@@ -132,8 +150,12 @@ public class GaussianKLDivCriterion implements Criterion {
 		
 		Tensor outMean = output.narrow(dim, 0, size);
 		Tensor tarMean = target.narrow(dim, 0, size);
-		outStdev = TensorOps.add(outStdev, output.narrow(dim, size, size), EPS);
-		tarStdev = TensorOps.add(tarStdev, target.narrow(dim, size, size), EPS);
+		Tensor outS = output.narrow(dim, size, size);
+		Tensor tarS = target.narrow(dim, size, size);
+		outStdev = TensorOps.add(outStdev, outS, EPS);
+		tarStdev = TensorOps.add(tarStdev, tarS, EPS);
+		outS.release();
+		tarS.release();
 		Tensor gradMean = grad.narrow(dim, 0, size);
 		Tensor gradStdev = grad.narrow(dim, size, size);
 		
@@ -155,6 +177,11 @@ public class GaussianKLDivCriterion implements Criterion {
 		TensorOps.add(gradStdev, gradStdev, 0.5f);
 		TensorOps.cdiv(gradStdev, gradStdev, tarStdev);
 		
+		outMean.release();
+		tarMean.release();
+		gradMean.release();
+		gradStdev.release();
+		
 		if(b.batchAverage){
 			TensorOps.div(grad, grad, b.batchSize);
 		}
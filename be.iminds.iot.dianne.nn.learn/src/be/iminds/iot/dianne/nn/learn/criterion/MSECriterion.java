@@ -55,6 +55,7 @@ public class MSECriterion implements Criterion {
 			for(int i=0;i<b.batchSize;i++){
 				Tensor l = diff.select(0, i);
 				loss.set(TensorOps.dot(l, l)/div, i);
+				l.release();
 			}
 		} else {
 			loss.set(TensorOps.dot(diff, diff), 0);
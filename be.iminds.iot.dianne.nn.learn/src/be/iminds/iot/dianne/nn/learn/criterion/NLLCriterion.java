@@ -61,7 +61,11 @@ public class NLLCriterion implements Criterion {
 		if(b.batchSize > 1){
 			loss.reshape(b.batchSize);
 			for(int i=0;i<b.batchSize;i++){
-				loss.set(-TensorOps.dot(log==null ? output.select(0, i) : log.select(0, i) , target.select(0,  i)), i);
+				Tensor o = log==null ? output.select(0, i) : log.select(0, i);
+				Tensor t = target.select(0,  i);
+				loss.set(-TensorOps.dot(o, t), i);
+				o.release();
+				t.release();
 			}
 		} else {
 			loss.set(-TensorOps.dot(log==null ? output : log , target), 0);
@@ -60,6 +60,7 @@ public class PseudoHuberCriterion implements Criterion {
 			for(int i=0;i<b.batchSize;i++){
 				Tensor s = sqrt.select(0, i);
 				loss.set((TensorOps.sum(s) - s.size())/div, i);
+				s.release();
 			}
 		} else {
 			loss.set((TensorOps.sum(sqrt) - sqrt.size()), 0);
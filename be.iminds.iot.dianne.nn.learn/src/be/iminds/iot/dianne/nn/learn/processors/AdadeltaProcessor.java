@@ -29,8 +29,8 @@ import java.util.UUID;
 import be.iminds.iot.dianne.api.nn.NeuralNetwork;
 import be.iminds.iot.dianne.api.nn.learn.GradientProcessor;
 import be.iminds.iot.dianne.nn.learn.processors.config.AdadeltaConfig;
+import be.iminds.iot.dianne.tensor.ModuleOps;
 import be.iminds.iot.dianne.tensor.Tensor;
-import be.iminds.iot.dianne.tensor.TensorOps;
 
 public class AdadeltaProcessor extends GradientProcessor {
 
@@ -38,8 +38,6 @@ public class AdadeltaProcessor extends GradientProcessor {
 	
 	private final Map<UUID, Tensor> meanSquaredGradient = new HashMap<>();
 	private final Map<UUID, Tensor> meanSquaredDelta = new HashMap<>();
-
-	private Tensor squared = null;
 	
 	public AdadeltaProcessor(NeuralNetwork nn, AdadeltaConfig config) {
 		super(nn);
@@ -52,46 +50,24 @@ public class AdadeltaProcessor extends GradientProcessor {
 		nn.getTrainables().entrySet().stream().forEach(e -> {
 			Tensor deltaParams = e.getValue().getDeltaParameters();
 			
-			// calculate mean squared gradient
-			squared = deltaParams.copyInto(squared);
-			squared = TensorOps.cmul(squared, squared, squared);
-			
-			Tensor mSq = meanSquaredGradient.get(e.getKey());
-			if(mSq == null){
-				mSq = TensorOps.mul(mSq, squared, (1-config.decayRate));
-			} else {
-				mSq = TensorOps.mul(mSq, mSq, config.decayRate);
-				mSq = TensorOps.add(mSq, mSq, (1-config.decayRate), squared);
-			}
-			meanSquaredGradient.put(e.getKey(), mSq);
-			
-			// calculate delta update
-			Tensor deltaSq = meanSquaredDelta.get(e.getKey());
-			if(deltaSq==null){
-				deltaSq = new Tensor(deltaParams.dims());
-				deltaSq.fill((float)1e-8);
-				meanSquaredDelta.put(e.getKey(), deltaSq);
-			} 
+			Tensor mSq = meanSquaredGradient.computeIfAbsent(e.getKey(), k -> {
+				Tensor t = new Tensor(deltaParams.dims());
+				t.fill(0.0f);
+				return t;
+			});
 			
-			// divide mean squared delta by mean squared gradient + epsilon
-			// update = - RMS(delta)/RMS(grad) * grad
-			TensorOps.add(squared, mSq, config.epsilon);
-			TensorOps.cdiv(squared, deltaSq, squared);
+			Tensor deltaSq = meanSquaredDelta.computeIfAbsent(e.getKey(), k -> {
+				Tensor t = new Tensor(deltaParams.dims());
+				t.fill((float)1e-8);
+				return t;
+			});
 			
-			TensorOps.sqrt(squared, squared);
-			TensorOps.cmul(deltaParams, deltaParams, squared);
-			TensorOps.mul(deltaParams, deltaParams, -1);
-			
-			
-			// calculate new mean delta squared
-			deltaSq = TensorOps.mul(deltaSq, deltaSq, config.decayRate);
-			deltaParams.copyInto(squared);
-			squared = TensorOps.cmul(squared, squared, squared);
-			deltaSq = TensorOps.add(deltaSq, deltaSq, (1-config.decayRate), squared);
+			// update mean squared gradient, calculate update = - RMS(delta)/RMS(grad) * grad
+			// and update mean squared delta in a single pass
+			ModuleOps.adadeltaUpdate(deltaParams, mSq, deltaSq, config.decayRate, config.epsilon);
 			
 			// set DeltaParameters to be sure in case of remote module instance
 			e.getValue().setDeltaParameters(deltaParams);
 		});
 	}
-
 }
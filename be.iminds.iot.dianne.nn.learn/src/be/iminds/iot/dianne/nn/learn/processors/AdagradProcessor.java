@@ -29,15 +29,14 @@ import java.util.UUID;
 import be.iminds.iot.dianne.api.nn.NeuralNetwork;
 import be.iminds.iot.dianne.api.nn.learn.GradientProcessor;
 import be.iminds.iot.dianne.nn.learn.processors.config.AdagradConfig;
+import be.iminds.iot.dianne.tensor.ModuleOps;
 import be.iminds.iot.dianne.tensor.Tensor;
-import be.iminds.iot.dianne.tensor.TensorOps;
 
 public class AdagradProcessor extends GradientProcessor {
 
 	private final AdagradConfig config;
 	
 	private final Map<UUID, Tensor> accumulatedSquared = new HashMap<>();
-	private Tensor squared = null;
 	
 	public AdagradProcessor(NeuralNetwork nn, AdagradConfig config ) {
 		super(nn);
@@ -50,30 +49,17 @@ public class AdagradProcessor extends GradientProcessor {
 		nn.getTrainables().entrySet().stream().forEach(e -> {
 			Tensor deltaParams = e.getValue().getDeltaParameters();
 			
-			// accumulated squared gradients
-			squared = deltaParams.copyInto(squared);
-			squared = TensorOps.cmul(squared, squared, squared);
+			Tensor accSq = accumulatedSquared.computeIfAbsent(e.getKey(), k -> {
+				Tensor t = new Tensor(deltaParams.dims());
+				t.fill(0.0f);
+				return t;
+			});
 			
-			Tensor accSq = accumulatedSquared.get(e.getKey());
-			if(accSq == null){
-				accSq = squared.copyInto(accSq);
-			} else {
-				accSq = TensorOps.add(accSq, accSq, squared);
-			}
-			accumulatedSquared.put(e.getKey(), accSq);
-
-			// deltaparams = - learning_rate * dx / np.sqrt(accSq + epsilon)
-			TensorOps.mul(deltaParams, deltaParams, -config.learningRate);
-			
-			// add 1e-8 to avoid div by zero, reuse squared tensor for this
-			TensorOps.add(squared, accSq, config.epsilon);
-			
-			// now div by cached tensor
-			TensorOps.cdiv(deltaParams, deltaParams, squared);
+			// accumulate squared gradients and set deltaparams = - learning_rate * dx / np.sqrt(accSq + epsilon)
+			ModuleOps.adagradUpdate(deltaParams, accSq, config.learningRate, config.epsilon);
 			
 			// set DeltaParameters to be sure in case of remote module instance
 			e.getValue().setDeltaParameters(deltaParams);
 		});
 	}
-
 }
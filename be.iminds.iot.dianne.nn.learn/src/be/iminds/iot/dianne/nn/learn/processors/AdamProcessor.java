@@ -29,8 +29,8 @@ import java.util.UUID;
 import be.iminds.iot.dianne.api.nn.NeuralNetwork;
 import be.iminds.iot.dianne.api.nn.learn.GradientProcessor;
 import be.iminds.iot.dianne.nn.learn.processors.config.AdamConfig;
+import be.iminds.iot.dianne.tensor.ModuleOps;
 import be.iminds.iot.dianne.tensor.Tensor;
-import be.iminds.iot.dianne.tensor.TensorOps;
 
 public class AdamProcessor extends GradientProcessor {
 
@@ -38,9 +38,6 @@ public class AdamProcessor extends GradientProcessor {
 	
 	private final Map<UUID, Tensor> mts = new HashMap<>();
 	private final Map<UUID, Tensor> vts = new HashMap<>();
-
-	private Tensor squared = null;
-	private Tensor root_v = null;
 	
 	public AdamProcessor( NeuralNetwork nn, AdamConfig config) {
 		super(nn);
@@ -50,47 +47,33 @@ public class AdamProcessor extends GradientProcessor {
 	
 	@Override
 	public void updateDelta(long i) {
+		// bias corrected step size
+		float beta1_t = (float) Math.pow(config.beta1, i+1);
+		float beta2_t = (float) Math.pow(config.beta2, i+1);
+		float at = (float) (config.learningRate*Math.sqrt(1-beta2_t)/(1-beta1_t));
+		
 		nn.getTrainables().entrySet().stream().forEach(e -> {
 			Tensor deltaParams = e.getValue().getDeltaParameters();
 			
-			// update biased first momentum estimate
-			Tensor mt = mts.get(e.getKey());
-			if(mt == null){
-				mt = new Tensor(deltaParams.dims());
-				mts.put(e.getKey(), mt);
-				mt.fill(0.0f);
-			}
-			mt = TensorOps.mul(mt, mt, config.beta1);
-			mt = TensorOps.add(mt, mt, 1-config.beta1, deltaParams);
+			// biased first momentum estimate
+			Tensor mt = mts.computeIfAbsent(e.getKey(), k -> {
+				Tensor t = new Tensor(deltaParams.dims());
+				t.fill(0.0f);
+				return t;
+			});
 			
-			// update biased second raw momentum estimate
-			squared = deltaParams.copyInto(squared);
-			squared = TensorOps.cmul(squared, squared, squared);
+			// biased second raw momentum estimate
+			Tensor vt = vts.computeIfAbsent(e.getKey(), k -> {
+				Tensor t = new Tensor(deltaParams.dims());
+				t.fill(0.0f);
+				return t;
+			});
 			
-			Tensor vt = vts.get(e.getKey());
-			if(vt == null){
-				vt = new Tensor(deltaParams.dims());
-				vts.put(e.getKey(), vt);
-				vt.fill(0.0f);
-			}
-			vt = TensorOps.mul(vt, vt, config.beta2);
-			vt = TensorOps.add(vt, vt, 1-config.beta2, squared);	
-			
-			
-			// update delta params
-			float beta1_t = (float) Math.pow(config.beta1, i+1);
-			float beta2_t = (float) Math.pow(config.beta2, i+1);
-
-			float at = (float) (config.learningRate*Math.sqrt(1-beta2_t)/(1-beta1_t));
-			
-			root_v = TensorOps.sqrt(root_v, vt);
-			root_v = TensorOps.add(root_v, root_v, config.epsilon);
-			deltaParams = TensorOps.cdiv(deltaParams, mt, root_v);
-			deltaParams = TensorOps.mul(deltaParams, deltaParams, -at);
+			// update both estimates and calculate delta params in a single pass
+			ModuleOps.adamUpdate(deltaParams, mt, vt, config.beta1, config.beta2, at, config.epsilon);
 			
 			// set DeltaParameters to be sure in case of remote module instance
 			e.getValue().setDeltaParameters(deltaParams);
 		});
 	}
-
 }
@@ -28,8 +28,8 @@ import java.util.UUID;
 
 import be.iminds.iot.dianne.api.nn.learn.GradientProcessor;
 import be.iminds.iot.dianne.nn.learn.processors.config.MomentumConfig;
+import be.iminds.iot.dianne.tensor.ModuleOps;
 import be.iminds.iot.dianne.tensor.Tensor;
-import be.iminds.iot.dianne.tensor.TensorOps;
 
 /**
  * Additional learning techniques like Momentum can be implemented as a Processor decorator
@@ -56,8 +56,8 @@ public class MomentumProcessor extends GradientProcessor {
 				return t;
 			});
 			
-			TensorOps.add(deltaParams, deltaParams, config.momentum, momentum);
-			deltaParams.copyInto(momentum);
+			// deltaParams += momentum * previous deltaParams, kept as new momentum
+			ModuleOps.momentumUpdate(deltaParams, momentum, config.momentum);
 			
 			// Set DeltaParameters to be sure in case of remote module instance
 			m.setDeltaParameters(deltaParams);
@@ -28,8 +28,8 @@ import java.util.UUID;
 
 import be.iminds.iot.dianne.api.nn.learn.GradientProcessor;
 import be.iminds.iot.dianne.nn.learn.processors.config.NesterovConfig;
+import be.iminds.iot.dianne.tensor.ModuleOps;
 import be.iminds.iot.dianne.tensor.Tensor;
-import be.iminds.iot.dianne.tensor.TensorOps;
 
 /**
  * Additional learning techniques like Momentum can be implemented as a Processor decorator
@@ -38,7 +38,6 @@ public class NesterovMomentumProcessor extends GradientProcessor {
 
 	private final NesterovConfig config;
 	
-	private Map<UUID, Tensor> previousVelocity = new HashMap<UUID, Tensor>();
 	private Map<UUID, Tensor> velocity = new HashMap<UUID, Tensor>();
 	
 	public NesterovMomentumProcessor( GradientProcessor p, NesterovConfig config) {
@@ -48,47 +47,20 @@ public class NesterovMomentumProcessor extends GradientProcessor {
 	
 	@Override
 	public void updateDelta(long i) {
-		// copy to previous velocity
-		velocity.entrySet().stream().forEach(e -> {
-			Tensor v = e.getValue();
-			if(v!=null){
-				Tensor prev = previousVelocity.get(e.getKey());
-				previousVelocity.put(e.getKey(), v.copyInto(prev));
-			}
-		});
-		
-		// update velocity
 		nn.getTrainables().entrySet().stream().forEach(e -> {
 			Tensor deltaParams = e.getValue().getDeltaParameters();
-			Tensor v = velocity.get(e.getKey());
-			if(v!=null){
-				v = TensorOps.add(v, deltaParams, config.nesterov , v);
-			} else {
-				// if no velocity yet, just copy deltaParams
-				v = deltaParams.copyInto(v);
-			}
-			velocity.put(e.getKey(), v);
-		});
-		
-		// update delta parameters
-		nn.getTrainables().entrySet().stream().forEach(e -> {
-	
-			// deltaParams = -momentum*v_prev + (1+momentum) * v (http://cs231n.github.io/neural-networks-3/)
-			Tensor deltaParams = e.getValue().getDeltaParameters();
-	
-			Tensor prev = previousVelocity.get(e.getKey());
-			if(prev!=null){
-				TensorOps.mul(deltaParams, prev, -config.nesterov);
-			} else {
-				deltaParams.fill(0.0f);
-			}
+			Tensor v = velocity.computeIfAbsent(e.getKey(), k -> {
+				Tensor t = new Tensor(deltaParams.dims());
+				t.fill(0.0f);
+				return t;
+			});
 			
-			Tensor v = velocity.get(e.getKey());
-			TensorOps.add(deltaParams, deltaParams , (1+config.nesterov), v);
+			// v = deltaParams + momentum*v_prev
+			// deltaParams = -momentum*v_prev + (1+momentum) * v (http://cs231n.github.io/neural-networks-3/)
+			ModuleOps.nesterovUpdate(deltaParams, v, config.nesterov);
 			
 			// set DeltaParameters to be sure in case of remote module instance
 			e.getValue().setDeltaParameters(deltaParams);
 		});
 	}
-
 }
@@ -29,16 +29,14 @@ import java.util.UUID;
 import be.iminds.iot.dianne.api.nn.NeuralNetwork;
 import be.iminds.iot.dianne.api.nn.learn.GradientProcessor;
 import be.iminds.iot.dianne.nn.learn.processors.config.RMSpropConfig;
+import be.iminds.iot.dianne.tensor.ModuleOps;
 import be.iminds.iot.dianne.tensor.Tensor;
-import be.iminds.iot.dianne.tensor.TensorOps;
 
 public class RMSpropProcessor extends GradientProcessor {
 
 	private final RMSpropConfig config;
 	
 	private final Map<UUID, Tensor> meanSquared = new HashMap<>();
-
-	private Tensor squared = null;
 	
 	public RMSpropProcessor( NeuralNetwork nn, RMSpropConfig config) {
 		super(nn);
@@ -51,32 +49,17 @@ public class RMSpropProcessor extends GradientProcessor {
 		nn.getTrainables().entrySet().stream().forEach(e -> {
 			Tensor deltaParams = e.getValue().getDeltaParameters();
 			
-			// calculate mean squared
-			squared = deltaParams.copyInto(squared);
-			squared = TensorOps.cmul(squared, squared, squared);
-			
-			Tensor mSq = meanSquared.get(e.getKey());
-			if(mSq == null){
-				mSq = TensorOps.mul(mSq, squared, (1-config.decayRate));
-			} else {
-				mSq = TensorOps.mul(mSq, mSq, config.decayRate);
-				mSq = TensorOps.add(mSq, mSq, (1-config.decayRate), squared);
-			}
-			meanSquared.put(e.getKey(), mSq);
-
-			// delta params = - learning_rate * dx / np.sqrt(meanSquared + epsilon)
-			TensorOps.mul(deltaParams, deltaParams, -config.learningRate);
+			Tensor mSq = meanSquared.computeIfAbsent(e.getKey(), k -> {
+				Tensor t = new Tensor(deltaParams.dims());
+				t.fill(0.0f);
+				return t;
+			});
 			
-			// add 1e-8 to avoid div by zero, reuse squared tensor for this
-			TensorOps.add(squared, mSq, config.epsilon);
-			TensorOps.sqrt(squared, squared);
-			
-			// now div by cached tensor
-			TensorOps.cdiv(deltaParams, deltaParams, squared);
+			// update mean squared and set delta params = - learning_rate * dx / np.sqrt(meanSquared + epsilon)
+			ModuleOps.rmspropUpdate(deltaParams, mSq, config.learningRate, config.decayRate, config.epsilon);
 			
 			// set DeltaParameters to be sure in case of remote module instance
 			e.getValue().setDeltaParameters(deltaParams);
 		});
 	}
-
 }
@@ -22,9 +22,17 @@
  *******************************************************************************/
 package be.iminds.iot.dianne.nn.learn.sampling;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 import be.iminds.iot.dianne.api.dataset.Batch;
 import be.iminds.iot.dianne.api.dataset.Dataset;
@@ -34,7 +42,13 @@ import be.iminds.iot.dianne.nn.learn.sampling.config.BatchSamplerConfig;
 import be.iminds.iot.dianne.nn.util.DianneConfigHandler;
 
 /**
- * Utility class that samples next batch in separate thread
+ * Utility class that prefetches the next batches in separate threads
+ * 
+ * A ring of prefetchDepth batches is used: one is in use by the learner, the others are 
+ * filled in the background. Batches are sampled in order on a single thread, so the sampling
+ * strategy behaves exactly as when sampling synchronously, while the samples of a batch are 
+ * fetched in parallel by prefetchThreads workers. When the learner falls behind, no new batches
+ * are fetched until it releases one.
  * 
  * @author tverbele
  *
@@ -46,18 +60,35 @@ public class BatchSampler {
 	private final BatchSamplerConfig config;
 	
 	private Batch batchInUse = null;
-	private Batch batchBuffer = null;
-	private volatile boolean ready = false;
+	// batches that are being fetched, in order
+	private final ArrayDeque<Future<Batch>> pending = new ArrayDeque<>();
+	private int allocated = 0;
+	
+	private final ExecutorService fetcher;
+	private final ExecutorService workers;
 	
-	private Executor fetcher = Executors.newSingleThreadExecutor();
+	// prefetch metrics of the last batch
+	private int queued = 0;
+	private float waitTime = 0;
 	
 	public BatchSampler(Dataset d, SamplingConfig samplingStrategy, Map<String, String> config){
 		this.dataset = d;
 		this.sampling = SamplingFactory.createSamplingStrategy(samplingStrategy, d, config);;
 		this.config = DianneConfigHandler.getConfig(config, BatchSamplerConfig.class);
 		
-		// already fetch first batch
-		fetchBatch();
+		ThreadFactory daemon = r -> {
+			Thread t = new Thread(r, "Dianne Batch Sampler");
+			t.setDaemon(true);
+			return t;
+		};
+		this.fetcher = Executors.newSingleThreadExecutor(daemon);
+		this.workers = this.config.prefetchThreads > 1 ? Executors.newFixedThreadPool(this.config.prefetchThreads, daemon) : null;
+		
+		// already fetch first batches
+		for(int i=0; i < Math.max(1, this.config.prefetchDepth-1); i++){
+			pending.add(fetchBatch(null));
+			allocated++;
+		}
 	}
 	
 	/**
@@ -65,36 +96,98 @@ public class BatchSampler {
 	 * batch returned becomes obsolete and can be filled in with new data!
 	 */
 	public Batch nextBatch(){
-		synchronized(this){
-			if(!ready){
-				try {
-					this.wait();
-				} catch (InterruptedException e) {
-					throw new RuntimeException("Interrupted while fetching batch?!", e);
-				}
-			}
-			
-			ready = false;
+		Batch previous = batchInUse;
+		if(pending.isEmpty()){
+			// no prefetching, fetch in the previous batch
+			pending.add(fetchBatch(previous));
+			previous = null;
 		}
 		
-		// flip buffer and used batch
-		Batch temp = batchInUse;
-		batchInUse = batchBuffer;
-		batchBuffer = temp;
+		queued = 0;
+		for(Future<Batch> f : pending){
+			if(f.isDone())
+				queued++;
+		}
+		
+		long t = System.nanoTime();
+		try {
+			batchInUse = pending.poll().get();
+		} catch (InterruptedException e) {
+			throw new RuntimeException("Interrupted while fetching batch?!", e);
+		} catch (ExecutionException e) {
+			throw new RuntimeException("Failed to fetch batch", e.getCause());
+		}
+		waitTime = (System.nanoTime() - t)/1000000f;
 		
-		// fetch new batch in buffer
-		fetchBatch();
+		// fetch new batch in the previous one, or in a new one until the ring is complete
+		if(previous != null){
+			pending.add(fetchBatch(previous));
+		} else if(allocated < config.prefetchDepth){
+			pending.add(fetchBatch(null));
+			allocated++;
+		}
 		
 		return batchInUse;
 	}
 	
-	protected void fetchBatch(){
-		fetcher.execute(()->{
-			batchBuffer = dataset.getBatch(batchBuffer, sampling.next(config.batchSize));
-			ready=true;
-			synchronized(BatchSampler.this){
-				BatchSampler.this.notify();
+	/**
+	 * @return prefetch metrics of the last batch: the number of batches that were ready and the time (in ms) waited
+	 */
+	public Map<String, Float> getMetrics(){
+		Map<String, Float> metrics = new HashMap<>();
+		metrics.put("prefetch queue", (float)queued);
+		metrics.put("prefetch wait", waitTime);
+		return metrics;
+	}
+	
+	/**
+	 * Stop prefetching and wait for the batches that are still being fetched, after which
+	 * the dataset can be released
+	 */
+	public void close(){
+		fetcher.shutdownNow();
+		if(workers != null)
+			workers.shutdownNow();
+		
+		// fetching a sample cannot be interrupted, also wait when the calling thread is interrupted 
+		boolean interrupted = false;
+		while(true){
+			try {
+				fetcher.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+				if(workers != null)
+					workers.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+				break;
+			} catch(InterruptedException e){
+				interrupted = true;
+			}
+		}
+		if(interrupted)
+			Thread.currentThread().interrupt();
+	}
+	
+	protected Future<Batch> fetchBatch(final Batch b){
+		return fetcher.submit(()->{
+			int[] indices = sampling.next(config.batchSize);
+			if(b == null || workers == null){
+				return dataset.getBatch(b, indices);
+			}
+			
+			// fetch the samples in parallel
+			List<Future<?>> parts = new ArrayList<>(config.prefetchThreads);
+			int n = (indices.length + config.prefetchThreads - 1) / config.prefetchThreads;
+			for(int start = 0; start < indices.length; start += n){
+				final int from = start;
+				final int to = Math.min(start + n, indices.length);
+				parts.add(workers.submit(()->{
+					for(int i=from;i<to;i++){
+						dataset.getSample(b.samples[i], indices[i]);
+					}
+				}));
+			}
+			for(Future<?> part : parts){
+				part.get();
 			}
+			return b;
 		});
 	}
 }
@@ -29,4 +29,14 @@ public class BatchSamplerConfig {
 	 */
 	public int batchSize = 1;
 	
+	/**
+	 * Number of threads fetching the samples of a batch in parallel
+	 */
+	public int prefetchThreads = 1;
+	
+	/**
+	 * Number of batches in the prefetch ring, including the one in use
+	 */
+	public int prefetchDepth = 2;
+	
 }
@@ -101,7 +101,12 @@ public class FeedForwardLearningStrategy implements LearningStrategy {
 		// Update parameters
 		nn.updateParameters();
 
-		return new LearnProgress(i, loss);
+		return new LearnProgress(i, loss, sampler.getMetrics());
+	}
+	
+	@Override
+	public void cleanup(){
+		if(sampler != null)
+			sampler.close();
 	}
-
 }
@@ -145,7 +145,12 @@ public class GANLearningStrategy implements LearningStrategy {
 		// Update parameters
 		generator.updateParameters();
 		
-		return new LearnProgress(i, g_loss);
+		return new LearnProgress(i, g_loss, sampler.getMetrics());
+	}
+	
+	@Override
+	public void cleanup(){
+		if(sampler != null)
+			sampler.close();
 	}
-
 }
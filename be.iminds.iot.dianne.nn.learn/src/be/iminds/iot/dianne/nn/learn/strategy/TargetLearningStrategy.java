@@ -109,7 +109,12 @@ public class TargetLearningStrategy implements LearningStrategy {
 		// Note: target network gets updated automatically by setting the syncInterval option
 		traineeNetwork.updateParameters();
 		
-		return new LearnProgress(i, loss);
+		return new LearnProgress(i, loss, sampler.getMetrics());
+	}
+	
+	@Override
+	public void cleanup(){
+		if(sampler != null)
+			sampler.close();
 	}
-
 }
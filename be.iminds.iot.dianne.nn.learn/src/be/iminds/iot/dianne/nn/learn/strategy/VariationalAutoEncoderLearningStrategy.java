@@ -171,7 +171,7 @@ public class VariationalAutoEncoderLearningStrategy implements LearningStrategy
 		encoder.updateParameters();
 		decoder.updateParameters();
 
-		return new LearnProgress(i, reconstructionError+regularizationError);
+		return new LearnProgress(i, reconstructionError+regularizationError, sampler.getMetrics());
 	}
 	
 	private void sampleLatentVariables() {
@@ -194,4 +194,9 @@ public class VariationalAutoEncoderLearningStrategy implements LearningStrategy
 		TensorOps.addcmul(gradStdevs, gradStdevs, 1, latentGrad, random);
 	}
 	
+	@Override
+	public void cleanup(){
+		if(sampler != null)
+			sampler.close();
+	}
 }
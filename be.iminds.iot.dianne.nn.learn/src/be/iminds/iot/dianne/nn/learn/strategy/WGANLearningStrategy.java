@@ -147,7 +147,12 @@ public class WGANLearningStrategy implements LearningStrategy {
 		// Update parameters
 		generator.updateParameters();
 		
-		return new LearnProgress(i, wloss);
+		return new LearnProgress(i, wloss, sampler.getMetrics());
+	}
+	
+	@Override
+	public void cleanup(){
+		if(sampler != null)
+			sampler.close();
 	}
-
 }
@@ -158,6 +158,11 @@ public class CompositeModule extends AbstractTrainableModule implements Composit
 		//nn.getMemories().values().forEach(m -> m.triggerForward(tags));
 	}
 
+	@Override
+	public void triggerForwardSync() {
+		// composite is executed as a regular module in a compiled plan
+	}
+
 	@Override
 	public void triggerBackward(final String... tags) {
 		// don't trigger backward here ... is triggered in backward; else it will be called twice
@@ -71,6 +71,12 @@ public class Grid extends AbstractModule {
 		}
 	}
 	
+	@Override
+	public boolean supportsSync(){
+		// forwards each crop separately
+		return false;
+	}
+	
 	
 	@Override
 	protected void forward() {
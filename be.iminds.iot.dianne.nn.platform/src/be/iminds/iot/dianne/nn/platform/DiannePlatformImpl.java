@@ -26,8 +26,10 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
@@ -154,7 +156,8 @@ public class DiannePlatformImpl implements DiannePlatform {
 		
 		UUID nnId = UUID.randomUUID();
 		
-		Map<UUID, ModuleInstanceDTO> moduleInstances = new HashMap<UUID, ModuleInstanceDTO>();
+		// group modules per target runtime, so each runtime can keep their parameters in one flat Tensor
+		Map<UUID, List<ModuleDTO>> perRuntime = new LinkedHashMap<UUID, List<ModuleDTO>>();
 		for(ModuleDTO module : neuralNetwork.modules.values()){
 			mergeProperties(module, properties);
 			
@@ -170,15 +173,31 @@ public class DiannePlatformImpl implements DiannePlatform {
 				targetRuntime = runtimeId;
 			}
 			
-			DianneRuntime runtime = runtimes.get(targetRuntime);
+			List<ModuleDTO> toDeploy = perRuntime.get(targetRuntime);
+			if(toDeploy==null){
+				toDeploy = new ArrayList<ModuleDTO>();
+				perRuntime.put(targetRuntime, toDeploy);
+			}
+			toDeploy.add(module);
+		}
+		
+		Map<UUID, ModuleInstanceDTO> moduleInstances = new HashMap<UUID, ModuleInstanceDTO>();
+		for(Entry<UUID, List<ModuleDTO>> e : perRuntime.entrySet()){
+			DianneRuntime runtime = runtimes.get(e.getKey());
 			if(runtime==null){
 				undeployNeuralNetwork(nnId);
 				
-				throw new InstantiationException("Failed to deploy modules to runtime "+targetRuntime+": no such runtime");
+				throw new InstantiationException("Failed to deploy modules to runtime "+e.getKey()+": no such runtime");
 			}
 			
-			ModuleInstanceDTO instance = runtime.deployModule(module, nnId, tags);
-			moduleInstances.put(instance.moduleId, instance);
+			try {
+				for(ModuleInstanceDTO instance : runtime.deployModules(nnId, e.getValue(), tags)){
+					moduleInstances.put(instance.moduleId, instance);
+				}
+			} catch(RuntimeException ex){
+				undeployNeuralNetwork(nnId);
+				throw ex;
+			}
 		}
 
 		NeuralNetworkInstanceDTO nni = new NeuralNetworkInstanceDTO(nnId, name, description, moduleInstances);
@@ -27,11 +27,14 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.Dictionary;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Hashtable;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
+import java.util.TreeMap;
 import java.util.UUID;
 
 import org.osgi.framework.BundleContext;
@@ -57,6 +60,7 @@ import be.iminds.iot.dianne.api.nn.module.dto.ModuleDTO;
 import be.iminds.iot.dianne.api.nn.module.dto.ModuleInstanceDTO;
 import be.iminds.iot.dianne.api.nn.module.dto.ModuleTypeDTO;
 import be.iminds.iot.dianne.api.nn.module.factory.ModuleFactory;
+import be.iminds.iot.dianne.api.nn.module.factory.ModuleTypeNotSupportedException;
 import be.iminds.iot.dianne.api.nn.runtime.DianneRuntime;
 import be.iminds.iot.dianne.api.repository.DianneRepository;
 import be.iminds.iot.dianne.tensor.Tensor;
@@ -87,6 +91,9 @@ public class DianneRuntimeImpl implements DianneRuntime {
 	private Map<ForwardListener, List<String>> forwardListeners = new HashMap<ForwardListener, List<String>>();
 	private Map<BackwardListener, List<String>> backwardListeners = new HashMap<BackwardListener, List<String>>();
 
+	// Flat parameter Tensor per nn instance of which the trainable modules hold narrowed views
+	private Map<UUID, Tensor> flatParameters = Collections.synchronizedMap(new HashMap<UUID, Tensor>());
+	
 	// Blacklisted module uuids that should not be deployed on this runtime
 	List<UUID> blacklist = new ArrayList<>();
 	
@@ -350,29 +357,13 @@ public class DianneRuntimeImpl implements DianneRuntime {
 			throw new RuntimeException("Module "+dto.id+" cannot be deployed on runtime "+name);
 		}
 		
-		// Create and register module
-		Module module = null;
-		synchronized(moduleFactories){
-			Iterator<ModuleFactory> it = moduleFactories.iterator();
-			while(module == null && it.hasNext()){
-				try {
-					ModuleFactory mFactory = it.next();
-					module = mFactory.createModule(dto, parameters);
-				} catch(InstantiationException e){
-					// means this factory cannot create this module type ... ignore
-				} catch(Exception ex){
-					ex.printStackTrace();
-					// something seriously went wrong
-					// out of memory?
-					throw new RuntimeException("Failed to instantiate module "+dto.type+" "+dto.id+" - "+ex.getClass().getName()+": "+ex.getMessage());
-				}
-			}
-		}
-
-		if(module==null){
-			throw new RuntimeException("Failed to instantiate module "+dto.type+" "+dto.id);
-		}
+		// a module that is deployed separately no longer lives in the flat parameters of this nn
+		flatParameters.remove(nnId);
 		
+		return register(dto, nnId, createModule(dto, parameters));
+	}
+	
+	private ModuleInstanceDTO register(ModuleDTO dto, UUID nnId, Module module){
 		// configure next/prev
 		List<UUID> nextIDs = new ArrayList<>();
 		if(dto.next!=null){
@@ -418,7 +409,9 @@ public class DianneRuntimeImpl implements DianneRuntime {
 		} else if(module instanceof Composite){
 			classes = new String[]{Module.class.getName(),Trainable.class.getName(),Memory.class.getName(),Composite.class.getName()};
 			props.put("composite.nn.id", ((Composite)module).getNNi().id.toString());
-		}else if(module instanceof Trainable){
+		} else if(module instanceof Trainable && module instanceof Memory){
+			classes = new String[]{Module.class.getName(),Trainable.class.getName(),Memory.class.getName()};
+		} else if(module instanceof Trainable){
 			classes = new String[]{Module.class.getName(),Trainable.class.getName()};
 		} else if(module instanceof Preprocessor){
 			classes = new String[]{Module.class.getName(),Preprocessor.class.getName()};
@@ -452,6 +445,141 @@ public class DianneRuntimeImpl implements DianneRuntime {
 			throw new RuntimeException("Module "+dto.id+" cannot be deployed on runtime "+name);
 		}
 		
+		return deployModule(dto, nnId, loadParameters(dto, tags));
+	}
+	
+	@Override
+	public List<ModuleInstanceDTO> deployModules(UUID nnId, List<ModuleDTO> dtos, String... tags){
+		for(ModuleDTO dto : dtos){
+			if(blacklist.contains(dto.id)){
+				throw new RuntimeException("Module "+dto.id+" cannot be deployed on runtime "+name);
+			}
+		}
+		
+		// lay out the parameters of all trainable modules in one flat Tensor, ordered by module id
+		// composites are left out as they already narrow their own parameters for their inner modules
+		TreeMap<UUID, Integer> layout = new TreeMap<>();
+		int total = 0;
+		for(ModuleDTO dto : dtos){
+			int size = parameterSize(dto);
+			if(size > 0){
+				layout.put(dto.id, size);
+				total += size;
+			}
+		}
+		
+		Map<UUID, Tensor> narrowed = new HashMap<>();
+		// modules without stored parameters are randomized once created on their part of the flat Tensor
+		Set<UUID> randomize = new HashSet<>();
+		if(total > 0){
+			Tensor parameters = new Tensor(total);
+			parameters.fill(0.0f);
+			
+			int offset = 0;
+			for(Entry<UUID, Integer> e : layout.entrySet()){
+				narrowed.put(e.getKey(), parameters.narrow(0, offset, e.getValue()));
+				offset += e.getValue();
+			}
+			
+			for(ModuleDTO dto : dtos){
+				Tensor narrow = narrowed.get(dto.id);
+				if(narrow == null)
+					continue;
+				
+				Tensor p = loadParameters(dto, tags);
+				if(p == null){
+					randomize.add(dto.id);
+					continue;
+				}
+				p.reshape(narrow.size());
+				p.copyInto(narrow);
+			}
+			
+			flatParameters.put(nnId, parameters);
+		}
+		
+		List<ModuleInstanceDTO> deployed = new ArrayList<>();
+		try {
+			boolean flat = true;
+			for(ModuleDTO dto : dtos){
+				Tensor parameters = narrowed.get(dto.id);
+				if(parameters == null){
+					parameters = loadParameters(dto, tags);
+				}
+				Module m = createModule(dto, parameters);
+				if(narrowed.containsKey(dto.id)){
+					Trainable t = (Trainable)m;
+					if(randomize.contains(dto.id)){
+						t.randomizeParameters();
+					}
+					
+					// a module that keeps its own parameters instead of the given view would not be 
+					// updated via the flat Tensor
+					flat &= isView(t.getParameters(), parameters);
+				}
+				deployed.add(register(dto, nnId, m));
+			}
+			
+			if(!flat){
+				flatParameters.remove(nnId);
+			}
+		} catch(RuntimeException e){
+			deployed.forEach(this::undeployModule);
+			flatParameters.remove(nnId);
+			throw e;
+		}
+		return deployed;
+	}
+	
+	@Override
+	public Tensor getNeuralNetworkParameters(UUID nnId){
+		return flatParameters.get(nnId);
+	}
+	
+	private Module createModule(ModuleDTO dto, Tensor parameters){
+		Module module = null;
+		synchronized(moduleFactories){
+			Iterator<ModuleFactory> it = moduleFactories.iterator();
+			while(module == null && it.hasNext()){
+				try {
+					ModuleFactory mFactory = it.next();
+					module = mFactory.createModule(dto, parameters);
+				} catch(InstantiationException e){
+					// means this factory cannot create this module type ... ignore
+				} catch(Exception ex){
+					ex.printStackTrace();
+					// something seriously went wrong
+					// out of memory?
+					throw new RuntimeException("Failed to instantiate module "+dto.type+" "+dto.id+" - "+ex.getClass().getName()+": "+ex.getMessage());
+				}
+			}
+		}
+
+		if(module==null){
+			throw new RuntimeException("Failed to instantiate module "+dto.type+" "+dto.id);
+		}
+		return module;
+	}
+	
+	/**
+	 * Check whether parameters share their memory with view, by changing the first element
+	 * of the view and checking whether the parameters follow
+	 */
+	private static boolean isView(Tensor parameters, Tensor view){
+		if(parameters == view)
+			return true;
+		if(parameters == null || parameters.size() != view.size())
+			return false;
+		
+		float old = view.get(0);
+		float probe = old == 1.0f ? 2.0f : 1.0f;
+		view.set(probe, 0);
+		boolean shared = parameters.get(new int[parameters.dim()]) == probe;
+		view.set(old, 0);
+		return shared;
+	}
+	
+	private Tensor loadParameters(ModuleDTO dto, String... tags){
 		Tensor parameters = null;
 		if(repository != null){
 			// TODO should we check first whether this module actually has parameters?
@@ -462,7 +590,24 @@ public class DianneRuntimeImpl implements DianneRuntime {
 				//System.out.println("Failed to load parameters for module "+dto.id+" with tags "+Arrays.toString(tags));
 			}
 		}
-		return deployModule(dto, nnId, parameters);
+		return parameters;
+	}
+	
+	private int parameterSize(ModuleDTO dto){
+		synchronized(moduleFactories){
+			for(ModuleFactory f : moduleFactories){
+				ModuleTypeDTO type = f.getModuleType(dto.type);
+				if(type == null || !type.trainable || "Composite".equals(type.category))
+					continue;
+				
+				try {
+					return f.parameterSize(dto);
+				} catch(ModuleTypeNotSupportedException e){
+					// try next factory
+				}
+			}
+		}
+		return 0;
 	}
 
 	
@@ -519,6 +664,8 @@ public class DianneRuntimeImpl implements DianneRuntime {
 		for(ModuleInstanceDTO m : toRemove){
 			undeployModule(m);
 		}
+		
+		flatParameters.remove(nnId);
 	}
 	
 	@Override
@@ -0,0 +1,389 @@
+/*******************************************************************************
+ * DIANNE  - Framework for distributed artificial neural networks
+ * Copyright (C) 2015  iMinds - IBCN - UGent
+ *
+ * This file is part of DIANNE.
+ *
+ * DIANNE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contributors:
+ *     Tim Verbelen, Steven Bohez
+ *******************************************************************************/
+package be.iminds.iot.dianne.nn;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import be.iminds.iot.dianne.api.nn.module.AbstractModule;
+import be.iminds.iot.dianne.api.nn.module.Composite;
+import be.iminds.iot.dianne.api.nn.module.Input;
+import be.iminds.iot.dianne.api.nn.module.Memory;
+import be.iminds.iot.dianne.api.nn.module.Module;
+import be.iminds.iot.dianne.api.nn.module.ModuleException;
+import be.iminds.iot.dianne.api.nn.module.Output;
+import be.iminds.iot.dianne.api.nn.module.Trainable;
+import be.iminds.iot.dianne.api.nn.module.dto.ModuleDTO;
+import be.iminds.iot.dianne.api.nn.module.dto.NeuralNetworkInstanceDTO;
+import be.iminds.iot.dianne.tensor.Tensor;
+
+/**
+ * Compiled execution plan for a neural network of which all modules are deployed
+ * in the local runtime.
+ *
+ * The module graph is sorted topologically once, after which each forward and backward
+ * pass is executed module by module on the calling thread, without executor hand-offs.
+ * Module listeners are still notified after each module, with the tags of the pass.
+ *
+ * Memory modules break the cycles of recurrent neural networks: their output is emitted
+ * before and their memory is updated after all other modules have been executed.
+ *
+ * @author tverbele
+ *
+ */
+class ExecutionPlan {
+
+	private final Step[] steps;
+	private final Step[] memories;
+	private final Map<UUID, Step> inputs = new HashMap<>();
+	private final Map<UUID, Step> outputs = new HashMap<>();
+
+	private ExecutionPlan(Step[] steps, Step[] memories){
+		this.steps = steps;
+		this.memories = memories;
+
+		for(Step s : steps){
+			if(s.module instanceof Input){
+				inputs.put(s.id, s);
+			} else if(s.module instanceof Output){
+				outputs.put(s.id, s);
+			}
+		}
+	}
+
+	/**
+	 * Compile an execution plan for the given neural network instance
+	 *
+	 * @return the execution plan, or null in case not all modules can be executed synchronously
+	 */
+	static ExecutionPlan compile(NeuralNetworkInstanceDTO nn, Map<UUID, Module> modules){
+		Map<UUID, Step> all = new HashMap<>();
+		for(Module m : modules.values()){
+			if(!(m instanceof AbstractModule))
+				return null;
+
+			AbstractModule am = (AbstractModule) m;
+			if(!am.supportsSync())
+				return null;
+
+			all.put(m.getId(), new Step(am, nn.modules.get(m.getId()).module));
+		}
+
+		// wire prev and next steps, together with the index in their next or prev
+		for(Step s : all.values()){
+			if(!(s.module instanceof Input) && s.dto.prev != null){
+				s.prev = new Step[s.dto.prev.length];
+				s.prevIndex = new int[s.dto.prev.length];
+				for(int i=0;i<s.prev.length;i++){
+					s.prev[i] = all.get(s.dto.prev[i]);
+					if(s.prev[i] == null)
+						return null;
+					s.prevIndex[i] = indexOf(s.prev[i].dto.next, s.id);
+				}
+			}
+			s.ins = new Tensor[s.prev.length];
+
+			if(!(s.module instanceof Output) && s.dto.next != null){
+				s.next = new Step[s.dto.next.length];
+				s.nextIndex = new int[s.dto.next.length];
+				for(int i=0;i<s.next.length;i++){
+					s.next[i] = all.get(s.dto.next[i]);
+					if(s.next[i] == null)
+						return null;
+					s.nextIndex[i] = indexOf(s.next[i].dto.prev, s.id);
+				}
+			}
+			s.gradOuts = new Tensor[s.next.length];
+		}
+
+		// topological sort of all non-memory modules, the memory outputs are available from the start
+		List<Step> memories = new ArrayList<>();
+		Map<Step, Integer> inDegree = new HashMap<>();
+		LinkedList<Step> ready = new LinkedList<>();
+		for(Step s : all.values()){
+			if(s.isMemory()){
+				memories.add(s);
+				continue;
+			}
+
+			int d = 0;
+			for(Step p : s.prev){
+				if(!p.isMemory())
+					d++;
+			}
+			if(d == 0){
+				ready.add(s);
+			} else {
+				inDegree.put(s, d);
+			}
+		}
+
+		List<Step> sorted = new ArrayList<>();
+		while(!ready.isEmpty()){
+			Step s = ready.removeFirst();
+			sorted.add(s);
+			for(Step n : s.next){
+				if(n.isMemory())
+					continue;
+
+				int d = inDegree.get(n) - 1;
+				if(d == 0){
+					inDegree.remove(n);
+					ready.add(n);
+				} else {
+					inDegree.put(n, d);
+				}
+			}
+		}
+
+		if(!inDegree.isEmpty()){
+			// cycle that is not broken by a memory module
+			return null;
+		}
+
+		return new ExecutionPlan(sorted.toArray(new Step[sorted.size()]),
+				memories.toArray(new Step[memories.size()]));
+	}
+
+	/**
+	 * @return whether the given inputs feed all Input modules and the requested outputs are all
+	 * Output modules, otherwise a synchronous forward cannot be done
+	 */
+	boolean coversForward(UUID[] inputIds, UUID[] outputIds){
+		if(outputIds != null && !contains(outputs, outputIds))
+			return false;
+		
+		return inputIds == null ? inputs.size() == 1 : covers(inputs, inputIds);
+	}
+
+	/**
+	 * @return whether the given gradOutputs feed all Output modules and the requested gradInputs
+	 * are all Input modules, otherwise a synchronous backward cannot be done
+	 */
+	boolean coversBackward(UUID[] outputIds, UUID[] inputIds){
+		if(inputIds != null && !contains(inputs, inputIds))
+			return false;
+		
+		return outputIds == null ? outputs.size() == 1 : covers(outputs, outputIds);
+	}
+
+	synchronized Map<UUID, Tensor> forward(UUID[] inputIds, UUID[] outputIds, Tensor[] ins, String[] tags) throws ModuleException {
+		for(Step m : memories){
+			((Memory)m.module).triggerForwardSync();
+			m.module.notifyForwardSync(tags);
+		}
+
+		if(inputIds == null){
+			forward(inputs.values().iterator().next(), ins[0], tags);
+		} else {
+			for(int i=0;i<inputIds.length;i++){
+				forward(inputs.get(inputIds[i]), ins[i], tags);
+			}
+		}
+
+		for(Step s : steps){
+			if(s.prev.length == 0)
+				continue;
+
+			forward(s, null, tags);
+		}
+
+		// memories only notify their listeners when triggered
+		for(Step m : memories){
+			forward(m);
+		}
+
+		Map<UUID, Tensor> results = new HashMap<>();
+		if(outputIds == null){
+			for(Step o : outputs.values()){
+				results.put(o.id, o.copyOutput());
+			}
+		} else {
+			for(UUID id : outputIds){
+				results.put(id, outputs.get(id).copyOutput());
+			}
+		}
+		return results;
+	}
+
+	synchronized Map<UUID, Tensor> backward(UUID[] outputIds, UUID[] inputIds, Tensor[] gradOuts, String[] tags) throws ModuleException {
+		// memories still have the gradInput of the previous backward to feed to their previous
+		for(Step m : memories){
+			m.module.notifyBackwardSync(tags);
+		}
+		
+		if(outputIds == null){
+			backward(outputs.values().iterator().next(), gradOuts[0], tags);
+		} else {
+			for(int i=0;i<outputIds.length;i++){
+				backward(outputs.get(outputIds[i]), gradOuts[i], tags);
+			}
+		}
+
+		for(int k=steps.length-1;k>=0;k--){
+			Step s = steps[k];
+			if(s.next.length == 0)
+				continue;
+
+			backward(s, null, tags);
+		}
+
+		for(Step m : memories){
+			backward(m);
+		}
+
+		Map<UUID, Tensor> results = new HashMap<>();
+		if(inputIds == null){
+			for(Step i : inputs.values()){
+				results.put(i.id, i.copyGradInput());
+			}
+		} else {
+			for(UUID id : inputIds){
+				results.put(id, inputs.get(id).copyGradInput());
+			}
+		}
+		return results;
+	}
+
+	private void forward(Step s) throws ModuleException {
+		for(int i=0;i<s.prev.length;i++){
+			s.ins[i] = s.prev[i].module.outputSync(s.prevIndex[i]);
+		}
+		s.module.forwardSync(s.ins);
+	}
+
+	private void backward(Step s) throws ModuleException {
+		for(int i=0;i<s.next.length;i++){
+			s.gradOuts[i] = s.next[i].module.gradInputSync(s.nextIndex[i]);
+		}
+		s.module.backwardSync(s.gradOuts);
+	}
+
+	/**
+	 * forward a step and notify its listeners of the result or failure, with input 
+	 * either given or taken from the previous steps
+	 */
+	private void forward(Step s, Tensor input, String[] tags) throws ModuleException {
+		try {
+			if(input != null){
+				s.module.forwardSync(input);
+			} else {
+				forward(s);
+			}
+		} finally {
+			s.module.notifyForwardSync(tags);
+		}
+	}
+
+	/**
+	 * backward a step and notify its listeners of the result or failure, with gradOutput 
+	 * either given or taken from the next steps
+	 */
+	private void backward(Step s, Tensor gradOutput, String[] tags) throws ModuleException {
+		try {
+			if(gradOutput != null){
+				s.module.backwardSync(gradOutput);
+			} else {
+				backward(s);
+			}
+		} finally {
+			s.module.notifyBackwardSync(tags);
+		}
+	}
+
+	private static boolean covers(Map<UUID, Step> steps, UUID[] ids){
+		if(ids.length != steps.size())
+			return false;
+
+		for(UUID id : ids){
+			if(!steps.containsKey(id))
+				return false;
+		}
+		return true;
+	}
+
+	private static boolean contains(Map<UUID, Step> steps, UUID[] ids){
+		for(UUID id : ids){
+			if(!steps.containsKey(id))
+				return false;
+		}
+		return true;
+	}
+
+	private static int indexOf(UUID[] ids, UUID id){
+		if(ids != null){
+			for(int i=0;i<ids.length;i++){
+				if(ids[i].equals(id))
+					return i;
+			}
+		}
+		return 0;
+	}
+
+	private static class Step {
+
+		private static final Step[] NONE = new Step[0];
+
+		final UUID id;
+		final AbstractModule module;
+		final ModuleDTO dto;
+
+		Step[] prev = NONE;
+		int[] prevIndex;
+		Step[] next = NONE;
+		int[] nextIndex;
+
+		// reused argument arrays
+		Tensor[] ins;
+		Tensor[] gradOuts;
+
+		// copies handed out as result, as is done by the listeners in the asynchronous case
+		Tensor output;
+		Tensor gradInput;
+
+		Step(AbstractModule module, ModuleDTO dto){
+			this.id = module.getId();
+			this.module = module;
+			this.dto = dto;
+		}
+
+		boolean isMemory(){
+			// composites and trainable recurrent cells calculate their output from their input
+			return module instanceof Memory && !(module instanceof Composite) && !(module instanceof Trainable);
+		}
+
+		Tensor copyOutput(){
+			output = module.outputSync(0).copyInto(output);
+			return output;
+		}
+
+		Tensor copyGradInput(){
+			gradInput = module.gradInputSync(0).copyInto(gradInput);
+			return gradInput;
+		}
+	}
+}
@@ -31,11 +31,15 @@ import java.util.HashMap;
 import java.util.Hashtable;
 import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
 import java.util.NoSuchElementException;
+import java.util.TreeMap;
 import java.util.UUID;
 import java.util.stream.Collectors;
 
 import org.osgi.framework.BundleContext;
+import org.osgi.framework.Constants;
+import org.osgi.framework.ServiceReference;
 import org.osgi.framework.ServiceRegistration;
 import org.osgi.util.promise.Deferred;
 import org.osgi.util.promise.Promise;
@@ -55,7 +59,9 @@ import be.iminds.iot.dianne.api.nn.module.Trainable;
 import be.iminds.iot.dianne.api.nn.module.dto.ModuleDTO;
 import be.iminds.iot.dianne.api.nn.module.dto.NeuralNetworkDTO;
 import be.iminds.iot.dianne.api.nn.module.dto.NeuralNetworkInstanceDTO;
+import be.iminds.iot.dianne.api.nn.runtime.DianneRuntime;
 import be.iminds.iot.dianne.api.repository.DianneRepository;
+import be.iminds.iot.dianne.tensor.ModuleOps;
 import be.iminds.iot.dianne.tensor.Tensor;
 import be.iminds.iot.dianne.tensor.TensorOps;
 
@@ -73,6 +79,15 @@ public class NeuralNetworkWrapper implements NeuralNetwork {
 	private Map<UUID, Memory> memories;
 	private Map<UUID, Trainable> trainables;
 	
+	// compiled plan to execute synchronously in case all modules are deployed locally
+	private final ExecutionPlan plan;
+	
+	// in case all modules are deployed locally, the trainables (ordered by id) hold narrowed 
+	// views of one flat parameters Tensor, and get narrowed views of one flat deltas Tensor
+	private final TreeMap<UUID, Trainable> layout;
+	private final Tensor flatParameters;
+	private Tensor flatDeltas;
+	
 	private final BundleContext context;
 	private ServiceRegistration<NeuralNetwork> nnReg;
 	private ServiceRegistration<ForwardListener> forwardListenerReg;
@@ -102,6 +117,70 @@ public class NeuralNetworkWrapper implements NeuralNetwork {
 		this.memories = modules.stream().filter(m -> m instanceof Memory).map(m -> (Memory)m).collect(Collectors.toMap(m -> m.getId(), m -> m));
 		this.trainables = modules.stream().filter(m -> m instanceof Trainable).map(t -> (Trainable)t).collect(Collectors.toMap(t -> t.getId(), t -> t));
 
+		this.plan = isLocal() ? ExecutionPlan.compile(nn, this.modules) : null;
+		
+		this.layout = new TreeMap<>(trainables);
+		this.flatParameters = isLocal() ? getFlatParameters() : null;
+	}
+	
+	private Tensor getFlatParameters(){
+		Tensor parameters = null;
+		try {
+			String runtimeId = context.getProperty(Constants.FRAMEWORK_UUID);
+			for(ServiceReference<DianneRuntime> ref : context.getServiceReferences(DianneRuntime.class, null)){
+				DianneRuntime runtime = context.getService(ref);
+				try {
+					if(runtime != null && runtime.getRuntimeId().toString().equals(runtimeId)){
+						parameters = runtime.getNeuralNetworkParameters(nn.id);
+					}
+				} finally {
+					context.ungetService(ref);
+				}
+			}
+		} catch(Exception e){
+			return null;
+		}
+		
+		// only use the flat Tensor if it covers exactly all trainables, and these all use a view on it
+		if(parameters != null){
+			int size = layout.values().stream().mapToInt(t -> t.getParameters().size()).sum();
+			if(size != parameters.size())
+				return null;
+			
+			int offset = 0;
+			for(Trainable t : layout.values()){
+				Tensor p = t.getParameters();
+				if(p.size() > 0 && !isView(p, parameters.narrow(0, offset, p.size())))
+					return null;
+				offset += p.size();
+			}
+		}
+		return parameters;
+	}
+	
+	/**
+	 * Check whether parameters share their memory with view, by changing the first element
+	 * of the view and checking whether the parameters follow
+	 */
+	private static boolean isView(Tensor parameters, Tensor view){
+		float old = view.get(0);
+		float probe = old == 1.0f ? 2.0f : 1.0f;
+		view.set(probe, 0);
+		boolean shared = parameters.get(new int[parameters.dim()]) == probe;
+		view.set(old, 0);
+		return shared;
+	}
+	
+	private boolean isFlat(){
+		return flatParameters != null && layout.values().stream().noneMatch(Trainable::isFixed);
+	}
+	
+	private boolean isLocal(){
+		if(context == null)
+			return false;
+		
+		String runtimeId = context.getProperty(Constants.FRAMEWORK_UUID);
+		return nn.modules.values().stream().allMatch(m -> m.runtimeId.toString().equals(runtimeId));
 	}
 
 	@Override
@@ -137,6 +216,17 @@ public class NeuralNetworkWrapper implements NeuralNetwork {
 		if(!valid)
 			throw new RuntimeException("This neural network object is no longer valid");
 		
+		if(plan != null && plan.coversForward(inputIds, outputIds)){
+			Deferred<NeuralNetworkResult> d = new Deferred<>();
+			String[] t = tags == null ? new String[0] : tags;
+			try {
+				d.resolve(new NeuralNetworkResult(plan.forward(inputIds, outputIds, ins, t), t));
+			} catch(ModuleException e){
+				d.fail(e);
+			}
+			return d.getPromise();
+		}
+		
 		String tag = getTag();
 		String[] t = addTag(tags, tag);
 		
@@ -255,6 +345,22 @@ public class NeuralNetworkWrapper implements NeuralNetwork {
 		if(!valid)
 			throw new RuntimeException("This neural network object is no longer valid");
 		
+		if(plan != null && plan.coversBackward(outputIds, inputIds)){
+			Deferred<NeuralNetworkResult> d = new Deferred<>();
+			String[] t = tags == null ? new String[0] : tags;
+			try {
+				NeuralNetworkResult r = new NeuralNetworkResult(plan.backward(outputIds, inputIds, gradOuts, t), t);
+				if(accGradParameters){
+					// Accumulate gradient weights
+					getTrainables().values().stream().forEach(Trainable::accGradParameters);
+				}
+				d.resolve(r);
+			} catch(ModuleException e){
+				d.fail(e);
+			}
+			return d.getPromise();
+		}
+		
 		String tag = getTag();
 		String[] t = addTag(tags, tag);
 
@@ -892,6 +998,28 @@ public class NeuralNetworkWrapper implements NeuralNetwork {
 			throw new RuntimeException("This neural network object is no longer valid");
 		}
 		
+		if(flatParameters != null){
+			// calculate all deltas into narrowed views of a single Tensor
+			Tensor flat = new Tensor(flatParameters.size());
+			Map<UUID, Tensor> deltaParameters = new HashMap<>();
+			int offset = 0;
+			for(Entry<UUID, Trainable> e : layout.entrySet()){
+				Tensor p = e.getValue().getParameters();
+				Tensor d = flat.narrow(0, offset, p.size());
+				TensorOps.sub(d, p, previous.get(e.getKey()));
+				deltaParameters.put(e.getKey(), d);
+				offset += p.size();
+			}
+			
+			if(tag == null)
+				repository.accParameters(nn.id, deltaParameters);
+			else 
+				repository.accParameters(nn.id, deltaParameters, tag);
+			
+			flat.release();
+			return;
+		}
+		
 		Map<UUID, Tensor> deltaParameters = trainables.entrySet().stream()
 				.collect(Collectors.toMap(e -> e.getKey(), e -> TensorOps.sub(null,
 						e.getValue().getParameters(), previous.get(e.getKey()))));
@@ -899,7 +1027,8 @@ public class NeuralNetworkWrapper implements NeuralNetwork {
 			repository.accParameters(nn.id, deltaParameters);
 		else 
 			repository.accParameters(nn.id, deltaParameters, tag);
-			
+		
+		deltaParameters.values().forEach(Tensor::release);
 	}
 
 	@Override
@@ -919,6 +1048,21 @@ public class NeuralNetworkWrapper implements NeuralNetwork {
 			throw new RuntimeException("This neural network object is no longer valid");
 		}
 		
+		if(flatParameters != null){
+			if(flatDeltas == null){
+				// (re)initialize deltas of all trainables as narrowed views of one flat Tensor
+				flatDeltas = new Tensor(flatParameters.size());
+				int offset = 0;
+				for(Trainable t : layout.values()){
+					int size = t.getParameters().size();
+					t.initDeltaParameters(flatDeltas.narrow(0, offset, size));
+					offset += size;
+				}
+			}
+			flatDeltas.fill(0.0f);
+			return;
+		}
+		
 		trainables.values().stream().forEach(Trainable::zeroDeltaParameters);
 	}
 
@@ -928,6 +1072,11 @@ public class NeuralNetworkWrapper implements NeuralNetwork {
 			throw new RuntimeException("This neural network object is no longer valid");
 		}
 		
+		if(flatDeltas != null && isFlat()){
+			TensorOps.add(flatParameters, flatParameters, flatDeltas);
+			return;
+		}
+		
 		trainables.values().stream().forEach(Trainable::updateParameters);
 	}
 	
@@ -940,6 +1089,31 @@ public class NeuralNetworkWrapper implements NeuralNetwork {
 		trainables.values().stream().forEach(Trainable::accGradParameters);
 	}
 	
+	@Override
+	public void syncParameters(NeuralNetwork source, float tau){
+		if(!valid){
+			throw new RuntimeException("This neural network object is no longer valid");
+		}
+		
+		// both instances share the same layout in case both have a flat parameters Tensor
+		if(flatParameters != null && source instanceof NeuralNetworkWrapper){
+			Tensor sourceParameters = ((NeuralNetworkWrapper)source).flatParameters;
+			if(sourceParameters != null && sourceParameters.size() == flatParameters.size()){
+				ModuleOps.polyakUpdate(flatParameters, sourceParameters, tau);
+				return;
+			}
+		}
+		
+		Map<UUID, Trainable> sourceTrainables = source.getTrainables();
+		trainables.entrySet().forEach(e -> {
+			Trainable t = sourceTrainables.get(e.getKey());
+			if(t == null){
+				throw new RuntimeException("Source neural network has no trainable module with id "+e.getKey());
+			}
+			ModuleOps.polyakUpdate(e.getValue().getParameters(), t.getParameters(), tau);
+		});
+	}
+	
 	private class Progress {
 		
 		private final Deferred<NeuralNetworkResult> deferred = new Deferred<>();
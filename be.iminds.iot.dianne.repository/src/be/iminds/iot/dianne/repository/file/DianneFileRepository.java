@@ -22,19 +22,22 @@
  *******************************************************************************/
 package be.iminds.iot.dianne.repository.file;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
 import java.io.DataInputStream;
-import java.io.DataOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.FilenameFilter;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
@@ -45,6 +48,7 @@ import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.stream.Collectors;
@@ -60,7 +64,6 @@ import org.osgi.service.component.annotations.Reference;
 import org.osgi.service.component.annotations.ReferenceCardinality;
 import org.osgi.service.component.annotations.ReferencePolicy;
 
-import be.iminds.iot.dianne.api.nn.module.dto.ModuleDTO;
 import be.iminds.iot.dianne.api.nn.module.dto.NeuralNetworkDTO;
 import be.iminds.iot.dianne.api.repository.DianneRepository;
 import be.iminds.iot.dianne.api.repository.RepositoryListener;
@@ -71,6 +74,12 @@ import be.iminds.iot.dianne.tensor.TensorOps;
 @Component(immediate=true)
 public class DianneFileRepository implements DianneRepository {
 
+	// parameters file format: a header of magic, version, length and a reserved int, 
+	// written in native byte order, followed by the raw float data
+	private static final int MAGIC = 0x444E4E50;
+	private static final int VERSION = 1;
+	private static final int HEADER_SIZE = 16;
+	
 	private String dir = "models";
 	
 	private Map<RepositoryListener, List<String>> listeners = Collections.synchronizedMap(new HashMap<RepositoryListener, List<String>>());
@@ -193,27 +202,29 @@ public class DianneFileRepository implements DianneRepository {
 	@Override
 	public Map<UUID, Tensor> loadParameters(Collection<UUID> moduleIds,
 			String... tag) {
-		return moduleIds.stream().collect(
+		return moduleIds.parallelStream().collect(
 				Collectors.toMap(moduleId -> moduleId, moduleId -> loadParameters(moduleId, tag)));
 	}
 
 	@Override
 	public Map<UUID, Tensor> loadParameters(String nnName, String... tag) throws Exception {
-		Map<UUID, Tensor> parameters  = new HashMap<>();
+		Map<UUID, Tensor> parameters  = new ConcurrentHashMap<>();
 		
 		NeuralNetworkDTO nn = loadNeuralNetwork(nnName);
 		// TODO should we deduce based on ModuleDTO whether the module is trainable and throw
 		// exception when trainable module has no parameters on file system?
-		for(ModuleDTO m : nn.modules.values()){
+		
+		// load all modules in parallel
+		nn.modules.values().parallelStream().forEach(m -> {
 			try {
 				parameters.put(m.id, load(m.id, tag));
 			} catch(Exception e){
 				// ignore if no parameters found for a module
 			}
-		}
+		});
 		if(parameters.isEmpty())
 			throw new Exception("No parameters available for NN "+nnName);
-		return parameters;
+		return new HashMap<>(parameters);
 	}
 	
 	@Override
@@ -341,10 +352,8 @@ public class DianneFileRepository implements DianneRepository {
 			// first check weights, next check all other nn dirs
 			File f = new File(dir+"/weights/"+parametersId(moduleId, tag));
 			if(f.exists()){
-				try (DataInputStream is = new DataInputStream(
-						new BufferedInputStream(new FileInputStream(f)));
-				){
-					return readTensor(is);
+				try {
+					return readTensor(f);
 				} catch(IOException e){
 				} 
 			}
@@ -354,22 +363,20 @@ public class DianneFileRepository implements DianneRepository {
 				if(dd.isDirectory()){
 					f = new File(dir+"/"+dd.getName()+"/"+parametersId(moduleId, tag));
 					if(f.exists()){
-						try (DataInputStream is = new DataInputStream(
-								new BufferedInputStream(new FileInputStream(f)));
-						){
-							return readTensor(is);
+						try {
+							return readTensor(f);
 						} catch(IOException e){
 							// ignore errors
 						}
 					}
 				} else {
-					try (
-						ZipFile zip = new ZipFile(dd);
-						DataInputStream is = new DataInputStream(
-								new BufferedInputStream(
-									zip.getInputStream(zip.getEntry(parametersId(moduleId, tag)))));
-					){
-						return readTensor(is);
+					try (ZipFile zip = new ZipFile(dd)){
+						ZipEntry e = zip.getEntry(parametersId(moduleId, tag));
+						byte[] data = new byte[(int)e.getSize()];
+						try(DataInputStream is = new DataInputStream(zip.getInputStream(e))){
+							is.readFully(data);
+						}
+						return readTensor(ByteBuffer.wrap(data));
 					} catch(IOException|NullPointerException e){
 						// ignore errors and/or nullpointer (in case zip does not contain module params)
 					} 
@@ -383,51 +390,88 @@ public class DianneFileRepository implements DianneRepository {
 		}
 	}
 	
-	private Tensor readTensor(DataInputStream is) throws IOException{
-		// load tensor in chunks, slightly slower than one copy from Java to native,
-		// but reduces memory usage a lot for big tensors
-		int bufferSize = 10000;
-		float[] data = new float[bufferSize];
-		
-		int length = is.readInt();
-		Tensor t = new Tensor(length);
-		int index = 0;
-		while(length > 0){
-			if(length<bufferSize){
-				bufferSize = length;
-				data = new float[bufferSize];
+	private Tensor readTensor(File f) throws IOException {
+		try(FileChannel channel = FileChannel.open(f.toPath(), StandardOpenOption.READ)){
+			return readTensor(channel.map(MapMode.READ_ONLY, 0, channel.size()));
+		}
+	}
+	
+	private Tensor readTensor(ByteBuffer buffer) throws IOException {
+		// check the header, which tells both the format and the byte order
+		ByteOrder order = null;
+		int length = 0;
+		if(buffer.capacity() >= HEADER_SIZE){
+			buffer.order(ByteOrder.nativeOrder());
+			int magic = buffer.getInt(0);
+			if(magic == MAGIC){
+				order = ByteOrder.nativeOrder();
+			} else if(magic == Integer.reverseBytes(MAGIC)){
+				order = ByteOrder.nativeOrder() == ByteOrder.BIG_ENDIAN ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN;
 			}
 			
-			for(int i=0;i<bufferSize;i++){
-				data[i] = is.readFloat();
+			if(order != null){
+				buffer.order(order);
+				length = buffer.getInt(8);
+				if(buffer.capacity() != HEADER_SIZE + 4L*length){
+					order = null;
+				}
 			}
+		}
+		
+		int offset = HEADER_SIZE;
+		if(order == null){
+			// old format, a big endian length followed by big endian floats 
+			order = ByteOrder.BIG_ENDIAN;
+			buffer.order(order);
+			length = buffer.getInt(0);
+			offset = 4;
 			
-			t.narrow(0, index, bufferSize).set(data);;
-			
-			length -= bufferSize;
-			index+= bufferSize;
+			if(buffer.capacity() < offset + 4L*length){
+				throw new IOException("Invalid parameters file");
+			}
+		}
+		
+		buffer.position(offset);
+		FloatBuffer floats = buffer.slice().order(order).asFloatBuffer();
+		floats.limit(length);
+		
+		Tensor t = new Tensor(length);
+		FloatBuffer data = t.asFloatBuffer();
+		if(data == null || (floats.isDirect() && order == ByteOrder.nativeOrder())){
+			// single bulk copy into native memory
+			t.copyFrom(floats, 0);
+		} else {
+			// (byte swapping) copy directly into native memory
+			data.put(floats);
 		}
 		return t;
 	}
 	
-	
 	private void store(UUID moduleId, Tensor parameters, String... tag){
 		try {
 			lock.write(moduleId);
 			
+			// always write the current format, which also migrates files of the old format
+			// write to a temporary file first to not leave half written parameters behind
 			File f = new File(dir+"/weights/"+parametersId(moduleId, tag));
-	
-			try(DataOutputStream os = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(f)))) {
-				float[] data = parameters.get();
-				os.writeInt(data.length);
-				for(int i=0;i<data.length;i++){
-					os.writeFloat(data[i]);
-				}
-				os.flush();
-				os.close();
-			} catch(IOException e){
-				e.printStackTrace();
+			File tmp = new File(dir+"/weights/."+parametersId(moduleId, tag));
+			
+			int length = parameters.size();
+			try(FileChannel channel = FileChannel.open(tmp.toPath(), StandardOpenOption.CREATE, 
+					StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+				MappedByteBuffer buffer = channel.map(MapMode.READ_WRITE, 0, HEADER_SIZE + 4L*length);
+				buffer.order(ByteOrder.nativeOrder());
+				buffer.putInt(MAGIC);
+				buffer.putInt(VERSION);
+				buffer.putInt(length);
+				buffer.putInt(0);
+				
+				parameters.copyTo(buffer.slice().order(ByteOrder.nativeOrder()).asFloatBuffer(), 0);
 			}
+			
+			Files.move(tmp.toPath(), f.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch(IOException e){
+			e.printStackTrace();
 		} catch(InterruptedException e){
 			// ignore?
 		} finally {
@@ -448,6 +492,10 @@ public class DianneFileRepository implements DianneRepository {
 			}
 		
 			store(moduleId, parameters, tag);
+			
+			if(parameters != accParameters){
+				parameters.release();
+			}
 		} catch(InterruptedException e){
 			// ignore?
 		} finally {
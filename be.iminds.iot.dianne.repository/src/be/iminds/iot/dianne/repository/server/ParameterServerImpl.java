@@ -0,0 +1,288 @@
+/*******************************************************************************
+ * DIANNE  - Framework for distributed artificial neural networks
+ * Copyright (C) 2015  iMinds - IBCN - UGent
+ *
+ * This file is part of DIANNE.
+ *
+ * DIANNE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contributors:
+ *     Tim Verbelen, Steven Bohez
+ *******************************************************************************/
+package be.iminds.iot.dianne.repository.server;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.osgi.framework.BundleContext;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
+import org.osgi.service.component.annotations.Reference;
+
+import be.iminds.iot.dianne.api.repository.DianneRepository;
+import be.iminds.iot.dianne.api.repository.ParameterServer;
+import be.iminds.iot.dianne.tensor.Tensor;
+import be.iminds.iot.dianne.tensor.TensorOps;
+
+/**
+ * In-memory ParameterServer in front of the DianneRepository.
+ *
+ * Parameters are kept per moduleId and tags, and are guarded by a fixed number of striped
+ * locks, so that learners updating different modules do not block each other. Updated
+ * parameters are snapshotted to the repository on a fixed interval, parameters that were
+ * not used during an interval are evicted from memory.
+ *
+ * The interval is configured with be.iminds.iot.dianne.parameterserver.interval (in ms) and
+ * bounds how far parameters read from the repository can lag behind.
+ *
+ * @author tverbele
+ *
+ */
+@Component(immediate=true)
+public class ParameterServerImpl implements ParameterServer {
+
+	private static final int STRIPES = 64;
+
+	private DianneRepository repository;
+
+	private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+	private final Object[] locks = new Object[STRIPES];
+
+	private ScheduledExecutorService snapshotter;
+	private long interval = 10000;
+
+	public ParameterServerImpl(){
+		for(int i=0;i<STRIPES;i++){
+			locks[i] = new Object();
+		}
+	}
+
+	@Activate
+	void activate(BundleContext context){
+		String i = context.getProperty("be.iminds.iot.dianne.parameterserver.interval");
+		if(i != null){
+			interval = Long.parseLong(i);
+		}
+
+		snapshotter = Executors.newSingleThreadScheduledExecutor();
+		snapshotter.scheduleWithFixedDelay(this::snapshot, interval, interval, TimeUnit.MILLISECONDS);
+	}
+
+	@Deactivate
+	void deactivate(){
+		snapshotter.shutdownNow();
+		try {
+			snapshotter.awaitTermination(interval, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+		}
+
+		// write back everything that is not yet in the repository
+		snapshot();
+	}
+
+	@Override
+	public Map<UUID, Tensor> loadParameters(Collection<UUID> moduleIds, String... tag) throws Exception {
+		tag = tag == null ? new String[0] : tag;
+		
+		Map<UUID, Tensor> parameters = new HashMap<>();
+		for(UUID moduleId : moduleIds){
+			String key = key(moduleId, tag);
+			synchronized(lock(key)){
+				Entry e = get(key, moduleId, tag);
+				if(e != null){
+					parameters.put(moduleId, e.parameters.copyInto(null));
+				}
+			}
+		}
+
+		if(parameters.isEmpty())
+			throw new Exception("No parameters available for modules "+moduleIds+" with tags "+Arrays.toString(tag));
+		return parameters;
+	}
+
+	@Override
+	public void storeParameters(UUID nnId, Map<UUID, Tensor> parameters, String... tag) {
+		tag = tag == null ? new String[0] : tag;
+		
+		for(Map.Entry<UUID, Tensor> p : parameters.entrySet()){
+			String key = key(p.getKey(), tag);
+			synchronized(lock(key)){
+				Entry e = entries.get(key);
+				if(e == null){
+					e = new Entry(key, p.getKey(), tag);
+					entries.put(key, e);
+				}
+				e.nnId = nnId;
+				e.parameters = p.getValue().copyInto(e.parameters);
+				e.dirty = false;
+				e.used = true;
+			}
+		}
+
+		// write through
+		repository.storeParameters(nnId, parameters, tag);
+	}
+
+	@Override
+	public Map<UUID, Tensor> accParameters(UUID nnId, Map<UUID, Tensor> accParameters, String... tag) {
+		tag = tag == null ? new String[0] : tag;
+		
+		Map<UUID, Tensor> parameters = new HashMap<>();
+		for(Map.Entry<UUID, Tensor> p : accParameters.entrySet()){
+			String key = key(p.getKey(), tag);
+			synchronized(lock(key)){
+				Entry e = get(key, p.getKey(), tag);
+				if(e == null){
+					// no parameters yet, store as new
+					e = new Entry(key, p.getKey(), tag);
+					e.parameters = p.getValue().copyInto(null);
+					entries.put(key, e);
+				} else {
+					TensorOps.add(e.parameters, e.parameters, p.getValue());
+				}
+				e.nnId = nnId;
+				e.dirty = true;
+
+				parameters.put(p.getKey(), e.parameters.copyInto(null));
+			}
+		}
+		return parameters;
+	}
+
+	/**
+	 * Write all updated parameters to the repository, and evict parameters that were not used
+	 * since the previous snapshot
+	 */
+	private void snapshot(){
+		// group per nn instance and tags to notify repository listeners at once
+		Map<String, List<Entry>> updated = new HashMap<>();
+		Map<String, Map<UUID, Tensor>> snapshots = new HashMap<>();
+
+		Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+		while(it.hasNext()){
+			Map.Entry<String, Entry> entry = it.next();
+			synchronized(lock(entry.getKey())){
+				Entry e = entry.getValue();
+				if(e.dirty){
+					String group = e.nnId+":"+Arrays.toString(e.tag);
+					List<Entry> u = updated.get(group);
+					if(u == null){
+						u = new ArrayList<>();
+						updated.put(group, u);
+						snapshots.put(group, new HashMap<>());
+					}
+					u.add(e);
+
+					e.snapshot = e.parameters.copyInto(e.snapshot);
+					snapshots.get(group).put(e.moduleId, e.snapshot);
+					e.dirty = false;
+				} else if(!e.used){
+					it.remove();
+					e.parameters.release();
+					if(e.snapshot != null){
+						e.snapshot.release();
+					}
+				}
+				e.used = false;
+			}
+		}
+
+		for(String group : updated.keySet()){
+			Entry e = updated.get(group).get(0);
+			try {
+				repository.storeParameters(e.nnId, snapshots.get(group), e.tag);
+			} catch(Exception ex){
+				System.err.println("Failed to snapshot parameters for "+group);
+				ex.printStackTrace();
+				// retry on next snapshot
+				for(Entry u : updated.get(group)){
+					synchronized(lock(u.key)){
+						u.dirty = true;
+					}
+				}
+			}
+		}
+	}
+
+	// fetch the entry, or load it from the repository (should hold the lock for key)
+	private Entry get(String key, UUID moduleId, String[] tag){
+		Entry e = entries.get(key);
+		if(e == null){
+			try {
+				Tensor parameters = repository.loadParameters(moduleId, tag);
+				e = new Entry(key, moduleId, tag);
+				e.parameters = parameters;
+				entries.put(key, e);
+			} catch(Exception ex){
+				// no parameters available
+				return null;
+			}
+		}
+		e.used = true;
+		return e;
+	}
+
+	private Object lock(String key){
+		return locks[(key.hashCode() & 0x7fffffff) % STRIPES];
+	}
+
+	private String key(UUID moduleId, String[] tag){
+		String key = moduleId.toString();
+		if(tag!=null && tag.length>0){
+			for(String t : tag){
+				if(t!=null)
+					key+="-"+t;
+			}
+		}
+		return key;
+	}
+
+	@Reference
+	void setDianneRepository(DianneRepository r){
+		this.repository = r;
+	}
+
+	private static class Entry {
+
+		final String key;
+		final UUID moduleId;
+		final String[] tag;
+
+		UUID nnId;
+		Tensor parameters;
+		Tensor snapshot;
+
+		// updated since last snapshot
+		boolean dirty = false;
+		// used since last snapshot
+		boolean used = true;
+
+		Entry(String key, UUID moduleId, String[] tag){
+			this.key = key;
+			this.moduleId = moduleId;
+			this.tag = tag;
+		}
+	}
+}
@@ -32,6 +32,10 @@ import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.Constants;
@@ -80,6 +84,10 @@ public class AgentImpl implements Agent {
 	private String environment;
 	private Environment env;
 	
+	// in case of multiple environment instances, each is stepped by its own worker thread
+	private EnvironmentWorker[] workers;
+	private Tensor states;
+	
 	private AgentConfig config;
 	private Map<String, String> properties;
 	
@@ -94,10 +102,6 @@ public class AgentImpl implements Agent {
 	private StrategyFactory<ActionStrategy> factory;
 	private volatile AgentProgress progress;
 	
-	private List<ExperiencePoolSample> uploadBuffer;
-	private Sequence<ExperiencePoolSample> upload; 
-	private int count = 0;
-
 	
 	// repository listener to sync with repo
 	private BundleContext context;
@@ -203,7 +207,19 @@ public class AgentImpl implements Agent {
 			if(env==null){
 				throw new RuntimeException("Environment "+environment+" does not exist");
 			}
-			env.setup(properties);
+			
+			workers = new EnvironmentWorker[Math.max(1, this.config.environments)];
+			if(workers.length == 1){
+				workers[0] = new EnvironmentWorker(env, false);
+			} else {
+				workers[0] = new EnvironmentWorker(env, true);
+				for(int k=1;k<workers.length;k++){
+					workers[k] = new EnvironmentWorker(newInstance(env), true);
+				}
+			}
+			for(EnvironmentWorker w : workers){
+				w.setup();
+			}
 			
 			if(experiencePool != null){
 				// add env state/actionDims in case we need to construct xp pool
@@ -226,14 +242,12 @@ public class AgentImpl implements Agent {
 				pool = (ExperiencePool) d;
 			}
 	
-			uploadBuffer = new ArrayList<>();
-			
 			actingThread = new Thread(new AgentRunnable());
 			actingThread.start();
 		} catch(Exception e){
 			System.err.println("Failed starting agent");
 			e.printStackTrace();
-			env.cleanup();
+			cleanup();
 			acting = false;
 			throw e;
 		}
@@ -264,8 +278,6 @@ public class AgentImpl implements Agent {
 
 		@Override
 		public void run() {
-			ExperiencePoolSample s = new ExperiencePoolSample();
-			
 			try {
 				// setup repo listener
 				Dictionary<String, Object> props = new Hashtable<>();
@@ -290,8 +302,6 @@ public class AgentImpl implements Agent {
 				// make sure to sync initially
 				sync = true;
 				
-				// set count to zero
-				count = 0;
 				seq = 0;
 				epoch = 0;
 				maxReward = -Float.MAX_VALUE;
@@ -307,17 +317,30 @@ public class AgentImpl implements Agent {
 					actionListenerReg = context.registerService(ActionController.class, (ActionController)strategy, props);
 				}
 		
-				s.input = env.getObservation(s.input);
-	
-				progress = new AgentProgress(seq, 0, 0, 0, false, epoch);
+				// in case of multiple environments, the observations are batched in a single tensor
+				if(workers.length > 1){
+					states = new Tensor(workers.length, env.observationDims());
+					for(int k=0;k<workers.length;k++){
+						workers[k].state = states.select(0, k);
+					}
+				}
+				
+				for(EnvironmentWorker w : workers){
+					w.start();
+				}
+				progress = workers[0].progress;
 				
 				if(config.clear){
 					pool.reset();
 				}
 				
+				long[] sequences = new long[workers.length];
+				long[] iterations = new long[workers.length];
+				List<Future<?>> steps = new ArrayList<>(workers.length);
+				
 				while(acting) {
-					// sync parameters
-					if(sync && count == 0){
+					// sync parameters, with a single environment only at the start of a sequence
+					if(sync && (workers.length > 1 || workers[0].count == 0)){
 						for(int k=0;k<nns.length;k++){
 							try {
 								nns[k].loadParameters(config.tag);
@@ -328,101 +351,31 @@ public class AgentImpl implements Agent {
 						sync = false;
 					}
 					
-					// select action according to strategy
-					s.target = strategy.processIteration(progress.sequence, progress.iterations, s.input);
-	
-					// execute action and get reward
-					float reward = env.performAction(s.target);
-					if(s.reward == null){
-						s.reward = new Tensor(1);
-					}
-					s.reward.set(reward, 0);
-					
-					if(config.traceReward){
-						System.out.println("[AGENT] Iteration: "+progress.iterations+" Reward: "+reward);
-					}
-
-					// update progress
-					progress.reward+=reward;
-					progress.last = reward;
-					progress.iterations++;
-					
-					// get the next state
-					s.nextState = env.getObservation(s.nextState);
-					
-					// check if terminal
-					if(s.terminal == null){
-						s.terminal = new Tensor(1);
-					}
-					s.terminal.set(s.nextState == null ? 0.0f : 1.0f, 0);
-					if(s.nextState == null){
-						progress.terminal = true;
-					}
-					
-					// upload in batch
-					if(pool != null) {
-						ExperiencePoolSample b;
-						if(uploadBuffer.size() <= count){
-							b = new ExperiencePoolSample();
-							uploadBuffer.add(b);
-						} else {
-							b = uploadBuffer.get(count);
-						}
-						b.input = s.input.copyInto(b.input);
-						b.target = s.target.copyInto(b.target);
-						b.reward = s.reward.copyInto(b.reward);
-						b.terminal = s.terminal.copyInto(b.terminal);
-						b.nextState = s.isTerminal() ? null : s.nextState.copyInto(b.nextState);
-						count++;
-						
-						if(b.isTerminal() || (config.maxActions > 0 && config.maxActions <= progress.iterations)){
-							// sequence finished, upload to pool
-							upload = new Sequence<ExperiencePoolSample>(uploadBuffer.subList(0, count), count);
-							if(pool!=null){
-								try {
-									pool.addSequence(upload);
-								} catch(Exception e){
-									System.out.println("Failed to upload to experience pool ");
-									e.printStackTrace();
-								}
-							}
-							count = 0;
+					if(workers.length == 1){
+						// select action according to strategy
+						EnvironmentWorker w = workers[0];
+						w.act(strategy.processIteration(w.progress.sequence, w.progress.iterations, w.s.input));
+					} else {
+						// select actions for all environments in a single batch
+						for(int k=0;k<workers.length;k++){
+							sequences[k] = workers[k].progress.sequence;
+							iterations[k] = workers[k].progress.iterations;
 						}
-					}
-	
-					// if this is a terminal state - reset environment and start over
-					if(s.isTerminal() || (config.maxActions > 0 && config.maxActions <= progress.iterations)){
+						Tensor actions = strategy.processIteration(sequences, iterations, states);
 						
-						// store if we observed best reward so far
-						if(config.tagBest){
-							if(progress.reward > maxReward){
-								maxReward = progress.reward;
-								for(NeuralNetwork nn : nns){
-									nn.storeParameters(config.tag,"best");
-								}
-							}
+						// execute the actions on each environment in parallel
+						steps.clear();
+						for(int k=0;k<workers.length;k++){
+							final EnvironmentWorker w = workers[k];
+							final Tensor action = actions.select(0, k);
+							steps.add(w.executor.submit(() -> {
+								w.act(action);
+								return null;
+							}));
 						}
-						
-						// trace agent per sequence
-						if(seq % config.traceInterval == 0){
-							if(config.trace)
-								System.out.println(progress);
-							
-							publishProgress(progress);
+						for(Future<?> f : steps){
+							await(f);
 						}
-						
-						seq++;
-						progress = new AgentProgress(seq, 0, 0, 0, false, epoch);
-						
-						do {
-							env.reset();
-							s.input = env.getObservation(s.input);
-							if(s.input==null){
-								System.out.println("Observation null after reset, trying to reinitialize environment.");
-							}
-						} while(s.input == null);
-					} else {
-						s.input = s.nextState.copyInto(s.input);
 					}
 				}
 			} catch(Throwable t){
@@ -436,7 +389,7 @@ public class AgentImpl implements Agent {
 				
 				publishError(t);
 			} finally {
-				env.cleanup();
+				cleanup();
 				
 				datasets.releaseDataset(pool);
 				
@@ -455,6 +408,203 @@ public class AgentImpl implements Agent {
 		}
 	}
 	
+	/**
+	 * Interacts with a single environment instance and uploads its sequences to the experience pool
+	 */
+	private class EnvironmentWorker {
+		
+		private final Environment env;
+		private final ExecutorService executor;
+		
+		private final ExperiencePoolSample s = new ExperiencePoolSample();
+		private final List<ExperiencePoolSample> uploadBuffer = new ArrayList<>();
+		private int count = 0;
+		
+		private volatile AgentProgress progress;
+		// row of the batched states in case of multiple environments
+		private Tensor state;
+		
+		EnvironmentWorker(Environment env, boolean ownThread){
+			this.env = env;
+			this.executor = ownThread ? Executors.newSingleThreadExecutor() : null;
+		}
+		
+		void setup() throws Exception {
+			run(() -> env.setup(properties));
+		}
+		
+		void start() throws Exception {
+			run(() -> {
+				s.input = env.getObservation(s.input);
+				if(state != null){
+					s.input.copyInto(state);
+				}
+			});
+			progress = new AgentProgress(nextSequence(), 0, 0, 0, false, epoch);
+		}
+		
+		void cleanup(){
+			try {
+				run(() -> env.cleanup());
+			} catch(Exception e){
+				e.printStackTrace();
+			}
+			if(executor != null){
+				executor.shutdownNow();
+			}
+		}
+		
+		void act(Tensor action) throws Exception {
+			s.target = action;
+			
+			// execute action and get reward
+			float reward = env.performAction(s.target);
+			if(s.reward == null){
+				s.reward = new Tensor(1);
+			}
+			s.reward.set(reward, 0);
+			
+			if(config.traceReward){
+				System.out.println("[AGENT] Iteration: "+progress.iterations+" Reward: "+reward);
+			}
+
+			// update progress
+			progress.reward+=reward;
+			progress.last = reward;
+			progress.iterations++;
+			
+			// get the next state
+			s.nextState = env.getObservation(s.nextState);
+			
+			// check if terminal
+			if(s.terminal == null){
+				s.terminal = new Tensor(1);
+			}
+			s.terminal.set(s.nextState == null ? 0.0f : 1.0f, 0);
+			if(s.nextState == null){
+				progress.terminal = true;
+			}
+			
+			// upload in batch
+			if(pool != null) {
+				ExperiencePoolSample b;
+				if(uploadBuffer.size() <= count){
+					b = new ExperiencePoolSample();
+					uploadBuffer.add(b);
+				} else {
+					b = uploadBuffer.get(count);
+				}
+				b.input = s.input.copyInto(b.input);
+				b.target = s.target.copyInto(b.target);
+				b.reward = s.reward.copyInto(b.reward);
+				b.terminal = s.terminal.copyInto(b.terminal);
+				b.nextState = s.isTerminal() ? null : s.nextState.copyInto(b.nextState);
+				count++;
+				
+				if(b.isTerminal() || (config.maxActions > 0 && config.maxActions <= progress.iterations)){
+					// sequence finished, upload to pool
+					Sequence<ExperiencePoolSample> upload = new Sequence<ExperiencePoolSample>(uploadBuffer.subList(0, count), count);
+					try {
+						pool.addSequence(upload);
+					} catch(Exception e){
+						System.out.println("Failed to upload to experience pool ");
+						e.printStackTrace();
+					}
+					count = 0;
+				}
+			}
+
+			// if this is a terminal state - reset environment and start over
+			if(s.isTerminal() || (config.maxActions > 0 && config.maxActions <= progress.iterations)){
+				
+				// store if we observed best reward so far
+				if(config.tagBest){
+					synchronized(AgentImpl.this){
+						if(progress.reward > maxReward){
+							maxReward = progress.reward;
+							for(NeuralNetwork nn : nns){
+								nn.storeParameters(config.tag,"best");
+							}
+						}
+					}
+				}
+				
+				// trace agent per sequence
+				if(progress.sequence % config.traceInterval == 0){
+					if(config.trace)
+						System.out.println(progress);
+					
+					publishProgress(progress);
+				}
+				
+				progress = new AgentProgress(nextSequence(), 0, 0, 0, false, epoch);
+				if(this == workers[0]){
+					AgentImpl.this.progress = progress;
+				}
+				
+				do {
+					env.reset();
+					s.input = env.getObservation(s.input);
+					if(s.input==null){
+						System.out.println("Observation null after reset, trying to reinitialize environment.");
+					}
+				} while(s.input == null);
+			} else {
+				s.input = s.nextState.copyInto(s.input);
+			}
+			
+			if(state != null){
+				s.input.copyInto(state);
+			}
+		}
+		
+		// run on the environment's own thread if it has one
+		private void run(Runnable r) throws Exception {
+			if(executor == null){
+				r.run();
+			} else {
+				await(executor.submit(r));
+			}
+		}
+	}
+	
+	private synchronized long nextSequence(){
+		return seq++;
+	}
+	
+	private static void await(Future<?> f) throws Exception {
+		try {
+			f.get();
+		} catch(InterruptedException e){
+			throw new RuntimeException("Interrupted while acting", e);
+		} catch(ExecutionException e){
+			if(e.getCause() instanceof Exception)
+				throw (Exception)e.getCause();
+			throw e;
+		}
+	}
+	
+	private Environment newInstance(Environment e){
+		try {
+			return e.newInstance();
+		} catch(UnsupportedOperationException ex){
+			throw new RuntimeException("Environment "+environment+" does not support acting on "+workers.length+" instances, use environments=1", ex);
+		}
+	}
+	
+	private void cleanup(){
+		if(workers == null){
+			if(env != null)
+				env.cleanup();
+			return;
+		}
+		for(EnvironmentWorker w : workers){
+			if(w != null){
+				w.cleanup();
+			}
+		}
+		workers = null;
+	}
 	
 	private void publishProgress(final AgentProgress progress){
 		if(!acting)
@@ -63,4 +63,11 @@ public class AgentConfig {
 	 * Tag parameters that got best reward in a sequence
 	 */
 	public boolean tagBest = true;
+	
+	/**
+	 * Number of environment instances to act on in parallel, the observations of all 
+	 * instances are batched in a single forward pass. Only possible for environments that
+	 * support creating new instances.
+	 */
+	public int environments = 1;
 }
@@ -73,5 +73,33 @@ public class BoltzmannActionStrategy implements ActionStrategy {
 		
 		return action;
 	}
+	
+	@Override
+	public Tensor processIteration(long[] s, long[] i, Tensor states) throws Exception {
+		// single forward pass for all environments
+		Tensor output = nn.forward(states);
+		
+		Tensor actions = new Tensor(output.dims());
+		actions.fill(0);
+		
+		for(int k=0;k<s.length;k++){
+			double temperature = config.temperatureMin + (config.temperatureMax - config.temperatureMin) * Math.exp(-s[k] * config.temperatureDecay);
+			
+			Tensor o = output.select(0, k);
+			TensorOps.div(o, o, (float) temperature);
+			ModuleOps.softmax(o, o);
+			
+			double t = 0, r = Math.random();
+			int a = 0;
+			
+			while((t += o.get(a)) < r)
+				a++;
+			
+			actions.set(1, k, a);
+			o.release();
+		}
+		
+		return actions;
+	}
 
 }
@@ -60,5 +60,26 @@ public class GaussianNoiseActionStrategy implements ActionStrategy {
 		
 		return action;
 	}
+	
+	@Override
+	public Tensor processIteration(long[] s, long[] i, Tensor states) throws Exception {
+		// single forward pass for all environments
+		Tensor actions = policy.forward(states);
+		
+		for(int k=0;k<s.length;k++){
+			Tensor action = actions.select(0, k);
+			
+			noise.randn();
+			
+			double stdev = config.noiseMin + (config.noiseMax - config.noiseMin) * Math.exp(-s[k] * config.noiseDecay);
+			
+			TensorOps.add(action, action, (float) stdev, noise);
+			action.release();
+		}
+		
+		TensorOps.clamp(actions, actions, config.minValue, config.maxValue);
+		
+		return actions;
+	}
 
 }
@@ -45,6 +45,7 @@ public class GreedyActionStrategy implements ActionStrategy {
 	private NeuralNetwork nn;
 	
 	private Tensor action;
+	private Tensor actions;
 
 	@Override
 	public void setup(Map<String, String> config, Environment env, NeuralNetwork... nns) throws Exception {
@@ -78,5 +79,39 @@ public class GreedyActionStrategy implements ActionStrategy {
 			return action;
 		}
 	}
+	
+	@Override
+	public Tensor processIteration(long[] s, long[] i, Tensor states) throws Exception {
+		// single forward pass for all environments
+		Tensor output = nn.forward(states);
+		
+		if(actions == null || actions.size(0) != s.length){
+			actions = new Tensor(s.length, action.size());
+			actions.fill(0);
+		}
+		
+		for(int k=0;k<s.length;k++){
+			double epsilon = config.epsilonMin + (config.epsilonMax - config.epsilonMin) * Math.exp(-s[k] * config.epsilonDecay);
+			
+			if(config.trace && k == 0 && s[k] % config.traceInterval == 0 && i[k] == 0){
+				System.out.println("Epsilon: "+epsilon);
+			}
+			
+			Tensor a = actions.select(0, k);
+			if (Math.random() < epsilon) {
+				if(config.momentum <= 0.0f || Math.random() >= config.momentum){
+					a.fill(0);
+					a.set(1, (int) (Math.random() * a.size()));
+				}
+			} else {
+				Tensor o = output.select(0, k);
+				a.fill(0);
+				a.set(1, TensorOps.argmax(o));
+				o.release();
+			}
+			a.release();
+		}
+		return actions;
+	}
 
 }
@@ -28,14 +28,21 @@
 
 using namespace std;
 
-ALEInterface* ALE;
+// each ArcadeLearningEnvironment instance keeps a pointer to its own ALEInterface
+static ALEInterface* getALE(JNIEnv* env, jobject o){
+	jclass c = env->GetObjectClass(o);
+	jfieldID f = env->GetFieldID(c, "ale", "J");
+	ALEInterface* ale = (ALEInterface*) env->GetLongField(o, f);
+	if(ale == NULL){
+		ale = new ALEInterface();
+		env->SetLongField(o, f, (jlong) ale);
+	}
+	return ale;
+}
 
 JNIEXPORT void JNICALL Java_be_iminds_iot_dianne_rl_environment_ale_ArcadeLearningEnvironment_loadROM
   (JNIEnv * env, jobject o, jstring rom){
-	 if(ALE == NULL){
-		 ALE = new ALEInterface();
-	 }
-
+	ALEInterface* ALE = getALE(env, o);
 	 const char *romString = env->GetStringUTFChars(rom, 0);
 	 ALE->loadROM(romString);
 	 env->ReleaseStringUTFChars(rom, romString);
@@ -46,9 +53,7 @@ JNIEXPORT void JNICALL Java_be_iminds_iot_dianne_rl_environment_ale_ArcadeLearni
 
 JNIEXPORT jint JNICALL Java_be_iminds_iot_dianne_rl_environment_ale_ArcadeLearningEnvironment_getActions
   (JNIEnv * env, jobject o){
-	 if(ALE == NULL){
-		 ALE = new ALEInterface();
-	 }
+	ALEInterface* ALE = getALE(env, o);
 	 ActionVect minimal_actions = ALE->getMinimalActionSet();
 	 return minimal_actions.size();
 }
@@ -56,34 +61,35 @@ JNIEXPORT jint JNICALL Java_be_iminds_iot_dianne_rl_environment_ale_ArcadeLearni
 
 JNIEXPORT jint JNICALL Java_be_iminds_iot_dianne_rl_environment_ale_ArcadeLearningEnvironment_performAction
   (JNIEnv * env, jobject o, jint action){
+	ALEInterface* ALE = getALE(env, o);
 	return ALE->act(ALE->getMinimalActionSet()[action]);
 }
 
 
 JNIEXPORT void JNICALL Java_be_iminds_iot_dianne_rl_environment_ale_ArcadeLearningEnvironment_resetGame
   (JNIEnv * env, jobject o){
+	ALEInterface* ALE = getALE(env, o);
 	ALE->reset_game();
 }
 
 
 JNIEXPORT jboolean JNICALL Java_be_iminds_iot_dianne_rl_environment_ale_ArcadeLearningEnvironment_gameOver
   (JNIEnv * env, jobject o){
+	ALEInterface* ALE = getALE(env, o);
 	return ALE->game_over();
 }
 
 
 JNIEXPORT void JNICALL Java_be_iminds_iot_dianne_rl_environment_ale_ArcadeLearningEnvironment_setFrameskip
   (JNIEnv * env, jobject o, jint skip){
-	if(ALE == NULL){
-		ALE = new ALEInterface();
-	}
-
+	ALEInterface* ALE = getALE(env, o);
 	ALE->setInt("frame_skip", skip);
 }
 
 
 JNIEXPORT jfloatArray JNICALL Java_be_iminds_iot_dianne_rl_environment_ale_ArcadeLearningEnvironment_getScreen
   (JNIEnv * env, jobject o){
+	ALEInterface* ALE = getALE(env, o);
 	ALEScreen screen = ALE->getScreen();
 
 	pixel_t* screen_data = screen.getArray();
@@ -115,3 +121,15 @@ JNIEXPORT jfloatArray JNICALL Java_be_iminds_iot_dianne_rl_environment_ale_Arcad
 
 	return result;
 }
+
+
+JNIEXPORT void JNICALL Java_be_iminds_iot_dianne_rl_environment_ale_ArcadeLearningEnvironment_dispose
+  (JNIEnv * env, jobject o){
+	jclass c = env->GetObjectClass(o);
+	jfieldID f = env->GetFieldID(c, "ale", "J");
+	ALEInterface* ale = (ALEInterface*) env->GetLongField(o, f);
+	if(ale != NULL){
+		delete ale;
+		env->SetLongField(o, f, (jlong) 0);
+	}
+}
@@ -60,6 +60,9 @@ public class ArcadeLearningEnvironment implements Environment {
 		}
     }
 
+	// native ALEInterface of this instance, allowing multiple instances to run in parallel
+	private long ale = 0;
+	
 	private Set<EnvironmentListener> listeners = Collections.synchronizedSet(new HashSet<>());
 
 	private ALEConfig config;
@@ -160,6 +163,8 @@ public class ArcadeLearningEnvironment implements Environment {
 	
 	private native void setFrameskip(int skip);
 	
+	private native void dispose();
+	
 	
 	@Reference(cardinality = ReferenceCardinality.MULTIPLE, policy = ReferencePolicy.DYNAMIC)
 	void addEnvironmentListener(EnvironmentListener l, Map<String, Object> properties){
@@ -202,7 +207,14 @@ public class ArcadeLearningEnvironment implements Environment {
 
 	@Override
 	public void cleanup() {
-		//TODO cleanup?
 		active = false;
+		
+		dispose();
+	}
+	
+	@Override
+	public Environment newInstance() {
+		// each instance has its own native ALEInterface, only this instance notifies the listeners
+		return new ArcadeLearningEnvironment();
 	}
 }
@@ -30,17 +30,18 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.FloatBuffer;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.nio.file.StandardOpenOption;
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.IntStream;
 
 import be.iminds.iot.dianne.api.dataset.AbstractDataset;
 import be.iminds.iot.dianne.api.dataset.Sequence;
@@ -63,7 +64,28 @@ public abstract class AbstractExperiencePool extends AbstractDataset implements
 	
 	protected boolean infiniteHorizon = false;
 	
-	protected ExecutorService queuedAddSequenceThread = Executors.newSingleThreadExecutor();
+	// sequences added while the pool is locked are queued and stored by the ingest thread
+	public enum IngestPolicy {
+		BLOCK, // wait until the queue has room for the sequence
+		DROP // drop the sequence if the queue is full
+	}
+	
+	protected int ingestCapacity = 1000; // max number of samples queued for ingest
+	protected IngestPolicy ingestPolicy = IngestPolicy.BLOCK;
+	
+	private IngestQueue ingestQueue;
+	private Thread ingestThread;
+	private volatile boolean ingesting = false;
+	
+	private final AtomicLong ingested = new AtomicLong();
+	private final AtomicLong dropped = new AtomicLong();
+	private long rateTime = System.currentTimeMillis();
+	private long rateCount = 0;
+	private float rate = 0;
+	
+	// buffer to convert samples to rows, only used when holding the write lock
+	private float[] writeBuffer;
+	private FloatBuffer writeView;
 	
 	public class SequenceLocation {
 		public final int start;
@@ -87,10 +109,45 @@ public abstract class AbstractExperiencePool extends AbstractDataset implements
 		}
 	}
 	
-	protected List<SequenceLocation> sequences = new ArrayList<>();
+	// index over the stored sequences, evicted at the front when the buffer cycles
+	private final SequenceIndex sequences = new SequenceIndex();
 	
 	protected ReentrantReadWriteLock lock = new ReentrantReadWriteLock(true);
 	
+	// the sample buffer is split in a number of shards that each guard their own range of samples,
+	// so that samples are never read while being overwritten
+	protected int shards = 1;
+	private ReentrantReadWriteLock[] shardLocks;
+	// number of neighbouring samples on each side that loadData and writeData of a sample might access,
+	// the shards of these are locked as well
+	protected int neighbours = 0;
+	
+	// scratch buffers per thread to fetch samples into, so that fetching does not allocate
+	private final ThreadLocal<FetchBuffer> fetchBuffers = ThreadLocal.withInitial(FetchBuffer::new);
+	
+	private class FetchBuffer {
+		int capacity = 0;
+		float[] states, actions, rewards, terminals, nextStates;
+		FloatBuffer stateBuffer, actionBuffer, rewardBuffer, terminalBuffer, nextStateBuffer;
+		
+		FetchBuffer ensure(int batchSize){
+			if(batchSize > capacity){
+				capacity = batchSize;
+				states = new float[batchSize*stateSize];
+				actions = new float[batchSize*actionSize];
+				rewards = new float[batchSize];
+				terminals = new float[batchSize];
+				nextStates = new float[batchSize*stateSize];
+				stateBuffer = FloatBuffer.wrap(states);
+				actionBuffer = FloatBuffer.wrap(actions);
+				rewardBuffer = FloatBuffer.wrap(rewards);
+				terminalBuffer = FloatBuffer.wrap(terminals);
+				nextStateBuffer = FloatBuffer.wrap(nextStates);
+			}
+			return this;
+		}
+	}
+	
 	@Override
 	public void activate(Map<String, Object> config) {
 		super.activate(config);
@@ -103,9 +160,36 @@ public abstract class AbstractExperiencePool extends AbstractDataset implements
 	
 		sampleSize = stateSize+actionSize+2;
 
+		shards = Math.max(1, Math.min(shards, maxSize));
+		shardLocks = new ReentrantReadWriteLock[shards];
+		for(int i=0;i<shards;i++){
+			shardLocks[i] = new ReentrantReadWriteLock();
+		}
+		
 		setup(config);
 		
 		recover();
+		
+		writeBuffer = new float[sampleSize];
+		writeView = FloatBuffer.wrap(writeBuffer);
+		
+		ingestQueue = new IngestQueue(Math.max(1, Math.min(ingestCapacity, maxSize)), sampleSize);
+		ingesting = true;
+		ingestThread = new Thread(this::ingest, "Dianne Experience Pool "+name+" ingest");
+		ingestThread.setDaemon(true);
+		ingestThread.start();
+	}
+	
+	public void deactivate(){
+		ingesting = false;
+		if(ingestThread != null){
+			LockSupport.unpark(ingestThread);
+			try {
+				ingestThread.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
 	}
 	
 	@Override
@@ -113,6 +197,15 @@ public abstract class AbstractExperiencePool extends AbstractDataset implements
 		if(properties.containsKey("maxSize"))
 			this.maxSize = Integer.parseInt(properties.get("maxSize").toString().trim());
 		
+		if(properties.containsKey("shards"))
+			this.shards = Integer.parseInt(properties.get("shards").toString().trim());
+		
+		if(properties.containsKey("ingestCapacity"))
+			this.ingestCapacity = Integer.parseInt(properties.get("ingestCapacity").toString().trim());
+		
+		if(properties.containsKey("ingestPolicy"))
+			this.ingestPolicy = IngestPolicy.valueOf(properties.get("ingestPolicy").toString().trim().toUpperCase());
+		
 		String[] id = (String[])properties.get("stateDims");
 		if(id!=null){
 			inputDims= new int[id.length];
@@ -159,6 +252,39 @@ public abstract class AbstractExperiencePool extends AbstractDataset implements
 		return sequences.get(sequence).length;
 	}
 	
+	@Override
+	public int capacity(){
+		return maxSize;
+	}
+	
+	@Override
+	public int[] getPositions(int... indices){
+		int[] positions = new int[indices.length];
+		try {
+			lock.readLock().lock();
+			for(int i=0;i<indices.length;i++){
+				positions[i] = (int)getBufferPosition(indices[i], 0);
+			}
+		} finally {
+			lock.readLock().unlock();
+		}
+		return positions;
+	}
+	
+	@Override
+	public int[] getIndices(int... positions){
+		int[] indices = new int[positions.length];
+		try {
+			lock.readLock().lock();
+			for(int i=0;i<positions.length;i++){
+				indices[i] = getIndex(positions[i]);
+			}
+		} finally {
+			lock.readLock().unlock();
+		}
+		return indices;
+	}
+	
 	@Override
 	protected void readLabels(String labelsFile) {}
 	
@@ -176,7 +302,7 @@ public abstract class AbstractExperiencePool extends AbstractDataset implements
 	
 	@Override
 	public ExperiencePoolSample getSample(ExperiencePoolSample s, int index){
-		// no locking since that kills performance and every part of the experience pool should be a valid xp sample
+		// only the sample itself is locked, every part of the experience pool should be a valid xp sample
 		return getSample(s, index, 0, true);
 	}
 		
@@ -186,11 +312,47 @@ public abstract class AbstractExperiencePool extends AbstractDataset implements
 			b = new ExperiencePoolBatch(indices.length, stateDims, actionDims);
 		}
 		
-		int i = 0;
-		for(int index : indices){
-			getSample(b.getSample(i++), index, 0, true);
+		long[] positions = new long[indices.length];
+		try {
+			lock.readLock().lock();
+			for(int i=0;i<indices.length;i++){
+				positions[i] = getBufferPosition(indices[i], 0);
+			}
+		} finally {
+			lock.readLock().unlock();
 		}
 		
+		if(b.getSize() != indices.length){
+			// only fill part of the batch
+			for(int i=0;i<positions.length;i++){
+				getSample(b.getSample(i), positions[i], true);
+			}
+			return b;
+		}
+		
+		// read all samples in the fetch buffers and copy these in the batch with one copy per field
+		final FetchBuffer f = fetchBuffers.get().ensure(indices.length);
+		if(shards == 1 || indices.length < shards){
+			for(int i=0;i<positions.length;i++){
+				fetch(f, i, positions[i], true);
+			}
+		} else {
+			// fill the batch in parallel, one task per shard
+			IntStream.range(0, shards).parallel().forEach(shard -> {
+				for(int i=0;i<positions.length;i++){
+					if(shard(positions[i]) == shard){
+						fetch(f, i, positions[i], true);
+					}
+				}
+			});
+		}
+		
+		b.input.copyFrom(f.stateBuffer, 0);
+		b.target.copyFrom(f.actionBuffer, 0);
+		b.reward.copyFrom(f.rewardBuffer, 0);
+		b.terminal.copyFrom(f.terminalBuffer, 0);
+		b.nextState.copyFrom(f.nextStateBuffer, 0);
+		
 		return b;
 	}
 
@@ -331,6 +493,7 @@ public abstract class AbstractExperiencePool extends AbstractDataset implements
 		if(sequence == null){
 			throw new RuntimeException("Null sequence given");
 		}
+		check(sequence);
 
 		int length = sequence.size();
 		int size = length;
@@ -347,81 +510,181 @@ public abstract class AbstractExperiencePool extends AbstractDataset implements
 			return;
 		}
 		
-		float[] buffer = new float[sampleSize];
-		boolean locked = false;
-		try {
-			locked = lock.writeLock().tryLock();
-			
-			if(!locked){
-				// take copy of the sequence and add to the queuedAddSequence thread...
-				// this allows for agents not having to keep on waiting until sequence is added...
-				final Sequence<ExperiencePoolSample> copy = sequence.clone();
-				
-				// TODO should we make sure we are not getting flooded with addSequences 
-				// and ignore addSequence calls once queue gets crowded?
-				queuedAddSequenceThread.submit(() ->{
-					try {
-						lock.writeLock().lock();
-						addSequence(copy);
-					} finally {
-						lock.writeLock().unlock();
-					}
-				});
+		if(lock.writeLock().tryLock()){
+			try {
+				store(length, infinite, i -> row(sequence, i, writeBuffer, writeView));
+			} catch(Throwable t){ 
+				t.printStackTrace();
+			} finally {
+				lock.writeLock().unlock();
+			}
+			return;
+		}
+		
+		if(size > ingestQueue.capacity()){
+			// too large to queue
+			if(ingestPolicy == IngestPolicy.DROP){
+				dropped.incrementAndGet();
 				return;
 			}
-
-			int index = getBufferEnd();
-			int start = index == maxSize ? 0 : index;
 			
-			if(start == 0 && !sequences.isEmpty()
-					&& sequences.get(0).start == 0){
-				SequenceLocation removed = sequences.remove(0);
-				noSamples -= removed.length;
+			lock.writeLock().lock();
+			try {
+				store(length, infinite, i -> row(sequence, i, writeBuffer, writeView));
+			} catch(Throwable t){ 
+				t.printStackTrace();
+			} finally {
+				lock.writeLock().unlock();
 			}
-			
+			return;
+		}
+		
+		// copy the sequence in the ingest queue, the agent does not have to wait until it is stored
+		long position;
+		while((position = ingestQueue.claim(size)) < 0){
+			if(ingestPolicy == IngestPolicy.DROP || !ingesting){
+				dropped.incrementAndGet();
+				return;
+			}
+			LockSupport.parkNanos(100000);
+		}
+		// always publish the claimed rows, the consumer cannot get past an unpublished sequence
+		boolean filled = false;
+		try {
 			for(int i=0;i<size;i++){
-				Arrays.fill(buffer, 0.0f);
-				if(sequence.size() == i){
-					ExperiencePoolSample s = sequence.get(sequence.size()-1);
-					System.arraycopy(s.nextState.get(), 0, buffer, 0 , stateSize);
-					buffer[stateSize+actionSize+1] = 1.0f;
-				} else {
-					ExperiencePoolSample s = sequence.get(i);
-					System.arraycopy(s.input.get(), 0, buffer, 0 , stateSize);
-					System.arraycopy(s.target.get(), 0, buffer, stateSize, actionSize);
-					buffer[stateSize+actionSize] = s.getScalarReward();
-					buffer[stateSize+actionSize+1] = s.isTerminal() ? 0.0f : 1.0f;
-				}
-				
-				if(index == maxSize){
-					// cycle 
-					index = 0;
-					
-					if(sequences.get(0).start == 0){
-						SequenceLocation removed = sequences.remove(0);
-						noSamples -= removed.length;
+				row(sequence, i, ingestQueue.row(position+i), ingestQueue.view(position+i));
+			}
+			filled = true;
+		} catch(Throwable t){
+			t.printStackTrace();
+		} finally {
+			if(filled){
+				ingestQueue.publish(position, length, infinite);
+			} else {
+				ingestQueue.skip(position, size);
+			}
+			LockSupport.unpark(ingestThread);
+		}
+	}
+	
+	/**
+	 * @return the number of samples that are queued to be stored
+	 */
+	public int getIngestQueueDepth(){
+		return ingestQueue.depth();
+	}
+	
+	/**
+	 * @return the number of sequences dropped because the ingest queue was full
+	 */
+	public long getIngestDropped(){
+		return dropped.get();
+	}
+	
+	/**
+	 * @return the number of samples stored per second, measured since the last call
+	 * or over the last second
+	 */
+	public synchronized float getIngestRate(){
+		long now = System.currentTimeMillis();
+		if(now - rateTime >= 1000){
+			long count = ingested.get();
+			rate = (count - rateCount)*1000f/(now - rateTime);
+			rateCount = count;
+			rateTime = now;
+		}
+		return rate;
+	}
+	
+	private void ingest(){
+		while(ingesting || ingestQueue.available()){
+			if(!ingestQueue.available()){
+				LockSupport.parkNanos(10000000);
+				continue;
+			}
+			
+			// store all queued sequences at once
+			lock.writeLock().lock();
+			try {
+				while(ingestQueue.available()){
+					if(ingestQueue.nextSkipped()){
+						ingestQueue.release(ingestQueue.nextLength());
+						continue;
 					}
+					
+					int length = ingestQueue.nextLength();
+					boolean infinite = ingestQueue.nextInfinite();
+					store(length, infinite, ingestQueue::nextRow);
+					ingestQueue.release(length + (infinite ? 1 : 0));
 				}
-
-				if( getBufferStart() > 0 && index == getBufferStart()){
-					SequenceLocation removed = sequences.remove(0);
+			} catch(Throwable t){
+				t.printStackTrace();
+			} finally {
+				lock.writeLock().unlock();
+			}
+		}
+	}
+	
+	// convert sample i of the sequence to a row, the additional row of an infinite sequence holds the next state
+	private float[] row(Sequence<ExperiencePoolSample> sequence, int i, float[] row, FloatBuffer view){
+		Arrays.fill(row, 0.0f);
+		if(sequence.size() == i){
+			ExperiencePoolSample s = sequence.get(sequence.size()-1);
+			s.nextState.copyTo(view, 0);
+			row[stateSize+actionSize+1] = 1.0f;
+		} else {
+			ExperiencePoolSample s = sequence.get(i);
+			s.input.copyTo(view, 0);
+			s.target.copyTo(view, stateSize);
+			row[stateSize+actionSize] = s.getScalarReward();
+			row[stateSize+actionSize+1] = s.isTerminal() ? 0.0f : 1.0f;
+		}
+		return row;
+	}
+	
+	private interface Rows {
+		float[] get(int i);
+	}
+	
+	/**
+	 * Store a sequence in the ring buffer, only to be called when holding the write lock
+	 */
+	private void store(int length, boolean infinite, Rows rows){
+		int size = length + (infinite ? 1 : 0);
+		
+		int index = getBufferEnd();
+		int start = index == maxSize ? 0 : index;
+		
+		if(start == 0 && !sequences.isEmpty()
+				&& sequences.get(0).start == 0){
+			SequenceLocation removed = sequences.removeFirst();
+			noSamples -= removed.length;
+		}
+		
+		for(int i=0;i<size;i++){
+			if(index == maxSize){
+				// cycle 
+				index = 0;
+				
+				if(sequences.get(0).start == 0){
+					SequenceLocation removed = sequences.removeFirst();
 					noSamples -= removed.length;
 				}
-				
-				writeData((long)index*(long)sampleSize, buffer);
-				index++;
+			}
+
+			if( getBufferStart() > 0 && index == getBufferStart()){
+				SequenceLocation removed = sequences.removeFirst();
+				noSamples -= removed.length;
 			}
 			
-			SequenceLocation seq = new SequenceLocation(start, length, infinite);
-			sequences.add(seq);
-			noSamples+= length;
-			
-		} catch(Throwable t){ 
-			t.printStackTrace();
-		} finally {
-			if(locked)
-				lock.writeLock().unlock();
+			writeSample(index, rows.get(i));
+			index++;
 		}
+		
+		SequenceLocation seq = new SequenceLocation(start, length, infinite);
+		sequences.add(seq);
+		noSamples+= length;
+		ingested.addAndGet(length);
 	}
 	
 	@Override
@@ -437,10 +700,19 @@ public abstract class AbstractExperiencePool extends AbstractDataset implements
 	}
 
 	protected ExperiencePoolSample getSample(ExperiencePoolSample s, int index, int startSequence, boolean loadState){
-		float[] sampleBuffer = new float[sampleSize];
-		
-		long bufferPosition  = getBufferPosition(index, startSequence);
-		loadData(bufferPosition*sampleSize, sampleBuffer);
+		long bufferPosition;
+		try {
+			lock.readLock().lock();
+			bufferPosition = getBufferPosition(index, startSequence);
+		} finally {
+			lock.readLock().unlock();
+		}
+		return getSample(s, bufferPosition, loadState);
+	}
+	
+	private ExperiencePoolSample getSample(ExperiencePoolSample s, long bufferPosition, boolean loadState){
+		FetchBuffer f = fetchBuffers.get().ensure(1);
+		fetch(f, 0, bufferPosition, loadState);
 		
 		if(s == null){
 			s = new ExperiencePoolSample();	
@@ -449,87 +721,161 @@ public abstract class AbstractExperiencePool extends AbstractDataset implements
 		// state
 		// in case of sequences on might just reuse nextState tensor of previous instead of loading state again
 		if(loadState){
-			float[] stateBuffer = new float[stateSize];
-			System.arraycopy(sampleBuffer, 0, stateBuffer, 0, stateSize);
-
 			if(s.input == null){
-				s.input = new Tensor(stateBuffer, stateDims);
-			} else {
-				s.input.set(stateBuffer);
+				s.input = new Tensor(stateDims);
 			}
+			s.input.copyFrom(f.stateBuffer, 0);
 		}
 		
 		// action
-		float[] actionBuffer = new float[actionSize];
-		System.arraycopy(sampleBuffer, stateSize, actionBuffer, 0, actionSize);
-		
 		if(s.target == null){
-			s.target = new Tensor(actionBuffer, actionDims);
-		} else {
-			s.target.set(actionBuffer);
+			s.target = new Tensor(actionDims);
 		}
+		s.target.copyFrom(f.actionBuffer, 0);
 		
 		// reward
 		if(s.reward == null){
 			s.reward = new Tensor(1);
 		}
-		s.reward.set(sampleBuffer[stateSize+actionSize], 0);
+		s.reward.set(f.rewards[0], 0);
 		
 		// terminal
 		if(s.terminal == null){
 			s.terminal = new Tensor(1);
 		}
-		s.terminal.set(sampleBuffer[stateSize+actionSize+1], 0);
+		s.terminal.set(f.terminals[0], 0);
 		
-		if(!s.isTerminal()){
-			// load next state
-			float[] nextStateBuffer = new float[stateSize];
-			bufferPosition += 1;
-			if(bufferPosition == maxSize)
-				bufferPosition = 0;
-			
-			loadData((bufferPosition*sampleSize) , nextStateBuffer);
-
-			if(s.nextState == null){
-				s.nextState = new Tensor(nextStateBuffer, stateDims);
-			} else {
-				s.nextState.set(nextStateBuffer);
-			}
-		} else {
-			if(s.nextState == null){
-				s.nextState = new Tensor(stateDims);
-			} 
-			s.nextState.fill(0);
+		// next state, zero in case of a terminal sample
+		if(s.nextState == null){
+			s.nextState = new Tensor(stateDims);
 		}
+		s.nextState.copyFrom(f.nextStateBuffer, 0);
 		
 		return s;
 	}
 	
+	/**
+	 * Read the sample at bufferPosition into row i of the fetch buffer
+	 */
+	private void fetch(FetchBuffer f, int i, long bufferPosition, boolean loadState){
+		long position = bufferPosition*sampleSize;
+		lockShards(bufferPosition, false);
+		try {
+			if(loadState){
+				loadData(position, f.states, i*stateSize, stateSize);
+			}
+			loadData(position+stateSize, f.actions, i*actionSize, actionSize);
+			loadData(position+stateSize+actionSize, f.rewards, i, 1);
+			loadData(position+stateSize+actionSize+1, f.terminals, i, 1);
+		} finally {
+			unlockShards(bufferPosition, false);
+		}
+		
+		if(f.terminals[i] == 0.0f){
+			Arrays.fill(f.nextStates, i*stateSize, (i+1)*stateSize, 0.0f);
+			return;
+		}
+		
+		// load next state
+		bufferPosition += 1;
+		if(bufferPosition == maxSize)
+			bufferPosition = 0;
+		
+		lockShards(bufferPosition, false);
+		try {
+			loadData(bufferPosition*sampleSize, f.nextStates, i*stateSize, stateSize);
+		} finally {
+			unlockShards(bufferPosition, false);
+		}
+	}
+	
 	private long getBufferPosition(long index, int startSequence){
 		long pos;
 		long start = sequences.get(startSequence).start;
 		if(!infiniteHorizon){
 			pos = (start+index) % maxSize;
 		} else {
-			int i = startSequence;
-			long trackedIndex = 0;
-			long correctedIndex = 0;
-			while(i < sequences.size() && trackedIndex < index){
-				int length = sequences.get(i).length;
-				trackedIndex += length;
-				correctedIndex += length;
-				if(trackedIndex > index){
-					correctedIndex -= (trackedIndex-index);
-				} else if(sequences.get(i).infinite){
-					correctedIndex +=1;
-				}
-				i++;
-			}
-			pos = (start+correctedIndex) % maxSize;
+			// skip the additional next state stored after each infinite sequence
+			pos = (start+sequences.slotOffset(startSequence, index)) % maxSize;
 		}
 		return pos;
 	}
 	
+	private int shard(long bufferPosition){
+		return (int)(bufferPosition*shards/maxSize);
+	}
+	
+	private void writeSample(long bufferPosition, float[] data){
+		lockShards(bufferPosition, true);
+		try {
+			writeData(bufferPosition*sampleSize, data);
+		} finally {
+			unlockShards(bufferPosition, true);
+		}
+	}
+	
+	/**
+	 * Lock the shards of the sample at bufferPosition and of its neighbours, always in ascending 
+	 * shard order to avoid deadlocks between threads that lock overlapping ranges
+	 */
+	private void lockShards(long bufferPosition, boolean write){
+		if(neighbours == 0){
+			ReentrantReadWriteLock l = shardLocks[shard(bufferPosition)];
+			(write ? l.writeLock() : l.readLock()).lock();
+			return;
+		}
+		
+		for(int s=0;s<shards;s++){
+			if(covers(bufferPosition, s)){
+				(write ? shardLocks[s].writeLock() : shardLocks[s].readLock()).lock();
+			}
+		}
+	}
+	
+	private void unlockShards(long bufferPosition, boolean write){
+		if(neighbours == 0){
+			ReentrantReadWriteLock l = shardLocks[shard(bufferPosition)];
+			(write ? l.writeLock() : l.readLock()).unlock();
+			return;
+		}
+		
+		for(int s=shards-1;s>=0;s--){
+			if(covers(bufferPosition, s)){
+				(write ? shardLocks[s].writeLock() : shardLocks[s].readLock()).unlock();
+			}
+		}
+	}
+	
+	// whether shard contains one of the samples within neighbours of bufferPosition
+	private boolean covers(long bufferPosition, int shard){
+		if(2*neighbours+1 >= maxSize)
+			return true;
+		
+		long from = (bufferPosition - neighbours + maxSize) % maxSize;
+		long to = (bufferPosition + neighbours) % maxSize;
+		int first = shard(from);
+		int last = shard(to);
+		if(from <= to){
+			return shard >= first && shard <= last;
+		} else {
+			// the range wraps around the end of the buffer
+			return shard >= first || shard <= last;
+		}
+	}
+	
+	private int getIndex(int position){
+		if(sequences.isEmpty())
+			return -1;
+		
+		int offset = (position - sequences.get(0).start + maxSize) % maxSize;
+		if(!infiniteHorizon){
+			return offset < noSamples ? offset : -1;
+		}
+		
+		// skip the additional next state stored after each infinite sequence
+		return (int)sequences.sampleIndex(offset);
+	}
+	
 	private int getBufferStart(){
 		if(sequences.isEmpty())
 			return 0;
@@ -539,14 +885,38 @@ public abstract class AbstractExperiencePool extends AbstractDataset implements
 	private int getBufferEnd(){
 		if(sequences.isEmpty())
 			return 0;
-		SequenceLocation last = sequences.get(sequences.size() - 1);
+		SequenceLocation last = sequences.last();
 		return  (last.start+last.length + (last.infinite ? 1 : 0)) % maxSize;
 	}
 	
 	protected abstract void setup(Map<String, Object> config);
 	
+	/**
+	 * Check whether a sequence can be stored by this pool before anything is stored, throws an 
+	 * IllegalArgumentException in case it cannot.
+	 */
+	protected void check(Sequence<ExperiencePoolSample> sequence){}
+	
+	/**
+	 * Read data.length floats starting at position. Might be called concurrently for different positions,
+	 * so implementations should not rely on any shared state such as a buffer position.
+	 */
 	protected abstract void loadData(long position, float[] data);
 	
+	/**
+	 * Read length floats starting at position into data, starting at the given offset. The default 
+	 * implementation reads via a temporary array, implementations should read into data directly.
+	 */
+	protected void loadData(long position, float[] data, int offset, int length){
+		float[] buffer = new float[length];
+		loadData(position, buffer);
+		System.arraycopy(buffer, 0, data, offset, length);
+	}
+	
+	/**
+	 * Write data.length floats starting at position. Might be called concurrently with loadData for
+	 * positions in other shards.
+	 */
 	protected abstract void writeData(long position, float[] data);
 
 	protected abstract void dumpData() throws IOException;
@@ -586,7 +956,8 @@ public abstract class AbstractExperiencePool extends AbstractDataset implements
 		
 			// write sequences
 			try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(new File(dir+File.separator+"sequences"))))){
-				for(SequenceLocation s : sequences){
+				for(int i=0;i<sequences.size();i++){
+					SequenceLocation s = sequences.get(i);
 					out.writeInt(s.start);
 					out.writeInt(s.length);
 					out.writeBoolean(s.infinite);
@@ -87,45 +87,63 @@ public class FileExperiencePool extends AbstractExperiencePool {
 		int size = data.length;
 		
 		int b = (int)(position / FLOATS_PER_BUFFER);
-		FloatBuffer buffer = buffers[b];
 		int i = (int)(position % FLOATS_PER_BUFFER);
 
 		if(FLOATS_PER_BUFFER-i < size){
 			// split in two
 			int half = FLOATS_PER_BUFFER-i;
-			buffer.position(i);
-			buffer.get(data, 0, half);
-			
-			FloatBuffer next = buffers[b+1];
-			next.position(0);
-			next.get(data, half, size-half);
+			get(buffers[b], i, data, 0, half);
+			get(buffers[b+1], 0, data, half, size-half);
 		} else {
-			buffer.position(i);
-			buffer.get(data);
+			get(buffers[b], i, data, 0, size);
+		}
+	}
+
+	@Override
+	protected void loadData(long position, float[] data, int offset, int length) {
+		int b = (int)(position / FLOATS_PER_BUFFER);
+		int i = (int)(position % FLOATS_PER_BUFFER);
+
+		if(FLOATS_PER_BUFFER-i < length){
+			// split in two
+			int half = FLOATS_PER_BUFFER-i;
+			get(buffers[b], i, data, offset, half);
+			get(buffers[b+1], 0, data, offset+half, length-half);
+		} else {
+			get(buffers[b], i, data, offset, length);
 		}
 	}
 
 	@Override
 	protected void writeData(long position, float[] data) {
+		int size = data.length;
+		
 		int b = (int) (position / FLOATS_PER_BUFFER);
-		FloatBuffer buffer = buffers[b];
 		int i = (int)(position % FLOATS_PER_BUFFER);
 
-		if(FLOATS_PER_BUFFER-i < data.length){
+		if(FLOATS_PER_BUFFER-i < size){
 			// split in two
 			int half = FLOATS_PER_BUFFER-i;
-			buffer.position(i);
-			buffer.put(data, 0, half);
-			
-			FloatBuffer next = buffers[b+1];
-			next.position(0);
-			next.put(data, half, data.length-half);
+			put(buffers[b], i, data, 0, half);
+			put(buffers[b+1], 0, data, half, size-half);
 		} else {
-			buffer.position(i);
-			buffer.put(data);
+			put(buffers[b], i, data, 0, size);
 		}
 	}
 	
+	// absolute bulk get and put on a private view, the position of the shared buffer is never touched
+	private static void get(FloatBuffer buffer, int index, float[] data, int offset, int length){
+		FloatBuffer view = buffer.duplicate();
+		view.position(index);
+		view.get(data, offset, length);
+	}
+	
+	private static void put(FloatBuffer buffer, int index, float[] data, int offset, int length){
+		FloatBuffer view = buffer.duplicate();
+		view.position(index);
+		view.put(data, offset, length);
+	}
+	
 	private FloatBuffer openFileAsFloatBuffer(String fileName, long size) throws Exception {
 		File file = new File(dir+File.separator+fileName);
 		file.delete();
@@ -147,8 +165,7 @@ public class FileExperiencePool extends AbstractExperiencePool {
 		for(int i=0;i<buffers.length;i++){
 			try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(new File(dir+File.separator+"data"+i+".bin"))))){
 				for(int k=0;k<buffers[i].limit();k++){
-					buffers[i].position(k);
-					out.writeFloat(buffers[i].get());
+					out.writeFloat(buffers[i].get(k));
 				}
 				out.flush();
 			}
@@ -161,8 +178,7 @@ public class FileExperiencePool extends AbstractExperiencePool {
 			try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(new File(dir+File.separator+"data"+i+".bin"))))){
 				int k=0;
 				while(true){
-					buffers[i].position(k++);
-					buffers[i].put(in.readFloat());
+					buffers[i].put(k++, in.readFloat());
 				}
 			} catch(Exception e){}
 		}
@@ -0,0 +1,317 @@
+/*******************************************************************************
+ * DIANNE  - Framework for distributed artificial neural networks
+ * Copyright (C) 2015  iMinds - IBCN - UGent
+ *
+ * This file is part of DIANNE.
+ *
+ * DIANNE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contributors:
+ *     Tim Verbelen, Steven Bohez
+ *******************************************************************************/
+package be.iminds.iot.dianne.rl.experience;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Map;
+
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.ConfigurationPolicy;
+
+import be.iminds.iot.dianne.api.dataset.Dataset;
+import be.iminds.iot.dianne.api.dataset.Sequence;
+import be.iminds.iot.dianne.api.rl.dataset.ExperiencePool;
+import be.iminds.iot.dianne.api.rl.dataset.ExperiencePoolSample;
+import be.iminds.iot.dianne.tensor.Tensor;
+import be.iminds.iot.dianne.tensor.TensorOps;
+
+/**
+ * Experience pool for states that consist of a stack of frames with values in [0,1], as
+ * produced by for example the Arcade Learning Environment.
+ * 
+ * Frames are stored as uint8 in memory. Each slot of the ring buffer only stores the last 
+ * frame of its state, the other frames of the stack are reconstructed from the previous slots. 
+ * Only when these do not match, for example at the start of an episode or when the environment 
+ * does not slide its frame window, the other frames of the state are stored separately for that slot.
+ * As a sample thus depends on its neighbouring slots, the shards of these are locked as well.
+ * 
+ * Sequences with state values outside [0,1] are rejected, as these cannot be represented as uint8.
+ * 
+ * @author tverbele
+ *
+ */
+@Component(
+		service={ExperiencePool.class, Dataset.class},
+		immediate=true, 
+		configurationPolicy=ConfigurationPolicy.REQUIRE,
+		configurationPid="be.iminds.iot.dianne.dataset.FrameExperiencePool")
+public class FrameExperiencePool extends AbstractExperiencePool {
+
+	private int frameStack;
+	private int frameSize;
+	private int framesPerChunk;
+	private int otherSize;
+	
+	// last frame of the state of each slot
+	private byte[][] frames;
+	// the other frames of the state of a slot, in case these cannot be reconstructed from the previous slots
+	private byte[][] history;
+	// action, reward and terminal of each slot
+	private float[] other;
+	
+	private boolean[] written;
+	private int lastWritten = -1;
+	// scratch buffers for writing, samples are only written by one thread at a time
+	private byte[] encoded;
+	private byte[] frame;
+	
+	@Override
+	protected void setup(Map<String, Object> config) {
+		if(config.containsKey("frameStack")){
+			frameStack = Integer.parseInt(config.get("frameStack").toString().trim());
+		} else {
+			frameStack = stateDims.length == 3 ? stateDims[0] : 1;
+		}
+		
+		if(frameStack < 1 || stateSize % frameStack != 0)
+			throw new RuntimeException("State of size "+stateSize+" cannot be split in "+frameStack+" frames");
+		if(frameStack > maxSize)
+			throw new RuntimeException("Experience pool of size "+maxSize+" cannot hold stacks of "+frameStack+" frames");
+		
+		// a frame stack is rebuilt from the previous slots, and writing a slot might copy the frames
+		// the next slot depends on, so these slots have to be locked too in case they are in another shard
+		neighbours = frameStack-1;
+		
+		frameSize = stateSize / frameStack;
+		framesPerChunk = Integer.MAX_VALUE / frameSize;
+		otherSize = actionSize + 2;
+		if((long)maxSize*otherSize > Integer.MAX_VALUE)
+			throw new RuntimeException("Experience pool of size "+maxSize+" too large for actions of size "+actionSize);
+		
+		int noChunks = (maxSize + framesPerChunk - 1) / framesPerChunk;
+		try {
+			frames = new byte[noChunks][];
+			for(int i=0;i<noChunks;i++){
+				frames[i] = new byte[Math.min(framesPerChunk, maxSize-i*framesPerChunk)*frameSize];
+			}
+			history = new byte[maxSize][];
+			other = new float[maxSize*otherSize];
+			written = new boolean[maxSize];
+		} catch(OutOfMemoryError e){
+			System.err.println("Failed to setup Experience Pool "+name+" in memory: failed to allocate "+((long)maxSize*frameSize/1000000)+" MB");
+			throw new RuntimeException("Failed to instantiate experience pool, not enough memory", e);
+		}
+		encoded = new byte[stateSize];
+		frame = new byte[frameSize];
+	}
+
+	@Override
+	protected void check(Sequence<ExperiencePoolSample> sequence) {
+		// frames are stored as uint8, so values outside [0,1] cannot be represented
+		for(int i=0;i<sequence.size();i++){
+			checkRange(sequence.get(i).getState());
+		}
+		if(sequence.size() == 0)
+			return;
+		
+		ExperiencePoolSample last = sequence.get(sequence.size()-1);
+		if(!last.isTerminal()){
+			checkRange(last.getNextState());
+		}
+	}
+	
+	private void checkRange(Tensor state){
+		float min = TensorOps.min(state);
+		float max = TensorOps.max(state);
+		if(!(min >= 0.0f && max <= 1.0f)){
+			throw new IllegalArgumentException("Experience pool "+name+" stores frames as uint8 and cannot store states with values in ["
+					+min+", "+max+"], only values in [0,1] are supported");
+		}
+	}
+
+	@Override
+	protected void loadData(long position, float[] data) {
+		loadData(position, data, 0, data.length);
+	}
+	
+	@Override
+	protected void loadData(long position, float[] data, int offset, int length) {
+		int slot = (int)(position / sampleSize);
+		int field = (int)(position % sampleSize);
+		
+		while(length > 0){
+			int n;
+			if(field < stateSize){
+				int from = field % frameSize;
+				n = Math.min(length, frameSize - from);
+				readFrame(slot, field / frameSize, from, data, offset, n);
+			} else {
+				n = Math.min(length, sampleSize - field);
+				System.arraycopy(other, slot*otherSize + field - stateSize, data, offset, n);
+			}
+			
+			length -= n;
+			offset += n;
+			field += n;
+			if(field == sampleSize){
+				field = 0;
+				slot = next(slot);
+			}
+		}
+	}
+
+	@Override
+	protected void writeData(long position, float[] data) {
+		// the experience pool always writes complete samples
+		int slot = (int)(position / sampleSize);
+		
+		// values are checked to be in [0,1] when the sequence is added
+		for(int i=0;i<stateSize;i++){
+			int v = Math.round(data[i]*255f);
+			encoded[i] = (byte)(v < 0 ? 0 : v > 255 ? 255 : v);
+		}
+		
+		if(frameStack > 1){
+			// the next slot might depend on the frame we are about to overwrite
+			int n = next(slot);
+			if(n != slot && written[n] && history[n] == null){
+				byte[] h = new byte[(frameStack-1)*frameSize];
+				for(int j=0;j<frameStack-1;j++){
+					copyFrame(n, j, h, j*frameSize);
+				}
+				history[n] = h;
+			}
+			
+			if(lastWritten == previous(slot) && follows(previous(slot))){
+				history[slot] = null;
+			} else {
+				if(history[slot] == null){
+					history[slot] = new byte[(frameStack-1)*frameSize];
+				}
+				System.arraycopy(encoded, 0, history[slot], 0, (frameStack-1)*frameSize);
+			}
+		}
+		
+		System.arraycopy(encoded, (frameStack-1)*frameSize, frames[slot / framesPerChunk], (slot % framesPerChunk)*frameSize, frameSize);
+		System.arraycopy(data, stateSize, other, slot*otherSize, otherSize);
+		
+		written[slot] = true;
+		lastWritten = slot;
+	}
+	
+	// check whether the first frames of the encoded state are the last frames of the state in slot
+	private boolean follows(int slot){
+		for(int j=1;j<frameStack;j++){
+			copyFrame(slot, j, frame, 0);
+			int o = (j-1)*frameSize;
+			for(int i=0;i<frameSize;i++){
+				if(frame[i] != encoded[o+i])
+					return false;
+			}
+		}
+		return true;
+	}
+	
+	// decode n values of frame j of the state in slot, starting from value from
+	private void readFrame(int slot, int j, int from, float[] data, int offset, int n){
+		byte[] src;
+		int o;
+		int f = j;
+		while(f < frameStack-1 && history[slot] == null){
+			// frame f of this slot is frame f+1 of the previous one
+			slot = previous(slot);
+			f++;
+		}
+		if(f < frameStack-1){
+			src = history[slot];
+			o = f*frameSize;
+		} else {
+			src = frames[slot / framesPerChunk];
+			o = (slot % framesPerChunk)*frameSize;
+		}
+		
+		o += from;
+		for(int i=0;i<n;i++){
+			data[offset+i] = (src[o+i] & 0xFF)/255f;
+		}
+	}
+	
+	private void copyFrame(int slot, int j, byte[] dst, int offset){
+		int f = j;
+		while(f < frameStack-1 && history[slot] == null){
+			slot = previous(slot);
+			f++;
+		}
+		if(f < frameStack-1){
+			System.arraycopy(history[slot], f*frameSize, dst, offset, frameSize);
+		} else {
+			System.arraycopy(frames[slot / framesPerChunk], (slot % framesPerChunk)*frameSize, dst, offset, frameSize);
+		}
+	}
+	
+	private int next(int slot){
+		return slot+1 == maxSize ? 0 : slot+1;
+	}
+	
+	private int previous(int slot){
+		return slot == 0 ? maxSize-1 : slot-1;
+	}
+
+	@Override
+	protected void dumpData() throws IOException {
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(new File(dir+File.separator+"frames.bin"))))){
+			out.writeInt(lastWritten);
+			for(byte[] chunk : frames){
+				out.write(chunk);
+			}
+			for(int i=0;i<maxSize;i++){
+				out.writeBoolean(written[i]);
+				out.writeBoolean(history[i] != null);
+				if(history[i] != null){
+					out.write(history[i]);
+				}
+				for(int k=0;k<otherSize;k++){
+					out.writeFloat(other[i*otherSize+k]);
+				}
+			}
+			out.flush();
+		}
+	}
+
+	@Override
+	protected void recoverData() {
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(new File(dir+File.separator+"frames.bin"))))){
+			lastWritten = in.readInt();
+			for(byte[] chunk : frames){
+				in.readFully(chunk);
+			}
+			for(int i=0;i<maxSize;i++){
+				written[i] = in.readBoolean();
+				if(in.readBoolean()){
+					history[i] = new byte[(frameStack-1)*frameSize];
+					in.readFully(history[i]);
+				}
+				for(int k=0;k<otherSize;k++){
+					other[i*otherSize+k] = in.readFloat();
+				}
+			}
+		} catch(Exception e){}
+	}
+}
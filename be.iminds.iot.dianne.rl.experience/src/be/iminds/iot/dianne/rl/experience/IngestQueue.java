@@ -0,0 +1,177 @@
+/*******************************************************************************
+ * DIANNE  - Framework for distributed artificial neural networks
+ * Copyright (C) 2015  iMinds - IBCN - UGent
+ *
+ * This file is part of DIANNE.
+ *
+ * DIANNE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contributors:
+ *     Tim Verbelen, Steven Bohez
+ *******************************************************************************/
+package be.iminds.iot.dianne.rl.experience;
+
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bounded multi producer single consumer ring of sample rows. A producer claims the
+ * rows of a complete sequence at once, fills them without holding any lock and then
+ * publishes the sequence. The single consumer takes published sequences in order.
+ * 
+ * Rows are allocated on first use and reused afterwards.
+ * 
+ * @author tverbele
+ *
+ */
+class IngestQueue {
+
+	private final int capacity;
+	private final int rowSize;
+	
+	private final float[][] rows;
+	private final FloatBuffer[] views;
+	
+	// per first row of a sequence: the sequence length and whether it is infinite, 
+	// or the number of rows to skip in case the producer failed to fill them
+	private final int[] lengths;
+	private final boolean[] infinite;
+	private final boolean[] skipped;
+	
+	// the position of the sequence starting at each row, once it is published
+	private final AtomicLongArray published;
+	
+	private final AtomicLong tail = new AtomicLong();
+	private volatile long head = 0;
+	
+	public IngestQueue(int capacity, int rowSize){
+		this.capacity = capacity;
+		this.rowSize = rowSize;
+		this.rows = new float[capacity][];
+		this.views = new FloatBuffer[capacity];
+		this.lengths = new int[capacity];
+		this.infinite = new boolean[capacity];
+		this.skipped = new boolean[capacity];
+		this.published = new AtomicLongArray(capacity);
+		for(int i=0;i<capacity;i++){
+			published.set(i, -1);
+		}
+	}
+	
+	public int capacity(){
+		return capacity;
+	}
+	
+	/**
+	 * @return number of rows claimed but not yet consumed
+	 */
+	public int depth(){
+		return (int)(tail.get() - head);
+	}
+	
+	/**
+	 * Claim a number of consecutive rows
+	 * @return the position of the first row, or -1 if the queue has not enough space left
+	 */
+	public long claim(int size){
+		while(true){
+			long t = tail.get();
+			if(t + size - head > capacity){
+				return -1;
+			}
+			if(tail.compareAndSet(t, t + size)){
+				return t;
+			}
+		}
+	}
+	
+	/**
+	 * @return the row at the given position, only to be used by the one that claimed it
+	 */
+	public float[] row(long position){
+		int i = index(position);
+		if(rows[i] == null){
+			rows[i] = new float[rowSize];
+			views[i] = FloatBuffer.wrap(rows[i]);
+		} else {
+			Arrays.fill(rows[i], 0.0f);
+		}
+		return rows[i];
+	}
+	
+	public FloatBuffer view(long position){
+		return views[index(position)];
+	}
+	
+	/**
+	 * Publish the sequence of which the rows starting at position are filled
+	 */
+	public void publish(long position, int length, boolean inf){
+		int i = index(position);
+		lengths[i] = length;
+		infinite[i] = inf;
+		skipped[i] = false;
+		published.set(i, position);
+	}
+	
+	/**
+	 * Publish the claimed rows starting at position as to be skipped by the consumer
+	 */
+	public void skip(long position, int size){
+		int i = index(position);
+		lengths[i] = size;
+		infinite[i] = false;
+		skipped[i] = true;
+		published.set(i, position);
+	}
+	
+	/**
+	 * @return whether the next sequence is published
+	 */
+	public boolean available(){
+		long h = head;
+		return published.get(index(h)) == h;
+	}
+	
+	// the next sequence, only to be called by the consumer after checking it is available
+	
+	public boolean nextSkipped(){
+		return skipped[index(head)];
+	}
+	
+	public int nextLength(){
+		return lengths[index(head)];
+	}
+	
+	public boolean nextInfinite(){
+		return infinite[index(head)];
+	}
+	
+	public float[] nextRow(int i){
+		return rows[index(head + i)];
+	}
+	
+	/**
+	 * Release the rows of the next sequence
+	 */
+	public void release(int size){
+		head = head + size;
+	}
+	
+	private int index(long position){
+		return (int)(position % capacity);
+	}
+}
@@ -81,6 +81,20 @@ public class MemoryExperiencePool extends AbstractExperiencePool {
 		}
 	}
 
+	@Override
+	protected void loadData(long position, float[] data, int offset, int length) {
+		int buffer = (int)(position / bufferSize);
+		int pos = (int)(position % bufferSize);
+		
+		if(pos+length <= bufferSize){
+			System.arraycopy(buffers[buffer], pos, data, offset, length);
+		} else {
+			int s = bufferSize-pos;
+			System.arraycopy(buffers[buffer], pos, data, offset, s);
+			System.arraycopy(buffers[buffer+1], 0, data, offset+s, length-s);
+		}
+	}
+
 	@Override
 	protected void writeData(long position, float[] data) {
 		int buffer = (int)(position / bufferSize);
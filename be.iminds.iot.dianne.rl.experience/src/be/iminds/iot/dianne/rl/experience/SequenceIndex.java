@@ -0,0 +1,176 @@
+/*******************************************************************************
+ * DIANNE  - Framework for distributed artificial neural networks
+ * Copyright (C) 2015  iMinds - IBCN - UGent
+ *
+ * This file is part of DIANNE.
+ *
+ * DIANNE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contributors:
+ *     Tim Verbelen, Steven Bohez
+ *******************************************************************************/
+package be.iminds.iot.dianne.rl.experience;
+
+import be.iminds.iot.dianne.rl.experience.AbstractExperiencePool.SequenceLocation;
+
+/**
+ * Ring buffer of the SequenceLocations stored in an experience pool. Sequences are
+ * only appended at the end and evicted at the front, so next to each sequence the 
+ * running number of samples and buffer slots before it are kept. This makes looking up 
+ * a sequence by sample index or by buffer slot a binary search, instead of walking
+ * the sequences one by one.
+ * 
+ * Not thread safe, access is guarded by the experience pool lock.
+ * 
+ * @author tverbele
+ *
+ */
+class SequenceIndex {
+
+	private SequenceLocation[] locations = new SequenceLocation[16];
+	// number of samples resp. buffer slots of all sequences added before this one
+	private long[] samples = new long[16];
+	private long[] slots = new long[16];
+	
+	private int head = 0;
+	private int size = 0;
+	
+	// totals of all sequences added since the last clear, including evicted ones
+	private long totalSamples = 0;
+	private long totalSlots = 0;
+	
+	public int size(){
+		return size;
+	}
+	
+	public boolean isEmpty(){
+		return size == 0;
+	}
+	
+	public SequenceLocation get(int i){
+		if(i < 0 || i >= size)
+			throw new IndexOutOfBoundsException("Invalid sequence index "+i+" of "+size);
+		return locations[slot(i)];
+	}
+	
+	public SequenceLocation first(){
+		return get(0);
+	}
+	
+	public SequenceLocation last(){
+		return get(size-1);
+	}
+	
+	public void add(SequenceLocation s){
+		if(size == locations.length){
+			grow();
+		}
+		int k = slot(size);
+		locations[k] = s;
+		samples[k] = totalSamples;
+		slots[k] = totalSlots;
+		size++;
+		
+		totalSamples += s.length;
+		totalSlots += s.length + (s.infinite ? 1 : 0);
+	}
+	
+	public SequenceLocation removeFirst(){
+		SequenceLocation s = get(0);
+		locations[head] = null;
+		head = (head + 1) % locations.length;
+		size--;
+		return s;
+	}
+	
+	public void clear(){
+		for(int i=0;i<size;i++){
+			locations[slot(i)] = null;
+		}
+		head = 0;
+		size = 0;
+		totalSamples = 0;
+		totalSlots = 0;
+	}
+	
+	/**
+	 * @return the number of buffer slots between the start of sequence from and the 
+	 * sample with the given index, counted from the start of that sequence
+	 */
+	public long slotOffset(int from, long index){
+		long target = samples[slot(from)] + index;
+		int s = search(samples, target);
+		SequenceLocation seq = locations[slot(s)];
+		long offset = target - samples[slot(s)];
+		if(offset >= seq.length && seq.infinite){
+			// past the end, skip the next state of the last sequence
+			offset++;
+		}
+		return slots[slot(s)] - slots[slot(from)] + offset;
+	}
+	
+	/**
+	 * @return the index of the sample at the given number of buffer slots from the
+	 * start of the first sequence, or -1 if this slot is not a sample
+	 */
+	public long sampleIndex(long slotOffset){
+		if(size == 0)
+			return -1;
+		
+		long target = slots[head] + slotOffset;
+		int s = search(slots, target);
+		SequenceLocation seq = locations[slot(s)];
+		long offset = target - slots[slot(s)];
+		if(offset >= seq.length)
+			return -1;
+		return samples[slot(s)] - samples[head] + offset;
+	}
+	
+	// find the last sequence with a running count smaller than or equal to value
+	private int search(long[] counts, long value){
+		int low = 0;
+		int high = size-1;
+		while(low < high){
+			int mid = (low + high + 1) >>> 1;
+			if(counts[slot(mid)] <= value){
+				low = mid;
+			} else {
+				high = mid-1;
+			}
+		}
+		return low;
+	}
+	
+	private int slot(int i){
+		int k = head + i;
+		return k < locations.length ? k : k - locations.length;
+	}
+	
+	private void grow(){
+		int capacity = locations.length*2;
+		SequenceLocation[] l = new SequenceLocation[capacity];
+		long[] sa = new long[capacity];
+		long[] sl = new long[capacity];
+		for(int i=0;i<size;i++){
+			int k = slot(i);
+			l[i] = locations[k];
+			sa[i] = samples[k];
+			sl[i] = slots[k];
+		}
+		locations = l;
+		samples = sa;
+		slots = sl;
+		head = 0;
+	}
+}
@@ -133,6 +133,21 @@ public abstract class AbstractExperiencePoolAdapter implements ExperiencePool {
 		return pool.sequenceLength(sequence);
 	}
 
+	@Override
+	public int capacity(){
+		return pool.capacity();
+	}
+	
+	@Override
+	public int[] getPositions(int... indices){
+		return pool.getPositions(indices);
+	}
+	
+	@Override
+	public int[] getIndices(int... positions){
+		return pool.getIndices(positions);
+	}
+
 	@Override
 	public Sample getSample(Sample s, int index) {
 		s = pool.getSample(s, index);
@@ -29,10 +29,12 @@ public class ExperiencePoolTest {
 	@Parameters()
     public static Collection<Object[]> getParameters() {
       return Arrays.asList(new Object[][] {
-        { new FileExperiencePool(), null, null},
-        { new FileExperiencePool(), "200", null},
-        { new MemoryExperiencePool(), null, null},
-        { new MemoryExperiencePool(), null, true}
+        { new FileExperiencePool(), null, null, null},
+        { new FileExperiencePool(), "200", null, null},
+        { new FileExperiencePool(), "200", null, "3"},
+        { new MemoryExperiencePool(), null, null, null},
+        { new MemoryExperiencePool(), null, null, "4"},
+        { new MemoryExperiencePool(), null, true, null}
       });
     }
 	
@@ -58,7 +60,7 @@ public class ExperiencePoolTest {
 		loader.activate(null);
 	}
 	
-    public ExperiencePoolTest(ExperiencePool p, Object bufferSize, Object remote) throws Exception {
+    public ExperiencePoolTest(ExperiencePool p, Object bufferSize, Object remote, Object shards) throws Exception {
     	this.pool = p.getClass().newInstance();
     	
     	Map<String, Object> config = new HashMap<>();
@@ -70,6 +72,9 @@ public class ExperiencePoolTest {
 		if(bufferSize!=null){
 			config.put("sizePerBuffer", bufferSize);
 		}
+		if(shards!=null){
+			config.put("shards", shards);
+		}
 		
 		pool.getClass().getMethod("activate", Map.class).invoke(pool, config);
 		
@@ -434,6 +439,61 @@ public class ExperiencePoolTest {
 	}
 	
 	
+	@Test
+	public void testExperiencePoolConcurrentGetBatch() throws Exception {
+		List<ExperiencePoolSample> sequence = new ArrayList<>();
+		sequence.add(new ExperiencePoolSample(s0, a0, 0, s1));
+		sequence.add(new ExperiencePoolSample(s1, a1, 0, s2));
+		sequence.add(new ExperiencePoolSample(s2, a2, 0, s3));
+		sequence.add(new ExperiencePoolSample(s3, a3, 0, s4));
+		sequence.add(new ExperiencePoolSample(s4, a4, 1, null));
+		pool.addSequence(new Sequence<ExperiencePoolSample>(sequence, 5));
+		pool.addSequence(new Sequence<ExperiencePoolSample>(sequence, 5));
+		
+		// keep on overwriting the pool while sampling batches from multiple threads
+		Thread agent = new Thread(() -> {
+			for(int i=0;i<1000;i++){
+				pool.addSequence(new Sequence<ExperiencePoolSample>(sequence, 5));
+			}
+		});
+		agent.start();
+		
+		List<Thread> learners = new ArrayList<>();
+		List<Throwable> errors = new ArrayList<>();
+		for(int l=0;l<4;l++){
+			Thread learner = new Thread(() -> {
+				try {
+					ExperiencePoolBatch b = null;
+					for(int i=0;i<1000;i++){
+						b = pool.getBatch(b, 0, 1, 2, 3, 4, 5, 6, 7, 8, 9);
+						for(int k=0;k<10;k++){
+							// every sample should be one of the samples added, never a mix of two
+							float[] state = b.getState(k).get();
+							int t = (int)state[0];
+							Assert.assertEquals(sequence.get(t).getState(), b.getState(k));
+							Assert.assertEquals(sequence.get(t).getAction(), b.getAction(k));
+						}
+					}
+				} catch(Throwable t){
+					synchronized(errors){
+						errors.add(t);
+					}
+				}
+			});
+			learners.add(learner);
+			learner.start();
+		}
+		
+		agent.join();
+		for(Thread learner : learners){
+			learner.join();
+		}
+		
+		if(!errors.isEmpty()){
+			throw new Exception(errors.get(0));
+		}
+	}
+	
 	@Test
 	public void testExperiencePoolGetSubSequence() throws Exception {
 		Assert.assertEquals(0, pool.size());
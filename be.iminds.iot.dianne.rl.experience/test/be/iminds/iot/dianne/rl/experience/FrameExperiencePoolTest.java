@@ -0,0 +1,232 @@
+package be.iminds.iot.dianne.rl.experience;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import be.iminds.iot.dianne.api.dataset.Sequence;
+import be.iminds.iot.dianne.api.rl.dataset.ExperiencePoolBatch;
+import be.iminds.iot.dianne.api.rl.dataset.ExperiencePoolSample;
+import be.iminds.iot.dianne.api.rl.dataset.ExperiencePoolSequence;
+import be.iminds.iot.dianne.tensor.NativeTensorLoader;
+import be.iminds.iot.dianne.tensor.Tensor;
+
+public class FrameExperiencePoolTest {
+
+	private Random random = new Random(0);
+	private Tensor continuation = null;
+	
+	@BeforeClass
+	public static void setup() {
+		NativeTensorLoader loader = new NativeTensorLoader();
+		loader.activate(null);
+	}
+	
+	@Test
+	public void testFrameStacks() {
+		FrameExperiencePool pool = new FrameExperiencePool();
+		Map<String, Object> config = new HashMap<>();
+		config.put("name", "Test");
+		config.put("dir", "generated/frames");
+		config.put("stateDims", new String[]{"3", "2", "2"});
+		config.put("actionDims", new String[]{"2"});
+		config.put("maxSize", "50");
+		pool.activate(config);
+		
+		List<List<ExperiencePoolSample>> added = new ArrayList<>();
+		for(int k=0;k<1000;k++){
+			// some episodes slide the frame window, others render a fresh stack every step,
+			// a non terminal episode might be continued by the next one
+			List<ExperiencePoolSample> sequence = episode(1+random.nextInt(9), random.nextBoolean(), random.nextBoolean());
+			pool.addSequence(new Sequence<ExperiencePoolSample>(sequence, sequence.size()));
+			added.add(sequence);
+			
+			// all sequences still in the pool should read back unchanged
+			int sequences = pool.sequences();
+			for(int i=0;i<sequences;i++){
+				List<ExperiencePoolSample> expected = added.get(added.size()-sequences+i);
+				ExperiencePoolSequence s = pool.getSequence(null, i, 0, -1);
+				Assert.assertEquals(expected.size(), s.size);
+				for(int j=0;j<expected.size();j++){
+					assertSample(expected.get(j), s.get(j));
+				}
+			}
+			
+			// same for a batch of the last sequence
+			List<ExperiencePoolSample> last = added.get(added.size()-1);
+			int[] indices = new int[last.size()];
+			for(int j=0;j<indices.length;j++){
+				indices[j] = pool.size()-last.size()+j;
+			}
+			ExperiencePoolBatch batch = pool.getBatch(indices);
+			for(int j=0;j<indices.length;j++){
+				assertSample(last.get(j), batch.getSample(j));
+			}
+		}
+	}
+	
+	@Test
+	public void testShards() throws Exception {
+		FrameExperiencePool pool = new FrameExperiencePool();
+		Map<String, Object> config = new HashMap<>();
+		config.put("name", "Test");
+		config.put("dir", "generated/frameshards");
+		config.put("stateDims", new String[]{"4", "32", "32"});
+		config.put("actionDims", new String[]{"2"});
+		config.put("maxSize", "32");
+		config.put("shards", "8");
+		pool.activate(config);
+		
+		// one endless episode of which each frame is filled with its frame number, 
+		// so a stack read back should always consist of subsequent frames
+		Thread writer = new Thread(() -> {
+			int t = 0;
+			for(int k=0;k<5000;k++){
+				int length = 1+random.nextInt(9);
+				List<ExperiencePoolSample> sequence = new ArrayList<>();
+				for(int i=0;i<length;i++){
+					Tensor action = new Tensor(2);
+					action.fill(0.0f);
+					sequence.add(new ExperiencePoolSample(stack(t), action, 0.0f, stack(t+1)));
+					t++;
+				}
+				pool.addSequence(new Sequence<ExperiencePoolSample>(sequence, length));
+			}
+		});
+		
+		AtomicReference<String> error = new AtomicReference<>();
+		List<Thread> readers = new ArrayList<>();
+		for(int r=0;r<3;r++){
+			Thread reader = new Thread(() -> {
+				Random rand = new Random();
+				int[] indices = new int[16];
+				while(writer.isAlive() && error.get() == null){
+					int size = pool.size();
+					if(size == 0)
+						continue;
+					for(int i=0;i<indices.length;i++){
+						indices[i] = rand.nextInt(size);
+					}
+					ExperiencePoolBatch batch = pool.getBatch(indices);
+					for(int i=0;i<indices.length;i++){
+						float[] state = batch.getSample(i).getState().get();
+						int first = Math.round(state[0]*255);
+						for(int k=0;k<state.length;k++){
+							int frame = Math.round(state[k]*255);
+							if(frame != (first+k/1024) % 256){
+								error.set("Torn frame stack: frame "+frame+" at "+k+" in stack starting with "+first);
+							}
+						}
+					}
+				}
+			});
+			readers.add(reader);
+		}
+		
+		writer.start();
+		readers.forEach(Thread::start);
+		writer.join();
+		for(Thread reader : readers){
+			reader.join();
+		}
+		pool.deactivate();
+		
+		Assert.assertNull(error.get(), error.get());
+	}
+	
+	@Test
+	public void testOutOfRange() {
+		FrameExperiencePool pool = new FrameExperiencePool();
+		Map<String, Object> config = new HashMap<>();
+		config.put("name", "Test");
+		config.put("dir", "generated/framerange");
+		config.put("stateDims", new String[]{"3", "2", "2"});
+		config.put("actionDims", new String[]{"2"});
+		config.put("maxSize", "50");
+		pool.activate(config);
+		
+		List<ExperiencePoolSample> sequence = episode(5, true, true);
+		pool.addSequence(new Sequence<ExperiencePoolSample>(sequence, sequence.size()));
+		Assert.assertEquals(5, pool.size());
+		
+		// a single value out of range rejects the whole sequence, nothing of it is stored
+		sequence = episode(5, true, true);
+		sequence.get(3).getState().set(1.5f, 1, 0, 1);
+		try {
+			pool.addSequence(new Sequence<ExperiencePoolSample>(sequence, sequence.size()));
+			Assert.fail("State with values out of [0,1] should be rejected");
+		} catch(IllegalArgumentException e){
+			// expected
+		}
+		Assert.assertEquals(5, pool.size());
+		
+		// also for the next state of the last sample of a non terminal sequence
+		sequence = episode(5, true, false);
+		sequence.get(4).getNextState().fill(-0.5f);
+		try {
+			pool.addSequence(new Sequence<ExperiencePoolSample>(sequence, sequence.size()));
+			Assert.fail("State with values out of [0,1] should be rejected");
+		} catch(IllegalArgumentException e){
+			// expected
+		}
+		Assert.assertEquals(5, pool.size());
+		pool.deactivate();
+	}
+	
+	// stack of the four frames up to frame t
+	private Tensor stack(int t){
+		Tensor s = new Tensor(4, 32, 32);
+		for(int j=0;j<4;j++){
+			s.select(0, j).fill((t-3+j+256) % 256 / 255f);
+		}
+		return s;
+	}
+	
+	private List<ExperiencePoolSample> episode(int length, boolean slide, boolean terminal){
+		List<ExperiencePoolSample> episode = new ArrayList<>();
+		Tensor state = continuation != null && random.nextBoolean() ? continuation : stack(frame(), frame(), frame());
+		for(int i=0;i<length;i++){
+			Tensor next = slide ? stack(state.select(0, 1), state.select(0, 2), frame()) : stack(frame(), frame(), frame());
+			Tensor action = new Tensor(new float[]{random.nextInt(4), random.nextFloat()}, 2);
+			boolean end = terminal && i == length-1;
+			episode.add(new ExperiencePoolSample(state, action, random.nextFloat(), end ? null : next));
+			state = next;
+		}
+		// the next episode starts from the last state, or from a state one step further
+		continuation = terminal ? null : random.nextBoolean() ? state : stack(state.select(0, 1), state.select(0, 2), frame());
+		return episode;
+	}
+	
+	private Tensor frame(){
+		float[] data = new float[4];
+		for(int i=0;i<data.length;i++){
+			data[i] = random.nextInt(256)/255f;
+		}
+		return new Tensor(data, 2, 2);
+	}
+	
+	private Tensor stack(Tensor... frames){
+		Tensor t = new Tensor(3, 2, 2);
+		for(int i=0;i<frames.length;i++){
+			frames[i].copyInto(t.select(0, i));
+		}
+		return t;
+	}
+	
+	private void assertSample(ExperiencePoolSample expected, ExperiencePoolSample actual){
+		Assert.assertEquals(expected.getState(), actual.getState());
+		Assert.assertEquals(expected.getAction(), actual.getAction());
+		Assert.assertEquals(expected.getScalarReward(), actual.getScalarReward(), 0.0f);
+		Assert.assertEquals(expected.isTerminal(), actual.isTerminal());
+		if(!expected.isTerminal()){
+			Assert.assertEquals(expected.getNextState(), actual.getNextState());
+		}
+	}
+}
@@ -0,0 +1,149 @@
+package be.iminds.iot.dianne.rl.experience;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import be.iminds.iot.dianne.api.dataset.Sequence;
+import be.iminds.iot.dianne.api.rl.dataset.ExperiencePoolSample;
+import be.iminds.iot.dianne.tensor.NativeTensorLoader;
+import be.iminds.iot.dianne.tensor.Tensor;
+
+public class IngestTest {
+
+	private MemoryExperiencePool pool;
+	
+	@BeforeClass
+	public static void setup() {
+		NativeTensorLoader loader = new NativeTensorLoader();
+		loader.activate(null);
+	}
+	
+	@After
+	public void cleanup(){
+		pool.deactivate();
+	}
+	
+	private void createPool(String policy){
+		pool = new MemoryExperiencePool();
+		Map<String, Object> config = new HashMap<>();
+		config.put("name", "Test");
+		config.put("dir", "generated/ingest");
+		config.put("stateDims", new String[]{"4"});
+		config.put("actionDims", new String[]{"2"});
+		config.put("maxSize", "100");
+		config.put("ingestCapacity", "10");
+		config.put("ingestPolicy", policy);
+		pool.activate(config);
+	}
+	
+	private Sequence<ExperiencePoolSample> sequence(int length, float value){
+		List<ExperiencePoolSample> samples = new ArrayList<>();
+		for(int i=0;i<length;i++){
+			Tensor state = new Tensor(4);
+			state.fill(value+i);
+			Tensor action = new Tensor(2);
+			action.fill(value);
+			samples.add(new ExperiencePoolSample(state, action, value, i == length-1 ? null : new Tensor(4)));
+		}
+		return new Sequence<ExperiencePoolSample>(samples, length);
+	}
+	
+	private void await(int size) throws Exception {
+		long t = System.currentTimeMillis();
+		while(pool.size() < size){
+			Assert.assertTrue(System.currentTimeMillis()-t < 5000);
+			Thread.sleep(1);
+		}
+	}
+	
+	@Test
+	public void testQueued() throws Exception {
+		createPool("drop");
+		
+		pool.addSequence(sequence(3, 0));
+		Assert.assertEquals(3, pool.size());
+		
+		// while the pool is locked, sequences are queued
+		pool.lock.readLock().lock();
+		pool.addSequence(sequence(4, 10));
+		pool.addSequence(sequence(4, 20));
+		Assert.assertEquals(3, pool.size());
+		Assert.assertEquals(8, pool.getIngestQueueDepth());
+		
+		// queue full
+		pool.addSequence(sequence(4, 30));
+		pool.addSequence(sequence(20, 40));
+		Assert.assertEquals(2, pool.getIngestDropped());
+		
+		pool.lock.readLock().unlock();
+		await(11);
+		Assert.assertEquals(0, pool.getIngestQueueDepth());
+		Assert.assertEquals(3, pool.sequences());
+		
+		// queued sequences are stored in order
+		ExperiencePoolSample s = pool.getSample(3);
+		Assert.assertEquals(10.0f, s.getScalarReward(), 0.0f);
+		Assert.assertEquals(10.0f, s.getState().get(0), 0.0f);
+		s = pool.getSample(10);
+		Assert.assertEquals(20.0f, s.getScalarReward(), 0.0f);
+		Assert.assertEquals(23.0f, s.getState().get(0), 0.0f);
+		Assert.assertTrue(s.isTerminal());
+	}
+	
+	@Test
+	public void testBlock() throws Exception {
+		createPool("block");
+		
+		pool.lock.readLock().lock();
+		pool.addSequence(sequence(5, 0));
+		pool.addSequence(sequence(5, 10));
+		Assert.assertEquals(10, pool.getIngestQueueDepth());
+		
+		// the agent blocks until there is room in the queue
+		Thread agent = new Thread(() -> pool.addSequence(sequence(5, 20)));
+		agent.start();
+		agent.join(100);
+		Assert.assertTrue(agent.isAlive());
+		
+		pool.lock.readLock().unlock();
+		agent.join(5000);
+		Assert.assertFalse(agent.isAlive());
+		await(15);
+		Assert.assertEquals(0, pool.getIngestDropped());
+		Assert.assertEquals(20.0f, pool.getSample(10).getScalarReward(), 0.0f);
+	}
+
+	@Test
+	public void testMalformed() throws Exception {
+		createPool("block");
+
+		pool.addSequence(sequence(3, 0));
+
+		// a sequence that fails to be copied in the queue is skipped
+		pool.lock.readLock().lock();
+		Sequence<ExperiencePoolSample> malformed = sequence(3, 10);
+		malformed.get(1).input = new Tensor(100);
+		pool.addSequence(malformed);
+		pool.addSequence(sequence(4, 20));
+		pool.lock.readLock().unlock();
+
+		await(7);
+		Assert.assertEquals(0, pool.getIngestQueueDepth());
+		Assert.assertEquals(2, pool.sequences());
+		Assert.assertEquals(20.0f, pool.getSample(3).getScalarReward(), 0.0f);
+
+		// and the queue keeps accepting sequences
+		pool.lock.readLock().lock();
+		pool.addSequence(sequence(2, 30));
+		pool.lock.readLock().unlock();
+		await(9);
+		Assert.assertEquals(30.0f, pool.getSample(7).getScalarReward(), 0.0f);
+	}
+}
@@ -0,0 +1,72 @@
+package be.iminds.iot.dianne.rl.experience;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import be.iminds.iot.dianne.rl.experience.AbstractExperiencePool.SequenceLocation;
+
+public class SequenceIndexTest {
+
+	private AbstractExperiencePool pool = new AbstractExperiencePool() {
+		protected void setup(Map<String, Object> config) {}
+		protected void loadData(long position, float[] data) {}
+		protected void writeData(long position, float[] data) {}
+		protected void dumpData() {}
+		protected void recoverData() {}
+	};
+	
+	@Test
+	public void testLookup() {
+		Random r = new Random(0);
+		SequenceIndex index = new SequenceIndex();
+		List<SequenceLocation> list = new ArrayList<>();
+		
+		int start = 0;
+		for(int k=0;k<1000;k++){
+			int length = 1+r.nextInt(10);
+			boolean infinite = r.nextBoolean();
+			SequenceLocation s = pool.new SequenceLocation(start, length, infinite);
+			start += length + (infinite ? 1 : 0);
+			index.add(s);
+			list.add(s);
+			
+			// evict at the front every now and then
+			if(r.nextInt(3) == 0){
+				Assert.assertSame(list.remove(0), index.removeFirst());
+			}
+			
+			Assert.assertEquals(list.size(), index.size());
+			Assert.assertSame(list.get(list.size()-1), index.last());
+			
+			int from = r.nextInt(list.size());
+			int samples = 0;
+			for(int i=from;i<list.size();i++){
+				SequenceLocation seq = list.get(i);
+				for(int j=0;j<seq.length;j++){
+					Assert.assertEquals(seq.start + j - list.get(from).start, index.slotOffset(from, samples+j));
+				}
+				samples += seq.length;
+			}
+		}
+		
+		int samples = 0;
+		int first = list.get(0).start;
+		for(SequenceLocation seq : list){
+			for(int j=0;j<seq.length;j++){
+				Assert.assertEquals(samples+j, index.sampleIndex(seq.start + j - first));
+			}
+			if(seq.infinite){
+				Assert.assertEquals(-1, index.sampleIndex(seq.start + seq.length - first));
+			}
+			samples += seq.length;
+		}
+		
+		index.clear();
+		Assert.assertTrue(index.isEmpty());
+	}
+}
@@ -0,0 +1,54 @@
+/*******************************************************************************
+ * DIANNE  - Framework for distributed artificial neural networks
+ * Copyright (C) 2015  iMinds - IBCN - UGent
+ *
+ * This file is part of DIANNE.
+ *
+ * DIANNE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contributors:
+ *     Tim Verbelen, Steven Bohez
+ *******************************************************************************/
+package be.iminds.iot.dianne.rl.learn.sampling;
+
+import be.iminds.iot.dianne.api.rl.dataset.ExperiencePoolBatch;
+import be.iminds.iot.dianne.tensor.Tensor;
+
+/**
+ * ExperiencePoolBatch sampled by the PrioritySampler, which also contains the importance
+ * sampling weights of the samples and their positions in the experience pool buffer 
+ * 
+ * @author tverbele
+ *
+ */
+public class PrioritizedExperiencePoolBatch extends ExperiencePoolBatch {
+
+	public Tensor weights;
+	public int[] positions;
+	
+	public PrioritizedExperiencePoolBatch(int batchSize, int[] stateDims, int[] actionDims){
+		super(batchSize, stateDims, actionDims);
+		
+		this.weights = new Tensor(batchSize);
+		this.positions = new int[batchSize];
+	}
+	
+	public Tensor getWeights(){
+		return weights;
+	}
+	
+	public float getWeight(int i){
+		return weights.get(i);
+	}
+}
@@ -24,76 +24,160 @@ package be.iminds.iot.dianne.rl.learn.sampling;
 
 import java.util.Map;
 import java.util.Random;
-import java.util.TreeMap;
 
 import be.iminds.iot.dianne.api.rl.dataset.ExperiencePool;
 import be.iminds.iot.dianne.api.rl.dataset.ExperiencePoolBatch;
-import be.iminds.iot.dianne.api.rl.dataset.ExperiencePoolSample;
 import be.iminds.iot.dianne.nn.learn.sampling.SamplingFactory.SamplingConfig;
 import be.iminds.iot.dianne.nn.util.DianneConfigHandler;
+import be.iminds.iot.dianne.rl.learn.sampling.config.ExperienceSamplerConfig;
 import be.iminds.iot.dianne.rl.learn.sampling.config.PrioritySamplerConfig;
 import be.iminds.iot.dianne.tensor.Tensor;
 
 /**
- * Utility class that maintains a prioritized subset of the dataset out of which
- * is sampled for the batches
+ * Utility class for prioritized experience replay. A sum tree keeps a priority for each
+ * position in the experience pool buffer, and batches are sampled proportional to these 
+ * priorities. The batches also contain the importance sampling weights to correct for the
+ * bias introduced.
+ * 
+ * New samples get the highest priority seen so far, after each iteration the priorities
+ * should be updated with the TD errors of the batch.
+ * 
+ * When priorityAlpha is 0 this falls back to the configured sampling strategy.
  * 
  * @author tverbele
  *
  */
 public class PrioritySampler {
 
-	private final ExperienceSampler sampler;
-	private final TreeMap<Float, ExperiencePoolSample> priorityBuffer = new TreeMap<>();
+	private final ExperiencePool pool;
 	private final PrioritySamplerConfig config;
+	private final int batchSize;
 	private final Random random = new Random(System.currentTimeMillis());
 	
+	// in case of no prioritization
+	private final ExperienceSampler sampler;
+	
+	private SumTree tree;
+	// buffer position of the most recent sample in the tree
+	private int last = -1;
+	
+	private PrioritizedExperiencePoolBatch batch;
+	private long iteration = 0;
+	
 	public PrioritySampler(ExperiencePool pool, SamplingConfig sampling, Map<String, String> config){
-		this.sampler = new ExperienceSampler(pool, sampling, config);
+		this.pool = pool;
 		this.config = DianneConfigHandler.getConfig(config, PrioritySamplerConfig.class);
+		this.batchSize = DianneConfigHandler.getConfig(config, ExperienceSamplerConfig.class).batchSize;
+		
+		this.sampler = this.config.priorityAlpha > 0 ? null : new ExperienceSampler(pool, sampling, config);
 	}
 	
 	public ExperiencePoolBatch nextBatch(){
-		ExperiencePoolBatch b = sampler.nextBatch();
+		if(sampler != null)
+			return sampler.nextBatch();
 		
-		// potentially replace some batch items by samples from the priority buffer
-		if(config.prioritySamplingFactor > 0){
-			for(int i=0;i<b.getSize();i++){
-				if(priorityBuffer.size() > 0){
-					if(random.nextDouble() < config.prioritySamplingFactor){
-						// how to best sample from priority buffer?
-						float highest = priorityBuffer.lastKey();
-						float lowest = priorityBuffer.firstKey();
-						float key = lowest + random.nextFloat()*(highest-lowest);
-						
-						ExperiencePoolSample s = priorityBuffer.ceilingEntry(key).getValue();
-						
-						ExperiencePoolSample replace = b.getSample(i);
-						s.copyInto(replace);
-					}
-				}
+		update();
+		
+		if(batch == null){
+			batch = new PrioritizedExperiencePoolBatch(batchSize, pool.stateDims(), pool.actionDims());
+		}
+		
+		// stratified sampling, one sample out of each equal part of the total priority
+		int[] positions = batch.positions;
+		double segment = tree.total() / batchSize;
+		for(int i=0;i<batchSize;i++){
+			positions[i] = tree.find((i+random.nextDouble())*segment);
+		}
+		
+		// positions that no longer contain a valid sample are removed from the tree
+		int[] indices = pool.getIndices(positions);
+		for(int i=0;i<batchSize;i++){
+			while(indices[i] == -1){
+				tree.set(positions[i], 0);
+				if(tree.total() <= 0)
+					throw new RuntimeException("No samples to prioritize in experience pool "+pool.getName());
+				
+				positions[i] = tree.find(random.nextDouble()*tree.total());
+				indices[i] = pool.getIndices(positions[i])[0];
 			}
 		}
 		
-		return b;
+		pool.getBatch(batch, indices);
+		
+		// importance sampling weights, normalized by the highest weight in the batch
+		float beta = config.priorityBeta;
+		if(config.priorityBetaIterations > 0){
+			beta += (1-beta)*Math.min(1.0f, (float)iteration/config.priorityBetaIterations);
+		}
+		
+		double total = tree.total();
+		int size = pool.size();
+		float[] weights = new float[batchSize];
+		float maxWeight = 0;
+		for(int i=0;i<batchSize;i++){
+			weights[i] = (float)Math.pow(size * tree.get(positions[i]) / total, -beta);
+			if(weights[i] > maxWeight)
+				maxWeight = weights[i];
+		}
+		for(int i=0;i<batchSize;i++){
+			weights[i] /= maxWeight;
+		}
+		batch.weights.set(weights);
+		
+		iteration++;
+		
+		return batch;
 	}
 	
-	public void addBatch(Tensor priority, ExperiencePoolBatch batch){
-		if(config.prioritySamplingFactor > 0 ){
-			for(int i=0;i<priority.size();i++){
-				float p = priority.get(i);
-				if(priorityBuffer.size() < config.prioritySamplingSize
-						|| priorityBuffer.lowerKey(p) != null){
-					
-					ExperiencePoolSample save = new ExperiencePoolSample();
-					batch.getSample(i).copyInto(save);
-					priorityBuffer.put(p, save);
+	/**
+	 * Update the priorities of the last batch returned by nextBatch
+	 * 
+	 * @param errors the (TD) error for each sample of the batch
+	 */
+	public void updatePriorities(Tensor errors){
+		if(sampler != null)
+			return;
+		
+		float[] e = errors.get();
+		for(int i=0;i<batchSize;i++){
+			float p = (float)Math.pow(Math.abs(e[i]) + config.priorityEpsilon, config.priorityAlpha);
+			tree.set(batch.positions[i], p);
+		}
+	}
+	
+	// add samples that were added to the pool since the last update with max priority
+	private void update(){
+		int size = pool.size();
+		int capacity = pool.capacity();
+		
+		if(tree == null || tree.capacity() != capacity){
+			float p = tree == null || tree.max() == 0 ? 1.0f : tree.max();
+			tree = new SumTree(capacity);
+			last = -1;
+			
+			int[] indices = new int[Math.min(size, 10000)];
+			for(int start=0;start<size;start+=indices.length){
+				int n = Math.min(indices.length, size-start);
+				if(n < indices.length)
+					indices = new int[n];
+				for(int i=0;i<n;i++){
+					indices[i] = start+i;
+				}
+				for(int position : pool.getPositions(indices)){
+					tree.set(position, p);
+					last = position;
 				}
 			}
-			
-			while(priorityBuffer.size() > config.prioritySamplingSize){
-				priorityBuffer.pollFirstEntry();
+		} else if(size > 0){
+			int end = pool.getPositions(size-1)[0];
+			float p = tree.max();
+			while(last != end){
+				last = (last+1) % capacity;
+				tree.set(last, p);
 			}
 		}
+		
+		if(tree.total() <= 0)
+			throw new RuntimeException("No samples to prioritize in experience pool "+pool.getName());
 	}
 }
@@ -0,0 +1,106 @@
+/*******************************************************************************
+ * DIANNE  - Framework for distributed artificial neural networks
+ * Copyright (C) 2015  iMinds - IBCN - UGent
+ *
+ * This file is part of DIANNE.
+ *
+ * DIANNE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contributors:
+ *     Tim Verbelen, Steven Bohez
+ *******************************************************************************/
+package be.iminds.iot.dianne.rl.learn.sampling;
+
+import java.util.Arrays;
+
+/**
+ * Array-backed sum tree over a fixed number of leaves, allowing to update a leaf
+ * and to find the leaf for a given prefix sum in O(log n).
+ * 
+ * Node 1 is the root, the children of node i are 2i and 2i+1 and the leaves are stored
+ * at [capacity, 2*capacity).
+ * 
+ * @author tverbele
+ *
+ */
+public class SumTree {
+
+	private final int capacity;
+	private final double[] tree;
+	private float max = 0;
+	
+	public SumTree(int capacity){
+		this.capacity = capacity;
+		this.tree = new double[2*capacity];
+	}
+	
+	public int capacity(){
+		return capacity;
+	}
+	
+	/**
+	 * @return the sum of all leaves
+	 */
+	public double total(){
+		return tree[1];
+	}
+	
+	/**
+	 * @return the highest value ever set in the tree
+	 */
+	public float max(){
+		return max;
+	}
+	
+	public float get(int leaf){
+		return (float)tree[capacity+leaf];
+	}
+	
+	public void set(int leaf, float value){
+		if(value > max)
+			max = value;
+		
+		int node = capacity+leaf;
+		double delta = value - tree[node];
+		while(node >= 1){
+			tree[node] += delta;
+			node >>= 1;
+		}
+	}
+	
+	/**
+	 * Find the leaf where the prefix sum of the leaves exceeds value
+	 * 
+	 * @param value a value in [0, total())
+	 * @return the leaf
+	 */
+	public int find(double value){
+		int node = 1;
+		while(node < capacity){
+			int left = 2*node;
+			if(value < tree[left] || tree[left+1] <= 0){
+				node = left;
+			} else {
+				value -= tree[left];
+				node = left+1;
+			}
+		}
+		return node - capacity;
+	}
+	
+	public void clear(){
+		Arrays.fill(tree, 0);
+		max = 0;
+	}
+}
@@ -25,13 +25,23 @@ package be.iminds.iot.dianne.rl.learn.sampling.config;
 public class PrioritySamplerConfig {
 
 	/**
-	 * Probability to get a sample from the priority sampling buffer
+	 * Prioritization exponent, 0 means uniform sampling using the configured sampling strategy
 	 */
-	public float prioritySamplingFactor = 0f;
+	public float priorityAlpha = 0f;
 	
 	/**
-	 * Size of the priority sampling buffer
+	 * Importance sampling exponent
 	 */
-	public int prioritySamplingSize = 100;
+	public float priorityBeta = 0.4f;
+	
+	/**
+	 * Number of iterations to anneal priorityBeta to 1, 0 to keep it constant
+	 */
+	public long priorityBetaIterations = 0;
+	
+	/**
+	 * Small constant added to the error so that no sample gets a zero priority
+	 */
+	public float priorityEpsilon = 1e-6f;
 	
 }
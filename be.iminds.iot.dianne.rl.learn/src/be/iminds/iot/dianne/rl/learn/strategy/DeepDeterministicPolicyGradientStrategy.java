@@ -40,7 +40,8 @@ import be.iminds.iot.dianne.nn.learn.criterion.CriterionFactory.BatchConfig;
 import be.iminds.iot.dianne.nn.learn.criterion.PseudoHuberCriterion;
 import be.iminds.iot.dianne.nn.learn.processors.ProcessorFactory;
 import be.iminds.iot.dianne.nn.util.DianneConfigHandler;
-import be.iminds.iot.dianne.rl.learn.sampling.ExperienceSampler;
+import be.iminds.iot.dianne.rl.learn.sampling.PrioritizedExperiencePoolBatch;
+import be.iminds.iot.dianne.rl.learn.sampling.PrioritySampler;
 import be.iminds.iot.dianne.rl.learn.strategy.config.DeepDeterministicPolicyGradientConfig;
 import be.iminds.iot.dianne.tensor.ModuleOps;
 import be.iminds.iot.dianne.tensor.Tensor;
@@ -51,7 +52,7 @@ public class DeepDeterministicPolicyGradientStrategy implements LearningStrategy
 	protected DeepDeterministicPolicyGradientConfig config;
 	
 	protected ExperiencePool pool;
-	protected ExperienceSampler sampler;
+	protected PrioritySampler sampler;
 	
 	protected NeuralNetwork actor;
 	protected NeuralNetwork targetActor;
@@ -72,6 +73,7 @@ public class DeepDeterministicPolicyGradientStrategy implements LearningStrategy
 	protected UUID[] outputIds;
 	
 	protected Tensor targetValue;
+	protected Tensor tdError;
 	
 	@Override
 	public void setup(Map<String, String> config, Dataset dataset, NeuralNetwork... nns) throws Exception {
@@ -89,7 +91,7 @@ public class DeepDeterministicPolicyGradientStrategy implements LearningStrategy
 		this.targetCritic = nns[3];
 		
 		this.config = DianneConfigHandler.getConfig(config, DeepDeterministicPolicyGradientConfig.class);
-		this.sampler = new ExperienceSampler(pool, this.config.sampling, config);
+		this.sampler = new PrioritySampler(pool, this.config.sampling, config);
 		this.reconCriterion = CriterionFactory.createCriterion(this.config.criterion, config);
 		this.regulCriterion = new PseudoHuberCriterion(DianneConfigHandler.getConfig(config, BatchConfig.class));
 		
@@ -156,6 +158,12 @@ public class DeepDeterministicPolicyGradientStrategy implements LearningStrategy
 		float loss = TensorOps.mean(l);
 		Tensor criticGrad = reconCriterion.grad(value, targetValue);
 		
+		// Correct for the prioritized sampling using the importance sampling weights
+		if(batch instanceof PrioritizedExperiencePoolBatch){
+			TensorOps.cmul(criticGrad, criticGrad, ((PrioritizedExperiencePoolBatch)batch).getWeights());
+			tdError = TensorOps.sub(tdError, targetValue, value);
+		}
+		
 		// Add value smoothing on critic gradient when required
 		if(config.smoothingRegularization > 0) {
 			targetValue.fill(TensorOps.mean(value));
@@ -191,10 +199,24 @@ public class DeepDeterministicPolicyGradientStrategy implements LearningStrategy
 		criticProcessor.calculateDelta(i);
 		
 		// Apply the updates
-		// Note: target actor & critic get updated automatically by setting the syncInterval option
+		// Note: target actor & critic get updated by setting the targetInterval or targetTau option,
+		// or through the repository by setting the syncInterval option
 		actor.updateParameters();
 		critic.updateParameters();
 		
+		if(config.targetTau > 0){
+			targetActor.syncParameters(actor, config.targetTau);
+			targetCritic.syncParameters(critic, config.targetTau);
+		} else if(config.targetInterval > 0 && i % config.targetInterval == 0){
+			targetActor.syncParameters(actor, 1.0f);
+			targetCritic.syncParameters(critic, 1.0f);
+		}
+		
+		// Update the priorities of the sampled batch
+		if(batch instanceof PrioritizedExperiencePoolBatch){
+			sampler.updatePriorities(tdError);
+		}
+		
 		// Report the average loss and value of the current policy
 		return new LearnProgress(i, loss, new String[]{"Average Value", "Max Value"}, new float[]{TensorOps.sum(value)/config.batchSize, TensorOps.max(value)});
 	}
@@ -35,6 +35,7 @@ import be.iminds.iot.dianne.api.rl.dataset.ExperiencePoolBatch;
 import be.iminds.iot.dianne.nn.learn.criterion.CriterionFactory;
 import be.iminds.iot.dianne.nn.learn.processors.ProcessorFactory;
 import be.iminds.iot.dianne.nn.util.DianneConfigHandler;
+import be.iminds.iot.dianne.rl.learn.sampling.PrioritizedExperiencePoolBatch;
 import be.iminds.iot.dianne.rl.learn.sampling.PrioritySampler;
 import be.iminds.iot.dianne.rl.learn.strategy.config.DeepQConfig;
 import be.iminds.iot.dianne.tensor.Tensor;
@@ -45,8 +46,8 @@ import be.iminds.iot.dianne.tensor.TensorOps;
  * 
  * The strategy requires 2 NN instances of the same NN: one acting as a target for the other
  * 
- * In order to make this work, make sure to set the syncInterval of the target to make sure it 
- * updates from time to time to the weights of the trained NN.
+ * In order to make this work, make sure to set the targetInterval or targetTau option, or the 
+ * syncInterval of the target to make sure it updates from time to time to the weights of the trained NN.
  * 
  * @author tverbele
  *
@@ -65,6 +66,15 @@ public class DeepQLearningStrategy implements LearningStrategy {
 	protected GradientProcessor gradientProcessor;
 	
 	protected Tensor targetValueBatch;
+	protected Tensor tdError;
+	protected Tensor td;
+	protected Tensor ones;
+	
+	protected Tensor actionIndex;
+	protected Tensor nextActionIndex;
+	protected Tensor targetValue;
+	protected Tensor maxValue;
+	protected Tensor weights;
 	
 	@Override
 	public void setup(Map<String, String> config, Dataset dataset, NeuralNetwork... nns) throws Exception {
@@ -86,6 +96,9 @@ public class DeepQLearningStrategy implements LearningStrategy {
 		
 		// Pre-allocate tensors for batch operations
 		this.targetValueBatch = new Tensor(this.config.batchSize, this.pool.actionDims()[0]);
+		this.tdError = new Tensor(this.config.batchSize);
+		this.ones = new Tensor(this.pool.actionDims()[0]);
+		this.ones.fill(1.0f);
 		
 		// Wait for the pool to contain enough samples
 		if(pool.size() < this.config.minSamples){
@@ -106,10 +119,6 @@ public class DeepQLearningStrategy implements LearningStrategy {
 		// Reset the deltas
 		valueNetwork.zeroDeltaParameters();
 		
-		// Reset the action & target value batch
-		// Note: actionBatch is a reverse mask of the action selected
-		targetValueBatch.fill(0);
-		
 		// Fill in the batch
 		ExperiencePoolBatch batch = prioritySampler.nextBatch();
 		
@@ -120,37 +129,29 @@ public class DeepQLearningStrategy implements LearningStrategy {
 		if(config.doubleQ)
 			nextValue = valueNetwork.forward(batch.nextState);
 		
-		for(int b = 0; b < config.batchSize; b++) {
-			// Get the data from the sample
-			// Note: actions are one-hot encoded
-			int action = TensorOps.argmax(batch.getAction(b));
-			float reward = batch.getScalarReward(b);
-			
-			// Calculate the target value
-			if(!batch.isTerminal(b)) {
-				// If the next state is not terminal, get the next value using the target network
-				Tensor t = nextTargetValue.select(0, b);
-				
-				// Determine the next action, depends on whether we are using double Q learning or not
-				int nextAction = TensorOps.argmax(config.doubleQ ? nextValue.select(0, b) : t);
-				
-				// Set the target value using the Bellman equation
-				targetValueBatch.set(reward + config.discount*t.get(nextAction), b, action);
-			} else {
-				// If the next state is terminal, the target value is equal to the reward
-				targetValueBatch.set(reward, b, action);
-			}
-		}
+		// Get the indices of the actions taken
+		// Note: actions are one-hot encoded
+		actionIndex = TensorOps.argmax(actionIndex, batch.getAction(), 1);
+		
+		// Determine the next action, depends on whether we are using double Q learning or not
+		nextActionIndex = TensorOps.argmax(nextActionIndex, config.doubleQ ? nextValue : nextTargetValue, 1);
+		
+		// Set the target value using the Bellman equation
+		// Note: terminal is zero for terminal next states, in which case the target value is equal to the reward
+		targetValue = TensorOps.gather(targetValue, nextTargetValue, 1, nextActionIndex);
+		TensorOps.cmul(targetValue, targetValue, batch.getTerminal());
+		TensorOps.add(targetValue, batch.getReward(), config.discount, targetValue);
+		
+		// Only the actions actually taken get a target value
+		targetValueBatch.fill(0);
+		TensorOps.scatter(targetValueBatch, 1, actionIndex, targetValue);
 		
 		// Forward pass of the value network to get the current value estimate
 		Tensor valueBatch = valueNetwork.forward(batch.getState());
 		
 		// Get the avg value of the best actions in the batch for reporting
-		float value = 0;
-		for(int b = 0; b < config.batchSize; b++) {
-			value += TensorOps.max(valueBatch.select(0, b));
-		}
-		value /= config.batchSize;
+		maxValue = TensorOps.max(maxValue, valueBatch, 1);
+		float value = TensorOps.mean(maxValue);
 
 		// Only keep the values on the actions actually taken
 		TensorOps.cmul(valueBatch, valueBatch, batch.getAction());
@@ -164,6 +165,17 @@ public class DeepQLearningStrategy implements LearningStrategy {
 		
 		Tensor grad = criterion.grad(valueBatch, targetValueBatch);
 		
+		// Correct for the prioritized sampling using the importance sampling weights
+		if(batch instanceof PrioritizedExperiencePoolBatch){
+			PrioritizedExperiencePoolBatch prioritized = (PrioritizedExperiencePoolBatch) batch;
+			weights = TensorOps.vv(weights, prioritized.getWeights(), ones);
+			TensorOps.cmul(grad, grad, weights);
+			
+			// Only the action taken is non-zero, so summing over the actions gives the TD error
+			td = TensorOps.sub(td, targetValueBatch, valueBatch);
+			tdError = TensorOps.mv(tdError, td, ones);
+		}
+		
 		// Backward pass of the critic
 		valueNetwork.backward(grad);
 		valueNetwork.accGradParameters();
@@ -172,11 +184,20 @@ public class DeepQLearningStrategy implements LearningStrategy {
 		gradientProcessor.calculateDelta(i);
 		
 		// Apply the updates
-		// Note: target network gets updated automatically by setting the syncInterval option
+		// Note: target network gets updated by setting the targetInterval or targetTau option,
+		// or through the repository by setting the syncInterval option
 		valueNetwork.updateParameters();
 		
-		// Add samples for priority sampling
-		prioritySampler.addBatch(l, batch);
+		if(config.targetTau > 0){
+			targetNetwork.syncParameters(valueNetwork, config.targetTau);
+		} else if(config.targetInterval > 0 && i % config.targetInterval == 0){
+			targetNetwork.syncParameters(valueNetwork, 1.0f);
+		}
+		
+		// Update the priorities of the sampled batch
+		if(batch instanceof PrioritizedExperiencePoolBatch){
+			prioritySampler.updatePriorities(tdError);
+		}
 		
 		return new LearnProgress(i, loss, new String[]{"q"}, new float[]{value});
 	}
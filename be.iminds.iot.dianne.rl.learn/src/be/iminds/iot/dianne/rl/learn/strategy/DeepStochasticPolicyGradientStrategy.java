@@ -252,10 +252,19 @@ public class DeepStochasticPolicyGradientStrategy implements LearningStrategy {
 		criticProcessor.calculateDelta(i);
 		
 		// Apply the updates
-		// Note: target actor & critic get updated automatically by setting the syncInterval option
+		// Note: target actor & critic get updated by setting the targetInterval or targetTau option,
+		// or through the repository by setting the syncInterval option
 		actor.updateParameters();
 		critic.updateParameters();
 		
+		if(config.targetTau > 0){
+			targetActor.syncParameters(actor, config.targetTau);
+			targetCritic.syncParameters(critic, config.targetTau);
+		} else if(config.targetInterval > 0 && i % config.targetInterval == 0){
+			targetActor.syncParameters(actor, 1.0f);
+			targetCritic.syncParameters(critic, 1.0f);
+		}
+		
 		// Report the average loss and value of the current policy
 		// Note: currently this is the value of the last actor sample only
 		return new LearnProgress(i, loss, new String[]{"q"}, new float[]{ TensorOps.sum(value)/config.batchSize});
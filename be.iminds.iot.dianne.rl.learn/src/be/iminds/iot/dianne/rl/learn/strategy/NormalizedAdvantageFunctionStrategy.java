@@ -50,8 +50,8 @@ import be.iminds.iot.dianne.tensor.TensorOps;
  * 
  * The strategy requires 2 NN instances of the same NN: one acting as a target for the other
  * 
- * In order to make this work, make sure to set the syncInterval of the target to make sure it 
- * updates from time to time to the weights of the trained NN.
+ * In order to make this work, make sure to set the targetInterval or targetTau option, or the 
+ * syncInterval of the target to make sure it updates from time to time to the weights of the trained NN.
  * 
  * @author sbohez
  *
@@ -174,8 +174,15 @@ public class NormalizedAdvantageFunctionStrategy implements LearningStrategy {
 		gradientProcessor.calculateDelta(i);
 		
 		// Apply the updates
-		// Note: target network gets updated automatically by setting the syncInterval option
+		// Note: target network gets updated by setting the targetInterval or targetTau option,
+		// or through the repository by setting the syncInterval option
 		valueNetwork.updateParameters();
+		
+		if(config.targetTau > 0){
+			targetNetwork.syncParameters(valueNetwork, config.targetTau);
+		} else if(config.targetInterval > 0 && i % config.targetInterval == 0){
+			targetNetwork.syncParameters(valueNetwork, 1.0f);
+		}
 
 		return new LearnProgress(i, totalLoss/config.batchSize, new String[]{"q"}, new float[]{ totalValue/config.batchSize});
 
@@ -69,6 +69,10 @@ public class RecurrentDeepQLearningStrategy implements LearningStrategy {
 	protected Tensor actionBatch;
 	protected List<Tensor> targets;
 	
+	protected Tensor actionIndex;
+	protected Tensor targetValue;
+	protected Tensor maxValue;
+	
 	protected BatchedExperiencePoolSequence sequence;
 	
 	@Override
@@ -125,34 +129,30 @@ public class RecurrentDeepQLearningStrategy implements LearningStrategy {
 		List<Tensor> nextValues = targetNetwork.forward(sequence.getNextStates());
 		
 		for(int s=0; s<config.sequenceLength; s++){
+			ExperiencePoolBatch step = sequence.get(s);
+			
+			// Get the indices of the actions taken
+			actionIndex = TensorOps.argmax(actionIndex, step.getAction(), 1);
+			
+			// Set the target value using the Bellman equation
+			// Note: terminal is zero for terminal next states, in which case the target value is equal to the reward
+			// TODO add double q learning?
+			targetValue = TensorOps.max(targetValue, nextValues.get(s), 1);
+			TensorOps.cmul(targetValue, targetValue, step.getTerminal());
+			TensorOps.add(targetValue, step.getReward(), config.discount, targetValue);
+			
 			Tensor target = targets.get(s);
 			target.fill(0.0f);
-			for(int b=0; b<config.batchSize; b++){
-				int action = TensorOps.argmax(sequence.get(s).getAction(b));
-				float reward = sequence.get(s).getScalarReward(b);
-				
-				// Calculate the target value
-				if(!sequence.get(s).isTerminal(b)) {
-					// TODO add double q learning?
-					
-					// Set the target value using the Bellman equation
-					target.set(reward + config.discount*TensorOps.max(nextValues.get(s).select(0, b)), b, action);
-				} else {
-					// If the next state is terminal, the target value is equal to the reward
-					target.set(reward, b, action);
-				}
-			}
+			TensorOps.scatter(target, 1, actionIndex, targetValue);
 		}
 		
 		List<Tensor> values = valueNetwork.forward(sequence.getStates());
 		
 		float value = 0;
 		for(int s=0; s<config.sequenceLength; s++){
-			for(int b = 0; b < config.batchSize; b++) {
-				value += TensorOps.max(values.get(s).select(0, b));
-			}
+			maxValue = TensorOps.max(maxValue, values.get(s), 1);
+			value += TensorOps.mean(maxValue);
 		}
-		value /= config.batchSize;
 		value /= config.sequenceLength;
 		
 		for(int s=0; s<config.sequenceLength; s++){
@@ -169,9 +169,16 @@ public class RecurrentDeepQLearningStrategy implements LearningStrategy {
 		gradientProcessor.calculateDelta(i);
 		
 		// Apply the updates
-		// Note: target network gets updated automatically by setting the syncInterval option
+		// Note: target network gets updated by setting the targetInterval or targetTau option,
+		// or through the repository by setting the syncInterval option
 		valueNetwork.updateParameters();
 		
+		if(config.targetTau > 0){
+			targetNetwork.syncParameters(valueNetwork, config.targetTau);
+		} else if(config.targetInterval > 0 && i % config.targetInterval == 0){
+			targetNetwork.syncParameters(valueNetwork, 1.0f);
+		}
+		
 		return new LearnProgress(i, loss, new String[]{"q"}, new float[]{value});
 	}
 
@@ -46,8 +46,8 @@ import be.iminds.iot.dianne.tensor.TensorOps;
  * The strategy requires 4 NN instances: a model of the transition distribution, reward likelihood
  * and 2 NN instances of the same Q value NN: one acting as a target for the other
  * 
- * In order to make this work, make sure to set the syncInterval of the target to make sure it 
- * updates from time to time to the weights of the trained NN.
+ * In order to make this work, make sure to set the targetInterval or targetTau option, or the 
+ * syncInterval of the target to make sure it updates from time to time to the weights of the trained NN.
  * 
  * @author sbohez
  *
@@ -76,6 +76,10 @@ public class ValueIterationLearningStrategy implements LearningStrategy {
 	protected Tensor rewardSample;
 	protected Tensor random4reward;
 	protected Tensor targetValue;
+	protected Tensor actionIndex;
+	protected Tensor rewardMatrix;
+	protected Tensor ones;
+	protected Tensor actionOnes;
 	
 	protected List<Tensor> states = new ArrayList<>();
 	protected List<Tensor> actions = new ArrayList<>();
@@ -108,6 +112,10 @@ public class ValueIterationLearningStrategy implements LearningStrategy {
 		this.rewardSample = new Tensor(this.config.batchSize);
 		this.random4reward = new Tensor(this.config.batchSize);
 		this.targetValue = new Tensor(this.config.batchSize, this.config.actionDims);
+		this.ones = new Tensor(this.config.batchSize, 1);
+		this.ones.fill(1.0f);
+		this.actionOnes = new Tensor(this.action.size(1));
+		this.actionOnes.fill(1.0f);
 		
 		System.out.println("Start learning...");
 	}
@@ -126,10 +134,9 @@ public class ValueIterationLearningStrategy implements LearningStrategy {
 			
 			Tensor value = config.doubleQ ? valueNetwork.forward(stateSample) : targetNetwork.forward(stateSample);
 			
+			actionIndex = TensorOps.argmax(actionIndex, value, 1);
 			action.fill(0);
-			for(int b = 0; b < config.batchSize; b++) {
-				action.set(1, b, TensorOps.argmax(value.select(0, b)));
-			}
+			TensorOps.scatter(action, 1, actionIndex, ones);
 			storeTensor(actions, action, t);
 			
 			Tensor rewardDistribution = rewardModel.forward(rewardModelIn, rewardModelOut, new Tensor[]{stateSample, action}).getValue().tensor;
@@ -153,9 +160,7 @@ public class ValueIterationLearningStrategy implements LearningStrategy {
 				Tensor futureValue = targetNetwork.forward(futureState);
 				TensorOps.cmul(futureValue, futureValue, futureAction);
 				
-				for(int b = 0; b < config.batchSize; b++) {
-					rewardSample.set(TensorOps.sum(futureValue.select(0, b)), b);
-				}
+				TensorOps.mv(rewardSample, futureValue, actionOnes);
 			} else {
 				rewardSample.fill(0);
 			}
@@ -165,12 +170,9 @@ public class ValueIterationLearningStrategy implements LearningStrategy {
 				TensorOps.add(rewardSample, rewardSample, rewards.get(n));
 			}
 			
-			targetValue.fill(0);
-			for(int b = 0; b < config.batchSize; b++) {
-				Tensor v = targetValue.select(0, b);
-				Tensor a = currentAction.select(0,b);
-				TensorOps.mul(v, a, rewardSample.get(b));
-			}
+			// Only the actions actually taken get a target value
+			rewardMatrix = TensorOps.vv(rewardMatrix, rewardSample, actionOnes);
+			TensorOps.cmul(targetValue, currentAction, rewardMatrix);
 			
 			loss += TensorOps.mean(criterion.loss(currentValue, targetValue));
 			valueNetwork.backward(criterion.grad(currentValue, targetValue), true);
@@ -178,6 +180,12 @@ public class ValueIterationLearningStrategy implements LearningStrategy {
 		
 		gradientProcessor.calculateDelta(i);
 		valueNetwork.updateParameters();
+		
+		if(config.targetTau > 0){
+			targetNetwork.syncParameters(valueNetwork, config.targetTau);
+		} else if(config.targetInterval > 0 && i % config.targetInterval == 0){
+			targetNetwork.syncParameters(valueNetwork, 1.0f);
+		}
 
 		return new LearnProgress(i, loss/config.episodeLength, new String[]{"q"}, new float[]{value/config.episodeLength});
 	}
@@ -69,4 +69,16 @@ public class DeepQConfig {
 	 */
 	public SamplingConfig sampling = SamplingConfig.UNIFORM;
 	
+	/**
+	 * Copy the parameters of the trained network into the target network in memory 
+	 * every targetInterval iterations (0 to leave this to the syncInterval of the Learner)
+	 */
+	public int targetInterval = 0;
+	
+	/**
+	 * Soft update the target network in memory every iteration, i.e. 
+	 * target = targetTau*trained + (1-targetTau)*target (0 to disable)
+	 */
+	public float targetTau = 0;
+	
 }
@@ -38,6 +38,8 @@ import be.iminds.iot.dianne.api.nn.module.dto.ModulePropertyDTO;
 import be.iminds.iot.dianne.api.nn.module.dto.ModuleTypeDTO;
 import be.iminds.iot.dianne.api.nn.module.factory.ModuleFactory;
 import be.iminds.iot.dianne.api.nn.module.factory.ModuleTypeNotSupportedException;
+import be.iminds.iot.dianne.rnn.module.memory.GRU;
+import be.iminds.iot.dianne.rnn.module.memory.LSTM;
 import be.iminds.iot.dianne.rnn.module.memory.SimpleMemory;
 import be.iminds.iot.dianne.tensor.Tensor;
 
@@ -53,6 +55,14 @@ public class MemoryFactory implements ModuleFactory {
 		
 		addSupportedType( new ModuleTypeDTO("Memory", "Memory", true, 
 					new ModulePropertyDTO("Memory size", "size", Integer.class.getName())));
+		
+		addSupportedType( new ModuleTypeDTO("FusedLSTM", "Memory", true, 
+					new ModulePropertyDTO("Input size", "input", Integer.class.getName()),
+					new ModulePropertyDTO("Output size", "output", Integer.class.getName())));
+		
+		addSupportedType( new ModuleTypeDTO("FusedGRU", "Memory", true, 
+					new ModulePropertyDTO("Input size", "input", Integer.class.getName()),
+					new ModulePropertyDTO("Output size", "output", Integer.class.getName())));
 	}
 	
 	
@@ -85,6 +95,30 @@ public class MemoryFactory implements ModuleFactory {
 			}
 			break;
 		}
+		case "FusedLSTM":
+		{
+			int input = Integer.parseInt(dto.properties.get("input"));
+			int output = Integer.parseInt(dto.properties.get("output"));
+			
+			if(parameters!=null){
+				module = new LSTM(id, parameters, input, output);
+			} else {
+				module = new LSTM(id, input, output);
+			}
+			break;
+		}
+		case "FusedGRU":
+		{
+			int input = Integer.parseInt(dto.properties.get("input"));
+			int output = Integer.parseInt(dto.properties.get("output"));
+			
+			if(parameters!=null){
+				module = new GRU(id, parameters, input, output);
+			} else {
+				module = new GRU(id, input, output);
+			}
+			break;
+		}
 		default:
 			throw new InstantiationException("Could not instantiate module of type "+type);
 		}
@@ -107,7 +141,24 @@ public class MemoryFactory implements ModuleFactory {
 		if(!supportedModules.containsKey(m.type))
 			throw new ModuleTypeNotSupportedException(m.type);
 		
-		return 0;
+		int size = 0;
+		switch(m.type){
+			case "FusedLSTM":
+			{
+				int input = Integer.parseInt(m.properties.get("input"));
+				int output = Integer.parseInt(m.properties.get("output"));
+				size = LSTM.parameterSize(input, output);
+				break;
+			}
+			case "FusedGRU":
+			{
+				int input = Integer.parseInt(m.properties.get("input"));
+				int output = Integer.parseInt(m.properties.get("output"));
+				size = GRU.parameterSize(input, output);
+				break;
+			}
+		}
+		return size;
 	}
 
 	@Override
@@ -122,6 +173,17 @@ public class MemoryFactory implements ModuleFactory {
 				size = Integer.parseInt(m.properties.get("size"));
 				break;
 			}
+			case "FusedLSTM":
+			{
+				// previous output and cell state
+				size = 2*Integer.parseInt(m.properties.get("output"));
+				break;
+			}
+			case "FusedGRU":
+			{
+				size = Integer.parseInt(m.properties.get("output"));
+				break;
+			}
 		}
 		return size;
 	}
@@ -134,6 +134,11 @@ public abstract class AbstractMemory extends AbstractModule implements Memory {
 	}
 
 	
+	@Override
+	public synchronized void triggerForwardSync() {
+		updateOutput();
+	}
+	
 	protected synchronized void backward(final UUID moduleId, final ModuleException ex, final Tensor gradOutput, final String... tags) {
 		if(TRACE){
 			System.out.println("BACKWARD "+this.id+" ("+this.getClass().getName()+")  FROM "+moduleId+" "+(gradOutput==null?"null":Arrays.toString(gradOutput.dims()))+" "+Arrays.toString(tags));
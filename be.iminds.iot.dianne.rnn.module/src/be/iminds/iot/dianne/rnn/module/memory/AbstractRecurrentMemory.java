@@ -0,0 +1,144 @@
+/*******************************************************************************
+ * DIANNE  - Framework for distributed artificial neural networks
+ * Copyright (C) 2015  iMinds - IBCN - UGent
+ *
+ * This file is part of DIANNE.
+ *
+ * DIANNE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contributors:
+ *     Tim Verbelen, Steven Bohez
+ *******************************************************************************/
+package be.iminds.iot.dianne.rnn.module.memory;
+
+import java.util.UUID;
+
+import be.iminds.iot.dianne.api.nn.module.AbstractTrainableModule;
+import be.iminds.iot.dianne.api.nn.module.Memory;
+import be.iminds.iot.dianne.tensor.Tensor;
+
+/**
+ * Base class for recurrent cells that keep their own state as memory. Unlike a regular
+ * Memory the output is calculated from both the current input and the previous state 
+ * in a single forward, so these are executed as regular modules and are never triggered.
+ * 
+ * The gradient on the previous state is kept between backward calls and is added to the 
+ * gradOutput of the previous time step, until the memory is reset.
+ * 
+ * @author tverbele
+ *
+ */
+public abstract class AbstractRecurrentMemory extends AbstractTrainableModule implements Memory {
+
+	protected final int inSize;
+	protected final int size;
+	
+	protected Tensor memory;
+	
+	protected Tensor ones = new Tensor(new float[]{1.0f}, 1);
+	
+	// keep latest input dimensions
+	protected int[] inputDims;
+	protected int batchSize;
+	
+	public AbstractRecurrentMemory(UUID id, Tensor parameters, int inSize, int size){
+		super(id, parameters);
+		this.inSize = inSize;
+		this.size = size;
+		this.memory = new Tensor(memorySize());
+		this.memory.fill(0.0f);
+	}
+	
+	/**
+	 * @return the number of memory elements per sample
+	 */
+	protected abstract int memorySize();
+	
+	/**
+	 * Zero out the gradients kept for the previous time step
+	 */
+	protected abstract void resetGradients(int batchSize);
+	
+	/**
+	 * @return view on part of the memory, for each sample in case of a batch
+	 */
+	protected Tensor state(int offset, int length){
+		return memory.narrow(memory.dim() == 1 ? 0 : 1, offset, length);
+	}
+	
+	/**
+	 * Check the input against the memory, and fix the number of samples processed
+	 */
+	protected void checkInput(){
+		inputDims = input.dims();
+		int batches = input.dim() == 1 ? 1 : inputDims[0];
+		int memoryBatches = memory.dim() == 1 ? 1 : memory.dims()[0];
+		if(batches != memoryBatches){
+			throw new RuntimeException("Memory batch size "+memoryBatches+" does not match input batch size "+batches+", reset the memory first");
+		}
+		if(input.size() != batches*inSize){
+			throw new RuntimeException("Invalid input size "+input.size()+", expected "+batches*inSize);
+		}
+		
+		if(ones.size(0) != batches){
+			ones.reshape(batches);
+			ones.fill(1.0f);
+		}
+		batchSize = batches;
+	}
+	
+	@Override
+	public void reset(int batchSize){
+		if(batchSize == 0 && memory.dim() > 1){
+			memory = new Tensor(memorySize());
+		} else if(batchSize > 0 && (memory.dim() != 2 || memory.dims()[0] != batchSize)){
+			memory = new Tensor(batchSize, memorySize());
+		}
+		memory.fill(0.0f);
+		resetGradients(batchSize == 0 ? 1 : batchSize);
+	}
+	
+	@Override
+	public void reset(Tensor t){
+		memory = t;
+		memory.fill(0.0f);
+		resetGradients(t.dim() == 2 ? t.dims()[0] : 1);
+	}
+	
+	@Override
+	public Tensor getMemory() {
+		return memory;
+	}
+
+	@Override
+	public void setMemory(Tensor memory) {
+		memory.copyInto(this.memory);
+	}
+	
+	@Override
+	public void triggerForward(final String... tags) {
+		// output is already forwarded in forward
+	}
+
+	@Override
+	public void triggerForwardSync() {
+		// executed as a regular module in a compiled plan
+	}
+
+	@Override
+	public void triggerBackward(final String... tags) {
+		// the gradient on the previous state is kept internally
+	}
+	
+}
@@ -0,0 +1,192 @@
+/*******************************************************************************
+ * DIANNE  - Framework for distributed artificial neural networks
+ * Copyright (C) 2015  iMinds - IBCN - UGent
+ *
+ * This file is part of DIANNE.
+ *
+ * DIANNE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contributors:
+ *     Tim Verbelen, Steven Bohez
+ *******************************************************************************/
+package be.iminds.iot.dianne.rnn.module.memory;
+
+import java.util.UUID;
+
+import be.iminds.iot.dianne.tensor.ModuleOps;
+import be.iminds.iot.dianne.tensor.Tensor;
+import be.iminds.iot.dianne.tensor.TensorOps;
+
+/**
+ * GRU cell with fused gates. The pre-activations of all three gates are calculated with one
+ * linear on the input and one on the previous output, after which the gate nonlinearities and
+ * state update are done in one pass by ModuleOps.gru. Two linears are required since the reset 
+ * gate is applied to the recurrent part of the new state only.
+ * 
+ * The parameters are the 3*size x input weights and 3*size bias for the input, followed by the 
+ * 3*size x size weights and 3*size bias for the previous output, with gates ordered reset, 
+ * update, new.
+ * 
+ * @author tverbele
+ *
+ */
+public class GRU extends AbstractRecurrentMemory {
+
+	private Tensor weightsX;
+	private Tensor biasX;
+	private Tensor weightsH;
+	private Tensor biasH;
+	
+	private Tensor deltaWeightsX;
+	private Tensor deltaBiasX;
+	private Tensor deltaWeightsH;
+	private Tensor deltaBiasH;
+
+	private Tensor prevOutput;
+	private Tensor gatesX;
+	private Tensor gatesH;
+	
+	private Tensor gradHidden;
+	private Tensor gradPrevOutput;
+	private Tensor gradGatesX;
+	private Tensor gradGatesH;
+	
+	public GRU(int inSize, int size){
+		this(UUID.randomUUID(), inSize, size);
+	}
+	
+	public GRU(UUID id, int inSize, int size){
+		this(id, new Tensor(parameterSize(inSize, size)), inSize, size);
+		parameters.fill(0.0f);
+	}
+	
+	public GRU(UUID id, Tensor parameters, int inSize, int size){
+		super(id, parameters, inSize, size);
+		
+		if(parameters.size()!=parameterSize(inSize, size)){
+			parameters.reshape(parameterSize(inSize, size));
+		}
+		
+		int offset = 0;
+		weightsX = parameters.narrow(0, offset, 3*size*inSize);
+		weightsX.reshape(3*size, inSize);
+		offset += 3*size*inSize;
+		biasX = parameters.narrow(0, offset, 3*size);
+		offset += 3*size;
+		weightsH = parameters.narrow(0, offset, 3*size*size);
+		weightsH.reshape(3*size, size);
+		offset += 3*size*size;
+		biasH = parameters.narrow(0, offset, 3*size);
+	}
+	
+	public static int parameterSize(int inSize, int size){
+		return 3*size*(inSize+1) + 3*size*(size+1);
+	}
+	
+	@Override
+	protected int memorySize(){
+		return size;
+	}
+	
+	public void initDeltaParameters(Tensor deltas){
+		if(deltas==null){
+			deltaParameters = new Tensor(parameters.size());
+		} else {
+			// TODO check size?
+			deltaParameters = deltas;
+		}
+		
+		int offset = 0;
+		deltaWeightsX = deltaParameters.narrow(0, offset, 3*size*inSize);
+		deltaWeightsX.reshape(3*size, inSize);
+		offset += 3*size*inSize;
+		deltaBiasX = deltaParameters.narrow(0, offset, 3*size);
+		offset += 3*size;
+		deltaWeightsH = deltaParameters.narrow(0, offset, 3*size*size);
+		deltaWeightsH.reshape(3*size, size);
+		offset += 3*size*size;
+		deltaBiasH = deltaParameters.narrow(0, offset, 3*size);
+		
+		deltaParameters.fill(0.0f);
+	}
+	
+	@Override 
+	public void randomize(){
+		// randomize weights uniform [-std, std] with std = 1/sqrt(size)  [from torch]
+		parameters.rand();
+		float std = (float) (1f/Math.sqrt(size));
+		TensorOps.mul(parameters, parameters, 2*std);
+		TensorOps.sub(parameters, parameters, std);
+	}
+	
+	@Override
+	protected void forward() {
+		checkInput();
+		if(prevOutput==null || prevOutput.size(0) != batchSize){
+			prevOutput = new Tensor(batchSize, size);
+		}
+		state(0, size).copyInto(prevOutput);
+		
+		gatesX = ModuleOps.linear(gatesX, input, weightsX, biasX, ones);
+		gatesH = ModuleOps.linear(gatesH, prevOutput, weightsH, biasH, ones);
+		if(output == null){
+			output = new Tensor(batchSize, size);
+		}
+		ModuleOps.gru(output, gatesX, gatesH, prevOutput);
+		
+		output.copyInto(state(0, size));
+		
+		if(input.dim() == 1){
+			output.reshape(size);
+		}
+	}
+
+	@Override
+	protected void backward() {
+		if(deltaParameters==null){
+			initDeltaParameters(null);
+		}
+		if(gradHidden==null || gradHidden.size(0) != batchSize){
+			resetGradients(batchSize);
+		}
+		
+		// add the gradient on the output of the next time step
+		gradHidden = TensorOps.add(gradHidden, gradHidden, gradOutput);
+		ModuleOps.gruGradIn(gradGatesX, gradGatesH, gradPrevOutput, gradHidden, gatesX, gatesH, prevOutput);
+		gradInput = ModuleOps.linearGradIn(gradInput, gradGatesX, weightsX, input);
+		
+		// keep the gradient on the previous output for the previous time step
+		gradHidden = TensorOps.addmm(gradHidden, gradPrevOutput, gradGatesH, weightsH);
+		
+		gradInput.reshape(inputDims);
+	}
+
+	@Override
+	public void accGradParameters() {
+		ModuleOps.linearAccGrad(deltaWeightsX, deltaBiasX, gradGatesX, input, ones);
+		ModuleOps.linearAccGrad(deltaWeightsH, deltaBiasH, gradGatesH, prevOutput, ones);
+	}
+	
+	@Override
+	protected void resetGradients(int batchSize){
+		if(gradHidden==null || gradHidden.size(0) != batchSize){
+			gradHidden = new Tensor(batchSize, size);
+			gradPrevOutput = new Tensor(batchSize, size);
+			gradGatesX = new Tensor(batchSize, 3*size);
+			gradGatesH = new Tensor(batchSize, 3*size);
+		}
+		gradHidden.fill(0.0f);
+	}
+
+}
@@ -0,0 +1,188 @@
+/*******************************************************************************
+ * DIANNE  - Framework for distributed artificial neural networks
+ * Copyright (C) 2015  iMinds - IBCN - UGent
+ *
+ * This file is part of DIANNE.
+ *
+ * DIANNE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contributors:
+ *     Tim Verbelen, Steven Bohez
+ *******************************************************************************/
+package be.iminds.iot.dianne.rnn.module.memory;
+
+import java.util.UUID;
+
+import be.iminds.iot.dianne.tensor.ModuleOps;
+import be.iminds.iot.dianne.tensor.Tensor;
+import be.iminds.iot.dianne.tensor.TensorOps;
+
+/**
+ * LSTM cell with fused gates. The input is concatenated with the previous output, after which
+ * the pre-activations of all four gates are calculated in a single linear, and the gate 
+ * nonlinearities and cell update are done in one pass by ModuleOps.lstm.
+ * 
+ * The memory contains both the previous output and cell state, the parameters are the 
+ * 4*size x (input+size) weights followed by the 4*size bias, with gates ordered input, forget, 
+ * cell, output.
+ * 
+ * @author tverbele
+ *
+ */
+public class LSTM extends AbstractRecurrentMemory {
+
+	private Tensor weights;
+	private Tensor bias;
+	
+	private Tensor deltaWeights;
+	private Tensor deltaBias;
+
+	// input concatenated with the previous output
+	private Tensor inputHidden;
+	private Tensor gates;
+	private Tensor prevCell;
+	private Tensor cell;
+	
+	private Tensor gradHidden;
+	private Tensor gradCell;
+	private Tensor gradPrevCell;
+	private Tensor gradGates;
+	private Tensor gradInputHidden;
+	
+	public LSTM(int inSize, int size){
+		this(UUID.randomUUID(), inSize, size);
+	}
+	
+	public LSTM(UUID id, int inSize, int size){
+		this(id, new Tensor(parameterSize(inSize, size)), inSize, size);
+		parameters.fill(0.0f);
+	}
+	
+	public LSTM(UUID id, Tensor parameters, int inSize, int size){
+		super(id, parameters, inSize, size);
+		
+		if(parameters.size()!=parameterSize(inSize, size)){
+			parameters.reshape(parameterSize(inSize, size));
+		}
+		
+		weights = parameters.narrow(0, 0, 4*size*(inSize+size));
+		weights.reshape(4*size, inSize+size);
+		bias = parameters.narrow(0, 4*size*(inSize+size), 4*size);
+		bias.reshape(4*size);
+	}
+	
+	public static int parameterSize(int inSize, int size){
+		return 4*size*(inSize+size+1);
+	}
+	
+	@Override
+	protected int memorySize(){
+		return 2*size;
+	}
+	
+	public void initDeltaParameters(Tensor deltas){
+		if(deltas==null){
+			deltaParameters = new Tensor(parameters.size());
+		} else {
+			// TODO check size?
+			deltaParameters = deltas;
+		}
+		
+		deltaWeights = deltaParameters.narrow(0, 0, 4*size*(inSize+size));
+		deltaWeights.reshape(4*size, inSize+size);
+		deltaBias = deltaParameters.narrow(0, 4*size*(inSize+size), 4*size);
+		deltaBias.reshape(4*size);
+		
+		deltaParameters.fill(0.0f);
+	}
+	
+	@Override 
+	public void randomize(){
+		// randomize weights uniform [-std, std] with std = 1/sqrt(noInputs)  [from torch]
+		parameters.rand();
+		float std = (float) (1f/Math.sqrt(inSize+size));
+		TensorOps.mul(parameters, parameters, 2*std);
+		TensorOps.sub(parameters, parameters, std);
+	}
+	
+	@Override
+	protected void forward() {
+		checkInput();
+		if(inputHidden==null || inputHidden.size(0) != batchSize){
+			inputHidden = new Tensor(batchSize, inSize+size);
+			gates = new Tensor(batchSize, 4*size);
+			prevCell = new Tensor(batchSize, size);
+			cell = new Tensor(batchSize, size);
+		}
+		
+		input.copyInto(inputHidden.narrow(1, 0, inSize));
+		state(0, size).copyInto(inputHidden.narrow(1, inSize, size));
+		state(size, size).copyInto(prevCell);
+		
+		gates = ModuleOps.linear(gates, inputHidden, weights, bias, ones);
+		if(output == null){
+			output = new Tensor(batchSize, size);
+		}
+		ModuleOps.lstm(output, cell, gates, prevCell);
+		
+		output.copyInto(state(0, size));
+		cell.copyInto(state(size, size));
+		
+		if(input.dim() == 1){
+			output.reshape(size);
+		}
+	}
+
+	@Override
+	protected void backward() {
+		if(deltaParameters==null){
+			initDeltaParameters(null);
+		}
+		if(gradHidden==null || gradHidden.size(0) != batchSize){
+			resetGradients(batchSize);
+		}
+		
+		// add the gradient on the output of the next time step
+		gradHidden = TensorOps.add(gradHidden, gradHidden, gradOutput);
+		ModuleOps.lstmGradIn(gradGates, gradPrevCell, gradHidden, gradCell, gates, prevCell, cell);
+		gradInputHidden = ModuleOps.linearGradIn(gradInputHidden, gradGates, weights, inputHidden);
+		
+		// keep the gradients on the previous state for the previous time step
+		Tensor t = gradCell;
+		gradCell = gradPrevCell;
+		gradPrevCell = t;
+		gradInputHidden.narrow(1, inSize, size).copyInto(gradHidden);
+		
+		gradInput = gradInputHidden.narrow(1, 0, inSize).copyInto(gradInput);
+		gradInput.reshape(inputDims);
+	}
+
+	@Override
+	public void accGradParameters() {
+		ModuleOps.linearAccGrad(deltaWeights, deltaBias, gradGates, inputHidden, ones);
+	}
+	
+	@Override
+	protected void resetGradients(int batchSize){
+		if(gradHidden==null || gradHidden.size(0) != batchSize){
+			gradHidden = new Tensor(batchSize, size);
+			gradCell = new Tensor(batchSize, size);
+			gradPrevCell = new Tensor(batchSize, size);
+			gradGates = new Tensor(batchSize, 4*size);
+		}
+		gradHidden.fill(0.0f);
+		gradCell.fill(0.0f);
+	}
+
+}
@@ -0,0 +1,179 @@
+/*******************************************************************************
+ * DIANNE  - Framework for distributed artificial neural networks
+ * Copyright (C) 2015  iMinds - IBCN - UGent
+ *
+ * This file is part of DIANNE.
+ *
+ * DIANNE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contributors:
+ *     Tim Verbelen, Steven Bohez
+ *******************************************************************************/
+package be.iminds.iot.dianne.rnn.module.memory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import be.iminds.iot.dianne.tensor.NativeTensorLoader;
+import be.iminds.iot.dianne.tensor.Tensor;
+import be.iminds.iot.dianne.tensor.TensorOps;
+
+public class RecurrentMemoryTest {
+
+	private static final int IN = 3;
+	private static final int SIZE = 4;
+	private static final int BATCH = 2;
+	private static final int STEPS = 3;
+	
+	private static final float EPS = 1e-2f;
+	private static final float TOLERANCE = 2e-3f;
+	
+	@BeforeClass
+	public static void setup() {
+		NativeTensorLoader loader = new NativeTensorLoader();
+		loader.activate(null);
+	}
+	
+	@Test
+	public void testLSTMGradients() throws Exception {
+		testGradients(new LSTM(IN, SIZE), BATCH);
+	}
+	
+	@Test
+	public void testGRUGradients() throws Exception {
+		testGradients(new GRU(IN, SIZE), BATCH);
+	}
+	
+	@Test
+	public void testLSTMUnbatched() throws Exception {
+		testGradients(new LSTM(IN, SIZE), 0);
+	}
+	
+	@Test
+	public void testGRUUnbatched() throws Exception {
+		testGradients(new GRU(IN, SIZE), 0);
+	}
+	
+	@Test
+	public void testReset() throws Exception {
+		LSTM lstm = new LSTM(IN, SIZE);
+		lstm.randomizeParameters();
+		lstm.reset(BATCH);
+		
+		Tensor input = new Tensor(BATCH, IN);
+		input.rand();
+		lstm.forwardSync(input);
+		Tensor first = lstm.outputSync(0).copyInto(null);
+		lstm.forwardSync(input);
+		Assert.assertFalse(first.equals(lstm.outputSync(0), 1e-6f));
+		Assert.assertArrayEquals(new int[]{BATCH, 2*SIZE}, lstm.getMemory().dims());
+		
+		lstm.reset(BATCH);
+		lstm.forwardSync(input);
+		Assert.assertTrue(first.equals(lstm.outputSync(0), 1e-6f));
+		
+		lstm.reset(0);
+		Assert.assertArrayEquals(new int[]{2*SIZE}, lstm.getMemory().dims());
+	}
+	
+	/**
+	 * Compare the gradients of the loss sum_t gradOutput_t . output_t after backpropagation
+	 * through time with finite differences
+	 */
+	private void testGradients(AbstractRecurrentMemory m, int batchSize) throws Exception {
+		Random r = new Random(1);
+		m.randomizeParameters();
+		m.initDeltaParameters(null);
+		
+		List<Tensor> inputs = new ArrayList<>();
+		List<Tensor> gradOutputs = new ArrayList<>();
+		for(int t=0;t<STEPS;t++){
+			inputs.add(random(r, batchSize, IN));
+			gradOutputs.add(random(r, batchSize, SIZE));
+		}
+		
+		// forward the sequence, keeping the memory before each step
+		m.reset(batchSize);
+		List<Tensor> memories = new ArrayList<>();
+		for(int t=0;t<STEPS;t++){
+			memories.add(m.getMemory().copyInto(null));
+			m.forwardSync(inputs.get(t));
+		}
+		
+		// backward in reverse order, forwarding each step again from its memory
+		Tensor[] gradInputs = new Tensor[STEPS];
+		for(int t=STEPS-1;t>=0;t--){
+			m.setMemory(memories.get(t));
+			m.forwardSync(inputs.get(t));
+			m.backwardSync(gradOutputs.get(t));
+			m.accGradParameters();
+			gradInputs[t] = m.gradInputSync(0).copyInto(null);
+			Assert.assertArrayEquals(inputs.get(t).dims(), gradInputs[t].dims());
+		}
+		
+		Tensor params = m.getParameters();
+		Tensor deltas = m.getDeltaParameters();
+		for(int i=0;i<params.size();i++){
+			float expected = numerical(m, batchSize, params, i, inputs, gradOutputs);
+			Assert.assertEquals("Wrong gradient for parameter "+i, expected, deltas.get()[i], TOLERANCE);
+		}
+		
+		for(int t=0;t<STEPS;t++){
+			Tensor in = inputs.get(t);
+			for(int i=0;i<in.size();i++){
+				float expected = numerical(m, batchSize, in, i, inputs, gradOutputs);
+				Assert.assertEquals("Wrong gradient for input "+i+" at step "+t, expected, gradInputs[t].get()[i], TOLERANCE);
+			}
+		}
+	}
+	
+	private float numerical(AbstractRecurrentMemory m, int batchSize, Tensor t, int index, List<Tensor> inputs, List<Tensor> gradOutputs) throws Exception {
+		float[] data = t.get();
+		float v = data[index];
+		data[index] = v + EPS;
+		t.set(data);
+		float plus = loss(m, batchSize, inputs, gradOutputs);
+		data[index] = v - EPS;
+		t.set(data);
+		float minus = loss(m, batchSize, inputs, gradOutputs);
+		data[index] = v;
+		t.set(data);
+		return (plus - minus) / (2*EPS);
+	}
+	
+	private float loss(AbstractRecurrentMemory m, int batchSize, List<Tensor> inputs, List<Tensor> gradOutputs) throws Exception {
+		m.reset(batchSize);
+		float loss = 0;
+		for(int t=0;t<STEPS;t++){
+			m.forwardSync(inputs.get(t));
+			loss += TensorOps.dot(m.outputSync(0), gradOutputs.get(t));
+		}
+		return loss;
+	}
+	
+	private Tensor random(Random r, int batchSize, int size){
+		Tensor t = batchSize == 0 ? new Tensor(size) : new Tensor(batchSize, size);
+		float[] data = new float[t.size()];
+		for(int i=0;i<data.length;i++){
+			data[i] = (float)r.nextGaussian();
+		}
+		t.set(data);
+		return t;
+	}
+}
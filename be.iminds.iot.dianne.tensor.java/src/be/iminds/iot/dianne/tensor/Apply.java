@@ -0,0 +1,154 @@
+/*******************************************************************************
+ * DIANNE  - Framework for distributed artificial neural networks
+ * Copyright (C) 2015  iMinds - IBCN - UGent
+ *
+ * This file is part of DIANNE.
+ *
+ * DIANNE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contributors:
+ *     Tim Verbelen, Steven Bohez
+ *******************************************************************************/
+package be.iminds.iot.dianne.tensor;
+
+/**
+ * Applies elementwise kernels on tensors.
+ * 
+ * Operands are made contiguous, after which the kernel is called on (chunks of) the
+ * underlying arrays. Each kernel is a separate lambda containing its own unit-stride loop, 
+ * so that the loop is compiled and vectorized for that kernel only. Results are written
+ * in a contiguous tensor and copied back in case the result tensor is a non-contiguous view.
+ * 
+ * @author tverbele
+ *
+ */
+final class Apply {
+
+	interface Kernel1 {
+		void apply(float[] r, int ro, float[] a, int ao, int n);
+	}
+	
+	interface Kernel2 {
+		void apply(float[] r, int ro, float[] a, int ao, float[] b, int bo, int n);
+	}
+	
+	interface Kernel3 {
+		void apply(float[] r, int ro, float[] a, int ao, float[] b, int bo, float[] c, int co, int n);
+	}
+	
+	private Apply(){}
+	
+	/**
+	 * res = f(a), res is resized as a
+	 */
+	static Tensor map(Tensor res, Tensor a, Kernel1 f){
+		res = TensorOps.resizeAs(res, a);
+		final Tensor r = target(res);
+		final Tensor ac = a.contiguous();
+		final int n = r.size();
+		Parallel.forRange(n, n, (from, to) -> 
+			f.apply(r.storage.data, r.offset+from, ac.storage.data, ac.offset+from, to-from));
+		return commit(res, r);
+	}
+	
+	/**
+	 * res = f(a, b), res is resized as a and b should have the same number of elements
+	 */
+	static Tensor map(Tensor res, Tensor a, Tensor b, Kernel2 f){
+		check(a, b);
+		res = TensorOps.resizeAs(res, a);
+		final Tensor r = target(res);
+		final Tensor ac = a.contiguous();
+		final Tensor bc = b.contiguous();
+		final int n = r.size();
+		Parallel.forRange(n, n, (from, to) -> 
+			f.apply(r.storage.data, r.offset+from, ac.storage.data, ac.offset+from, bc.storage.data, bc.offset+from, to-from));
+		return commit(res, r);
+	}
+	
+	/**
+	 * res = f(a, b, c), res is resized as a and b and c should have the same number of elements
+	 */
+	static Tensor map(Tensor res, Tensor a, Tensor b, Tensor c, Kernel3 f){
+		check(a, b);
+		check(a, c);
+		res = TensorOps.resizeAs(res, a);
+		final Tensor r = target(res);
+		final Tensor ac = a.contiguous();
+		final Tensor bc = b.contiguous();
+		final Tensor cc = c.contiguous();
+		final int n = r.size();
+		Parallel.forRange(n, n, (from, to) -> 
+			f.apply(r.storage.data, r.offset+from, ac.storage.data, ac.offset+from, bc.storage.data, bc.offset+from, cc.storage.data, cc.offset+from, to-from));
+		return commit(res, r);
+	}
+	
+	/**
+	 * f(a, b) updating both a and b in place, a and b should have the same number of elements
+	 */
+	static void update(Tensor a, Tensor b, Kernel1 f){
+		check(a, b);
+		final Tensor ac = a.contiguous();
+		final Tensor bc = b.contiguous();
+		final int n = ac.size();
+		Parallel.forRange(n, n, (from, to) -> 
+			f.apply(ac.storage.data, ac.offset+from, bc.storage.data, bc.offset+from, to-from));
+		commit(a, ac);
+		commit(b, bc);
+	}
+	
+	/**
+	 * f(a, b, c) updating a, b and c in place, a, b and c should have the same number of elements
+	 */
+	static void update(Tensor a, Tensor b, Tensor c, Kernel2 f){
+		check(a, b);
+		check(a, c);
+		final Tensor ac = a.contiguous();
+		final Tensor bc = b.contiguous();
+		final Tensor cc = c.contiguous();
+		final int n = ac.size();
+		Parallel.forRange(n, n, (from, to) -> 
+			f.apply(ac.storage.data, ac.offset+from, bc.storage.data, bc.offset+from, cc.storage.data, cc.offset+from, to-from));
+		commit(a, ac);
+		commit(b, bc);
+		commit(c, cc);
+	}
+	
+	/**
+	 * @return a contiguous tensor to write the result of res in, which is res itself if already contiguous
+	 */
+	static Tensor target(Tensor res){
+		if(res.isContiguous()){
+			return res;
+		}
+		return new Tensor(res.dims);
+	}
+	
+	/**
+	 * copy the result back into res in case it was calculated in a temporary tensor
+	 */
+	static Tensor commit(Tensor res, Tensor r){
+		if(r != res){
+			r.copyInto(res);
+			r.release();
+		}
+		return res;
+	}
+	
+	static void check(Tensor a, Tensor b){
+		if(a.size() != b.size()){
+			throw new IllegalArgumentException("Number of elements should match: "+a.size()+" vs "+b.size());
+		}
+	}
+}
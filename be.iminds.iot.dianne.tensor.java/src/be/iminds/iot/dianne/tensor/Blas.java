@@ -0,0 +1,306 @@
+/*******************************************************************************
+ * DIANNE  - Framework for distributed artificial neural networks
+ * Copyright (C) 2015  iMinds - IBCN - UGent
+ *
+ * This file is part of DIANNE.
+ *
+ * DIANNE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contributors:
+ *     Tim Verbelen, Steven Bohez
+ *******************************************************************************/
+package be.iminds.iot.dianne.tensor;
+
+/**
+ * Basic linear algebra routines on float arrays.
+ * 
+ * Matrices are given by an array, an offset and a row and column stride, so that
+ * transposed matrices are handled without copying. Results are always written in
+ * row-major order. Inner loops run with unit stride over rows of the result, so that
+ * they are vectorized by the JIT compiler.
+ * 
+ * @author tverbele
+ *
+ */
+final class Blas {
+
+	// block sizes of the inner dimension and result columns, such that a block of B stays in cache
+	private static final int KB = 128;
+	private static final int NB = 512;
+	
+	private Blas(){}
+	
+	/**
+	 * C = beta*C + alpha*A*B with A a m x k matrix, B a k x n matrix and C a m x n row-major matrix
+	 */
+	static void gemm(final int m, final int n, final int k, final float alpha, 
+			final float[] a, final int aOff, final int aRs, final int aCs,
+			float[] b, int bOff, int bRs, int bCs,
+			final float beta, final float[] c, final int cOff, final int cRs){
+		
+		final long work = 2L*m*n*k;
+		final boolean rows = m >= n || m >= 64;
+		
+		if(bRs == 1 && aCs == 1 && bCs != 1){
+			// B is the transpose of a row-major matrix, calculate C as dot products of rows
+			final float[] bd = b;
+			final int bo = bOff;
+			final int bcs = bCs;
+			if(rows){
+				Parallel.forRange(m, work, (from, to) -> 
+					gemmNT(from, to, 0, n, k, alpha, a, aOff, aRs, bd, bo, bcs, beta, c, cOff, cRs));
+			} else {
+				Parallel.forRange(n, work, (from, to) -> 
+					gemmNT(0, m, from, to, k, alpha, a, aOff, aRs, bd, bo, bcs, beta, c, cOff, cRs));
+			}
+			return;
+		}
+		
+		// pack B in row-major order in case its rows are not contiguous
+		if(bCs != 1){
+			float[] packed = new float[k*n];
+			for(int p=0;p<k;p++){
+				for(int j=0;j<n;j++){
+					packed[p*n+j] = b[bOff+p*bRs+j*bCs];
+				}
+			}
+			b = packed;
+			bOff = 0;
+			bRs = n;
+			bCs = 1;
+		}
+		
+		final float[] bd = b;
+		final int bo = bOff;
+		final int brs = bRs;
+		if(rows){
+			Parallel.forRange(m, work, (from, to) -> 
+				gemm(from, to, 0, n, k, alpha, a, aOff, aRs, aCs, bd, bo, brs, beta, c, cOff, cRs));
+		} else {
+			// split over columns in case of few rows
+			Parallel.forRange(n, work, (from, to) -> 
+				gemm(0, m, from, to, k, alpha, a, aOff, aRs, aCs, bd, bo, brs, beta, c, cOff, cRs));
+		}
+	}
+	
+	// calculate rows i0 to i1 and columns j0 to j1 of C, B is row-major
+	private static void gemm(int i0, int i1, int j0, int j1, int k, float alpha,
+			float[] a, int aOff, int aRs, int aCs,
+			float[] b, int bOff, int bRs, 
+			float beta, float[] c, int cOff, int cRs){
+		for(int i=i0;i<i1;i++){
+			scale(c, cOff+i*cRs+j0, j1-j0, beta);
+		}
+		
+		if(alpha == 0.0f)
+			return;
+		
+		for(int kk=0;kk<k;kk+=KB){
+			int k1 = Math.min(kk+KB, k);
+			for(int jj=j0;jj<j1;jj+=NB){
+				int nb = Math.min(jj+NB, j1) - jj;
+				
+				int i = i0;
+				// 4 rows of C at once, reusing each loaded element of B
+				for(;i+3<i1;i+=4){
+					int c0 = cOff+i*cRs+jj;
+					int c1 = c0+cRs;
+					int c2 = c1+cRs;
+					int c3 = c2+cRs;
+					for(int p=kk;p<k1;p++){
+						int ai = aOff+i*aRs+p*aCs;
+						float a0 = alpha*a[ai];
+						float a1 = alpha*a[ai+aRs];
+						float a2 = alpha*a[ai+2*aRs];
+						float a3 = alpha*a[ai+3*aRs];
+						int bi = bOff+p*bRs+jj;
+						for(int j=0;j<nb;j++){
+							float bv = b[bi+j];
+							c[c0+j] += a0*bv;
+							c[c1+j] += a1*bv;
+							c[c2+j] += a2*bv;
+							c[c3+j] += a3*bv;
+						}
+					}
+				}
+				for(;i<i1;i++){
+					int ci = cOff+i*cRs+jj;
+					for(int p=kk;p<k1;p++){
+						float av = alpha*a[aOff+i*aRs+p*aCs];
+						if(av == 0.0f)
+							continue;
+						axpy(nb, av, b, bOff+p*bRs+jj, c, ci);
+					}
+				}
+			}
+		}
+	}
+	
+	// calculate rows i0 to i1 and columns j0 to j1 of C, with A row-major and B the transpose of a row-major matrix
+	private static void gemmNT(int i0, int i1, int j0, int j1, int k, float alpha,
+			float[] a, int aOff, int aRs,
+			float[] b, int bOff, int bCs,
+			float beta, float[] c, int cOff, int cRs){
+		int i = i0;
+		// 4 rows of A at once, reusing each loaded row of B^T
+		for(;i+3<i1;i+=4){
+			int a0 = aOff+i*aRs;
+			int a1 = a0+aRs;
+			int a2 = a1+aRs;
+			int a3 = a2+aRs;
+			for(int j=j0;j<j1;j++){
+				int bj = bOff+j*bCs;
+				float s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+				for(int p=0;p<k;p++){
+					float bv = b[bj+p];
+					s0 += a[a0+p]*bv;
+					s1 += a[a1+p]*bv;
+					s2 += a[a2+p]*bv;
+					s3 += a[a3+p]*bv;
+				}
+				int ci = cOff+i*cRs+j;
+				c[ci] = scaled(c[ci], beta) + alpha*s0;
+				c[ci+cRs] = scaled(c[ci+cRs], beta) + alpha*s1;
+				c[ci+2*cRs] = scaled(c[ci+2*cRs], beta) + alpha*s2;
+				c[ci+3*cRs] = scaled(c[ci+3*cRs], beta) + alpha*s3;
+			}
+		}
+		for(;i<i1;i++){
+			for(int j=j0;j<j1;j++){
+				int ci = cOff+i*cRs+j;
+				c[ci] = scaled(c[ci], beta) + alpha*dot(k, a, aOff+i*aRs, b, bOff+j*bCs);
+			}
+		}
+	}
+	
+	private static float scaled(float v, float beta){
+		return beta == 0.0f ? 0.0f : beta*v;
+	}
+	
+	/**
+	 * y = beta*y + alpha*A*x with A a m x n matrix, x a vector of size n and y a contiguous vector of size m
+	 */
+	static void gemv(final int m, final int n, final float alpha,
+			final float[] a, final int aOff, final int aRs, final int aCs,
+			float[] x, int xOff, int xs, 
+			final float beta, final float[] y, final int yOff){
+		if(xs != 1){
+			float[] packed = new float[n];
+			for(int j=0;j<n;j++){
+				packed[j] = x[xOff+j*xs];
+			}
+			x = packed;
+			xOff = 0;
+		}
+		
+		final float[] xd = x;
+		final int xo = xOff;
+		Parallel.forRange(m, 2L*m*n, (from, to) -> {
+			scale(y, yOff+from, to-from, beta);
+			if(alpha == 0.0f)
+				return;
+			
+			if(aCs == 1){
+				// rows of A are contiguous
+				for(int i=from;i<to;i++){
+					y[yOff+i] += alpha*dot(n, a, aOff+i*aRs, xd, xo);
+				}
+			} else if(aRs == 1){
+				// columns of A are contiguous
+				for(int j=0;j<n;j++){
+					axpy(to-from, alpha*xd[xo+j], a, aOff+j*aCs+from, y, yOff+from);
+				}
+			} else {
+				for(int i=from;i<to;i++){
+					float sum = 0;
+					for(int j=0;j<n;j++){
+						sum += a[aOff+i*aRs+j*aCs]*xd[xo+j];
+					}
+					y[yOff+i] += alpha*sum;
+				}
+			}
+		});
+	}
+	
+	/**
+	 * A = A + alpha*x*y^T with A a m x n row-major matrix, x a vector of size m and y a vector of size n
+	 */
+	static void ger(final int m, final int n, final float alpha,
+			final float[] x, final int xOff, final int xs,
+			float[] y, int yOff, int ys,
+			final float[] a, final int aOff, final int aRs){
+		if(ys != 1){
+			float[] packed = new float[n];
+			for(int j=0;j<n;j++){
+				packed[j] = y[yOff+j*ys];
+			}
+			y = packed;
+			yOff = 0;
+		}
+		
+		final float[] yd = y;
+		final int yo = yOff;
+		Parallel.forRange(m, 2L*m*n, (from, to) -> {
+			for(int i=from;i<to;i++){
+				float xv = alpha*x[xOff+i*xs];
+				if(xv != 0.0f){
+					axpy(n, xv, yd, yo, a, aOff+i*aRs);
+				}
+			}
+		});
+	}
+	
+	/**
+	 * y = y + alpha*x for contiguous x and y
+	 */
+	static void axpy(int n, float alpha, float[] x, int xOff, float[] y, int yOff){
+		for(int i=0;i<n;i++){
+			y[yOff+i] += alpha*x[xOff+i];
+		}
+	}
+	
+	/**
+	 * dot product of contiguous x and y
+	 */
+	static float dot(int n, float[] x, int xOff, float[] y, int yOff){
+		// independent partial sums break the dependency chain of the additions 
+		float s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+		int i = 0;
+		for(;i+3<n;i+=4){
+			s0 += x[xOff+i]*y[yOff+i];
+			s1 += x[xOff+i+1]*y[yOff+i+1];
+			s2 += x[xOff+i+2]*y[yOff+i+2];
+			s3 += x[xOff+i+3]*y[yOff+i+3];
+		}
+		for(;i<n;i++){
+			s0 += x[xOff+i]*y[yOff+i];
+		}
+		return (s0+s1)+(s2+s3);
+	}
+	
+	/**
+	 * x = beta*x for contiguous x, where beta 0 clears x 
+	 */
+	static void scale(float[] x, int off, int n, float beta){
+		if(beta == 0.0f){
+			for(int i=0;i<n;i++){
+				x[off+i] = 0.0f;
+			}
+		} else if(beta != 1.0f){
+			for(int i=0;i<n;i++){
+				x[off+i] *= beta;
+			}
+		}
+	}
+}
@@ -0,0 +1,1767 @@
+/*******************************************************************************
+ * DIANNE  - Framework for distributed artificial neural networks
+ * Copyright (C) 2015  iMinds - IBCN - UGent
+ *
+ * This file is part of DIANNE.
+ *
+ * DIANNE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contributors:
+ *     Tim Verbelen, Steven Bohez
+ *******************************************************************************/
+package be.iminds.iot.dianne.tensor;
+
+/**
+ * Pure Java implementation of the neural network module operations, following the 
+ * semantics of the Torch THNN implementations used by the native backend.
+ * 
+ * Linear layers and convolutions are computed as matrix products (convolutions after 
+ * unfolding the input using im2col), which are blocked and split over multiple threads.
+ * 
+ * @author tverbele
+ *
+ */
+public class ModuleOps {
+	
+	public static Tensor tanh(Tensor output, final Tensor input){
+		return Apply.map(output, input, (o, oo, x, xo, n) -> {
+			for(int i=0;i<n;i++){
+				o[oo+i] = (float) Math.tanh(x[xo+i]);
+			}
+		});
+	}
+
+	public static Tensor tanhGradIn(Tensor gradInput, final Tensor gradOutput, final Tensor input, final Tensor output){
+		return Apply.map(gradInput, output, gradOutput, (gi, gio, o, oo, go, goo, n) -> {
+			for(int i=0;i<n;i++){
+				float v = o[oo+i];
+				gi[gio+i] = go[goo+i]*(1-v*v);
+			}
+		});
+	}
+
+	
+	public static Tensor sigmoid(Tensor output, final Tensor input){
+		return Apply.map(output, input, (o, oo, x, xo, n) -> {
+			for(int i=0;i<n;i++){
+				o[oo+i] = (float) (1.0/(1.0 + Math.exp(-x[xo+i])));
+			}
+		});
+	}
+
+	public static Tensor sigmoidGradIn(Tensor gradInput, final Tensor gradOutput, final Tensor input, final Tensor output){
+		return Apply.map(gradInput, output, gradOutput, (gi, gio, o, oo, go, goo, n) -> {
+			for(int i=0;i<n;i++){
+				float v = o[oo+i];
+				gi[gio+i] = go[goo+i]*(1-v)*v;
+			}
+		});
+	}
+	
+	
+	public static Tensor softplus(Tensor output, final Tensor input, float beta, float threshold){
+		return Apply.map(output, input, (o, oo, x, xo, n) -> {
+			for(int i=0;i<n;i++){
+				float v = x[xo+i];
+				o[oo+i] = v*beta > threshold ? v : (float) (Math.log1p(Math.exp(v*beta))/beta);
+			}
+		});
+	}
+
+	public static Tensor softplusGradIn(Tensor gradInput, final Tensor gradOutput, final Tensor input, final Tensor output, float beta, float threshold){
+		return Apply.map(gradInput, output, gradOutput, (gi, gio, o, oo, go, goo, n) -> {
+			for(int i=0;i<n;i++){
+				float v = o[oo+i]*beta;
+				if(v > threshold){
+					gi[gio+i] = go[goo+i];
+				} else {
+					float z = (float) Math.exp(v);
+					gi[gio+i] = go[goo+i]*(z-1)/z;
+				}
+			}
+		});
+	}
+	
+	
+	public static Tensor elu(Tensor output, final Tensor input, float alpha, boolean inPlace){
+		Tensor res = Apply.map(inPlace ? input : output, input, (o, oo, x, xo, n) -> {
+			for(int i=0;i<n;i++){
+				float v = x[xo+i];
+				o[oo+i] = v <= 0 ? (float) ((Math.exp(v)-1)*alpha) : v;
+			}
+		});
+		return inPlace ? res.copyInto(output) : res;
+	}
+
+	public static Tensor eluGradIn(Tensor gradInput, final Tensor gradOutput, final Tensor input, final Tensor output, float alpha, boolean inPlace){
+		Tensor res = Apply.map(inPlace ? gradOutput : gradInput, output, gradOutput, (gi, gio, o, oo, go, goo, n) -> {
+			for(int i=0;i<n;i++){
+				float v = o[oo+i];
+				gi[gio+i] = v <= 0 ? go[goo+i]*(v+alpha) : go[goo+i];
+			}
+		});
+		return inPlace ? res.copyInto(gradInput) : res;
+	}
+	
+	
+	public static Tensor selu(Tensor output, final Tensor input, float alpha, float lambda){
+		return Apply.map(output, input, (o, oo, x, xo, n) -> {
+			for(int i=0;i<n;i++){
+				float v = x[xo+i];
+				o[oo+i] = v <= 0 ? (float) ((Math.exp(v)-1)*alpha*lambda) : v*lambda;
+			}
+		});
+	}
+
+	public static Tensor seluGradIn(Tensor gradInput, final Tensor gradOutput, final Tensor input, final Tensor output, float alpha, float lambda){
+		return Apply.map(gradInput, output, gradOutput, (gi, gio, o, oo, go, goo, n) -> {
+			for(int i=0;i<n;i++){
+				float v = o[oo+i];
+				gi[gio+i] = v <= 0 ? go[goo+i]*(v+alpha*lambda) : go[goo+i]*lambda;
+			}
+		});
+	}
+	
+	
+	public static Tensor threshold(Tensor output, final Tensor input, 
+			final float threshold, final float val){
+		return Apply.map(output, input, (o, oo, x, xo, n) -> {
+			for(int i=0;i<n;i++){
+				float v = x[xo+i];
+				o[oo+i] = v > threshold ? v : val;
+			}
+		});
+	}
+
+	public static Tensor thresholdGradIn(Tensor gradInput, final Tensor gradOutput, final Tensor input, final Tensor output, final float threshold, float val){
+		return Apply.map(gradInput, input, gradOutput, (gi, gio, x, xo, go, goo, n) -> {
+			for(int i=0;i<n;i++){
+				gi[gio+i] = x[xo+i] > threshold ? go[goo+i] : 0.0f;
+			}
+		});
+	}
+	
+	
+	public static Tensor relu(Tensor output, final Tensor input){
+		return threshold(output, input, 0, 0);
+	}
+
+	public static Tensor reluGradIn(Tensor gradInput, final Tensor gradOutput, final Tensor input, final Tensor output){
+		return thresholdGradIn(gradInput, gradOutput, input, output, 0, 0);
+	}
+	
+	
+	public static Tensor prelu(Tensor output, final Tensor input, 
+			final Tensor weight, final int noOutputPlanes){
+		output = TensorOps.resizeAs(output, input);
+		Tensor o = Apply.target(output);
+		Tensor x = input.contiguous();
+		float[] w = weight.get();
+		
+		int ks = preluPlaneSize(input, noOutputPlanes);
+		int n = x.size();
+		for(int i=0;i<n;i++){
+			float v = x.storage.data[x.offset+i];
+			float a = noOutputPlanes == 0 ? w[0] : w[(i/ks) % noOutputPlanes];
+			o.storage.data[o.offset+i] = v > 0 ? v : a*v;
+		}
+		return Apply.commit(output, o);
+	}
+
+	public static Tensor preluGradIn(Tensor gradInput, final Tensor gradOutput, final Tensor input, final Tensor output, final Tensor weight, final int noOutputPlanes){
+		gradInput = TensorOps.resizeAs(gradInput, input);
+		Tensor gi = Apply.target(gradInput);
+		Tensor go = gradOutput.contiguous();
+		Tensor x = input.contiguous();
+		float[] w = weight.get();
+		
+		int ks = preluPlaneSize(input, noOutputPlanes);
+		int n = x.size();
+		for(int i=0;i<n;i++){
+			float a = noOutputPlanes == 0 ? w[0] : w[(i/ks) % noOutputPlanes];
+			float g = go.storage.data[go.offset+i];
+			gi.storage.data[gi.offset+i] = x.storage.data[x.offset+i] > 0 ? g : a*g;
+		}
+		return Apply.commit(gradInput, gi);
+	}
+	
+	public static void preluAccGrad(final Tensor gradWeight, final Tensor gradOutput, final Tensor input, final Tensor output, final Tensor weight, final int noOutputPlanes){
+		Tensor go = gradOutput.contiguous();
+		Tensor x = input.contiguous();
+		
+		int ks = preluPlaneSize(input, noOutputPlanes);
+		int n = x.size();
+		float[] sums = new float[Math.max(1, noOutputPlanes)];
+		for(int i=0;i<n;i++){
+			float v = x.storage.data[x.offset+i];
+			if(v <= 0){
+				sums[noOutputPlanes == 0 ? 0 : (i/ks) % noOutputPlanes] += v*go.storage.data[go.offset+i];
+			}
+		}
+		
+		for(int j=0;j<sums.length;j++){
+			gradWeight.set(gradWeight.get(j) + sums[j], j);
+		}
+	}
+	
+	// number of consecutive elements that share the same prelu weight
+	private static int preluPlaneSize(Tensor input, int noOutputPlanes){
+		if(noOutputPlanes == 0)
+			return 1;
+		
+		switch(input.dim()){
+		case 3:
+			return input.dims[1]*input.dims[2];
+		case 4:
+			return input.dims[2]*input.dims[3];
+		default:
+			return 1;
+		}
+	}
+	
+
+	public static Tensor softmax(Tensor output, final Tensor input){
+		output = TensorOps.resizeAs(output, input);
+		Tensor o = Apply.target(output);
+		Tensor x = input.contiguous();
+		
+		int[] f = softmaxFrames(x);
+		final int frames = f[0], dim = f[1], stride = f[2];
+		final float[] od = o.storage.data, xd = x.storage.data;
+		final int oOff = o.offset, xOff = x.offset;
+		Parallel.forRange(frames*stride, 3L*frames*stride*dim, (from, to) -> {
+			for(int s=from;s<to;s++){
+				int base = (s/stride)*dim*stride + s%stride;
+				
+				float max = -Float.MAX_VALUE;
+				for(int d=0;d<dim;d++){
+					float v = xd[xOff+base+d*stride];
+					if(v >= max)
+						max = v;
+				}
+				
+				double sum = 0;
+				for(int d=0;d<dim;d++){
+					float z = (float) Math.exp(xd[xOff+base+d*stride] - max);
+					od[oOff+base+d*stride] = z;
+					sum += z;
+				}
+				
+				float norm = (float) (1.0/sum);
+				for(int d=0;d<dim;d++){
+					od[oOff+base+d*stride] *= norm;
+				}
+			}
+		});
+		return Apply.commit(output, o);
+	}
+
+	public static Tensor softmaxGradIn(Tensor gradInput, final Tensor gradOutput, final Tensor input, final Tensor output){
+		gradInput = TensorOps.resizeAs(gradInput, output);
+		Tensor gi = Apply.target(gradInput);
+		Tensor go = gradOutput.contiguous();
+		Tensor o = output.contiguous();
+		
+		int[] f = softmaxFrames(o);
+		final int frames = f[0], dim = f[1], stride = f[2];
+		final float[] gid = gi.storage.data, god = go.storage.data, od = o.storage.data;
+		final int giOff = gi.offset, goOff = go.offset, oOff = o.offset;
+		Parallel.forRange(frames*stride, 3L*frames*stride*dim, (from, to) -> {
+			for(int s=from;s<to;s++){
+				int base = (s/stride)*dim*stride + s%stride;
+				
+				double sum = 0;
+				for(int d=0;d<dim;d++){
+					int i = base+d*stride;
+					sum += god[goOff+i]*od[oOff+i];
+				}
+				
+				for(int d=0;d<dim;d++){
+					int i = base+d*stride;
+					gid[giOff+i] = (float) (od[oOff+i]*(god[goOff+i]-sum));
+				}
+			}
+		});
+		return Apply.commit(gradInput, gi);
+	}
+
+	public static Tensor logsoftmax(Tensor output, final Tensor input){
+		output = TensorOps.resizeAs(output, input);
+		Tensor o = Apply.target(output);
+		Tensor x = input.contiguous();
+		
+		int[] f = softmaxFrames(x);
+		final int frames = f[0], dim = f[1], stride = f[2];
+		final float[] od = o.storage.data, xd = x.storage.data;
+		final int oOff = o.offset, xOff = x.offset;
+		Parallel.forRange(frames*stride, 3L*frames*stride*dim, (from, to) -> {
+			for(int s=from;s<to;s++){
+				int base = (s/stride)*dim*stride + s%stride;
+				
+				float max = -Float.MAX_VALUE;
+				for(int d=0;d<dim;d++){
+					float v = xd[xOff+base+d*stride];
+					if(v >= max)
+						max = v;
+				}
+				
+				double sum = 0;
+				for(int d=0;d<dim;d++){
+					sum += Math.exp(xd[xOff+base+d*stride] - max);
+				}
+				
+				float logsum = max + (float) Math.log(sum);
+				for(int d=0;d<dim;d++){
+					od[oOff+base+d*stride] = xd[xOff+base+d*stride] - logsum;
+				}
+			}
+		});
+		return Apply.commit(output, o);
+	}
+
+	public static Tensor logsoftmaxGradIn(Tensor gradInput, final Tensor gradOutput, final Tensor input, final Tensor output){
+		gradInput = TensorOps.resizeAs(gradInput, output);
+		Tensor gi = Apply.target(gradInput);
+		Tensor go = gradOutput.contiguous();
+		Tensor o = output.contiguous();
+		
+		int[] f = softmaxFrames(o);
+		final int frames = f[0], dim = f[1], stride = f[2];
+		final float[] gid = gi.storage.data, god = go.storage.data, od = o.storage.data;
+		final int giOff = gi.offset, goOff = go.offset, oOff = o.offset;
+		Parallel.forRange(frames*stride, 3L*frames*stride*dim, (from, to) -> {
+			for(int s=from;s<to;s++){
+				int base = (s/stride)*dim*stride + s%stride;
+				
+				double sum = 0;
+				for(int d=0;d<dim;d++){
+					sum += god[goOff+base+d*stride];
+				}
+				
+				for(int d=0;d<dim;d++){
+					int i = base+d*stride;
+					gid[giOff+i] = (float) (god[goOff+i] - Math.exp(od[oOff+i])*sum);
+				}
+			}
+		});
+		return Apply.commit(gradInput, gi);
+	}
+	
+	// number of frames, the dimension to normalize over and the stride of that dimension 
+	private static int[] softmaxFrames(Tensor t){
+		switch(t.dim()){
+		case 1:
+			return new int[]{1, t.dims[0], 1};
+		case 2:
+			return new int[]{t.dims[0], t.dims[1], 1};
+		case 3:
+			return new int[]{1, t.dims[0], t.dims[1]*t.dims[2]};
+		case 4:
+			return new int[]{t.dims[0], t.dims[1], t.dims[2]*t.dims[3]};
+		default:
+			throw new IllegalArgumentException("Softmax expects a 1D, 2D, 3D or 4D tensor");
+		}
+	}
+	
+
+	public static Tensor temporalmaxpool(Tensor output, final Tensor input, final Tensor indices,
+			final int kW, final int dW){
+		Tensor x = input.contiguous();
+		boolean batch = x.dim() == 3;
+		int batches = batch ? x.dims[0] : 1;
+		int frames = x.dims[x.dim()-2];
+		int size = x.dims[x.dim()-1];
+		int outFrames = (frames - kW)/dW + 1;
+		
+		output = batch ? TensorOps.resize(output, batches, outFrames, size) : TensorOps.resize(output, outFrames, size);
+		TensorOps.resizeAs(indices, output);
+		Tensor o = Apply.target(output);
+		Tensor ind = Apply.target(indices);
+		
+		float[] xd = x.storage.data, od = o.storage.data, id = ind.storage.data;
+		for(int b=0;b<batches;b++){
+			for(int t=0;t<outFrames;t++){
+				int in0 = x.offset + (b*frames + t*dW)*size;
+				int out0 = (b*outFrames + t)*size;
+				for(int y=0;y<size;y++){
+					float max = Float.NEGATIVE_INFINITY;
+					int index = -1;
+					for(int k=0;k<kW;k++){
+						float v = xd[in0 + k*size + y];
+						if(v > max || Float.isNaN(v)){
+							max = v;
+							index = k;
+						}
+					}
+					od[o.offset+out0+y] = max;
+					id[ind.offset+out0+y] = index;
+				}
+			}
+		}
+		
+		Apply.commit(indices, ind);
+		return Apply.commit(output, o);
+	}
+
+	public static Tensor temporalmaxpoolGradIn(Tensor gradInput, final Tensor gradOutput, final Tensor input, final Tensor output, final Tensor indices,
+			final int kW, final int dW){
+		gradInput = TensorOps.resizeAs(gradInput, input);
+		Tensor gi = Apply.target(gradInput);
+		gi.fill(0.0f);
+		Tensor go = gradOutput.contiguous();
+		Tensor ind = indices.contiguous();
+		
+		boolean batch = input.dim() == 3;
+		int batches = batch ? input.dims[0] : 1;
+		int frames = input.dims[input.dim()-2];
+		int size = input.dims[input.dim()-1];
+		int outFrames = go.dims[go.dim()-2];
+		
+		float[] gid = gi.storage.data, god = go.storage.data, id = ind.storage.data;
+		for(int b=0;b<batches;b++){
+			for(int t=0;t<outFrames;t++){
+				int in0 = gi.offset + (b*frames + t*dW)*size;
+				int out0 = (b*outFrames + t)*size;
+				for(int y=0;y<size;y++){
+					int k = (int) id[ind.offset+out0+y];
+					gid[in0 + k*size + y] += god[go.offset+out0+y];
+				}
+			}
+		}
+		return Apply.commit(gradInput, gi);
+	}
+	
+
+	public static Tensor spatialmaxpool(Tensor output, final Tensor input, final Tensor indices,
+			final int kW, final int kH, final int dW, final int dH, final int padW, final int padH){
+		return maxpool(output, input, indices, 2, 1, kH, kW, 1, dH, dW, 0, padH, padW);
+	}
+
+	public static Tensor spatialmaxpoolGradIn(Tensor gradInput, final Tensor gradOutput, final Tensor input,  final Tensor output, final Tensor indices,
+			final int kW, final int kH, final int dW, final int dH, final int padW, final int padH){
+		return maxpoolGradIn(gradInput, gradOutput, input, indices, 2);
+	}
+
+	
+	public static Tensor volumetricmaxpool(Tensor output, final Tensor input, final Tensor indices,
+			final int kW, final int kH, final int kD, final int dW, final int dH, final int dD, final int padW, final int padH, final int padD){
+		return maxpool(output, input, indices, 3, kD, kH, kW, dD, dH, dW, padD, padH, padW);
+	}
+
+	public static Tensor volumetricmaxpoolGradIn(Tensor gradInput, final Tensor gradOutput, final Tensor input,  final Tensor output, final Tensor indices,
+			final int kW, final int kH, final int kD, final int dW, final int dH, final int dD, final int padW, final int padH, final int padD){
+		return maxpoolGradIn(gradInput, gradOutput, input, indices, 3);
+	}
+	
+	
+	public static Tensor spatialmaxunpool(Tensor output, final Tensor input, final Tensor indices,
+			final int kW, final int kH, final int dW, final int dH, final int padW, final int padH){
+		return maxunpool(output, input, indices, 2, 1, kH, kW, 1, dH, dW, 0, padH, padW);
+	}
+
+	public static Tensor spatialmaxunpoolGradIn(Tensor gradInput, final Tensor gradOutput, final Tensor input, final Tensor indices,
+			final int kW, final int kH, final int dW, final int dH, final int padW, final int padH){
+		return maxunpoolGradIn(gradInput, gradOutput, input, indices, 2);
+	}
+
+	
+	public static Tensor volumetricmaxunpool(Tensor output, final Tensor input, final Tensor indices,
+			final int kW, final int kH, final int kD, final int dW, final int dH, final int dD, final int padW, final int padH, final int padD){
+		return maxunpool(output, input, indices, 3, kD, kH, kW, dD, dH, dW, padD, padH, padW);
+	}
+
+	public static Tensor volumetricmaxunpoolGradIn(Tensor gradInput, final Tensor gradOutput, final Tensor input, final Tensor indices,
+			final int kW, final int kH, final int kD, final int dW, final int dH, final int dD, final int padW, final int padH, final int padD){
+		return maxunpoolGradIn(gradInput, gradOutput, input, indices, 3);
+	}
+	
+	
+	public static Tensor spatialavgpool(Tensor output, final Tensor input,
+			final int kW, final int kH, final int dW, final int dH, final int padW, final int padH, boolean ceil, boolean count_pad){
+		return avgpool(output, input, 2, 1, kH, kW, 1, dH, dW, 0, padH, padW, ceil, count_pad);
+	}
+
+	public static Tensor spatialavgpoolGradIn(Tensor gradInput, final Tensor gradOutput, final Tensor input, final Tensor output,
+			final int kW, final int kH, final int dW, final int dH, final int padW, final int padH, boolean ceil, boolean count_pad){
+		return avgpoolGradIn(gradInput, gradOutput, input, 2, 1, kH, kW, 1, dH, dW, 0, padH, padW, count_pad);
+	}
+
+	
+	public static Tensor volumetricavgpool(Tensor output, final Tensor input,
+			final int kW, final int kH, final int kD, final int dW, final int dH, final int dD){
+		return avgpool(output, input, 3, kD, kH, kW, dD, dH, dW, 0, 0, 0, false, true);
+	}
+
+	public static Tensor volumetricavgpoolGradIn(Tensor gradInput, final Tensor gradOutput, final Tensor input,  final Tensor output,
+			final int kW, final int kH, final int kD, final int dW, final int dH, final int dD){
+		return avgpoolGradIn(gradInput, gradOutput, input, 3, kD, kH, kW, dD, dH, dW, 0, 0, 0, true);
+	}
+	
+	/*
+	 * Spatial operations are implemented as volumetric operations with a time dimension of 1. 
+	 * The leading dimensions (planes, and optionally batch) are flattened into a number of planes.
+	 */
+	
+	// dims of the input as {planes, T, H, W}, where spatial inputs have T = 1
+	private static int[] volume(Tensor input, int spatialDims){
+		int d = input.dim();
+		int planes = 1;
+		for(int i=0;i<d-spatialDims;i++){
+			planes *= input.dims[i];
+		}
+		return new int[]{planes, 
+				spatialDims == 3 ? input.dims[d-3] : 1, 
+				input.dims[d-2], 
+				input.dims[d-1]};
+	}
+	
+	// output tensor with the leading dims of input and the given spatial dimensions
+	private static Tensor resizeVolume(Tensor output, Tensor input, int spatialDims, int oT, int oH, int oW){
+		int d = input.dim();
+		int[] dims = new int[d];
+		System.arraycopy(input.dims, 0, dims, 0, d-spatialDims);
+		if(spatialDims == 3){
+			dims[d-3] = oT;
+		}
+		dims[d-2] = oH;
+		dims[d-1] = oW;
+		return TensorOps.resize(output, dims);
+	}
+	
+	private static int poolSize(int in, int k, int d, int pad, boolean ceil){
+		int out = ceil ? (int)Math.ceil((float)(in - k + 2*pad)/d) + 1 : (in - k + 2*pad)/d + 1;
+		// make sure the last pooling region starts inside the input
+		if(pad > 0 && (out - 1)*d >= in + pad){
+			out--;
+		}
+		return out;
+	}
+	
+	private static Tensor maxpool(Tensor output, Tensor input, Tensor indices, int spatialDims,
+			int kT, int kH, int kW, int dT, int dH, int dW, int pT, int pH, int pW){
+		Tensor x = input.contiguous();
+		int[] v = volume(x, spatialDims);
+		final int planes = v[0], iT = v[1], iH = v[2], iW = v[3];
+		final int oT = poolSize(iT, kT, dT, pT, false);
+		final int oH = poolSize(iH, kH, dH, pH, false);
+		final int oW = poolSize(iW, kW, dW, pW, false);
+		
+		output = resizeVolume(output, x, spatialDims, oT, oH, oW);
+		TensorOps.resizeAs(indices, output);
+		final Tensor o = Apply.target(output);
+		final Tensor ind = Apply.target(indices);
+		
+		final float[] xd = x.storage.data, od = o.storage.data, id = ind.storage.data;
+		Parallel.forRange(planes, (long)planes*oT*oH*oW*kT*kH*kW, (from, to) -> {
+			for(int p=from;p<to;p++){
+				int in0 = x.offset + p*iT*iH*iW;
+				int out0 = p*oT*oH*oW;
+				for(int ot=0;ot<oT;ot++){
+					int t0 = Math.max(ot*dT - pT, 0);
+					int t1 = Math.min(ot*dT - pT + kT, iT);
+					for(int oh=0;oh<oH;oh++){
+						int h0 = Math.max(oh*dH - pH, 0);
+						int h1 = Math.min(oh*dH - pH + kH, iH);
+						for(int ow=0;ow<oW;ow++){
+							int w0 = Math.max(ow*dW - pW, 0);
+							int w1 = Math.min(ow*dW - pW + kW, iW);
+							
+							float max = Float.NEGATIVE_INFINITY;
+							int index = -1;
+							for(int t=t0;t<t1;t++){
+								for(int h=h0;h<h1;h++){
+									for(int w=w0;w<w1;w++){
+										int i = (t*iH + h)*iW + w;
+										float val = xd[in0+i];
+										if(val > max || Float.isNaN(val)){
+											max = val;
+											index = i;
+										}
+									}
+								}
+							}
+							
+							int out = out0 + (ot*oH + oh)*oW + ow;
+							od[o.offset+out] = max;
+							// 1-based index in the input plane, as in Torch
+							id[ind.offset+out] = index + 1;
+						}
+					}
+				}
+			}
+		});
+		
+		Apply.commit(indices, ind);
+		return Apply.commit(output, o);
+	}
+	
+	private static Tensor maxpoolGradIn(Tensor gradInput, Tensor gradOutput, Tensor input, Tensor indices, int spatialDims){
+		gradInput = TensorOps.resizeAs(gradInput, input);
+		final Tensor gi = Apply.target(gradInput);
+		gi.fill(0.0f);
+		final Tensor go = gradOutput.contiguous();
+		final Tensor ind = indices.contiguous();
+		
+		int[] v = volume(input, spatialDims);
+		final int inSize = v[1]*v[2]*v[3];
+		final int outSize = go.size()/v[0];
+		
+		final float[] gid = gi.storage.data, god = go.storage.data, id = ind.storage.data;
+		Parallel.forRange(v[0], (long)v[0]*outSize, (from, to) -> {
+			for(int p=from;p<to;p++){
+				for(int i=0;i<outSize;i++){
+					int index = (int) id[ind.offset+p*outSize+i] - 1;
+					gid[gi.offset+p*inSize+index] += god[go.offset+p*outSize+i];
+				}
+			}
+		});
+		return Apply.commit(gradInput, gi);
+	}
+	
+	private static Tensor maxunpool(Tensor output, Tensor input, Tensor indices, int spatialDims,
+			int kT, int kH, int kW, int dT, int dH, int dW, int pT, int pH, int pW){
+		Tensor x = input.contiguous();
+		Tensor ind = indices.contiguous();
+		int[] v = volume(x, spatialDims);
+		final int planes = v[0], iT = v[1], iH = v[2], iW = v[3];
+		final int oT = spatialDims == 3 ? (iT - 1)*dT + kT - 2*pT : 1;
+		final int oH = (iH - 1)*dH + kH - 2*pH;
+		final int oW = (iW - 1)*dW + kW - 2*pW;
+		
+		output = resizeVolume(output, x, spatialDims, oT, oH, oW);
+		Tensor o = Apply.target(output);
+		o.fill(0.0f);
+		
+		int inSize = iT*iH*iW;
+		int outSize = oT*oH*oW;
+		float[] xd = x.storage.data, od = o.storage.data, id = ind.storage.data;
+		for(int p=0;p<planes;p++){
+			for(int i=0;i<inSize;i++){
+				int index = (int) id[ind.offset+p*inSize+i] - 1;
+				if(index < 0 || index >= outSize){
+					throw new IllegalArgumentException("Invalid max unpooling index "+(index+1));
+				}
+				od[o.offset+p*outSize+index] = xd[x.offset+p*inSize+i];
+			}
+		}
+		return Apply.commit(output, o);
+	}
+	
+	private static Tensor maxunpoolGradIn(Tensor gradInput, Tensor gradOutput, Tensor input, Tensor indices, int spatialDims){
+		gradInput = TensorOps.resizeAs(gradInput, input);
+		Tensor gi = Apply.target(gradInput);
+		Tensor go = gradOutput.contiguous();
+		Tensor ind = indices.contiguous();
+		
+		int[] v = volume(input, spatialDims);
+		int inSize = v[1]*v[2]*v[3];
+		int outSize = go.size()/v[0];
+		float[] gid = gi.storage.data, god = go.storage.data, id = ind.storage.data;
+		for(int p=0;p<v[0];p++){
+			for(int i=0;i<inSize;i++){
+				int index = (int) id[ind.offset+p*inSize+i] - 1;
+				gid[gi.offset+p*inSize+i] = god[go.offset+p*outSize+index];
+			}
+		}
+		return Apply.commit(gradInput, gi);
+	}
+	
+	private static Tensor avgpool(Tensor output, Tensor input, int spatialDims,
+			int kT, int kH, int kW, int dT, int dH, int dW, int pT, int pH, int pW, boolean ceil, boolean countPad){
+		Tensor x = input.contiguous();
+		int[] v = volume(x, spatialDims);
+		final int planes = v[0], iT = v[1], iH = v[2], iW = v[3];
+		final int oT = poolSize(iT, kT, dT, pT, ceil);
+		final int oH = poolSize(iH, kH, dH, pH, ceil);
+		final int oW = poolSize(iW, kW, dW, pW, ceil);
+		
+		output = resizeVolume(output, x, spatialDims, oT, oH, oW);
+		final Tensor o = Apply.target(output);
+		
+		final float[] xd = x.storage.data, od = o.storage.data;
+		Parallel.forRange(planes, (long)planes*oT*oH*oW*kT*kH*kW, (from, to) -> {
+			for(int p=from;p<to;p++){
+				int in0 = x.offset + p*iT*iH*iW;
+				int out0 = o.offset + p*oT*oH*oW;
+				for(int ot=0;ot<oT;ot++){
+					for(int oh=0;oh<oH;oh++){
+						for(int ow=0;ow<oW;ow++){
+							int t0 = ot*dT - pT, h0 = oh*dH - pH, w0 = ow*dW - pW;
+							int t1 = Math.min(t0 + kT, iT + pT), h1 = Math.min(h0 + kH, iH + pH), w1 = Math.min(w0 + kW, iW + pW);
+							int size = (t1-t0)*(h1-h0)*(w1-w0);
+							t0 = Math.max(t0, 0); h0 = Math.max(h0, 0); w0 = Math.max(w0, 0);
+							t1 = Math.min(t1, iT); h1 = Math.min(h1, iH); w1 = Math.min(w1, iW);
+							
+							float sum = 0;
+							for(int t=t0;t<t1;t++){
+								for(int h=h0;h<h1;h++){
+									for(int w=w0;w<w1;w++){
+										sum += xd[in0 + (t*iH + h)*iW + w];
+									}
+								}
+							}
+							
+							int divide = countPad ? size : (t1-t0)*(h1-h0)*(w1-w0);
+							od[out0 + (ot*oH + oh)*oW + ow] = sum/divide;
+						}
+					}
+				}
+			}
+		});
+		return Apply.commit(output, o);
+	}
+	
+	private static Tensor avgpoolGradIn(Tensor gradInput, Tensor gradOutput, Tensor input, int spatialDims,
+			int kT, int kH, int kW, int dT, int dH, int dW, int pT, int pH, int pW, boolean countPad){
+		gradInput = TensorOps.resizeAs(gradInput, input);
+		final Tensor gi = Apply.target(gradInput);
+		gi.fill(0.0f);
+		final Tensor go = gradOutput.contiguous();
+		
+		int[] v = volume(input, spatialDims);
+		final int planes = v[0], iT = v[1], iH = v[2], iW = v[3];
+		int[] ov = volume(go, spatialDims);
+		final int oT = ov[1], oH = ov[2], oW = ov[3];
+		
+		final float[] gid = gi.storage.data, god = go.storage.data;
+		Parallel.forRange(planes, (long)planes*oT*oH*oW*kT*kH*kW, (from, to) -> {
+			for(int p=from;p<to;p++){
+				int in0 = gi.offset + p*iT*iH*iW;
+				int out0 = go.offset + p*oT*oH*oW;
+				for(int ot=0;ot<oT;ot++){
+					for(int oh=0;oh<oH;oh++){
+						for(int ow=0;ow<oW;ow++){
+							int t0 = ot*dT - pT, h0 = oh*dH - pH, w0 = ow*dW - pW;
+							int t1 = Math.min(t0 + kT, iT + pT), h1 = Math.min(h0 + kH, iH + pH), w1 = Math.min(w0 + kW, iW + pW);
+							int size = (t1-t0)*(h1-h0)*(w1-w0);
+							t0 = Math.max(t0, 0); h0 = Math.max(h0, 0); w0 = Math.max(w0, 0);
+							t1 = Math.min(t1, iT); h1 = Math.min(h1, iH); w1 = Math.min(w1, iW);
+							
+							int divide = countPad ? size : (t1-t0)*(h1-h0)*(w1-w0);
+							float g = god[out0 + (ot*oH + oh)*oW + ow]/divide;
+							for(int t=t0;t<t1;t++){
+								for(int h=h0;h<h1;h++){
+									for(int w=w0;w<w1;w++){
+										gid[in0 + (t*iH + h)*iW + w] += g;
+									}
+								}
+							}
+						}
+					}
+				}
+			}
+		});
+		return Apply.commit(gradInput, gi);
+	}
+	
+	
+	public static Tensor temporalconvolve(Tensor output, final Tensor input, final Tensor kernels, final Tensor bias, 
+			final int kW, final int dW, final int inputFrameSize, final int outputFrameSize){
+		final Tensor x = input.contiguous();
+		boolean batch = x.dim() == 3;
+		final int batches = batch ? x.dims[0] : 1;
+		final int frames = x.dims[x.dim()-2];
+		final int outFrames = (frames - kW)/dW + 1;
+		final int K = kW*inputFrameSize;
+		
+		output = batch ? TensorOps.resize(output, batches, outFrames, outputFrameSize) : TensorOps.resize(output, outFrames, outputFrameSize);
+		final Tensor o = Apply.target(output);
+		final Tensor w = kernels.contiguous();
+		final float[] b = bias.get();
+		
+		forBatch(batches, 2L*batches*outFrames*outputFrameSize*K, (from, to) -> {
+			for(int i=from;i<to;i++){
+				int o0 = o.offset + i*outFrames*outputFrameSize;
+				for(int t=0;t<outFrames;t++){
+					System.arraycopy(b, 0, o.storage.data, o0+t*outputFrameSize, outputFrameSize);
+				}
+				// the input windows are overlapping rows of a matrix with row stride dW*inputFrameSize
+				Blas.gemm(outFrames, outputFrameSize, K, 1.0f, 
+						x.storage.data, x.offset + i*frames*inputFrameSize, dW*inputFrameSize, 1, 
+						w.storage.data, w.offset, 1, K, 
+						1.0f, o.storage.data, o0, outputFrameSize);
+			}
+		});
+		return Apply.commit(output, o);
+	}
+
+	public static Tensor temporalconvolveGradIn(Tensor gradInput, final Tensor gradOutput, final Tensor kernels, final Tensor input, 
+			final int kW, final int dW){
+		gradInput = TensorOps.resizeAs(gradInput, input);
+		final Tensor gi = Apply.target(gradInput);
+		gi.fill(0.0f);
+		final Tensor go = gradOutput.contiguous();
+		final Tensor w = kernels.contiguous();
+		
+		final int batches = input.dim() == 3 ? input.dims[0] : 1;
+		final int frames = input.dims[input.dim()-2];
+		final int inputFrameSize = input.dims[input.dim()-1];
+		final int outFrames = go.dims[go.dim()-2];
+		final int outputFrameSize = go.dims[go.dim()-1];
+		final int K = kW*inputFrameSize;
+		
+		forBatch(batches, 2L*batches*outFrames*outputFrameSize*K, (from, to) -> {
+			for(int i=from;i<to;i++){
+				// windows can overlap, accumulate one output frame at a time
+				for(int t=0;t<outFrames;t++){
+					Blas.gemv(K, outputFrameSize, 1.0f, 
+							w.storage.data, w.offset, 1, K, 
+							go.storage.data, go.offset + (i*outFrames+t)*outputFrameSize, 1, 
+							1.0f, gi.storage.data, gi.offset + (i*frames + t*dW)*inputFrameSize);
+				}
+			}
+		});
+		return Apply.commit(gradInput, gi);
+	}
+
+	public static void temporalconvolveAccGrad(final Tensor gradKernels, final Tensor gradBias, final Tensor gradOutput, final Tensor input, 
+			final int kW, final int dW){
+		Tensor x = input.contiguous();
+		Tensor go = gradOutput.contiguous();
+		Tensor gw = accTarget(gradKernels);
+		Tensor gb = accTarget(gradBias);
+		
+		int batches = x.dim() == 3 ? x.dims[0] : 1;
+		int frames = x.dims[x.dim()-2];
+		int inputFrameSize = x.dims[x.dim()-1];
+		int outFrames = go.dims[go.dim()-2];
+		int outputFrameSize = go.dims[go.dim()-1];
+		int K = kW*inputFrameSize;
+		
+		for(int i=0;i<batches;i++){
+			int go0 = go.offset + i*outFrames*outputFrameSize;
+			Blas.gemm(outputFrameSize, K, outFrames, 1.0f, 
+					go.storage.data, go0, 1, outputFrameSize, 
+					x.storage.data, x.offset + i*frames*inputFrameSize, dW*inputFrameSize, 1, 
+					1.0f, gw.storage.data, gw.offset, K);
+			for(int t=0;t<outFrames;t++){
+				Blas.axpy(outputFrameSize, 1.0f, go.storage.data, go0 + t*outputFrameSize, gb.storage.data, gb.offset);
+			}
+		}
+		
+		Apply.commit(gradKernels, gw);
+		Apply.commit(gradBias, gb);
+	}
+	
+	
+	public static Tensor spatialconvolve(Tensor output, final Tensor input, final Tensor kernels, final Tensor bias, 
+			final Tensor temp1, final Tensor temp2,
+			final int kW, final int kH, final int dW, final int dH, final int padW, final int padH){
+		return convolve(output, input, kernels, bias, temp1, 2, 1, kH, kW, 1, dH, dW, 0, padH, padW);
+	}
+
+	public static Tensor spatialconvolveGradIn(Tensor gradInput, final Tensor gradOutput, final Tensor kernels, final Tensor input, 
+			final Tensor temp1, final Tensor temp2,
+			final int kW, final int kH, final int dW, final int dH, final int padW, final int padH){
+		return convolveGradIn(gradInput, gradOutput, kernels, input, temp2, 2, 1, kH, kW, 1, dH, dW, 0, padH, padW);
+	}
+
+	public static void spatialconvolveAccGrad(final Tensor gradKernels, final Tensor gradBias, final Tensor gradOutput, final Tensor input, 
+			final Tensor temp1, final Tensor temp2,
+			final int kW, final int kH, final int dW, final int dH, final int padW, final int padH){
+		convolveAccGrad(gradKernels, gradBias, gradOutput, input, temp1, 2, 1, kH, kW, 1, dH, dW, 0, padH, padW);
+	}
+	
+	
+	public static Tensor volumetricconvolve(Tensor output, final Tensor input, final Tensor kernels, final Tensor bias, 
+			final Tensor temp1, final Tensor temp2,
+			final int kW, final int kH, final int kD, final int dW, final int dH, int dD, final int padW, final int padH, final int padD){
+		return convolve(output, input, kernels, bias, temp1, 3, kD, kH, kW, dD, dH, dW, padD, padH, padW);
+	}
+
+	public static Tensor volumetricconvolveGradIn(Tensor gradInput, final Tensor gradOutput, final Tensor kernels, final Tensor input, 
+			final Tensor temp1, final Tensor temp2,
+			final int kW, final int kH, final int kD, final int dW, final int dH, final int dD, final int padW, final int padH, final int padD){
+		return convolveGradIn(gradInput, gradOutput, kernels, input, temp2, 3, kD, kH, kW, dD, dH, dW, padD, padH, padW);
+	}
+
+	public static void volumetricconvolveAccGrad(final Tensor gradKernels, final Tensor gradBias, final Tensor gradOutput, final Tensor input, 
+			final Tensor temp1, final Tensor temp2,
+			final int kW, final int kH, final int kD, final int dW, final int dH, final int dD, final int padW, final int padH, final int padD){
+		convolveAccGrad(gradKernels, gradBias, gradOutput, input, temp1, 3, kD, kH, kW, dD, dH, dW, padD, padH, padW);
+	}
+	
+	
+	public static Tensor spatialfullconvolve(Tensor output, final Tensor input, final Tensor kernels, final Tensor bias, 
+			final Tensor temp1, final Tensor temp2,
+			final int kW, final int kH, final int dW, final int dH, final int padW, final int padH){
+		return fullconvolve(output, input, kernels, bias, temp1, 2, 1, kH, kW, 1, dH, dW, 0, padH, padW);
+	}
+
+	public static Tensor spatialfullconvolveGradIn(Tensor gradInput, final Tensor gradOutput, final Tensor kernels, final Tensor input, 
+			final Tensor temp1, final Tensor temp2,
+			final int kW, final int kH, final int dW, final int dH, final int padW, final int padH){
+		return fullconvolveGradIn(gradInput, gradOutput, kernels, input, temp1, 2, 1, kH, kW, 1, dH, dW, 0, padH, padW);
+	}
+
+	public static void spatialfullconvolveAccGrad(final Tensor gradKernels, final Tensor gradBias, final Tensor gradOutput, final Tensor input, 
+			final Tensor temp1, final Tensor temp2,
+			final int kW, final int kH, final int dW, final int dH, final int padW, final int padH){
+		fullconvolveAccGrad(gradKernels, gradBias, gradOutput, input, temp1, 2, 1, kH, kW, 1, dH, dW, 0, padH, padW);
+	}
+	
+	
+	public static Tensor volumetricfullconvolve(Tensor output, final Tensor input, final Tensor kernels, final Tensor bias, 
+			final Tensor temp1, final Tensor temp2,
+			final int kW, final int kH, final int kD, final int dW, final int dH, int dD, final int padW, final int padH, final int padD){
+		return fullconvolve(output, input, kernels, bias, temp1, 3, kD, kH, kW, dD, dH, dW, padD, padH, padW);
+	}
+
+	public static Tensor volumetricfullconvolveGradIn(Tensor gradInput, final Tensor gradOutput, final Tensor kernels, final Tensor input, 
+			final Tensor temp1, final Tensor temp2,
+			final int kW, final int kH, final int kD, final int dW, final int dH, final int dD, final int padW, final int padH, final int padD){
+		return fullconvolveGradIn(gradInput, gradOutput, kernels, input, temp1, 3, kD, kH, kW, dD, dH, dW, padD, padH, padW);
+	}
+
+	public static void volumetricfullconvolveAccGrad(final Tensor gradKernels, final Tensor gradBias, final Tensor gradOutput, final Tensor input, 
+			final Tensor temp1, final Tensor temp2,
+			final int kW, final int kH, final int kD, final int dW, final int dH, final int dD, final int padW, final int padH, final int padD){
+		fullconvolveAccGrad(gradKernels, gradBias, gradOutput, input, temp1, 3, kD, kH, kW, dD, dH, dW, padD, padH, padW);
+	}
+	
+	/*
+	 * Convolutions unfold the input with im2col, such that the convolution becomes a matrix product 
+	 * of the weights [noOutputPlanes x noInputPlanes*kT*kH*kW] and the unfolded input 
+	 * [noInputPlanes*kT*kH*kW x oT*oH*oW]. The unfolded input is kept in temp1 for calculating the
+	 * weight gradients. Full convolutions do the reverse, with weights [noInputPlanes x noOutputPlanes*kT*kH*kW].
+	 */
+	
+	private static Tensor convolve(Tensor output, Tensor input, Tensor weight, Tensor bias, Tensor temp1, int spatialDims,
+			int kT, int kH, int kW, int dT, int dH, int dW, int pT, int pH, int pW){
+		final Tensor x = input.contiguous();
+		final int[] v = volume(x, spatialDims);
+		final int batches = x.dim() == spatialDims + 2 ? x.dims[0] : 1;
+		final int C = v[0]/batches, iT = v[1], iH = v[2], iW = v[3];
+		final int oT = (iT + 2*pT - kT)/dT + 1;
+		final int oH = (iH + 2*pH - kH)/dH + 1;
+		final int oW = (iW + 2*pW - kW)/dW + 1;
+		final int K = C*kT*kH*kW;
+		final int L = oT*oH*oW;
+		final int nOut = weight.size()/K;
+		
+		output = resizeConvolution(output, x, spatialDims, nOut, oT, oH, oW);
+		final Tensor o = Apply.target(output);
+		final Tensor col = batches > 1 ? TensorOps.resize(temp1, batches, K, L) : TensorOps.resize(temp1, K, L);
+		final Tensor w = weight.contiguous();
+		final float[] b = bias.get();
+		
+		forBatch(batches, 2L*batches*nOut*K*L, (from, to) -> {
+			for(int i=from;i<to;i++){
+				int col0 = col.offset + i*K*L;
+				int o0 = o.offset + i*nOut*L;
+				vol2col(x.storage.data, x.offset + i*C*iT*iH*iW, C, iT, iH, iW, kT, kH, kW, dT, dH, dW, pT, pH, pW, oT, oH, oW, 
+						col.storage.data, col0);
+				for(int c=0;c<nOut;c++){
+					java.util.Arrays.fill(o.storage.data, o0 + c*L, o0 + (c+1)*L, b[c]);
+				}
+				Blas.gemm(nOut, L, K, 1.0f, 
+						w.storage.data, w.offset, K, 1, 
+						col.storage.data, col0, L, 1, 
+						1.0f, o.storage.data, o0, L);
+			}
+		});
+		return Apply.commit(output, o);
+	}
+	
+	private static Tensor convolveGradIn(Tensor gradInput, Tensor gradOutput, Tensor weight, Tensor input, Tensor temp2, int spatialDims,
+			int kT, int kH, int kW, int dT, int dH, int dW, int pT, int pH, int pW){
+		gradInput = TensorOps.resizeAs(gradInput, input);
+		final Tensor gi = Apply.target(gradInput);
+		gi.fill(0.0f);
+		final Tensor go = gradOutput.contiguous();
+		
+		final int[] v = volume(input, spatialDims);
+		final int[] ov = volume(go, spatialDims);
+		final int batches = input.dim() == spatialDims + 2 ? input.dims[0] : 1;
+		final int C = v[0]/batches, iT = v[1], iH = v[2], iW = v[3];
+		final int oT = ov[1], oH = ov[2], oW = ov[3];
+		final int K = C*kT*kH*kW;
+		final int L = oT*oH*oW;
+		final int nOut = ov[0]/batches;
+		
+		final Tensor col = batches > 1 ? TensorOps.resize(temp2, batches, K, L) : TensorOps.resize(temp2, K, L);
+		final Tensor w = weight.contiguous();
+		
+		forBatch(batches, 2L*batches*nOut*K*L, (from, to) -> {
+			for(int i=from;i<to;i++){
+				int col0 = col.offset + i*K*L;
+				Blas.gemm(K, L, nOut, 1.0f, 
+						w.storage.data, w.offset, 1, K, 
+						go.storage.data, go.offset + i*nOut*L, L, 1, 
+						0.0f, col.storage.data, col0, L);
+				col2vol(col.storage.data, col0, C, iT, iH, iW, kT, kH, kW, dT, dH, dW, pT, pH, pW, oT, oH, oW, 
+						gi.storage.data, gi.offset + i*C*iT*iH*iW);
+			}
+		});
+		return Apply.commit(gradInput, gi);
+	}
+	
+	private static void convolveAccGrad(Tensor gradWeight, Tensor gradBias, Tensor gradOutput, Tensor input, Tensor temp1, int spatialDims,
+			int kT, int kH, int kW, int dT, int dH, int dW, int pT, int pH, int pW){
+		Tensor x = input.contiguous();
+		Tensor go = gradOutput.contiguous();
+		Tensor gw = accTarget(gradWeight);
+		Tensor gb = accTarget(gradBias);
+		
+		int[] v = volume(x, spatialDims);
+		int[] ov = volume(go, spatialDims);
+		int batches = x.dim() == spatialDims + 2 ? x.dims[0] : 1;
+		int C = v[0]/batches, iT = v[1], iH = v[2], iW = v[3];
+		int oT = ov[1], oH = ov[2], oW = ov[3];
+		int K = C*kT*kH*kW;
+		int L = oT*oH*oW;
+		int nOut = ov[0]/batches;
+		
+		// reuse the unfolded input of the forward pass if available
+		Tensor col = temp1;
+		if(col == null || col.size() != batches*K*L){
+			col = new Tensor(batches, K, L);
+			for(int i=0;i<batches;i++){
+				vol2col(x.storage.data, x.offset + i*C*iT*iH*iW, C, iT, iH, iW, kT, kH, kW, dT, dH, dW, pT, pH, pW, oT, oH, oW, 
+						col.storage.data, i*K*L);
+			}
+		} else {
+			col = col.contiguous();
+		}
+		
+		for(int i=0;i<batches;i++){
+			int go0 = go.offset + i*nOut*L;
+			Blas.gemm(nOut, K, L, 1.0f, 
+					go.storage.data, go0, L, 1, 
+					col.storage.data, col.offset + i*K*L, 1, L, 
+					1.0f, gw.storage.data, gw.offset, K);
+			for(int c=0;c<nOut;c++){
+				gb.storage.data[gb.offset+c] += sum(go.storage.data, go0 + c*L, L);
+			}
+		}
+		
+		Apply.commit(gradWeight, gw);
+		Apply.commit(gradBias, gb);
+	}
+	
+	private static Tensor fullconvolve(Tensor output, Tensor input, Tensor weight, Tensor bias, Tensor temp1, int spatialDims,
+			int kT, int kH, int kW, int dT, int dH, int dW, int pT, int pH, int pW){
+		final Tensor x = input.contiguous();
+		final int[] v = volume(x, spatialDims);
+		final int batches = x.dim() == spatialDims + 2 ? x.dims[0] : 1;
+		final int nIn = v[0]/batches, iT = v[1], iH = v[2], iW = v[3];
+		final int oT = (iT - 1)*dT - 2*pT + kT;
+		final int oH = (iH - 1)*dH - 2*pH + kH;
+		final int oW = (iW - 1)*dW - 2*pW + kW;
+		final int nOut = weight.size()/(nIn*kT*kH*kW);
+		final int K = nOut*kT*kH*kW;
+		final int L = iT*iH*iW;
+		
+		output = resizeConvolution(output, x, spatialDims, nOut, oT, oH, oW);
+		final Tensor o = Apply.target(output);
+		final Tensor col = batches > 1 ? TensorOps.resize(temp1, batches, K, L) : TensorOps.resize(temp1, K, L);
+		final Tensor w = weight.contiguous();
+		final float[] b = bias.get();
+		
+		final int outSize = oT*oH*oW;
+		forBatch(batches, 2L*batches*nIn*K*L, (from, to) -> {
+			for(int i=from;i<to;i++){
+				int col0 = col.offset + i*K*L;
+				int o0 = o.offset + i*nOut*outSize;
+				Blas.gemm(K, L, nIn, 1.0f, 
+						w.storage.data, w.offset, 1, K, 
+						x.storage.data, x.offset + i*nIn*L, L, 1, 
+						0.0f, col.storage.data, col0, L);
+				for(int c=0;c<nOut;c++){
+					java.util.Arrays.fill(o.storage.data, o0 + c*outSize, o0 + (c+1)*outSize, b[c]);
+				}
+				col2vol(col.storage.data, col0, nOut, oT, oH, oW, kT, kH, kW, dT, dH, dW, pT, pH, pW, iT, iH, iW, 
+						o.storage.data, o0);
+			}
+		});
+		return Apply.commit(output, o);
+	}
+	
+	private static Tensor fullconvolveGradIn(Tensor gradInput, Tensor gradOutput, Tensor weight, Tensor input, Tensor temp1, int spatialDims,
+			int kT, int kH, int kW, int dT, int dH, int dW, int pT, int pH, int pW){
+		gradInput = TensorOps.resizeAs(gradInput, input);
+		final Tensor gi = Apply.target(gradInput);
+		final Tensor go = gradOutput.contiguous();
+		
+		final int[] v = volume(input, spatialDims);
+		final int[] ov = volume(go, spatialDims);
+		final int batches = input.dim() == spatialDims + 2 ? input.dims[0] : 1;
+		final int nIn = v[0]/batches, iT = v[1], iH = v[2], iW = v[3];
+		final int nOut = ov[0]/batches, oT = ov[1], oH = ov[2], oW = ov[3];
+		final int K = nOut*kT*kH*kW;
+		final int L = iT*iH*iW;
+		
+		final Tensor col = batches > 1 ? TensorOps.resize(temp1, batches, K, L) : TensorOps.resize(temp1, K, L);
+		final Tensor w = weight.contiguous();
+		
+		forBatch(batches, 2L*batches*nIn*K*L, (from, to) -> {
+			for(int i=from;i<to;i++){
+				int col0 = col.offset + i*K*L;
+				vol2col(go.storage.data, go.offset + i*nOut*oT*oH*oW, nOut, oT, oH, oW, kT, kH, kW, dT, dH, dW, pT, pH, pW, iT, iH, iW, 
+						col.storage.data, col0);
+				Blas.gemm(nIn, L, K, 1.0f, 
+						w.storage.data, w.offset, K, 1, 
+						col.storage.data, col0, L, 1, 
+						0.0f, gi.storage.data, gi.offset + i*nIn*L, L);
+			}
+		});
+		return Apply.commit(gradInput, gi);
+	}
+	
+	private static void fullconvolveAccGrad(Tensor gradWeight, Tensor gradBias, Tensor gradOutput, Tensor input, Tensor temp1, int spatialDims,
+			int kT, int kH, int kW, int dT, int dH, int dW, int pT, int pH, int pW){
+		Tensor x = input.contiguous();
+		Tensor go = gradOutput.contiguous();
+		Tensor gw = accTarget(gradWeight);
+		Tensor gb = accTarget(gradBias);
+		
+		int[] v = volume(x, spatialDims);
+		int[] ov = volume(go, spatialDims);
+		int batches = x.dim() == spatialDims + 2 ? x.dims[0] : 1;
+		int nIn = v[0]/batches, iT = v[1], iH = v[2], iW = v[3];
+		int nOut = ov[0]/batches, oT = ov[1], oH = ov[2], oW = ov[3];
+		int K = nOut*kT*kH*kW;
+		int L = iT*iH*iW;
+		int outSize = oT*oH*oW;
+		
+		Tensor col = TensorOps.resize(temp1, K, L);
+		for(int i=0;i<batches;i++){
+			int go0 = go.offset + i*nOut*outSize;
+			vol2col(go.storage.data, go0, nOut, oT, oH, oW, kT, kH, kW, dT, dH, dW, pT, pH, pW, iT, iH, iW, 
+					col.storage.data, col.offset);
+			Blas.gemm(nIn, K, L, 1.0f, 
+					x.storage.data, x.offset + i*nIn*L, L, 1, 
+					col.storage.data, col.offset, 1, L, 
+					1.0f, gw.storage.data, gw.offset, K);
+			for(int c=0;c<nOut;c++){
+				gb.storage.data[gb.offset+c] += sum(go.storage.data, go0 + c*outSize, outSize);
+			}
+		}
+		
+		Apply.commit(gradWeight, gw);
+		Apply.commit(gradBias, gb);
+	}
+	
+	// output tensor of a convolution, with an optional batch dimension as in the input
+	private static Tensor resizeConvolution(Tensor output, Tensor input, int spatialDims, int planes, int oT, int oH, int oW){
+		boolean batch = input.dim() == spatialDims + 2;
+		if(spatialDims == 3){
+			return batch ? TensorOps.resize(output, input.dims[0], planes, oT, oH, oW) : TensorOps.resize(output, planes, oT, oH, oW);
+		} else {
+			return batch ? TensorOps.resize(output, input.dims[0], planes, oH, oW) : TensorOps.resize(output, planes, oH, oW);
+		}
+	}
+	
+	/**
+	 * Unfold C planes of size iT x iH x iW into a [C*kT*kH*kW x oT*oH*oW] matrix
+	 */
+	static void vol2col(float[] x, int xOff, int C, int iT, int iH, int iW, 
+			int kT, int kH, int kW, int dT, int dH, int dW, int pT, int pH, int pW,
+			int oT, int oH, int oW, float[] col, int colOff){
+		int L = oT*oH*oW;
+		for(int c=0;c<C;c++){
+			for(int kt=0;kt<kT;kt++){
+				for(int kh=0;kh<kH;kh++){
+					for(int kw=0;kw<kW;kw++){
+						int row = colOff + (((c*kT + kt)*kH + kh)*kW + kw)*L;
+						// range of output columns for which the input column is inside the input
+						int ow0 = Math.max(0, (pW - kw + dW - 1)/dW);
+						int ow1 = Math.min(oW, (iW + pW - kw + dW - 1)/dW);
+						for(int ot=0;ot<oT;ot++){
+							int t = ot*dT - pT + kt;
+							for(int oh=0;oh<oH;oh++){
+								int h = oh*dH - pH + kh;
+								int r = row + (ot*oH + oh)*oW;
+								if(t < 0 || t >= iT || h < 0 || h >= iH || ow0 >= ow1){
+									java.util.Arrays.fill(col, r, r+oW, 0.0f);
+									continue;
+								}
+								
+								int src = xOff + ((c*iT + t)*iH + h)*iW - pW + kw;
+								for(int ow=0;ow<ow0;ow++){
+									col[r+ow] = 0.0f;
+								}
+								if(dW == 1){
+									System.arraycopy(x, src+ow0, col, r+ow0, ow1-ow0);
+								} else {
+									for(int ow=ow0;ow<ow1;ow++){
+										col[r+ow] = x[src+ow*dW];
+									}
+								}
+								for(int ow=ow1;ow<oW;ow++){
+									col[r+ow] = 0.0f;
+								}
+							}
+						}
+					}
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Accumulate a [C*kT*kH*kW x oT*oH*oW] matrix into C planes of size iT x iH x iW, reverse of vol2col
+	 */
+	static void col2vol(float[] col, int colOff, int C, int iT, int iH, int iW, 
+			int kT, int kH, int kW, int dT, int dH, int dW, int pT, int pH, int pW,
+			int oT, int oH, int oW, float[] x, int xOff){
+		int L = oT*oH*oW;
+		for(int c=0;c<C;c++){
+			for(int kt=0;kt<kT;kt++){
+				for(int kh=0;kh<kH;kh++){
+					for(int kw=0;kw<kW;kw++){
+						int row = colOff + (((c*kT + kt)*kH + kh)*kW + kw)*L;
+						int ow0 = Math.max(0, (pW - kw + dW - 1)/dW);
+						int ow1 = Math.min(oW, (iW + pW - kw + dW - 1)/dW);
+						for(int ot=0;ot<oT;ot++){
+							int t = ot*dT - pT + kt;
+							if(t < 0 || t >= iT)
+								continue;
+							for(int oh=0;oh<oH;oh++){
+								int h = oh*dH - pH + kh;
+								if(h < 0 || h >= iH)
+									continue;
+								int r = row + (ot*oH + oh)*oW;
+								int dst = xOff + ((c*iT + t)*iH + h)*iW - pW + kw;
+								for(int ow=ow0;ow<ow1;ow++){
+									x[dst+ow*dW] += col[r+ow];
+								}
+							}
+						}
+					}
+				}
+			}
+		}
+	}
+	
+	
+	public static Tensor batchnorm(Tensor output, final Tensor input, final Tensor weights, final Tensor bias, final Tensor rMean, final Tensor rVar, final Tensor sMean, final Tensor sVar, final boolean train){
+		final Tensor x = input.contiguous();
+		final int N = x.dims[0], F = x.dims[1], S = x.dim() == 3 ? x.dims[2] : 1;
+		final int n = N*S;
+		
+		output = TensorOps.resizeAs(output, x);
+		final Tensor o = Apply.target(output);
+		final float[] w = weights == null ? null : weights.get();
+		final float[] b = bias == null ? null : bias.get();
+		final float[] rm = rMean.get(), rv = rVar.get();
+		final float[] sm = sMean.get(), sv = sVar.get();
+		
+		Parallel.forRange(F, 3L*N*F*S, (from, to) -> {
+			for(int f=from;f<to;f++){
+				float mean, invstd;
+				if(train){
+					double sum = 0;
+					for(int i=0;i<N;i++){
+						sum += sum(x.storage.data, x.offset + (i*F+f)*S, S);
+					}
+					mean = (float)(sum/n);
+					double ss = 0;
+					for(int i=0;i<N;i++){
+						int x0 = x.offset + (i*F+f)*S;
+						for(int s=0;s<S;s++){
+							float d = x.storage.data[x0+s] - mean;
+							ss += d*d;
+						}
+					}
+					invstd = (float)(1.0/Math.sqrt(ss/n + BN_EPS));
+					sm[f] = mean;
+					sv[f] = invstd;
+					rm[f] = (float)(BN_MOMENTUM*mean + (1-BN_MOMENTUM)*rm[f]);
+					rv[f] = (float)(BN_MOMENTUM*(n > 1 ? ss/(n-1) : ss) + (1-BN_MOMENTUM)*rv[f]);
+				} else {
+					mean = rm[f];
+					invstd = (float)(1.0/Math.sqrt(rv[f] + BN_EPS));
+				}
+				
+				float scale = w == null ? invstd : w[f]*invstd;
+				float shift = (b == null ? 0.0f : b[f]) - mean*scale;
+				for(int i=0;i<N;i++){
+					int i0 = (i*F+f)*S;
+					for(int s=0;s<S;s++){
+						o.storage.data[o.offset+i0+s] = x.storage.data[x.offset+i0+s]*scale + shift;
+					}
+				}
+			}
+		});
+		
+		if(train){
+			rMean.set(rm);
+			rVar.set(rv);
+			sMean.set(sm);
+			sVar.set(sv);
+		}
+		return Apply.commit(output, o);
+	}
+
+	public static Tensor batchnormGradIn(Tensor gradInput, final Tensor gradOutput, final Tensor input, final Tensor weights, final Tensor rMean, final Tensor rVar, final Tensor sMean, final Tensor sVar, final boolean train){
+		final Tensor x = input.contiguous();
+		final Tensor go = gradOutput.contiguous();
+		final int N = x.dims[0], F = x.dims[1], S = x.dim() == 3 ? x.dims[2] : 1;
+		final int n = N*S;
+		
+		gradInput = TensorOps.resizeAs(gradInput, go);
+		final Tensor gi = Apply.target(gradInput);
+		final float[] w = weights == null ? null : weights.get();
+		final float[] mean = train ? sMean.get() : rMean.get();
+		final float[] invstd = train ? sVar.get() : invstd(rVar.get());
+		
+		Parallel.forRange(F, 3L*N*F*S, (from, to) -> {
+			for(int f=from;f<to;f++){
+				float m = mean[f];
+				float is = invstd[f];
+				float scale = w == null ? is : w[f]*is;
+				if(train){
+					double sum = 0, dotp = 0;
+					for(int i=0;i<N;i++){
+						int i0 = (i*F+f)*S;
+						for(int s=0;s<S;s++){
+							float g = go.storage.data[go.offset+i0+s];
+							sum += g;
+							dotp += (x.storage.data[x.offset+i0+s] - m)*g;
+						}
+					}
+					float k = (float)(dotp*is*is/n);
+					float gm = (float)(sum/n);
+					for(int i=0;i<N;i++){
+						int i0 = (i*F+f)*S;
+						for(int s=0;s<S;s++){
+							float d = (x.storage.data[x.offset+i0+s] - m)*k;
+							gi.storage.data[gi.offset+i0+s] = (go.storage.data[go.offset+i0+s] - gm - d)*scale;
+						}
+					}
+				} else {
+					for(int i=0;i<N;i++){
+						int i0 = (i*F+f)*S;
+						for(int s=0;s<S;s++){
+							gi.storage.data[gi.offset+i0+s] = go.storage.data[go.offset+i0+s]*scale;
+						}
+					}
+				}
+			}
+		});
+		return Apply.commit(gradInput, gi);
+	}
+
+	public static void batchnormAccGrad(final Tensor gradWeights, final Tensor gradBias, final Tensor gradOutput, final Tensor input, final Tensor weights, final Tensor rMean, final Tensor rVar, final Tensor sMean, final Tensor sVar, final boolean train){
+		Tensor x = input.contiguous();
+		Tensor go = gradOutput.contiguous();
+		int N = x.dims[0], F = x.dims[1], S = x.dim() == 3 ? x.dims[2] : 1;
+		
+		float[] mean = train ? sMean.get() : rMean.get();
+		float[] invstd = train ? sVar.get() : invstd(rVar.get());
+		float[] gw = gradWeights == null ? null : gradWeights.get();
+		float[] gb = gradBias == null ? null : gradBias.get();
+		
+		for(int f=0;f<F;f++){
+			double sum = 0, dotp = 0;
+			for(int i=0;i<N;i++){
+				int i0 = (i*F+f)*S;
+				for(int s=0;s<S;s++){
+					float g = go.storage.data[go.offset+i0+s];
+					sum += g;
+					dotp += (x.storage.data[x.offset+i0+s] - mean[f])*g;
+				}
+			}
+			if(gw != null)
+				gw[f] += (float)(dotp*invstd[f]);
+			if(gb != null)
+				gb[f] += (float)sum;
+		}
+		
+		if(gw != null)
+			gradWeights.set(gw);
+		if(gb != null)
+			gradBias.set(gb);
+	}
+
+	
+	public static Tensor linear(Tensor output, final Tensor input, final Tensor weights, final Tensor bias, final Tensor ones){
+		int outSize = weights.dims[0];
+		if(input.dim() % 2 == 1){
+			// 1d or 3d tensor, treat as one input by default
+			if(input.dim() == 3){
+				input.reshape(input.size());
+			}
+			output = TensorOps.addmv(output, bias, weights, input);
+		} else {
+			// 2d or 4d tensor, treat as batch by default
+			if(input.dim() == 4){
+				input.reshape(input.dims[0], input.dims[1]*input.dims[2]*input.dims[3]);
+			}
+			int batches = input.dims[0];
+			int inSize = input.dims[1];
+			
+			output = TensorOps.resize(output, batches, outSize);
+			Tensor o = Apply.target(output);
+			Tensor x = input.contiguous();
+			Tensor w = weights.contiguous();
+			float[] b = bias.get();
+			for(int i=0;i<batches;i++){
+				System.arraycopy(b, 0, o.storage.data, o.offset+i*outSize, outSize);
+			}
+			// output = input * weights^T + bias
+			Blas.gemm(batches, outSize, inSize, 1.0f, 
+					x.storage.data, x.offset, inSize, 1, 
+					w.storage.data, w.offset, 1, inSize, 
+					1.0f, o.storage.data, o.offset, outSize);
+			output = Apply.commit(output, o);
+		}
+		return output;
+	}
+	
+	public static Tensor linearGradIn(Tensor gradInput, final Tensor gradOutput, final Tensor weights, final Tensor input){
+		gradInput = TensorOps.resizeAs(gradInput, input);
+		if(input.dim() % 2 == 1){
+			// treat as vector input
+			return TensorOps.tmv(gradInput, weights, gradOutput);
+		} else {
+			// treat as batch input
+			return TensorOps.mm(gradInput, gradOutput, weights);
+		}
+	}
+	
+	public static void linearAccGrad(final Tensor gradWeigths, final Tensor gradBias, final Tensor gradOutput, final Tensor input, final Tensor ones){
+		if(input.dim() % 2 == 1){
+			TensorOps.addvv(gradWeigths, gradWeigths, gradOutput, input);
+			TensorOps.add(gradBias, gradBias, gradOutput);
+		} else {
+			Tensor go = gradOutput.contiguous();
+			Tensor x = input.contiguous();
+			Tensor gw = accTarget(gradWeigths);
+			Tensor gb = accTarget(gradBias);
+			int batches = x.dims[0];
+			int inSize = x.dims[1];
+			int outSize = go.dims[1];
+			
+			// gradWeights += gradOutput^T * input
+			Blas.gemm(outSize, inSize, batches, 1.0f, 
+					go.storage.data, go.offset, 1, outSize, 
+					x.storage.data, x.offset, inSize, 1, 
+					1.0f, gw.storage.data, gw.offset, inSize);
+			for(int i=0;i<batches;i++){
+				Blas.axpy(outSize, 1.0f, go.storage.data, go.offset + i*outSize, gb.storage.data, gb.offset);
+			}
+			
+			Apply.commit(gradWeigths, gw);
+			Apply.commit(gradBias, gb);
+		}
+	}
+	
+	
+	/*
+	 * Fused optimizer updates, reading the gradient in delta and the optimizer state once, 
+	 * and overwriting delta with the parameter update and the state with the new state
+	 */
+	
+	public static void adamUpdate(Tensor delta, Tensor mt, Tensor vt, final float beta1, final float beta2, final float alpha, final float epsilon){
+		Apply.update(delta, mt, vt, (d, o, m, mo, v, vo, n) -> {
+			for(int i=0;i<n;i++){
+				float g = d[o+i];
+				float mi = beta1*m[mo+i] + (1-beta1)*g;
+				float vi = beta2*v[vo+i] + (1-beta2)*g*g;
+				m[mo+i] = mi;
+				v[vo+i] = vi;
+				d[o+i] = -alpha*mi/((float)Math.sqrt(vi) + epsilon);
+			}
+		});
+	}
+	
+	public static void rmspropUpdate(Tensor delta, Tensor meanSquared, final float learningRate, final float decayRate, final float epsilon){
+		Apply.update(delta, meanSquared, (d, o, ms, mso, n) -> {
+			for(int i=0;i<n;i++){
+				float g = d[o+i];
+				float s = decayRate*ms[mso+i] + (1-decayRate)*g*g;
+				ms[mso+i] = s;
+				d[o+i] = -learningRate*g/(float)Math.sqrt(s + epsilon);
+			}
+		});
+	}
+	
+	public static void adagradUpdate(Tensor delta, Tensor accumulatedSquared, final float learningRate, final float epsilon){
+		Apply.update(delta, accumulatedSquared, (d, o, acc, acco, n) -> {
+			for(int i=0;i<n;i++){
+				float g = d[o+i];
+				float s = acc[acco+i] + g*g;
+				acc[acco+i] = s;
+				d[o+i] = -learningRate*g/(float)Math.sqrt(s + epsilon);
+			}
+		});
+	}
+	
+	public static void adadeltaUpdate(Tensor delta, Tensor meanSquaredGradient, Tensor meanSquaredDelta, final float decayRate, final float epsilon){
+		Apply.update(delta, meanSquaredGradient, meanSquaredDelta, (d, o, msg, msgo, msd, msdo, n) -> {
+			for(int i=0;i<n;i++){
+				float g = d[o+i];
+				float sg = decayRate*msg[msgo+i] + (1-decayRate)*g*g;
+				float u = -(float)Math.sqrt(msd[msdo+i]/(sg + epsilon))*g;
+				msg[msgo+i] = sg;
+				msd[msdo+i] = decayRate*msd[msdo+i] + (1-decayRate)*u*u;
+				d[o+i] = u;
+			}
+		});
+	}
+	
+	public static void momentumUpdate(Tensor delta, Tensor momentum, final float rate){
+		Apply.update(delta, momentum, (d, o, m, mo, n) -> {
+			for(int i=0;i<n;i++){
+				float u = d[o+i] + rate*m[mo+i];
+				d[o+i] = u;
+				m[mo+i] = u;
+			}
+		});
+	}
+	
+	public static void nesterovUpdate(Tensor delta, Tensor velocity, final float rate){
+		Apply.update(delta, velocity, (d, o, v, vo, n) -> {
+			for(int i=0;i<n;i++){
+				float prev = v[vo+i];
+				float vi = d[o+i] + rate*prev;
+				v[vo+i] = vi;
+				d[o+i] = -rate*prev + (1+rate)*vi;
+			}
+		});
+	}
+	
+	public static void polyakUpdate(Tensor target, Tensor source, final float tau){
+		Apply.update(target, source, (t, o, s, so, n) -> {
+			for(int i=0;i<n;i++){
+				t[o+i] += tau*(s[so+i] - t[o+i]);
+			}
+		});
+	}
+
+
+	/*
+	 * Fused recurrent cells, the pre-activations of all gates come from a single linear and
+	 * the gate nonlinearities and state update are applied in one pass over the batch.
+	 * All state tensors are either a vector or a batch x size matrix, gates have 4 (LSTM)
+	 * or 3 (GRU) times as many elements
+	 */
+
+	public static void lstm(Tensor output, Tensor cell, Tensor gates, final Tensor prevCell){
+		final int size = prevCell.dims[prevCell.dims.length-1];
+		final int batches = prevCell.size() / size;
+		checkGates(gates, prevCell, 4);
+		TensorOps.resizeAs(output, prevCell);
+		TensorOps.resizeAs(cell, prevCell);
+
+		final Tensor h = Apply.target(output);
+		final Tensor c = Apply.target(cell);
+		final Tensor g = gates.contiguous();
+		final Tensor pc = prevCell.contiguous();
+		Parallel.forRange(batches, (long)batches*size, (from, to) -> {
+			final float[] gd = g.storage.data;
+			for(int b=from;b<to;b++){
+				int go = g.offset + b*4*size;
+				int so = b*size;
+				for(int j=0;j<size;j++){
+					// gates are ordered input, forget, cell, output
+					float i = sigm(gd[go+j]);
+					float f = sigm(gd[go+size+j]);
+					float z = (float)Math.tanh(gd[go+2*size+j]);
+					float o = sigm(gd[go+3*size+j]);
+					gd[go+j] = i;
+					gd[go+size+j] = f;
+					gd[go+2*size+j] = z;
+					gd[go+3*size+j] = o;
+
+					float ct = f*pc.storage.data[pc.offset+so+j] + i*z;
+					c.storage.data[c.offset+so+j] = ct;
+					h.storage.data[h.offset+so+j] = o*(float)Math.tanh(ct);
+				}
+			}
+		});
+		Apply.commit(gates, g);
+		Apply.commit(cell, c);
+		Apply.commit(output, h);
+	}
+
+	public static void lstmGradIn(Tensor gradGates, Tensor gradPrevCell, final Tensor gradOutput, final Tensor gradCell,
+			final Tensor gates, final Tensor prevCell, final Tensor cell){
+		final int size = prevCell.dims[prevCell.dims.length-1];
+		final int batches = prevCell.size() / size;
+		checkGates(gates, prevCell, 4);
+		TensorOps.resizeAs(gradGates, gates);
+		TensorOps.resizeAs(gradPrevCell, prevCell);
+
+		final Tensor gg = Apply.target(gradGates);
+		final Tensor gpc = Apply.target(gradPrevCell);
+		final Tensor gh = gradOutput.contiguous();
+		final Tensor gc = gradCell.contiguous();
+		final Tensor g = gates.contiguous();
+		final Tensor pc = prevCell.contiguous();
+		final Tensor c = cell.contiguous();
+		Parallel.forRange(batches, (long)batches*size, (from, to) -> {
+			final float[] gd = g.storage.data;
+			final float[] ggd = gg.storage.data;
+			for(int b=from;b<to;b++){
+				int go = g.offset + b*4*size;
+				int ggo = gg.offset + b*4*size;
+				int so = b*size;
+				for(int j=0;j<size;j++){
+					float i = gd[go+j];
+					float f = gd[go+size+j];
+					float z = gd[go+2*size+j];
+					float o = gd[go+3*size+j];
+					float tc = (float)Math.tanh(c.storage.data[c.offset+so+j]);
+
+					float dh = gh.storage.data[gh.offset+so+j];
+					float dc = gc.storage.data[gc.offset+so+j] + dh*o*(1-tc*tc);
+					ggd[ggo+j] = dc*z*i*(1-i);
+					ggd[ggo+size+j] = dc*pc.storage.data[pc.offset+so+j]*f*(1-f);
+					ggd[ggo+2*size+j] = dc*i*(1-z*z);
+					ggd[ggo+3*size+j] = dh*tc*o*(1-o);
+					gpc.storage.data[gpc.offset+so+j] = dc*f;
+				}
+			}
+		});
+		Apply.commit(gradGates, gg);
+		Apply.commit(gradPrevCell, gpc);
+	}
+
+	public static void gru(Tensor output, Tensor gatesX, final Tensor gatesH, final Tensor prevOutput){
+		final int size = prevOutput.dims[prevOutput.dims.length-1];
+		final int batches = prevOutput.size() / size;
+		checkGates(gatesX, prevOutput, 3);
+		checkGates(gatesH, prevOutput, 3);
+		TensorOps.resizeAs(output, prevOutput);
+
+		final Tensor h = Apply.target(output);
+		final Tensor gx = gatesX.contiguous();
+		final Tensor gh = gatesH.contiguous();
+		final Tensor ph = prevOutput.contiguous();
+		Parallel.forRange(batches, (long)batches*size, (from, to) -> {
+			final float[] gxd = gx.storage.data;
+			final float[] ghd = gh.storage.data;
+			for(int b=from;b<to;b++){
+				int xo = gx.offset + b*3*size;
+				int ho = gh.offset + b*3*size;
+				int so = b*size;
+				for(int j=0;j<size;j++){
+					// gates are ordered reset, update, new
+					float r = sigm(gxd[xo+j] + ghd[ho+j]);
+					float u = sigm(gxd[xo+size+j] + ghd[ho+size+j]);
+					float n = (float)Math.tanh(gxd[xo+2*size+j] + r*ghd[ho+2*size+j]);
+					gxd[xo+j] = r;
+					gxd[xo+size+j] = u;
+					gxd[xo+2*size+j] = n;
+
+					h.storage.data[h.offset+so+j] = (1-u)*n + u*ph.storage.data[ph.offset+so+j];
+				}
+			}
+		});
+		Apply.commit(gatesX, gx);
+		Apply.commit(output, h);
+	}
+
+	public static void gruGradIn(Tensor gradGatesX, Tensor gradGatesH, Tensor gradPrevOutput, final Tensor gradOutput,
+			final Tensor gatesX, final Tensor gatesH, final Tensor prevOutput){
+		final int size = prevOutput.dims[prevOutput.dims.length-1];
+		final int batches = prevOutput.size() / size;
+		checkGates(gatesX, prevOutput, 3);
+		checkGates(gatesH, prevOutput, 3);
+		TensorOps.resizeAs(gradGatesX, gatesX);
+		TensorOps.resizeAs(gradGatesH, gatesH);
+		TensorOps.resizeAs(gradPrevOutput, prevOutput);
+
+		final Tensor ggx = Apply.target(gradGatesX);
+		final Tensor ggh = Apply.target(gradGatesH);
+		final Tensor gph = Apply.target(gradPrevOutput);
+		final Tensor gh = gradOutput.contiguous();
+		final Tensor gx = gatesX.contiguous();
+		final Tensor hh = gatesH.contiguous();
+		final Tensor ph = prevOutput.contiguous();
+		Parallel.forRange(batches, (long)batches*size, (from, to) -> {
+			final float[] gxd = gx.storage.data;
+			final float[] ggxd = ggx.storage.data;
+			final float[] gghd = ggh.storage.data;
+			for(int b=from;b<to;b++){
+				int xo = gx.offset + b*3*size;
+				int gxo = ggx.offset + b*3*size;
+				int gho = ggh.offset + b*3*size;
+				int ho = hh.offset + b*3*size;
+				int so = b*size;
+				for(int j=0;j<size;j++){
+					float r = gxd[xo+j];
+					float u = gxd[xo+size+j];
+					float n = gxd[xo+2*size+j];
+					float p = ph.storage.data[ph.offset+so+j];
+
+					float dh = gh.storage.data[gh.offset+so+j];
+					float dn = dh*(1-u)*(1-n*n);
+					float du = dh*(p-n)*u*(1-u);
+					float dr = dn*hh.storage.data[ho+2*size+j]*r*(1-r);
+					ggxd[gxo+j] = dr;
+					ggxd[gxo+size+j] = du;
+					ggxd[gxo+2*size+j] = dn;
+					gghd[gho+j] = dr;
+					gghd[gho+size+j] = du;
+					gghd[gho+2*size+j] = dn*r;
+					gph.storage.data[gph.offset+so+j] = dh*u;
+				}
+			}
+		});
+		Apply.commit(gradGatesX, ggx);
+		Apply.commit(gradGatesH, ggh);
+		Apply.commit(gradPrevOutput, gph);
+	}
+
+	private static float sigm(float x){
+		return (float) (1.0/(1.0 + Math.exp(-x)));
+	}
+
+	private static void checkGates(Tensor gates, Tensor state, int noGates){
+		if(gates.size() != noGates*state.size()){
+			throw new IllegalArgumentException("Expected "+noGates+" gates per state element: "+gates.size()+" vs "+state.size());
+		}
+	}
+
+	
+	private static final double BN_MOMENTUM = 0.1;
+	private static final double BN_EPS = 1e-5;
+	
+	private static float[] invstd(float[] var){
+		float[] invstd = new float[var.length];
+		for(int i=0;i<var.length;i++){
+			invstd[i] = (float)(1.0/Math.sqrt(var[i] + BN_EPS));
+		}
+		return invstd;
+	}
+	
+	private static float sum(float[] a, int off, int n){
+		double sum = 0;
+		for(int i=0;i<n;i++){
+			sum += a[off+i];
+		}
+		return (float)sum;
+	}
+	
+	// tensor to accumulate gradients in, a copy in case the gradient tensor is a strided view
+	private static Tensor accTarget(Tensor t){
+		return t.isContiguous() ? t : t.copyInto(null);
+	}
+	
+	/*
+	 * Parallelize over the batch when there are enough samples to keep all workers busy, 
+	 * otherwise process the samples one by one and leave the parallelism to the inner GEMM
+	 */
+	private static void forBatch(int batches, long work, Parallel.Range body){
+		if(batches >= Parallel.getThreads()){
+			Parallel.forRange(batches, work, body);
+		} else {
+			body.run(0, batches);
+		}
+	}
+}
@@ -0,0 +1,136 @@
+/*******************************************************************************
+ * DIANNE  - Framework for distributed artificial neural networks
+ * Copyright (C) 2015  iMinds - IBCN - UGent
+ *
+ * This file is part of DIANNE.
+ *
+ * DIANNE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contributors:
+ *     Tim Verbelen, Steven Bohez
+ *******************************************************************************/
+package be.iminds.iot.dianne.tensor;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+
+import org.osgi.framework.BundleContext;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
+
+/**
+ * Loader of the pure Java tensor implementation. No native library is required, this
+ * component only provides the same configuration and commands as the native loader.
+ * 
+ * The number of worker threads can be configured using the be.iminds.iot.dianne.tensor.threads
+ * property, or at runtime using the "threads" option.
+ * 
+ * @author tverbele
+ *
+ */
+@Component(
+		service=Object.class,
+		property={"osgi.command.scope=tensor",
+				  "osgi.command.function=option",
+				  "osgi.command.function=pool"},
+		immediate=true)
+public class NativeTensorLoader {
+
+	static {
+		NotificationListener notificationListener = new NotificationListener() {
+			@Override
+			public void handleNotification(Notification notification, Object handback) {
+				synchronized (gcDone) {
+					gcDone.notifyAll();
+				}
+			}
+		};
+		for (GarbageCollectorMXBean gcBean : ManagementFactory.getGarbageCollectorMXBeans()) {
+			NotificationEmitter emitter = (NotificationEmitter) gcBean;
+			emitter.addNotificationListener(notificationListener, null, null);
+		}
+	}
+	
+	@Activate
+	public void activate(BundleContext context){
+		if(context != null){
+			String t = context.getProperty("be.iminds.iot.dianne.tensor.threads");
+			if(t != null){
+				option("threads", t);
+			}
+		}
+	}
+	
+	@Deactivate()
+	public void deactivate(){
+		TensorPool.clear();
+	}
+	
+	// set a backend-specific option
+	public void option(String key, String value){
+		switch(key){
+		case "threads":
+			Parallel.setThreads(Integer.parseInt(value));
+			break;
+		default:
+			System.out.println("Unsupported option "+key);
+			return;
+		}
+		System.out.println("Option "+key+" set to "+value);
+	}
+	
+	public void option(String keyval){
+		String[] split = keyval.split("=");
+		if(split.length==2){
+			option(split[0],split[1]);
+		}
+	}
+	
+	// print memory pool statistics
+	public void pool(){
+		System.out.println("Hits: "+TensorPool.getHits());
+		System.out.println("Misses: "+TensorPool.getMisses());
+		System.out.println("Bytes outstanding: "+TensorPool.getBytesOutstanding());
+		System.out.println("Bytes pooled: "+TensorPool.getBytesPooled());
+	}
+	
+	public void pool(String cmd){
+		if(cmd.equals("clear")){
+			TensorPool.clear();
+		}
+		pool();
+	}
+	
+	// Trigger garbage collection 
+	private static Object gcDone = new Object();
+	
+	public static void gc(){
+		// This is a "sync" gc method that waits until the gc has actually done something 
+		synchronized (gcDone) {
+			System.gc();
+			try {
+				gcDone.wait(100);
+			} catch (InterruptedException e) {
+			}
+		}
+		// also drop pooled arrays so that the memory can be reclaimed
+		TensorPool.clear();
+	}
+
+}
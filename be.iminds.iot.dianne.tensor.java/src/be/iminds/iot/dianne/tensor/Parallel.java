@@ -0,0 +1,101 @@
+/*******************************************************************************
+ * DIANNE  - Framework for distributed artificial neural networks
+ * Copyright (C) 2015  iMinds - IBCN - UGent
+ *
+ * This file is part of DIANNE.
+ *
+ * DIANNE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contributors:
+ *     Tim Verbelen, Steven Bohez
+ *******************************************************************************/
+package be.iminds.iot.dianne.tensor;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+
+/**
+ * Splits loops of tensor operations over a fixed number of worker threads.
+ * 
+ * The number of threads can be configured using the be.iminds.iot.dianne.tensor.threads 
+ * system property or the "threads" option of the NativeTensorLoader, and defaults to the 
+ * number of available processors. Operations called from within a worker thread are executed 
+ * sequentially.
+ * 
+ * @author tverbele
+ *
+ */
+final class Parallel {
+
+	// minimal amount of work (in floating point operations) to spawn a task for
+	static final long GRAIN = 1L << 16;
+	
+	private static volatile ForkJoinPool pool = create(Integer.getInteger("be.iminds.iot.dianne.tensor.threads", 
+			Runtime.getRuntime().availableProcessors()));
+	
+	interface Range {
+		void run(int from, int to);
+	}
+	
+	private Parallel(){}
+	
+	static int getThreads(){
+		return pool.getParallelism();
+	}
+	
+	static void setThreads(int threads){
+		ForkJoinPool old = pool;
+		pool = create(threads);
+		old.shutdown();
+	}
+	
+	/**
+	 * Execute body for the range [0, n), split in chunks over the worker threads in case
+	 * the total amount of work is large enough
+	 */
+	static void forRange(int n, long work, Range body){
+		ForkJoinPool p = pool;
+		int tasks = (int) Math.min(Math.min(n, p.getParallelism()), work / GRAIN);
+		if(tasks <= 1 || inWorker(p)){
+			body.run(0, n);
+			return;
+		}
+		
+		ForkJoinTask<?>[] futures = new ForkJoinTask<?>[tasks-1];
+		for(int t=1;t<tasks;t++){
+			final int from = (int)((long)n*t/tasks);
+			final int to = (int)((long)n*(t+1)/tasks);
+			futures[t-1] = p.submit(() -> body.run(from, to));
+		}
+		body.run(0, (int)((long)n/tasks));
+		for(ForkJoinTask<?> f : futures){
+			f.join();
+		}
+	}
+	
+	private static boolean inWorker(ForkJoinPool p){
+		Thread t = Thread.currentThread();
+		return t instanceof ForkJoinWorkerThread && ((ForkJoinWorkerThread)t).getPool() == p;
+	}
+	
+	private static ForkJoinPool create(int threads){
+		return new ForkJoinPool(Math.max(1, threads), p -> {
+			ForkJoinWorkerThread t = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+			t.setName("Dianne Tensor Worker "+t.getPoolIndex());
+			t.setDaemon(true);
+			return t;
+		}, null, false);
+	}
+}
@@ -0,0 +1,627 @@
+/*******************************************************************************
+ * DIANNE  - Framework for distributed artificial neural networks
+ * Copyright (C) 2015  iMinds - IBCN - UGent
+ *
+ * This file is part of DIANNE.
+ *
+ * DIANNE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contributors:
+ *     Tim Verbelen, Steven Bohez
+ *******************************************************************************/
+package be.iminds.iot.dianne.tensor;
+
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Represents an n-dimensional tensor in Java
+ * 
+ * Pure Java implementation, the data is kept in a float[] storage that is shared
+ * between a tensor and all narrowed, selected or transposed views on it.
+ * 
+ * The storage of a tensor is returned to the TensorPool when calling release(),
+ * or when the tensor is garbage collected in case it was not released explicitly. A released
+ * tensor should no longer be used, views on it remain valid until they are released themselves.
+ * 
+ * @author tverbele
+ *
+ */
+public class Tensor implements AutoCloseable {
+
+	static final float[] EMPTY = new float[0];
+	
+	Storage storage;
+	int offset;
+	int[] dims;
+	int[] strides;
+	
+	private TensorPool.TensorReference reference;
+	
+	public Tensor(){
+		this(null, null);
+	}
+	
+	public Tensor(int... dims) {
+		this(null, dims);
+	}
+
+	public Tensor(int d0, int[] dims){
+		int[] d = new int[dims.length+1];
+		d[0] = d0;
+		System.arraycopy(dims, 0, d, 1, dims.length);
+		allocate(null, d);
+	}
+	
+	public Tensor(float[] data, int... dims) {
+		allocate(data, dims);
+	}
+	
+	private Tensor(Storage storage, int offset, int[] dims, int[] strides){
+		this.storage = storage;
+		this.offset = offset;
+		this.dims = dims;
+		this.strides = strides;
+		this.reference = TensorPool.track(this, 0);
+	}
+	
+	private void allocate(float[] data, int[] dims){
+		this.dims = dims == null ? new int[0] : dims.clone();
+		this.strides = strides(this.dims);
+		
+		int size = dims == null ? 0 : size(this.dims);
+		this.storage = new Storage(size > 0 ? TensorPool.acquire(size) : EMPTY);
+		if(data != null){
+			set(data);
+		}
+		this.reference = TensorPool.track(this, 4L*size);
+	}
+	
+	/**
+	 * Return the storage of this tensor to the TensorPool. This tensor should no
+	 * longer be used afterwards.
+	 */
+	public void release(){
+		TensorPool.TensorReference r;
+		synchronized(this){
+			r = reference;
+			reference = null;
+		}
+		
+		if(r != null){
+			r.release();
+		}
+	}
+	
+	@Override
+	public void close(){
+		release();
+	}
+	
+	/**
+	 * @return the number of dimensions of this tensor
+	 */
+	public int dim(){
+		return dims.length;
+	}
+
+	/**
+	 * @return the dimensions of this tensor
+	 */
+	public int[] dims(){
+		return dims.clone();
+	}
+	
+	/**
+	 * @return the total size of the tensor
+	 */
+	public int size(){
+		return dims.length == 0 ? 0 : size(dims);
+	}
+
+	/**
+	 * the size of the d'th dimension
+	 * @param d the dimension to query the size
+	 * @return the size of the dimension
+	 */
+	public int size(final int d){
+		return dims[d];
+	}
+	
+	/**
+	 * reshape the dimensions of this tensor, the underlying data remains the same
+	 */
+	public void reshape(final int... d){
+		if(Arrays.equals(dims, d)){
+			return;
+		}
+		
+		dims = d.clone();
+		strides = strides(dims);
+		
+		// grow the storage in case the new size does not fit
+		int required = offset + size();
+		synchronized(storage){
+			if(required > storage.data.length){
+				storage.data = Arrays.copyOf(storage.data, required);
+			}
+		}
+	}
+	
+	public void reshape(final int[] d, final int df){
+		int[] dn = Arrays.copyOf(d, d.length+1);
+		dn[d.length] = df;
+		reshape(dn);
+	}
+	
+	/** 
+	 * get a value of the tensor
+	 * @param d indices of the element
+	 * @return the element specified by the index
+	 */
+	public float get(final int... d){
+		return storage.data[index(d)];
+	}
+	
+	/**
+	 * get (a copy of) the raw data for this tensor, this way that the tensor 
+	 * can be reconstructed with the createTensor(data, dims) factory method
+	 */
+	public float[] get(){
+		float[] data = new float[size()];
+		copyToArray(data, 0);
+		return data;
+	}
+	
+	/**
+	 * set a value of the tensor
+	 * @param v the new value
+	 * @param d the indices of the element to set
+	 */
+	public void set(final float v, final int... d){
+		storage.data[index(d)] = v;
+	}
+	
+	/**
+	 *  copy a complete array of raw data into this tensor
+	 */
+	public void set(final float[] data){
+		if(data.length >= size()){
+			copyFromArray(data, 0);
+		} else {
+			// only fill the first data.length elements
+			float[] padded = get();
+			System.arraycopy(data, 0, padded, 0, data.length);
+			copyFromArray(padded, 0);
+		}
+	}
+	
+	/**
+	 * get a view on the raw data of this tensor without copying, only available for 
+	 * contiguous tensors. The buffer is only valid as long as this tensor
+	 * is not resized or released.
+	 * @return a FloatBuffer backed by the tensor data, or null if not available
+	 */
+	public FloatBuffer asFloatBuffer(){
+		if(size() == 0){
+			return FloatBuffer.allocate(0);
+		}
+		
+		if(!isContiguous()){
+			return null;
+		}
+		return FloatBuffer.wrap(storage.data, offset, size()).slice();
+	}
+	
+	/**
+	 * copy the raw data of this tensor into a buffer, starting at the given offset of the buffer
+	 * the position of the buffer is not changed
+	 */
+	public void copyTo(final FloatBuffer dst, final int offset){
+		int size = size();
+		if(offset < 0 || offset + size > dst.limit()){
+			throw new IndexOutOfBoundsException("Buffer too small to copy tensor of size "+size+" at offset "+offset);
+		}
+		
+		if(dst.hasArray()){
+			copyToArray(dst.array(), dst.arrayOffset()+offset);
+		} else {
+			FloatBuffer d = dst.duplicate();
+			d.position(offset);
+			if(isContiguous()){
+				d.put(storage.data, this.offset, size);
+			} else {
+				d.put(get());
+			}
+		}
+	}
+	
+	/**
+	 * copy raw data from a buffer into this tensor, starting at the given offset of the buffer
+	 * the position of the buffer is not changed
+	 */
+	public void copyFrom(final FloatBuffer src, final int offset){
+		int size = size();
+		if(offset < 0 || offset + size > src.limit()){
+			throw new IndexOutOfBoundsException("Buffer too small to copy tensor of size "+size+" at offset "+offset);
+		}
+		
+		if(src.hasArray()){
+			copyFromArray(src.array(), src.arrayOffset()+offset);
+		} else {
+			FloatBuffer s = src.duplicate();
+			s.position(offset);
+			if(isContiguous()){
+				s.get(storage.data, this.offset, size);
+			} else {
+				float[] data = new float[size];
+				s.get(data);
+				copyFromArray(data, 0);
+			}
+		}
+	}
+	
+	/**
+	 * fill with fixed value
+	 * @param v the new value
+	 */
+	public void fill(final float v){
+		if(isContiguous()){
+			Arrays.fill(storage.data, offset, offset+size(), v);
+		} else {
+			TensorOps.fill(this, v);
+		}
+	}
+
+	/**
+	 * fill with random values uniformely distributed between 0 and 1
+	 */
+	public void rand(){
+		Random r = ThreadLocalRandom.current();
+		float[] data = new float[size()];
+		for(int i=0;i<data.length;i++){
+			data[i] = r.nextFloat();
+		}
+		copyFromArray(data, 0);
+	}
+	
+	/**
+	 * fill with random values Gaussian ("normally") distributed with mean 0.0 and standard deviation 1.0
+	 */
+	public void randn(){
+		Random r = ThreadLocalRandom.current();
+		float[] data = new float[size()];
+		for(int i=0;i<data.length;i++){
+			data[i] = (float) r.nextGaussian();
+		}
+		copyFromArray(data, 0);
+	}
+	
+	/**
+	 * fill with 0 or 1 sampled using Bernoulli distribution with 0 <= p <= 1
+	 */
+	public void bernoulli(float p){
+		Random r = ThreadLocalRandom.current();
+		float[] data = new float[size()];
+		for(int i=0;i<data.length;i++){
+			data[i] = r.nextFloat() <= p ? 1.0f : 0.0f;
+		}
+		copyFromArray(data, 0);
+	}
+	
+	/**
+	 * check if other tensor has same dimensions
+	 */
+	public boolean sameDim(final Tensor other){
+		return Arrays.equals(dims, other.dims);
+	}
+	
+	/**
+	 * check if other tensor has these dimensions
+	 */
+	public boolean hasDim(final int... dims){
+		return Arrays.equals(this.dims, dims);
+	}
+	
+	/**
+	 * clone this tensor into other tensor, create new one if null or different number of elements
+	 * @param other the tensor to clone into
+	 * @return the cloned tensor
+	 */
+	public Tensor copyInto(final Tensor other){
+		Tensor res = other;
+		if(res == null){
+			res = new Tensor(dims);
+		} else if(res.size() != size()){
+			res.reshape(dims);
+		}
+		
+		if(res.isContiguous()){
+			copyToArray(res.storage.data, res.offset);
+		} else {
+			res.copyFromArray(get(), 0);
+		}
+		return res;
+	}
+	
+	/**
+	 * clone this tensor - creates a deep copy of this tensor
+	 */
+	public Tensor clone(){
+		return copyInto(null);
+	}
+	
+	/**
+	 * Return a subtensor narrowing dimension dim from index to index+size-1
+	 */
+	public Tensor narrow(final int dim, final int index, final int size){
+		if(index < 0 || size <= 0 || index + size > dims[dim]){
+			throw new IndexOutOfBoundsException("Cannot narrow dimension "+dim+" of size "+dims[dim]+" from "+index+" with size "+size);
+		}
+		
+		int[] d = dims.clone();
+		d[dim] = size;
+		return new Tensor(storage, offset + index*strides[dim], d, strides.clone());
+	}
+	
+	/**
+	 * Return a subtensor narrowing according to the ranges array. This is interpreted
+	 * as narrowing dimension 1 from ranges[0] with size ranges[1], narrowing dimension 2 from
+	 * ranges[2] with size ranges[3], etc.
+	 */
+	public Tensor narrow(final int... ranges){
+		Tensor n = this;
+		for(int i=0;i<ranges.length-1;i+=2){
+			n = n.narrow(i/2, ranges[i], ranges[i+1]); 
+		}
+		return n;
+	}
+	
+	/**
+	 * Return a slice at the given index in dimension dim, dimension dim will be removed
+	 */
+	public Tensor select(final int dim, final int index){
+		if(dims.length < 2){
+			throw new IllegalArgumentException("Cannot select on a vector");
+		}
+		if(index < 0 || index >= dims[dim]){
+			throw new IndexOutOfBoundsException("Cannot select index "+index+" of dimension "+dim+" with size "+dims[dim]);
+		}
+		
+		int[] d = new int[dims.length-1];
+		int[] s = new int[dims.length-1];
+		for(int i=0,j=0;i<dims.length;i++){
+			if(i != dim){
+				d[j] = dims[i];
+				s[j++] = strides[i];
+			}
+		}
+		return new Tensor(storage, offset + index*strides[dim], d, s);
+	}
+	
+	/**
+	 * calculate the transpose of the tensor
+	 */
+	public Tensor transpose(Tensor res, final int d1, final int d2){
+		int[] d = dims.clone();
+		int[] s = strides.clone();
+		d[d1] = dims[d2];
+		d[d2] = dims[d1];
+		s[d1] = strides[d2];
+		s[d2] = strides[d1];
+		return new Tensor(storage, offset, d, s);
+	}
+	
+	/**
+	 * return the diag vec of the tensor
+	 */
+	public Tensor diag(Tensor res){
+		if(dims.length == 1){
+			// create a diagonal matrix
+			int n = dims[0];
+			res = TensorOps.resize(res, n, n);
+			res.fill(0.0f);
+			for(int i=0;i<n;i++){
+				res.set(get(i), i, i);
+			}
+		} else {
+			int n = Math.min(dims[0], dims[1]);
+			res = TensorOps.resize(res, n);
+			for(int i=0;i<n;i++){
+				res.set(get(i, i), i);
+			}
+		}
+		return res;
+	}
+	
+	public boolean equals(Object other){
+		if(other == null)
+			return false;
+		else if(!(other instanceof Tensor))
+			return false;
+		else
+			return equals((Tensor) other);
+	}
+	
+	/**
+	 * return whether two tensors are equal (note: they have to be the same type to be equal!)
+	 * @param other object to compare to
+	 * @return true if the other object represents an equal tensor
+	 */
+	public boolean equals(Tensor other){
+		if(other == null)
+			return false;
+		else if(other == this)
+			return true;
+		else
+			return equals(other, 0.0f);
+	}
+	
+	/**
+	 * equals with threshold (note: they have to be the same type to be equal!)
+	 * @param other object to compare to
+	 * @return true if the other object represents an equal tensor with values within threshold range
+	 */
+	public boolean equals(Tensor other, float threshold){
+		if(!this.sameDim(other))
+			return false;
+		
+		float[] d1 = get();
+		float[] d2 = other.get();
+		for(int i=0;i<d1.length;i++){
+			if(!(Math.abs(d1[i]-d2[i]) <= threshold)){
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	@Override
+	public int hashCode(){
+		return System.identityHashCode(this);
+	}
+	
+	@Override
+	public String toString(){
+		StringBuilder b = new StringBuilder();
+		b.append(Arrays.toString(dims()));
+
+		float[] data = get();
+		if(data.length > 20){
+			b.append(Arrays.toString(Arrays.copyOf(data, 20)));
+			b.insert(b.length()-1, "...");
+		} else {
+			b.append(Arrays.toString(data));
+		}
+		b.append(" Min: ").append(TensorOps.min(this))
+		.append(" Mean: ").append(TensorOps.mean(this))
+		.append(" Max: ").append(TensorOps.max(this));
+		
+		return b.toString();
+	}
+	
+	/**
+	 * @return whether the elements of this tensor are laid out contiguously in its storage 
+	 */
+	boolean isContiguous(){
+		int s = 1;
+		for(int i=dims.length-1;i>=0;i--){
+			if(dims[i] != 1){
+				if(strides[i] != s)
+					return false;
+				s *= dims[i];
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * @return this tensor in case it is contiguous, otherwise a contiguous copy
+	 */
+	Tensor contiguous(){
+		if(isContiguous()){
+			return this;
+		}
+		return new Tensor(get(), dims);
+	}
+	
+	/**
+	 * @return a view with other dimensions on the same storage, or on a contiguous copy in case
+	 * this tensor is not contiguous
+	 */
+	Tensor view(int... d){
+		Tensor t = contiguous();
+		return new Tensor(t.storage, t.offset, d.clone(), strides(d));
+	}
+	
+	private int index(int[] d){
+		int index = offset;
+		for(int i=0;i<d.length;i++){
+			if(d[i] < 0 || d[i] >= dims[i]){
+				throw new IndexOutOfBoundsException("Index "+d[i]+" out of bounds for dimension "+i+" of size "+dims[i]);
+			}
+			index += d[i]*strides[i];
+		}
+		return index;
+	}
+	
+	private void copyToArray(float[] dst, int offset){
+		int size = size();
+		if(isContiguous()){
+			System.arraycopy(storage.data, this.offset, dst, offset, size);
+		} else {
+			copy(dims.length, storage.data, this.offset, strides, dst, offset, strides(dims), dims);
+		}
+	}
+	
+	private void copyFromArray(float[] src, int offset){
+		int size = size();
+		if(isContiguous()){
+			System.arraycopy(src, offset, storage.data, this.offset, size);
+		} else {
+			copy(dims.length, src, offset, strides(dims), storage.data, this.offset, strides, dims);
+		}
+	}
+	
+	// strided copy, with the last dimension in the inner loop
+	private static void copy(int n, float[] src, int srcOffset, int[] srcStrides, 
+			float[] dst, int dstOffset, int[] dstStrides, int[] dims){
+		int d = dims.length - n;
+		if(n == 1){
+			int ss = srcStrides[d];
+			int ds = dstStrides[d];
+			for(int i=0;i<dims[d];i++){
+				dst[dstOffset+i*ds] = src[srcOffset+i*ss];
+			}
+		} else {
+			for(int i=0;i<dims[d];i++){
+				copy(n-1, src, srcOffset+i*srcStrides[d], srcStrides, dst, dstOffset+i*dstStrides[d], dstStrides, dims);
+			}
+		}
+	}
+	
+	static int size(int[] dims){
+		int size = 1;
+		for(int d : dims){
+			size *= d;
+		}
+		return size;
+	}
+	
+	static int[] strides(int[] dims){
+		int[] strides = new int[dims.length];
+		int s = 1;
+		for(int i=dims.length-1;i>=0;i--){
+			strides[i] = s;
+			s *= dims[i];
+		}
+		return strides;
+	}
+	
+	/**
+	 * Storage of tensor data, shared between a tensor and all views on it
+	 */
+	static final class Storage {
+		
+		float[] data;
+		// number of tensors that are not yet released using this storage 
+		int refs = 0;
+		
+		Storage(float[] data){
+			this.data = data;
+		}
+	}
+}
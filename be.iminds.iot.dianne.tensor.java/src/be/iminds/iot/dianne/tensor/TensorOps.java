@@ -0,0 +1,871 @@
+/*******************************************************************************
+ * DIANNE  - Framework for distributed artificial neural networks
+ * Copyright (C) 2015  iMinds - IBCN - UGent
+ *
+ * This file is part of DIANNE.
+ *
+ * DIANNE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contributors:
+ *     Tim Verbelen, Steven Bohez
+ *******************************************************************************/
+package be.iminds.iot.dianne.tensor;
+
+/**
+ * Provides all supported Tensor operations. Each operation where a tensor is returned,
+ * also has the argument res, in which one could provide a tensor in which the result
+ * will be put and returned. This in order to save memory allocations. When res is null 
+ * a new Tensor object will be created.
+ * 
+ * @author tverbele
+ *
+ */
+public class TensorOps {
+
+	/**
+	 * Add the given value to all elements in the T.
+	 */
+	public static Tensor add(Tensor res, final Tensor tensor, final float value){
+		return Apply.map(res, tensor, (r, ro, a, ao, n) -> {
+			for(int i=0;i<n;i++){
+				r[ro+i] = a[ao+i] + value;
+			}
+		});
+	}
+
+	/**
+	 * Add tensor1 to tensor2 and put result into res. 
+	 * The number of elements must match, but sizes do not matter.
+	 */
+	public static Tensor add(Tensor res, final Tensor tensor1, final Tensor tensor2){
+		return Apply.map(res, tensor1, tensor2, (r, ro, a, ao, b, bo, n) -> {
+			for(int i=0;i<n;i++){
+				r[ro+i] = a[ao+i] + b[bo+i];
+			}
+		});
+	}
+
+	/**
+	 * Multiply elements of tensor2 by the scalar value and add it to tensor1. 
+	 * The number of elements must match, but sizes do not matter.
+	 */
+	public static Tensor add(Tensor res, final Tensor tensor1, final float value, final Tensor tensor2){
+		return Apply.map(res, tensor1, tensor2, (r, ro, a, ao, b, bo, n) -> {
+			for(int i=0;i<n;i++){
+				r[ro+i] = a[ao+i] + value*b[bo+i];
+			}
+		});
+	}
+
+	/**
+	 * Subract the given value of all elements in the T.
+	 */
+	public static Tensor sub(Tensor res, final Tensor tensor, final float value){
+		return add(res, tensor, -value);
+	}
+
+	/**
+	 * Subtract tensor2 from tensor1 and put result into res. 
+	 * The number of elements must match, but sizes do not matter.
+	 */
+	public static Tensor sub(Tensor res, final Tensor tensor1, final Tensor tensor2){
+		return Apply.map(res, tensor1, tensor2, (r, ro, a, ao, b, bo, n) -> {
+			for(int i=0;i<n;i++){
+				r[ro+i] = a[ao+i] - b[bo+i];
+			}
+		});
+	}
+
+	/**
+	 * Multiply elements of tensor2 by the scalar value and subtract it from tensor1. 
+	 * The number of elements must match, but sizes do not matter.
+	 */
+	public static Tensor sub(Tensor res, final Tensor tensor1, final float value, final Tensor tensor2){
+		return add(res, tensor1, -value, tensor2);
+	}
+
+	/**
+	 * Multiply all elements in the tensor by the given value.
+	 */
+	public static Tensor mul(Tensor res, final Tensor tensor, final float value){
+		return Apply.map(res, tensor, (r, ro, a, ao, n) -> {
+			for(int i=0;i<n;i++){
+				r[ro+i] = a[ao+i] * value;
+			}
+		});
+	}
+
+	/**
+	 * Element-wise multiplication of tensor1 by tensor2. 
+	 * The number of elements must match, but sizes do not matter.
+	 */
+	public static Tensor cmul(Tensor res, final Tensor tensor1, final Tensor tensor2){
+		return Apply.map(res, tensor1, tensor2, (r, ro, a, ao, b, bo, n) -> {
+			for(int i=0;i<n;i++){
+				r[ro+i] = a[ao+i] * b[bo+i];
+			}
+		});
+	}
+
+	/**
+	 * Elementwise multiplication of tensor2 by tensor3, multiply by value and add to tensor1.
+	 * The number of elements must match, but sizes do not matter.
+	 */
+	public static Tensor addcmul(Tensor res, final Tensor tensor1, final float value, final Tensor tensor2, final Tensor tensor3){
+		return Apply.map(res, tensor1, tensor2, tensor3, (r, ro, a, ao, b, bo, c, co, n) -> {
+			for(int i=0;i<n;i++){
+				r[ro+i] = a[ao+i] + value * b[bo+i] * c[co+i];
+			}
+		});
+	}
+
+	/**
+	 * Divide all elements in the T by the given value.
+	 */
+	public static Tensor div(Tensor res, final Tensor tensor1, final float value){
+		return Apply.map(res, tensor1, (r, ro, a, ao, n) -> {
+			for(int i=0;i<n;i++){
+				r[ro+i] = a[ao+i] / value;
+			}
+		});
+	}
+
+	/**
+	 * Element-wise division of tensor1 by tensor2. 
+	 * The number of elements must match, but sizes do not matter.
+	 */
+	public static Tensor cdiv(Tensor res, final Tensor tensor1, final Tensor tensor2){
+		return Apply.map(res, tensor1, tensor2, (r, ro, a, ao, b, bo, n) -> {
+			for(int i=0;i<n;i++){
+				r[ro+i] = a[ao+i] / b[bo+i];
+			}
+		});
+	}
+
+	/**
+	 * Elementwise division of tensor2 by tensor3, multiply by value and add to tensor1.
+	 * The number of elements must match, but sizes do not matter.
+	 */
+	public static Tensor addcdiv(Tensor res, final Tensor tensor1, final float value, final Tensor tensor2, final Tensor tensor3){
+		return Apply.map(res, tensor1, tensor2, tensor3, (r, ro, a, ao, b, bo, c, co, n) -> {
+			for(int i=0;i<n;i++){
+				r[ro+i] = a[ao+i] + value * b[bo+i] / c[co+i];
+			}
+		});
+	}
+
+	/**
+	 * Performs the dot product between vec1 and vec2. 
+	 * The number of elements must match: both Ts are seen as a 1D vector.
+	 */
+	public static float dot(final Tensor vec1, final Tensor vec2){
+		Apply.check(vec1, vec2);
+		Tensor v1 = vec1.contiguous();
+		Tensor v2 = vec2.contiguous();
+		return Blas.dot(v1.size(), v1.storage.data, v1.offset, v2.storage.data, v2.offset);
+	}
+
+	/**
+	 * Performs the matrix product between vec1 and vec2
+	 * @param res placeholder
+	 * @param vec1 vector of size m
+	 * @param vec2 vector of size n
+	 * @return resulting matrix of size mxn
+	 */
+	public static Tensor vv(Tensor res, final Tensor vec1, final Tensor vec2){
+		res = resize(res, vec1.size(), vec2.size());
+		res.fill(0.0f);
+		return ger(res, 1.0f, vec1, vec2);
+	}
+
+	/**
+	 * Matrix vector product of mat and vec. 
+	 * Sizes must respect the matrix-multiplication operation: 
+	 * if mat is a n x m matrix, vec must be vector of size m and res must be a vector of size n.
+	 */
+	public static Tensor mv(Tensor res, final Tensor mat, final Tensor vec){
+		checkMatrix(mat);
+		res = resize(res, mat.dims[0]);
+		return gemv(res, 0.0f, mat, false, vec);
+	}
+
+	/**
+	 * Matrix vector product of transposed mat and vec. 
+	 * Sizes must respect the matrix-multiplication operation: 
+	 * if mat is a m x n matrix, vec must be vector of size m and res must be a vector of size n.
+	 */
+	public static Tensor tmv(Tensor res, final Tensor mat, final Tensor vec){
+		checkMatrix(mat);
+		res = resize(res, mat.dims[1]);
+		return gemv(res, 0.0f, mat, true, vec);
+	}
+
+	/**
+	 * Matrix matrix product of matensor1 and matensor2. If matensor1 is a n x m matrix, matensor2 a m x p matrix, 
+	 * res must be a n x p matrix.
+	 */
+	public static Tensor mm(Tensor res, final Tensor mat1, final Tensor mat2){
+		checkMatrix(mat1);
+		checkMatrix(mat2);
+		res = resize(res, mat1.dims[0], mat2.dims[1]);
+		return gemm(res, 0.0f, mat1, false, mat2);
+	}
+
+	/**
+	 * Matrix matrix product of transposed matensor1 and matensor2. If matensor1 is a m x n matrix, matensor2 a m x p matrix, 
+	 * res must be a n x p matrix.
+	 */
+	public static Tensor tmm(Tensor res, final Tensor mat1, final Tensor mat2){
+		checkMatrix(mat1);
+		checkMatrix(mat2);
+		res = resize(res, mat1.dims[1], mat2.dims[1]);
+		return gemm(res, 0.0f, mat1, true, mat2);
+	}
+
+	/**
+	 * Performs the matrix product between vec1 and vec2 and adds this to mat
+	 * @param res placeholder
+	 * @param mat mxn matrix to add to result
+	 * @param vec1 vector of size m
+	 * @param vec2 vector of size n
+	 * @return resulting matrix of size mxn
+	 */
+	public static Tensor addvv(Tensor res, final Tensor mat, final Tensor vec1, final Tensor vec2){
+		res = copyAs(res, mat);
+		return ger(res, 1.0f, vec1, vec2);
+	}
+
+	/**
+	 * Performs a matrix-vector multiplication between mat (2D tensor) and vec (1D tensor) 
+	 * and add it to vec1. In other words, res = vec1 + mat*vec2
+	 */
+	public static Tensor addmv(Tensor res, final Tensor vec1, final Tensor mat, final Tensor vec2){
+		checkMatrix(mat);
+		res = copyAs(res, vec1);
+		return gemv(res, 1.0f, mat, false, vec2);
+	}
+
+	/**
+	 * Performs a matrix-vector multiplication between matensor1 (2D tensor) and matensor2 (2D tensor) 
+	 * and add it to mat. In other words, res = mat + matensor1*matensor2
+	 */
+	public static Tensor addmm(Tensor res, final Tensor mat, final Tensor mat1, final Tensor mat2){
+		checkMatrix(mat1);
+		checkMatrix(mat2);
+		res = copyAs(res, mat);
+		return gemm(res, 1.0f, mat1, false, mat2);
+	}
+
+	/**
+	 * Calculates element-wise power function
+	 */
+	public static Tensor pow(Tensor res, final Tensor tensor, final float value){
+		return Apply.map(res, tensor, (r, ro, a, ao, n) -> {
+			for(int i=0;i<n;i++){
+				r[ro+i] = (float) Math.pow(a[ao+i], value);
+			}
+		});
+	}
+
+	/**
+	 * Calculates element-wise exp function
+	 */
+	public static Tensor exp(Tensor res, final Tensor tensor){
+		return Apply.map(res, tensor, (r, ro, a, ao, n) -> {
+			for(int i=0;i<n;i++){
+				r[ro+i] = (float) Math.exp(a[ao+i]);
+			}
+		});
+	}
+
+	/**
+	 * Calculates element-wise log function
+	 */
+	public static Tensor log(Tensor res, final Tensor tensor){
+		return Apply.map(res, tensor, (r, ro, a, ao, n) -> {
+			for(int i=0;i<n;i++){
+				r[ro+i] = (float) Math.log(a[ao+i]);
+			}
+		});
+	}
+	
+	/**
+	 * Calculate sqrt for each element
+	 */
+	public static Tensor sqrt(Tensor res, final Tensor tensor){
+		return Apply.map(res, tensor, (r, ro, a, ao, n) -> {
+			for(int i=0;i<n;i++){
+				r[ro+i] = (float) Math.sqrt(a[ao+i]);
+			}
+		});
+	}
+	
+	/**
+	 * Calculate element-wise absolute value
+	 */
+	public static Tensor abs(Tensor res, final Tensor tensor){
+		return Apply.map(res, tensor, (r, ro, a, ao, n) -> {
+			for(int i=0;i<n;i++){
+				r[ro+i] = Math.abs(a[ao+i]);
+			}
+		});
+	}
+	
+	/**
+	 * Calculate element-wise sign
+	 */
+	public static Tensor sign(Tensor res, final Tensor tensor){
+		return Apply.map(res, tensor, (r, ro, a, ao, n) -> {
+			for(int i=0;i<n;i++){
+				float v = a[ao+i];
+				r[ro+i] = v > 0 ? 1.0f : v < 0 ? -1.0f : 0.0f;
+			}
+		});
+	}
+	
+	/**
+	 * Rounds the elements to the nearest integer
+	 */
+	public static Tensor round(Tensor res, final Tensor tensor){
+		return Apply.map(res, tensor, (r, ro, a, ao, n) -> {
+			for(int i=0;i<n;i++){
+				// round half away from zero
+				float v = a[ao+i];
+				r[ro+i] = v < 0 ? (float) -Math.floor(-v + 0.5) : (float) Math.floor(v + 0.5);
+			}
+		});
+	}
+	
+	/**
+	 * Return the sum of all elements
+	 */
+	public static float sum(final Tensor tensor){
+		Tensor t = tensor.contiguous();
+		float[] data = t.storage.data;
+		int n = t.size();
+		double sum = 0;
+		for(int i=0;i<n;i++){
+			sum += data[t.offset+i];
+		}
+		return (float) sum;
+	}
+	
+	/**
+	 * Return the max of all elements
+	 */
+	public static float max(final Tensor tensor){
+		Tensor t = tensor.contiguous();
+		float[] data = t.storage.data;
+		int n = t.size();
+		float max = -Float.MAX_VALUE;
+		for(int i=0;i<n;i++){
+			float v = data[t.offset+i];
+			if(v > max || Float.isNaN(v)){
+				max = v;
+			}
+		}
+		return max;
+	}
+	
+	/**
+	 * Return the min of all elements
+	 */
+	public static float min(final Tensor tensor){
+		Tensor t = tensor.contiguous();
+		float[] data = t.storage.data;
+		int n = t.size();
+		float min = Float.MAX_VALUE;
+		for(int i=0;i<n;i++){
+			float v = data[t.offset+i];
+			if(v < min || Float.isNaN(v)){
+				min = v;
+			}
+		}
+		return min;
+	}
+	
+	/**
+	 * Return the mean of all elements
+	 */
+	public static float mean(final Tensor tensor){
+		return sum(tensor)/tensor.size();
+	}
+	
+	/**
+	 * Return index of the max element (treats T as 1 dim vector)
+	 */
+	public static int argmax(final Tensor tensor){
+		Tensor t = tensor.contiguous();
+		float[] data = t.storage.data;
+		int n = t.size();
+		int index = 0;
+		float max = data[t.offset];
+		for(int i=1;i<n;i++){
+			if(max < data[t.offset+i]){
+				max = data[t.offset+i];
+				index = i;
+			}
+		}
+		return index;
+	}
+	
+	/**
+	 * Return index of the min element (treats T as 1 dim vector)
+	 */
+	public static int argmin(final Tensor tensor){
+		Tensor t = tensor.contiguous();
+		float[] data = t.storage.data;
+		int n = t.size();
+		int index = 0;
+		float min = data[t.offset];
+		for(int i=1;i<n;i++){
+			if(min > data[t.offset+i]){
+				min = data[t.offset+i];
+				index = i;
+			}
+		}
+		return index;
+	}
+
+	/**
+	 * Return the max elements along dimension dim, the result has the same dimensions
+	 * as tensor with size 1 in dim
+	 */
+	public static Tensor max(Tensor res, final Tensor tensor, final int dim){
+		return maxDim(res, tensor, dim, false);
+	}
+	
+	/**
+	 * Return the indices of the max elements along dimension dim, the result has the same 
+	 * dimensions as tensor with size 1 in dim
+	 */
+	public static Tensor argmax(Tensor res, final Tensor tensor, final int dim){
+		return maxDim(res, tensor, dim, true);
+	}
+	
+	/**
+	 * Gather the elements of tensor along dimension dim at the positions given by index, i.e.
+	 * for a 2D tensor and dim 1: res[i][j] = tensor[i][index[i][j]]
+	 * @param res result tensor or null to create a new tensor, gets the dimensions of index
+	 * @param tensor tensor to gather elements from
+	 * @param dim dimension to index
+	 * @param index indices, same dimensions as tensor except for dim
+	 * @return resulting tensor
+	 */
+	public static Tensor gather(Tensor res, final Tensor tensor, final int dim, final Tensor index){
+		checkIndex(tensor, dim, index);
+		res = resizeAs(res, index);
+		final Tensor r = Apply.target(res);
+		final Tensor t = tensor.contiguous();
+		final Tensor idx = index.contiguous();
+		
+		final int outer = outer(t.dims, dim);
+		final int n = t.dims[dim];
+		final int inner = inner(t.dims, dim);
+		final int m = idx.dims[dim];
+		
+		final float[] rd = r.storage.data;
+		final float[] td = t.storage.data;
+		final float[] id = idx.storage.data;
+		for(int o=0;o<outer;o++){
+			for(int j=0;j<m;j++){
+				int x = (o*m+j)*inner;
+				for(int i=0;i<inner;i++){
+					int k = (int)id[idx.offset+x+i];
+					rd[r.offset+x+i] = td[t.offset+(o*n+k)*inner+i];
+				}
+			}
+		}
+		return Apply.commit(res, r);
+	}
+	
+	/**
+	 * Scatter the elements of src into res along dimension dim at the positions given by index, i.e.
+	 * for a 2D tensor and dim 1: res[i][index[i][j]] = src[i][j]
+	 * @param res tensor to write elements into
+	 * @param dim dimension to index
+	 * @param index indices, same dimensions as src
+	 * @param src tensor with elements to scatter
+	 * @return res
+	 */
+	public static Tensor scatter(Tensor res, final int dim, final Tensor index, final Tensor src){
+		checkIndex(res, dim, index);
+		if(!index.sameDim(src)){
+			throw new IllegalArgumentException("Source with dimensions "+java.util.Arrays.toString(src.dims)
+				+" should have the dimensions of the index "+java.util.Arrays.toString(index.dims));
+		}
+		final Tensor r = res.contiguous();
+		final Tensor s = src.contiguous();
+		final Tensor idx = index.contiguous();
+		
+		final int outer = outer(r.dims, dim);
+		final int n = r.dims[dim];
+		final int inner = inner(r.dims, dim);
+		final int m = idx.dims[dim];
+		
+		final float[] rd = r.storage.data;
+		final float[] sd = s.storage.data;
+		final float[] id = idx.storage.data;
+		for(int o=0;o<outer;o++){
+			for(int j=0;j<m;j++){
+				int x = (o*m+j)*inner;
+				for(int i=0;i<inner;i++){
+					int k = (int)id[idx.offset+x+i];
+					rd[r.offset+(o*n+k)*inner+i] = sd[s.offset+x+i];
+				}
+			}
+		}
+		return Apply.commit(res, r);
+	}
+	
+	/**
+	 * Select elements of tensor1 where mask is non-zero and elements of tensor2 otherwise
+	 * @param res result tensor or null to create a new tensor.
+	 * @param mask mask tensor
+	 * @param tensor1 elements to take where the mask is set
+	 * @param tensor2 elements to take where the mask is zero
+	 * @return resulting tensor
+	 */
+	public static Tensor where(Tensor res, final Tensor mask, final Tensor tensor1, final Tensor tensor2){
+		return Apply.map(res, tensor1, mask, tensor2, (r, ro, a, ao, m, mo, b, bo, n) -> {
+			for(int i=0;i<n;i++){
+				r[ro+i] = m[mo+i] != 0 ? a[ao+i] : b[bo+i];
+			}
+		});
+	}
+	
+	/**
+	 * Scale (bilinear interpollate) in 2 dimensions
+	 * In case of 3D tensor it will scale all 'channels'
+	 */
+	public static Tensor scale2D(Tensor res, final Tensor t, final int... dims){
+		if(dims.length == 2){
+			res = resize(res, 1, dims[0], dims[1]);
+		} else {
+			res = resize(res, dims[0], dims[1], dims[2]);
+		}
+		
+		Tensor r = Apply.target(res);
+		scale2D(r, t);
+		Apply.commit(res, r);
+		
+		if(dims.length == 2){
+			res.reshape(dims[0], dims[1]);
+		}
+		return res;
+	}
+
+	/**
+	 * First crop to not stretch the image before scaling
+	 */
+	public static Tensor frame(Tensor res, final Tensor t, final int... dims){
+		int batches = t.dim() == dims.length + 1 ? t.dims[0] : 1;
+		
+		// make sure output is 4d [batch, channel, y, x]
+		if(dims.length == 2){
+			res = resize(res, batches, 1, dims[0], dims[1]);
+		} else {
+			res = resize(res, batches, dims[0], dims[1], dims[2]);
+		}
+		
+		boolean correct = true;
+		for(int i=0;i<dims.length;i++){
+			if(t.dims[batches == 1 ? i : i+1] != dims[i])
+				correct = false;
+		}
+		
+		if(correct){
+			// input has correct size, just copy to output
+			t.copyInto(res);
+		} else {
+			// view the input as 4d as well
+			Tensor in;
+			if(t.dim() == 2){
+				in = t.view(1, 1, t.dims[0], t.dims[1]);
+			} else if(t.dim() == 3){
+				if(batches == 1){
+					in = t.view(1, t.dims[0], t.dims[1], t.dims[2]);
+				} else {
+					in = t.view(t.dims[0], 1, t.dims[1], t.dims[2]);
+				}
+			} else {
+				in = t;
+			}
+			
+			// narrow to the aspect ratio of the output
+			float sx = (float)in.dims[3]/res.dims[3];
+			float sy = (float)in.dims[2]/res.dims[2];
+			float s = sx < sy ? sx : sy;
+			
+			int size = (int)(res.dims[2]*s);
+			Tensor narrow = in.narrow(2, (in.dims[2]-size)/2, size);
+			size = (int)(res.dims[3]*s);
+			narrow = narrow.narrow(3, (in.dims[3]-size)/2, size);
+			
+			Tensor r = Apply.target(res);
+			for(int b=0;b<batches;b++){
+				scale2D(r.select(0, b), narrow.select(0, b));
+			}
+			Apply.commit(res, r);
+		}
+		
+		// resize to correct size
+		if(dims.length == 2){
+			if(batches == 1){
+				res.reshape(dims[0], dims[1]);
+			} else {
+				res.reshape(batches, dims[0], dims[1]);
+			}
+		} else if(batches == 1){
+			res.reshape(dims[0], dims[1], dims[2]);
+		}
+		return res;
+	}
+	
+	/**
+	 * Clamp all elements in the Tensor into the range [minvalue, maxvalue].
+	 * @param res result tensor or null to create a new tensor.
+	 * @param tensor tensor to clamp
+	 * @param minvalue the minimum value allowed in tensor
+	 * @param minvalue the maximum value allowed in tensor
+	 * @return resulting tensor
+	 */
+	public static Tensor clamp(Tensor res, final Tensor tensor, final float minvalue, final float maxvalue){
+		return Apply.map(res, tensor, (r, ro, a, ao, n) -> {
+			for(int i=0;i<n;i++){
+				float v = a[ao+i];
+				r[ro+i] = v < minvalue ? minvalue : v > maxvalue ? maxvalue : v;
+			}
+		});
+	}
+	
+	
+	static Tensor resize(Tensor res, int... dims){
+		if(res == null){
+			return new Tensor(dims);
+		}
+		res.reshape(dims);
+		return res;
+	}
+	
+	static Tensor resizeAs(Tensor res, Tensor t){
+		return resize(res, t.dims);
+	}
+	
+	static void fill(Tensor res, final float value){
+		Apply.map(res, res, (r, ro, a, ao, n) -> {
+			for(int i=0;i<n;i++){
+				r[ro+i] = value;
+			}
+		});
+	}
+	
+	// res resized as t with the values of t
+	private static Tensor copyAs(Tensor res, Tensor t){
+		res = resizeAs(res, t);
+		if(res != t){
+			t.copyInto(res);
+		}
+		return res;
+	}
+	
+	
+	private static Tensor maxDim(Tensor res, final Tensor tensor, final int dim, final boolean index){
+		int[] dims = tensor.dims.clone();
+		dims[dim] = 1;
+		res = resize(res, dims);
+		final Tensor r = Apply.target(res);
+		final Tensor t = tensor.contiguous();
+		
+		final int outer = outer(t.dims, dim);
+		final int n = t.dims[dim];
+		final int inner = inner(t.dims, dim);
+		
+		final float[] rd = r.storage.data;
+		final float[] td = t.storage.data;
+		Parallel.forRange(outer, outer*n*inner, (from, to) -> {
+			for(int o=from;o<to;o++){
+				for(int i=0;i<inner;i++){
+					int p = t.offset+o*n*inner+i;
+					float max = td[p];
+					int arg = 0;
+					for(int k=1;k<n;k++){
+						if(max < td[p+k*inner]){
+							max = td[p+k*inner];
+							arg = k;
+						}
+					}
+					rd[r.offset+o*inner+i] = index ? arg : max;
+				}
+			}
+		});
+		return Apply.commit(res, r);
+	}
+	
+	private static int outer(int[] dims, int dim){
+		int outer = 1;
+		for(int i=0;i<dim;i++){
+			outer *= dims[i];
+		}
+		return outer;
+	}
+	
+	private static int inner(int[] dims, int dim){
+		int inner = 1;
+		for(int i=dim+1;i<dims.length;i++){
+			inner *= dims[i];
+		}
+		return inner;
+	}
+
+	/**
+	 * Check that index has the dimensions of t except in dimension dim, and only holds indices into dimension dim of t
+	 */
+	private static void checkIndex(Tensor t, int dim, Tensor index){
+		if(dim < 0 || dim >= t.dims.length){
+			throw new IllegalArgumentException("Dimension "+dim+" out of range for a tensor with dimensions "+java.util.Arrays.toString(t.dims));
+		}
+		if(index.dims.length != t.dims.length){
+			throw new IllegalArgumentException("Index with dimensions "+java.util.Arrays.toString(index.dims)
+				+" should have as many dimensions as "+java.util.Arrays.toString(t.dims));
+		}
+		for(int i=0;i<t.dims.length;i++){
+			if(i != dim && index.dims[i] != t.dims[i]){
+				throw new IllegalArgumentException("Index with dimensions "+java.util.Arrays.toString(index.dims)
+					+" should match "+java.util.Arrays.toString(t.dims)+" except in dimension "+dim);
+			}
+		}
+		
+		final int n = t.dims[dim];
+		final Tensor idx = index.contiguous();
+		final float[] id = idx.storage.data;
+		final int size = idx.size();
+		for(int i=0;i<size;i++){
+			float k = id[idx.offset+i];
+			if(!(k >= 0 && k < n)){
+				throw new IllegalArgumentException("Index "+k+" out of range [0, "+n+") in dimension "+dim);
+			}
+		}
+	}
+	
+	private static void checkMatrix(Tensor mat){
+		if(mat.dim() != 2){
+			throw new IllegalArgumentException("Expected a matrix, got a tensor with dimensions "+java.util.Arrays.toString(mat.dims));
+		}
+	}
+	
+	// res = beta*res + mat*vec, with mat optionally transposed
+	private static Tensor gemv(Tensor res, float beta, Tensor mat, boolean transpose, Tensor vec){
+		int m = transpose ? mat.dims[1] : mat.dims[0];
+		int n = transpose ? mat.dims[0] : mat.dims[1];
+		if(vec.size() != n || res.size() != m){
+			throw new IllegalArgumentException("Size mismatch for matrix vector product: "+mat.dims[0]+"x"+mat.dims[1]
+					+(transpose ? "^T" : "")+" * "+vec.size()+" = "+res.size());
+		}
+		
+		Tensor r = aliases(res, mat, vec) ? new Tensor(res.get(), res.dims) : Apply.target(res);
+		Tensor v = vec.contiguous();
+		Blas.gemv(m, n, 1.0f, mat.storage.data, mat.offset, 
+				transpose ? mat.strides[1] : mat.strides[0], transpose ? mat.strides[0] : mat.strides[1], 
+				v.storage.data, v.offset, 1, beta, r.storage.data, r.offset);
+		return Apply.commit(res, r);
+	}
+	
+	// res = beta*res + mat1*mat2, with mat1 optionally transposed
+	private static Tensor gemm(Tensor res, float beta, Tensor mat1, boolean transpose, Tensor mat2){
+		int m = transpose ? mat1.dims[1] : mat1.dims[0];
+		int k = transpose ? mat1.dims[0] : mat1.dims[1];
+		int n = mat2.dims[1];
+		if(mat2.dims[0] != k || res.dim() != 2 || res.dims[0] != m || res.dims[1] != n){
+			throw new IllegalArgumentException("Size mismatch for matrix product: "+mat1.dims[0]+"x"+mat1.dims[1]
+					+(transpose ? "^T" : "")+" * "+mat2.dims[0]+"x"+mat2.dims[1]+" = "+java.util.Arrays.toString(res.dims));
+		}
+		
+		Tensor r = aliases(res, mat1, mat2) ? new Tensor(res.get(), res.dims) : Apply.target(res);
+		Blas.gemm(m, n, k, 1.0f, 
+				mat1.storage.data, mat1.offset, transpose ? mat1.strides[1] : mat1.strides[0], transpose ? mat1.strides[0] : mat1.strides[1],
+				mat2.storage.data, mat2.offset, mat2.strides[0], mat2.strides[1],
+				beta, r.storage.data, r.offset, n);
+		return Apply.commit(res, r);
+	}
+	
+	// res = res + alpha * vec1 * vec2^T
+	private static Tensor ger(Tensor res, float alpha, Tensor vec1, Tensor vec2){
+		int m = vec1.size();
+		int n = vec2.size();
+		if(res.dim() != 2 || res.dims[0] != m || res.dims[1] != n){
+			throw new IllegalArgumentException("Size mismatch for outer product: "+m+" x "+n+" = "+java.util.Arrays.toString(res.dims));
+		}
+		
+		Tensor r = aliases(res, vec1, vec2) ? new Tensor(res.get(), res.dims) : Apply.target(res);
+		Tensor v1 = vec1.contiguous();
+		Tensor v2 = vec2.contiguous();
+		Blas.ger(m, n, alpha, v1.storage.data, v1.offset, 1, v2.storage.data, v2.offset, 1, r.storage.data, r.offset, n);
+		return Apply.commit(res, r);
+	}
+	
+	private static boolean aliases(Tensor res, Tensor t1, Tensor t2){
+		return res.storage == t1.storage || res.storage == t2.storage;
+	}
+	
+	// bilinear interpolation of the last two dimensions of t into contiguous r
+	private static void scale2D(Tensor r, Tensor t){
+		int yIn = t.dims[t.dim()-2];
+		int xIn = t.dims[t.dim()-1];
+		
+		int yOut = r.dims[r.dim()-2];
+		int xOut = r.dims[r.dim()-1];
+		
+		float sy = yOut > 1 ? (yIn-1)/(float)(yOut-1) : 0;
+		float sx = xOut > 1 ? (xIn-1)/(float)(xOut-1) : 0;
+		
+		int channels = r.dims[r.dim()-3];
+		int channelsIn = t.dim() == 3 ? t.dims[0] : 1;
+		
+		int strideC = t.dim() == 3 ? t.strides[0] : 0;
+		int strideY = t.strides[t.dim()-2];
+		int strideX = t.strides[t.dim()-1];
+		
+		float[] src = t.storage.data;
+		float[] dst = r.storage.data;
+		
+		for(int c=0;c<channels;c++){
+			// replicate the first channel in case the input has less channels
+			int src0 = t.offset + (c < channelsIn ? c : 0)*strideC;
+			int dst0 = r.offset + c*xOut*yOut;
+			for(int y=0;y<yOut;y++){
+				float yy = y*sy;
+				int y1 = (int)yy;
+				int y2 = y1+1 == yIn ? y1 : y1+1;
+				float dy = yy-y1;
+				for(int x=0;x<xOut;x++){
+					float xx = x*sx;
+					int x1 = (int)xx;
+					int x2 = x1+1 == xIn ? x1 : x1+1;
+					float dx = xx-x1;
+					
+					float v1 = src[src0 + y1*strideY + x1*strideX];
+					float v2 = src[src0 + y1*strideY + x2*strideX];
+					float v3 = src[src0 + y2*strideY + x1*strideX];
+					float v4 = src[src0 + y2*strideY + x2*strideX];
+					
+					dst[dst0 + y*xOut + x] = v1*(1-dy)*(1-dx)
+							+ v2*(1-dy)*dx
+							+ v3*dy*(1-dx)
+							+ v4*dx*dy;
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,199 @@
+/*******************************************************************************
+ * DIANNE  - Framework for distributed artificial neural networks
+ * Copyright (C) 2015  iMinds - IBCN - UGent
+ *
+ * This file is part of DIANNE.
+ *
+ * DIANNE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contributors:
+ *     Tim Verbelen, Steven Bohez
+ *******************************************************************************/
+package be.iminds.iot.dianne.tensor;
+
+import java.lang.ref.PhantomReference;
+import java.lang.ref.ReferenceQueue;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pool of tensor storage arrays.
+ *
+ * Once all tensors sharing a storage are released (either explicitly using Tensor.release() 
+ * or when they are garbage collected), the storage array is kept in buckets per number of 
+ * elements, and is reused for new Tensors of the same size. This relieves the garbage 
+ * collector from the large short-lived arrays allocated during training.
+ *
+ * The maximum amount of memory kept in the pool can be configured using the
+ * be.iminds.iot.dianne.tensor.pool system property (in bytes, 0 disables pooling).
+ *
+ * @author tverbele
+ *
+ */
+public final class TensorPool {
+
+	private static final long MAX_POOLED = Long.getLong("be.iminds.iot.dianne.tensor.pool", 256L*1024*1024);
+
+	// pooled storage arrays per number of elements
+	private static final Map<Integer, ArrayDeque<float[]>> buckets = new HashMap<>();
+
+	private static final AtomicLong hits = new AtomicLong();
+	private static final AtomicLong misses = new AtomicLong();
+	private static final AtomicLong outstanding = new AtomicLong();
+	private static long pooled = 0;
+
+	// reclaim storage of tensors that are garbage collected without being released
+	private static final ReferenceQueue<Tensor> queue = new ReferenceQueue<>();
+	private static final Set<TensorReference> references = ConcurrentHashMap.newKeySet();
+
+	static {
+		Thread reclaimer = new Thread(() -> {
+			while(true){
+				try {
+					TensorReference r = (TensorReference) queue.remove();
+					r.release();
+				} catch(InterruptedException e){
+					return;
+				} catch(Throwable t){
+					t.printStackTrace();
+				}
+			}
+		}, "Dianne Tensor Reclaimer");
+		reclaimer.setDaemon(true);
+		reclaimer.start();
+	}
+
+	private TensorPool(){}
+
+	/**
+	 * @return number of tensor allocations served from the pool
+	 */
+	public static long getHits(){
+		return hits.get();
+	}
+
+	/**
+	 * @return number of tensor allocations that required a new storage array
+	 */
+	public static long getMisses(){
+		return misses.get();
+	}
+
+	/**
+	 * @return number of bytes allocated for tensors that are not yet released
+	 */
+	public static long getBytesOutstanding(){
+		return outstanding.get();
+	}
+
+	/**
+	 * @return number of bytes currently kept in the pool for reuse
+	 */
+	public static long getBytesPooled(){
+		synchronized(buckets){
+			return pooled;
+		}
+	}
+
+	/**
+	 * Drop all storage arrays kept in the pool
+	 */
+	public static void clear(){
+		synchronized(buckets){
+			buckets.clear();
+			pooled = 0;
+		}
+	}
+
+	/**
+	 * Take a storage array of size elements from the pool, or allocate a new one
+	 */
+	static float[] acquire(int size){
+		outstanding.addAndGet(4L*size);
+
+		synchronized(buckets){
+			ArrayDeque<float[]> bucket = buckets.get(size);
+			if(bucket != null && !bucket.isEmpty()){
+				pooled -= 4L*size;
+				hits.incrementAndGet();
+				return bucket.pop();
+			}
+		}
+
+		misses.incrementAndGet();
+		return new float[size];
+	}
+
+	/**
+	 * Return a storage array to the pool in case it is no longer used by any tensor
+	 */
+	static void release(Tensor.Storage storage, long bytes){
+		outstanding.addAndGet(-bytes);
+
+		float[] data;
+		synchronized(storage){
+			if(--storage.refs > 0){
+				return;
+			}
+			data = storage.data;
+		}
+
+		int size = data.length;
+		if(size > 0){
+			synchronized(buckets){
+				if(pooled + 4L*size <= MAX_POOLED){
+					ArrayDeque<float[]> bucket = buckets.get(size);
+					if(bucket == null){
+						bucket = new ArrayDeque<>();
+						buckets.put(size, bucket);
+					}
+					bucket.push(data);
+					pooled += 4L*size;
+				}
+			}
+		}
+	}
+
+	static TensorReference track(Tensor t, long bytes){
+		TensorReference r = new TensorReference(t, bytes);
+		references.add(r);
+		return r;
+	}
+
+	static final class TensorReference extends PhantomReference<Tensor> {
+
+		private final Tensor.Storage storage;
+		private final long bytes;
+
+		TensorReference(Tensor t, long bytes){
+			super(t, queue);
+			this.storage = t.storage;
+			this.bytes = bytes;
+			synchronized(storage){
+				storage.refs++;
+			}
+		}
+
+		void release(){
+			if(references.remove(this)){
+				clear();
+				TensorPool.release(storage, bytes);
+			}
+		}
+	}
+}
@@ -86,3 +86,435 @@ void THCudaTensor_seluGradIn(THCState *state, THCudaTensor *input, THCudaTensor
   THCudaTensor_resizeAs(state, gradInput, output);
   THC_pointwiseApply3(state, gradInput, output, gradOutput, SELUupdateGradInput_functor(alpha, lambda));
 }
+
+
+struct AdamUpdate_functor
+{
+  const float beta1_;
+  const float beta2_;
+  const float alpha_;
+  const float epsilon_;
+
+  AdamUpdate_functor(float beta1, float beta2, float alpha, float epsilon)
+    : beta1_(beta1), beta2_(beta2), alpha_(alpha), epsilon_(epsilon)
+  {}
+
+  __device__ void operator()(float *delta, float *mt, float *vt) const
+  {
+    float g = *delta;
+    *mt = beta1_ * (*mt) + (1 - beta1_) * g;
+    *vt = beta2_ * (*vt) + (1 - beta2_) * g * g;
+    *delta = -alpha_ * (*mt) / (sqrtf(*vt) + epsilon_);
+  }
+};
+
+
+struct RMSpropUpdate_functor
+{
+  const float learningRate_;
+  const float decayRate_;
+  const float epsilon_;
+
+  RMSpropUpdate_functor(float learningRate, float decayRate, float epsilon)
+    : learningRate_(learningRate), decayRate_(decayRate), epsilon_(epsilon)
+  {}
+
+  __device__ void operator()(float *delta, float *meanSquared) const
+  {
+    float g = *delta;
+    *meanSquared = decayRate_ * (*meanSquared) + (1 - decayRate_) * g * g;
+    *delta = -learningRate_ * g / sqrtf(*meanSquared + epsilon_);
+  }
+};
+
+
+struct AdagradUpdate_functor
+{
+  const float learningRate_;
+  const float epsilon_;
+
+  AdagradUpdate_functor(float learningRate, float epsilon)
+    : learningRate_(learningRate), epsilon_(epsilon)
+  {}
+
+  __device__ void operator()(float *delta, float *accumulatedSquared) const
+  {
+    float g = *delta;
+    *accumulatedSquared += g * g;
+    *delta = -learningRate_ * g / sqrtf(*accumulatedSquared + epsilon_);
+  }
+};
+
+
+struct AdadeltaUpdate_functor
+{
+  const float decayRate_;
+  const float epsilon_;
+
+  AdadeltaUpdate_functor(float decayRate, float epsilon)
+    : decayRate_(decayRate), epsilon_(epsilon)
+  {}
+
+  __device__ void operator()(float *delta, float *meanSquaredGradient, float *meanSquaredDelta) const
+  {
+    float g = *delta;
+    *meanSquaredGradient = decayRate_ * (*meanSquaredGradient) + (1 - decayRate_) * g * g;
+    float u = -sqrtf(*meanSquaredDelta / (*meanSquaredGradient + epsilon_)) * g;
+    *meanSquaredDelta = decayRate_ * (*meanSquaredDelta) + (1 - decayRate_) * u * u;
+    *delta = u;
+  }
+};
+
+
+struct MomentumUpdate_functor
+{
+  const float rate_;
+
+  MomentumUpdate_functor(float rate)
+    : rate_(rate)
+  {}
+
+  __device__ void operator()(float *delta, float *momentum) const
+  {
+    *delta += rate_ * (*momentum);
+    *momentum = *delta;
+  }
+};
+
+
+struct NesterovUpdate_functor
+{
+  const float rate_;
+
+  NesterovUpdate_functor(float rate)
+    : rate_(rate)
+  {}
+
+  __device__ void operator()(float *delta, float *velocity) const
+  {
+    float prev = *velocity;
+    *velocity = *delta + rate_ * prev;
+    *delta = -rate_ * prev + (1 + rate_) * (*velocity);
+  }
+};
+
+struct PolyakUpdate_functor
+{
+  const float tau_;
+
+  PolyakUpdate_functor(float tau)
+    : tau_(tau)
+  {}
+
+  __device__ void operator()(float *target, float *source) const
+  {
+    *target += tau_ * (*source - *target);
+  }
+};
+
+
+void THCudaModule_adamUpdate(THCState *state, THCudaTensor *delta, THCudaTensor *mt, THCudaTensor *vt,
+  float beta1, float beta2, float alpha, float epsilon)
+{
+  THAssertMsg(THCudaTensor_checkGPU(state, 3, delta, mt, vt),
+  "Some of delta/state tensors are located on different GPUs. Please move them to a single one.");
+
+  THC_pointwiseApply3(state, delta, mt, vt, AdamUpdate_functor(beta1, beta2, alpha, epsilon));
+}
+
+
+void THCudaModule_rmspropUpdate(THCState *state, THCudaTensor *delta, THCudaTensor *meanSquared,
+  float learningRate, float decayRate, float epsilon)
+{
+  THAssertMsg(THCudaTensor_checkGPU(state, 2, delta, meanSquared),
+  "Some of delta/state tensors are located on different GPUs. Please move them to a single one.");
+
+  THC_pointwiseApply2(state, delta, meanSquared, RMSpropUpdate_functor(learningRate, decayRate, epsilon));
+}
+
+
+void THCudaModule_adagradUpdate(THCState *state, THCudaTensor *delta, THCudaTensor *accumulatedSquared,
+  float learningRate, float epsilon)
+{
+  THAssertMsg(THCudaTensor_checkGPU(state, 2, delta, accumulatedSquared),
+  "Some of delta/state tensors are located on different GPUs. Please move them to a single one.");
+
+  THC_pointwiseApply2(state, delta, accumulatedSquared, AdagradUpdate_functor(learningRate, epsilon));
+}
+
+
+void THCudaModule_adadeltaUpdate(THCState *state, THCudaTensor *delta, THCudaTensor *meanSquaredGradient, THCudaTensor *meanSquaredDelta,
+  float decayRate, float epsilon)
+{
+  THAssertMsg(THCudaTensor_checkGPU(state, 3, delta, meanSquaredGradient, meanSquaredDelta),
+  "Some of delta/state tensors are located on different GPUs. Please move them to a single one.");
+
+  THC_pointwiseApply3(state, delta, meanSquaredGradient, meanSquaredDelta, AdadeltaUpdate_functor(decayRate, epsilon));
+}
+
+
+void THCudaModule_momentumUpdate(THCState *state, THCudaTensor *delta, THCudaTensor *momentum, float rate)
+{
+  THAssertMsg(THCudaTensor_checkGPU(state, 2, delta, momentum),
+  "Some of delta/state tensors are located on different GPUs. Please move them to a single one.");
+
+  THC_pointwiseApply2(state, delta, momentum, MomentumUpdate_functor(rate));
+}
+
+
+void THCudaModule_nesterovUpdate(THCState *state, THCudaTensor *delta, THCudaTensor *velocity, float rate)
+{
+  THAssertMsg(THCudaTensor_checkGPU(state, 2, delta, velocity),
+  "Some of delta/state tensors are located on different GPUs. Please move them to a single one.");
+
+  THC_pointwiseApply2(state, delta, velocity, NesterovUpdate_functor(rate));
+}
+
+
+void THCudaModule_polyakUpdate(THCState *state, THCudaTensor *target, THCudaTensor *source, float tau)
+{
+  THAssertMsg(THCudaTensor_checkGPU(state, 2, target, source),
+  "Some of target/source tensors are located on different GPUs. Please move them to a single one.");
+
+  THC_pointwiseApply2(state, target, source, PolyakUpdate_functor(tau));
+}
+
+
+// fused recurrent cells, one thread per state element
+
+__device__ float sigm(float x)
+{
+  return 1.0f / (1.0f + expf(-x));
+}
+
+__global__ void lstmKernel(float *output, float *cell, float *gates, float *prevCell, long batches, long size)
+{
+  long x = blockIdx.x*blockDim.x+threadIdx.x;
+  if(x >= batches*size){
+    return;
+  }
+
+  // gates are ordered input, forget, cell, output
+  float *g = gates + (x / size)*4*size + x % size;
+  float i = sigm(g[0]);
+  float f = sigm(g[size]);
+  float z = tanhf(g[2*size]);
+  float o = sigm(g[3*size]);
+  g[0] = i;
+  g[size] = f;
+  g[2*size] = z;
+  g[3*size] = o;
+
+  float c = f * prevCell[x] + i * z;
+  cell[x] = c;
+  output[x] = o * tanhf(c);
+}
+
+__global__ void lstmGradInKernel(float *gradGates, float *gradPrevCell, float *gradOutput, float *gradCell,
+  float *gates, float *prevCell, float *cell, long batches, long size)
+{
+  long x = blockIdx.x*blockDim.x+threadIdx.x;
+  if(x >= batches*size){
+    return;
+  }
+
+  long k = (x / size)*4*size + x % size;
+  float *g = gates + k;
+  float *gg = gradGates + k;
+  float i = g[0];
+  float f = g[size];
+  float z = g[2*size];
+  float o = g[3*size];
+  float tc = tanhf(cell[x]);
+
+  float dh = gradOutput[x];
+  float dc = gradCell[x] + dh * o * (1 - tc*tc);
+  gg[0] = dc * z * i * (1 - i);
+  gg[size] = dc * prevCell[x] * f * (1 - f);
+  gg[2*size] = dc * i * (1 - z*z);
+  gg[3*size] = dh * tc * o * (1 - o);
+  gradPrevCell[x] = dc * f;
+}
+
+__global__ void gruKernel(float *output, float *gatesX, float *gatesH, float *prevOutput, long batches, long size)
+{
+  long x = blockIdx.x*blockDim.x+threadIdx.x;
+  if(x >= batches*size){
+    return;
+  }
+
+  // gates are ordered reset, update, new
+  long k = (x / size)*3*size + x % size;
+  float *gx = gatesX + k;
+  float *gh = gatesH + k;
+  float r = sigm(gx[0] + gh[0]);
+  float u = sigm(gx[size] + gh[size]);
+  float n = tanhf(gx[2*size] + r * gh[2*size]);
+  gx[0] = r;
+  gx[size] = u;
+  gx[2*size] = n;
+
+  output[x] = (1 - u) * n + u * prevOutput[x];
+}
+
+__global__ void gruGradInKernel(float *gradGatesX, float *gradGatesH, float *gradPrevOutput, float *gradOutput,
+  float *gatesX, float *gatesH, float *prevOutput, long batches, long size)
+{
+  long x = blockIdx.x*blockDim.x+threadIdx.x;
+  if(x >= batches*size){
+    return;
+  }
+
+  long k = (x / size)*3*size + x % size;
+  float *gx = gatesX + k;
+  float *gh = gatesH + k;
+  float *ggx = gradGatesX + k;
+  float *ggh = gradGatesH + k;
+  float r = gx[0];
+  float u = gx[size];
+  float n = gx[2*size];
+
+  float dh = gradOutput[x];
+  float dn = dh * (1 - u) * (1 - n*n);
+  float du = dh * (prevOutput[x] - n) * u * (1 - u);
+  float dr = dn * gh[2*size] * r * (1 - r);
+  ggx[0] = dr;
+  ggx[size] = du;
+  ggx[2*size] = dn;
+  ggh[0] = dr;
+  ggh[size] = du;
+  ggh[2*size] = dn * r;
+  gradPrevOutput[x] = dh * u;
+}
+
+
+void THCudaModule_lstm(THCState *state, THCudaTensor *output, THCudaTensor *cell, THCudaTensor *gates, THCudaTensor *prevCell)
+{
+  THAssertMsg(THCudaTensor_checkGPU(state, 4, output, cell, gates, prevCell),
+  "Some of gates/state tensors are located on different GPUs. Please move them to a single one.");
+
+  THCudaTensor_resizeAs(state, output, prevCell);
+  THCudaTensor_resizeAs(state, cell, prevCell);
+
+  prevCell = THCudaTensor_newContiguous(state, prevCell);
+  THCudaTensor *g = THCudaTensor_newContiguous(state, gates);
+  THCudaTensor *h = THCudaTensor_newContiguous(state, output);
+  THCudaTensor *c = THCudaTensor_newContiguous(state, cell);
+
+  long size = prevCell->size[prevCell->nDimension-1];
+  long batches = THCudaTensor_nElement(state, prevCell) / size;
+
+  long threads = 256;
+  long blocks = (batches*size + threads - 1)/threads;
+  lstmKernel <<<blocks, threads, 0, THCState_getCurrentStream(state)>>> (
+    THCudaTensor_data(state, h), THCudaTensor_data(state, c), THCudaTensor_data(state, g),
+    THCudaTensor_data(state, prevCell), batches, size);
+
+  THCudaTensor_free(state, prevCell);
+  THCudaTensor_freeCopyTo(state, g, gates);
+  THCudaTensor_freeCopyTo(state, h, output);
+  THCudaTensor_freeCopyTo(state, c, cell);
+}
+
+
+void THCudaModule_lstmGradIn(THCState *state, THCudaTensor *gradGates, THCudaTensor *gradPrevCell,
+  THCudaTensor *gradOutput, THCudaTensor *gradCell, THCudaTensor *gates, THCudaTensor *prevCell, THCudaTensor *cell)
+{
+  THAssertMsg(THCudaTensor_checkGPU(state, 7, gradGates, gradPrevCell, gradOutput, gradCell, gates, prevCell, cell),
+  "Some of gradient/gates/state tensors are located on different GPUs. Please move them to a single one.");
+
+  THCudaTensor_resizeAs(state, gradGates, gates);
+  THCudaTensor_resizeAs(state, gradPrevCell, prevCell);
+
+  gradOutput = THCudaTensor_newContiguous(state, gradOutput);
+  gradCell = THCudaTensor_newContiguous(state, gradCell);
+  gates = THCudaTensor_newContiguous(state, gates);
+  prevCell = THCudaTensor_newContiguous(state, prevCell);
+  cell = THCudaTensor_newContiguous(state, cell);
+  THCudaTensor *gg = THCudaTensor_newContiguous(state, gradGates);
+  THCudaTensor *gpc = THCudaTensor_newContiguous(state, gradPrevCell);
+
+  long size = prevCell->size[prevCell->nDimension-1];
+  long batches = THCudaTensor_nElement(state, prevCell) / size;
+
+  long threads = 256;
+  long blocks = (batches*size + threads - 1)/threads;
+  lstmGradInKernel <<<blocks, threads, 0, THCState_getCurrentStream(state)>>> (
+    THCudaTensor_data(state, gg), THCudaTensor_data(state, gpc), THCudaTensor_data(state, gradOutput),
+    THCudaTensor_data(state, gradCell), THCudaTensor_data(state, gates), THCudaTensor_data(state, prevCell),
+    THCudaTensor_data(state, cell), batches, size);
+
+  THCudaTensor_free(state, gradOutput);
+  THCudaTensor_free(state, gradCell);
+  THCudaTensor_free(state, gates);
+  THCudaTensor_free(state, prevCell);
+  THCudaTensor_free(state, cell);
+  THCudaTensor_freeCopyTo(state, gg, gradGates);
+  THCudaTensor_freeCopyTo(state, gpc, gradPrevCell);
+}
+
+
+void THCudaModule_gru(THCState *state, THCudaTensor *output, THCudaTensor *gatesX, THCudaTensor *gatesH, THCudaTensor *prevOutput)
+{
+  THAssertMsg(THCudaTensor_checkGPU(state, 4, output, gatesX, gatesH, prevOutput),
+  "Some of gates/state tensors are located on different GPUs. Please move them to a single one.");
+
+  THCudaTensor_resizeAs(state, output, prevOutput);
+
+  gatesH = THCudaTensor_newContiguous(state, gatesH);
+  prevOutput = THCudaTensor_newContiguous(state, prevOutput);
+  THCudaTensor *gx = THCudaTensor_newContiguous(state, gatesX);
+  THCudaTensor *h = THCudaTensor_newContiguous(state, output);
+
+  long size = prevOutput->size[prevOutput->nDimension-1];
+  long batches = THCudaTensor_nElement(state, prevOutput) / size;
+
+  long threads = 256;
+  long blocks = (batches*size + threads - 1)/threads;
+  gruKernel <<<blocks, threads, 0, THCState_getCurrentStream(state)>>> (
+    THCudaTensor_data(state, h), THCudaTensor_data(state, gx), THCudaTensor_data(state, gatesH),
+    THCudaTensor_data(state, prevOutput), batches, size);
+
+  THCudaTensor_free(state, gatesH);
+  THCudaTensor_free(state, prevOutput);
+  THCudaTensor_freeCopyTo(state, gx, gatesX);
+  THCudaTensor_freeCopyTo(state, h, output);
+}
+
+
+void THCudaModule_gruGradIn(THCState *state, THCudaTensor *gradGatesX, THCudaTensor *gradGatesH, THCudaTensor *gradPrevOutput,
+  THCudaTensor *gradOutput, THCudaTensor *gatesX, THCudaTensor *gatesH, THCudaTensor *prevOutput)
+{
+  THAssertMsg(THCudaTensor_checkGPU(state, 7, gradGatesX, gradGatesH, gradPrevOutput, gradOutput, gatesX, gatesH, prevOutput),
+  "Some of gradient/gates/state tensors are located on different GPUs. Please move them to a single one.");
+
+  THCudaTensor_resizeAs(state, gradGatesX, gatesX);
+  THCudaTensor_resizeAs(state, gradGatesH, gatesH);
+  THCudaTensor_resizeAs(state, gradPrevOutput, prevOutput);
+
+  gradOutput = THCudaTensor_newContiguous(state, gradOutput);
+  gatesX = THCudaTensor_newContiguous(state, gatesX);
+  gatesH = THCudaTensor_newContiguous(state, gatesH);
+  prevOutput = THCudaTensor_newContiguous(state, prevOutput);
+  THCudaTensor *ggx = THCudaTensor_newContiguous(state, gradGatesX);
+  THCudaTensor *ggh = THCudaTensor_newContiguous(state, gradGatesH);
+  THCudaTensor *gph = THCudaTensor_newContiguous(state, gradPrevOutput);
+
+  long size = prevOutput->size[prevOutput->nDimension-1];
+  long batches = THCudaTensor_nElement(state, prevOutput) / size;
+
+  long threads = 256;
+  long blocks = (batches*size + threads - 1)/threads;
+  gruGradInKernel <<<blocks, threads, 0, THCState_getCurrentStream(state)>>> (
+    THCudaTensor_data(state, ggx), THCudaTensor_data(state, ggh), THCudaTensor_data(state, gph),
+    THCudaTensor_data(state, gradOutput), THCudaTensor_data(state, gatesX), THCudaTensor_data(state, gatesH),
+    THCudaTensor_data(state, prevOutput), batches, size);
+
+  THCudaTensor_free(state, gradOutput);
+  THCudaTensor_free(state, gatesX);
+  THCudaTensor_free(state, gatesH);
+  THCudaTensor_free(state, prevOutput);
+  THCudaTensor_freeCopyTo(state, ggx, gradGatesX);
+  THCudaTensor_freeCopyTo(state, ggh, gradGatesH);
+  THCudaTensor_freeCopyTo(state, gph, gradPrevOutput);
+}
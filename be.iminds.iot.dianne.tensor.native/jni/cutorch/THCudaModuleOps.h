@@ -31,4 +31,25 @@ void THCudaModule_selu(THCState *state, THCudaTensor *input, THCudaTensor *outpu
 void THCudaTensor_seluGradIn(THCState *state, THCudaTensor *input, THCudaTensor *gradOutput,
 		  THCudaTensor *gradInput, THCudaTensor *output, float alpha, float lambda);
 
+// fused optimizer updates
+void THCudaModule_adamUpdate(THCState *state, THCudaTensor *delta, THCudaTensor *mt, THCudaTensor *vt,
+		  float beta1, float beta2, float alpha, float epsilon);
+void THCudaModule_rmspropUpdate(THCState *state, THCudaTensor *delta, THCudaTensor *meanSquared,
+		  float learningRate, float decayRate, float epsilon);
+void THCudaModule_adagradUpdate(THCState *state, THCudaTensor *delta, THCudaTensor *accumulatedSquared,
+		  float learningRate, float epsilon);
+void THCudaModule_adadeltaUpdate(THCState *state, THCudaTensor *delta, THCudaTensor *meanSquaredGradient, THCudaTensor *meanSquaredDelta,
+		  float decayRate, float epsilon);
+void THCudaModule_momentumUpdate(THCState *state, THCudaTensor *delta, THCudaTensor *momentum, float rate);
+void THCudaModule_nesterovUpdate(THCState *state, THCudaTensor *delta, THCudaTensor *velocity, float rate);
+void THCudaModule_polyakUpdate(THCState *state, THCudaTensor *target, THCudaTensor *source, float tau);
+
+// fused recurrent cells
+void THCudaModule_lstm(THCState *state, THCudaTensor *output, THCudaTensor *cell, THCudaTensor *gates, THCudaTensor *prevCell);
+void THCudaModule_lstmGradIn(THCState *state, THCudaTensor *gradGates, THCudaTensor *gradPrevCell,
+		  THCudaTensor *gradOutput, THCudaTensor *gradCell, THCudaTensor *gates, THCudaTensor *prevCell, THCudaTensor *cell);
+void THCudaModule_gru(THCState *state, THCudaTensor *output, THCudaTensor *gatesX, THCudaTensor *gatesH, THCudaTensor *prevOutput);
+void THCudaModule_gruGradIn(THCState *state, THCudaTensor *gradGatesX, THCudaTensor *gradGatesH, THCudaTensor *gradPrevOutput,
+		  THCudaTensor *gradOutput, THCudaTensor *gatesX, THCudaTensor *gatesH, THCudaTensor *prevOutput);
+
 #endif
@@ -90,6 +90,69 @@ __global__ void scale2d(float *input, float *output,
 }
 
 
+__global__ void maxDim(float *input, float *output, long outer, long n, long inner, int index)
+{
+	long x = blockIdx.x*blockDim.x+threadIdx.x;
+	if(x >= outer*inner){
+		return;
+	}
+	
+	long o = x / inner;
+	long i = x % inner;
+	float* p = input + o*n*inner + i;
+	float max = p[0];
+	long arg = 0;
+	for(long k=1;k<n;k++){
+		if(max < p[k*inner]){
+			max = p[k*inner];
+			arg = k;
+		}
+	}
+	output[x] = index ? arg : max;
+}
+
+__global__ void gather(float *input, float *index, float *output, long outer, long n, long m, long inner)
+{
+	long x = blockIdx.x*blockDim.x+threadIdx.x;
+	if(x >= outer*m*inner){
+		return;
+	}
+	
+	long o = x / (m*inner);
+	long i = x % inner;
+	long k = (long)index[x];
+	output[x] = input[(o*n+k)*inner+i];
+}
+
+__global__ void scatter(float *input, float *index, float *output, long outer, long n, long m, long inner)
+{
+	long x = blockIdx.x*blockDim.x+threadIdx.x;
+	if(x >= outer*m*inner){
+		return;
+	}
+	
+	long o = x / (m*inner);
+	long i = x % inner;
+	long k = (long)index[x];
+	output[(o*n+k)*inner+i] = input[x];
+}
+
+struct Where_functor
+{
+  const int set_;
+
+  Where_functor(int set)
+    : set_(set)
+  {}
+
+  __device__ void operator()(float *dst, float *mask, float *src) const
+  {
+    if((*mask != 0) == set_)
+      *dst = *src;
+  }
+};
+
+
 	
 	int THCudaTensor_argmax(THCState *state, THCudaTensor *t){
 		t = THCudaTensor_newContiguous(state, t);
@@ -152,3 +215,84 @@ __global__ void scale2d(float *input, float *output,
     	THCudaTensor_free(state, input);
     	
 	}
+	
+	
+	static void getDimSizes(THCudaTensor *t, int dim, long *outer, long *n, long *inner)
+	{
+		*outer = 1;
+		*inner = 1;
+		for(int i=0;i<dim;i++){
+			*outer *= t->size[i];
+		}
+		*n = t->size[dim];
+		for(int i=dim+1;i<t->nDimension;i++){
+			*inner *= t->size[i];
+		}
+	}
+	
+	void THCudaTensor_maxDim(THCState *state, THCudaTensor *output, THCudaTensor *input, int dim, int index)
+	{
+		input = THCudaTensor_newContiguous(state, input);
+		THCudaTensor *dst = THCudaTensor_newContiguous(state, output);
+		
+		long outer, n, inner;
+		getDimSizes(input, dim, &outer, &n, &inner);
+		
+		long threads = 256;
+		long blocks = (outer*inner + threads - 1)/threads;
+		maxDim <<<blocks, threads, 0, THCState_getCurrentStream(state)>>> (
+		  THCudaTensor_data(state, input), THCudaTensor_data(state, dst), outer, n, inner, index);
+		
+		THCudaTensor_free(state, input);
+		THCudaTensor_freeCopyTo(state, dst, output);
+	}
+	
+	void THCudaTensor_gather(THCState *state, THCudaTensor *output, THCudaTensor *input, int dim, THCudaTensor *index)
+	{
+		input = THCudaTensor_newContiguous(state, input);
+		index = THCudaTensor_newContiguous(state, index);
+		THCudaTensor *dst = THCudaTensor_newContiguous(state, output);
+		
+		long outer, n, inner;
+		getDimSizes(input, dim, &outer, &n, &inner);
+		long m = index->size[dim];
+		
+		long threads = 256;
+		long blocks = (outer*m*inner + threads - 1)/threads;
+		gather <<<blocks, threads, 0, THCState_getCurrentStream(state)>>> (
+		  THCudaTensor_data(state, input), THCudaTensor_data(state, index), THCudaTensor_data(state, dst), 
+		  outer, n, m, inner);
+		
+		THCudaTensor_free(state, input);
+		THCudaTensor_free(state, index);
+		THCudaTensor_freeCopyTo(state, dst, output);
+	}
+	
+	void THCudaTensor_scatter(THCState *state, THCudaTensor *output, int dim, THCudaTensor *index, THCudaTensor *input)
+	{
+		input = THCudaTensor_newContiguous(state, input);
+		index = THCudaTensor_newContiguous(state, index);
+		THCudaTensor *dst = THCudaTensor_newContiguous(state, output);
+		
+		long outer, n, inner;
+		getDimSizes(dst, dim, &outer, &n, &inner);
+		long m = index->size[dim];
+		
+		long threads = 256;
+		long blocks = (outer*m*inner + threads - 1)/threads;
+		scatter <<<blocks, threads, 0, THCState_getCurrentStream(state)>>> (
+		  THCudaTensor_data(state, input), THCudaTensor_data(state, index), THCudaTensor_data(state, dst), 
+		  outer, n, m, inner);
+		
+		THCudaTensor_free(state, input);
+		THCudaTensor_free(state, index);
+		THCudaTensor_freeCopyTo(state, dst, output);
+	}
+	
+	void THCudaTensor_where(THCState *state, THCudaTensor *output, THCudaTensor *mask, THCudaTensor *input, int set)
+	{
+		THAssertMsg(THCudaTensor_checkGPU(state, 3, output, mask, input),
+		"Some of output/mask/input tensors are located on different GPUs. Please move them to a single one.");
+		
+		THC_pointwiseApply3(state, output, mask, input, Where_functor(set));
+	}
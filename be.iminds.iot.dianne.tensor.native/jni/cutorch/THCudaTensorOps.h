@@ -29,5 +29,9 @@
 int THCudaTensor_argmax(THCState *state, THCudaTensor *t);
 int THCudaTensor_argmin(THCState *state, THCudaTensor *t);
 void THCudaTensor_scale2d(THCState *state, THCudaTensor *dst, THCudaTensor *src);
+void THCudaTensor_maxDim(THCState *state, THCudaTensor *dst, THCudaTensor *src, int dim, int index);
+void THCudaTensor_gather(THCState *state, THCudaTensor *dst, THCudaTensor *src, int dim, THCudaTensor *index);
+void THCudaTensor_scatter(THCState *state, THCudaTensor *dst, int dim, THCudaTensor *index, THCudaTensor *src);
+void THCudaTensor_where(THCState *state, THCudaTensor *dst, THCudaTensor *mask, THCudaTensor *src, int set);
 
 #endif
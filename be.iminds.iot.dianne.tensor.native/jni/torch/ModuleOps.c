@@ -1607,3 +1607,334 @@ JNIEXPORT void JNICALL Java_be_iminds_iot_dianne_tensor_ModuleOps_linearAccGrad
 	}
 
 }
+
+
+
+JNIEXPORT void JNICALL Java_be_iminds_iot_dianne_tensor_ModuleOps_adamUpdate
+  (JNIEnv * env, jclass c, jobject d, jobject m, jobject v, jfloat beta1, jfloat beta2, jfloat alpha, jfloat epsilon){
+	THTensor* delta = getTensor(env, d);
+	THTensor* mt = getTensor(env, m);
+	THTensor* vt = getTensor(env, v);
+
+#ifdef CUDA
+	THCudaModule_adamUpdate(state, delta, mt, vt, beta1, beta2, alpha, epsilon);
+#else
+	TH_TENSOR_APPLY3(real, delta, real, mt, real, vt,
+	  real g = *delta_data;
+	  *mt_data = beta1 * (*mt_data) + (1-beta1) * g;
+	  *vt_data = beta2 * (*vt_data) + (1-beta2) * g * g;
+	  *delta_data = -alpha * (*mt_data) / (sqrt(*vt_data) + epsilon);
+	);
+#endif
+}
+
+JNIEXPORT void JNICALL Java_be_iminds_iot_dianne_tensor_ModuleOps_rmspropUpdate
+  (JNIEnv * env, jclass c, jobject d, jobject ms, jfloat learningRate, jfloat decayRate, jfloat epsilon){
+	THTensor* delta = getTensor(env, d);
+	THTensor* meanSquared = getTensor(env, ms);
+
+#ifdef CUDA
+	THCudaModule_rmspropUpdate(state, delta, meanSquared, learningRate, decayRate, epsilon);
+#else
+	TH_TENSOR_APPLY2(real, delta, real, meanSquared,
+	  real g = *delta_data;
+	  *meanSquared_data = decayRate * (*meanSquared_data) + (1-decayRate) * g * g;
+	  *delta_data = -learningRate * g / sqrt(*meanSquared_data + epsilon);
+	);
+#endif
+}
+
+JNIEXPORT void JNICALL Java_be_iminds_iot_dianne_tensor_ModuleOps_adagradUpdate
+  (JNIEnv * env, jclass c, jobject d, jobject acc, jfloat learningRate, jfloat epsilon){
+	THTensor* delta = getTensor(env, d);
+	THTensor* accumulatedSquared = getTensor(env, acc);
+
+#ifdef CUDA
+	THCudaModule_adagradUpdate(state, delta, accumulatedSquared, learningRate, epsilon);
+#else
+	TH_TENSOR_APPLY2(real, delta, real, accumulatedSquared,
+	  real g = *delta_data;
+	  *accumulatedSquared_data += g * g;
+	  *delta_data = -learningRate * g / sqrt(*accumulatedSquared_data + epsilon);
+	);
+#endif
+}
+
+JNIEXPORT void JNICALL Java_be_iminds_iot_dianne_tensor_ModuleOps_adadeltaUpdate
+  (JNIEnv * env, jclass c, jobject d, jobject msg, jobject msd, jfloat decayRate, jfloat epsilon){
+	THTensor* delta = getTensor(env, d);
+	THTensor* meanSquaredGradient = getTensor(env, msg);
+	THTensor* meanSquaredDelta = getTensor(env, msd);
+
+#ifdef CUDA
+	THCudaModule_adadeltaUpdate(state, delta, meanSquaredGradient, meanSquaredDelta, decayRate, epsilon);
+#else
+	TH_TENSOR_APPLY3(real, delta, real, meanSquaredGradient, real, meanSquaredDelta,
+	  real g = *delta_data;
+	  *meanSquaredGradient_data = decayRate * (*meanSquaredGradient_data) + (1-decayRate) * g * g;
+	  real u = -sqrt(*meanSquaredDelta_data / (*meanSquaredGradient_data + epsilon)) * g;
+	  *meanSquaredDelta_data = decayRate * (*meanSquaredDelta_data) + (1-decayRate) * u * u;
+	  *delta_data = u;
+	);
+#endif
+}
+
+JNIEXPORT void JNICALL Java_be_iminds_iot_dianne_tensor_ModuleOps_momentumUpdate
+  (JNIEnv * env, jclass c, jobject d, jobject m, jfloat rate){
+	THTensor* delta = getTensor(env, d);
+	THTensor* momentum = getTensor(env, m);
+
+#ifdef CUDA
+	THCudaModule_momentumUpdate(state, delta, momentum, rate);
+#else
+	TH_TENSOR_APPLY2(real, delta, real, momentum,
+	  *delta_data += rate * (*momentum_data);
+	  *momentum_data = *delta_data;
+	);
+#endif
+}
+
+JNIEXPORT void JNICALL Java_be_iminds_iot_dianne_tensor_ModuleOps_nesterovUpdate
+  (JNIEnv * env, jclass c, jobject d, jobject v, jfloat rate){
+	THTensor* delta = getTensor(env, d);
+	THTensor* velocity = getTensor(env, v);
+
+#ifdef CUDA
+	THCudaModule_nesterovUpdate(state, delta, velocity, rate);
+#else
+	TH_TENSOR_APPLY2(real, delta, real, velocity,
+	  real prev = *velocity_data;
+	  *velocity_data = *delta_data + rate * prev;
+	  *delta_data = -rate * prev + (1+rate) * (*velocity_data);
+	);
+#endif
+}
+
+JNIEXPORT void JNICALL Java_be_iminds_iot_dianne_tensor_ModuleOps_polyakUpdate
+  (JNIEnv * env, jclass c, jobject t, jobject s, jfloat tau){
+	THTensor* target = getTensor(env, t);
+	THTensor* source = getTensor(env, s);
+
+#ifdef CUDA
+	THCudaModule_polyakUpdate(state, target, source, tau);
+#else
+	TH_TENSOR_APPLY2(real, target, real, source,
+	  *target_data += tau * (*source_data - *target_data);
+	);
+#endif
+}
+
+
+/*
+ * Fused recurrent cells, all tensors should be contiguous with the state tensors
+ * either a vector or a batch x size matrix
+ */
+
+#ifndef CUDA
+static real sigm(real x){
+	return 1.0f / (1.0f + exp(-x));
+}
+#endif
+
+JNIEXPORT void JNICALL Java_be_iminds_iot_dianne_tensor_ModuleOps_lstm
+  (JNIEnv * env, jclass c, jobject out, jobject cl, jobject g, jobject pc){
+	THTensor* output = getTensor(env, out);
+	THTensor* cell = getTensor(env, cl);
+	THTensor* gates = getTensor(env, g);
+	THTensor* prevCell = getTensor(env, pc);
+
+#ifdef CUDA
+	THCudaModule_lstm(state, output, cell, gates, prevCell);
+#else
+	THTensor_(resizeAs)(output, prevCell);
+	THTensor_(resizeAs)(cell, prevCell);
+
+	THArgCheck(THTensor_(isContiguous)(gates) && THTensor_(isContiguous)(prevCell), 3, "gates and state should be contiguous");
+
+	long size = prevCell->size[prevCell->nDimension-1];
+	long batches = THTensor_(nElement)(prevCell) / size;
+	THArgCheck(THTensor_(nElement)(gates) == 4*batches*size, 3, "expected 4 gates per state element");
+
+	real* h_data = THTensor_(data)(output);
+	real* c_data = THTensor_(data)(cell);
+	real* g_data = THTensor_(data)(gates);
+	real* pc_data = THTensor_(data)(prevCell);
+
+	long b, j;
+	for(b=0;b<batches;b++){
+		real* gb = g_data + b*4*size;
+		for(j=0;j<size;j++){
+			// gates are ordered input, forget, cell, output
+			real i = sigm(gb[j]);
+			real f = sigm(gb[size+j]);
+			real z = tanh(gb[2*size+j]);
+			real o = sigm(gb[3*size+j]);
+			gb[j] = i;
+			gb[size+j] = f;
+			gb[2*size+j] = z;
+			gb[3*size+j] = o;
+
+			real ct = f * pc_data[b*size+j] + i * z;
+			c_data[b*size+j] = ct;
+			h_data[b*size+j] = o * tanh(ct);
+		}
+	}
+#endif
+}
+
+JNIEXPORT void JNICALL Java_be_iminds_iot_dianne_tensor_ModuleOps_lstmGradIn
+  (JNIEnv * env, jclass c, jobject gradG, jobject gradPc, jobject gradOut, jobject gradC, jobject g, jobject pc, jobject cl){
+	THTensor* gradGates = getTensor(env, gradG);
+	THTensor* gradPrevCell = getTensor(env, gradPc);
+	THTensor* gradOutput = getTensor(env, gradOut);
+	THTensor* gradCell = getTensor(env, gradC);
+	THTensor* gates = getTensor(env, g);
+	THTensor* prevCell = getTensor(env, pc);
+	THTensor* cell = getTensor(env, cl);
+
+#ifdef CUDA
+	THCudaModule_lstmGradIn(state, gradGates, gradPrevCell, gradOutput, gradCell, gates, prevCell, cell);
+#else
+	THTensor_(resizeAs)(gradGates, gates);
+	THTensor_(resizeAs)(gradPrevCell, prevCell);
+
+	THArgCheck(THTensor_(isContiguous)(gradOutput) && THTensor_(isContiguous)(gradCell)
+			&& THTensor_(isContiguous)(gates) && THTensor_(isContiguous)(prevCell)
+			&& THTensor_(isContiguous)(cell), 3, "gradients, gates and state should be contiguous");
+
+	long size = prevCell->size[prevCell->nDimension-1];
+	long batches = THTensor_(nElement)(prevCell) / size;
+
+	real* gg_data = THTensor_(data)(gradGates);
+	real* gpc_data = THTensor_(data)(gradPrevCell);
+	real* gh_data = THTensor_(data)(gradOutput);
+	real* gc_data = THTensor_(data)(gradCell);
+	real* g_data = THTensor_(data)(gates);
+	real* pc_data = THTensor_(data)(prevCell);
+	real* c_data = THTensor_(data)(cell);
+
+	long b, j;
+	for(b=0;b<batches;b++){
+		real* gb = g_data + b*4*size;
+		real* ggb = gg_data + b*4*size;
+		for(j=0;j<size;j++){
+			real i = gb[j];
+			real f = gb[size+j];
+			real z = gb[2*size+j];
+			real o = gb[3*size+j];
+			real tc = tanh(c_data[b*size+j]);
+
+			real dh = gh_data[b*size+j];
+			real dc = gc_data[b*size+j] + dh * o * (1 - tc*tc);
+			ggb[j] = dc * z * i * (1 - i);
+			ggb[size+j] = dc * pc_data[b*size+j] * f * (1 - f);
+			ggb[2*size+j] = dc * i * (1 - z*z);
+			ggb[3*size+j] = dh * tc * o * (1 - o);
+			gpc_data[b*size+j] = dc * f;
+		}
+	}
+#endif
+}
+
+JNIEXPORT void JNICALL Java_be_iminds_iot_dianne_tensor_ModuleOps_gru
+  (JNIEnv * env, jclass c, jobject out, jobject gx, jobject gh, jobject ph){
+	THTensor* output = getTensor(env, out);
+	THTensor* gatesX = getTensor(env, gx);
+	THTensor* gatesH = getTensor(env, gh);
+	THTensor* prevOutput = getTensor(env, ph);
+
+#ifdef CUDA
+	THCudaModule_gru(state, output, gatesX, gatesH, prevOutput);
+#else
+	THTensor_(resizeAs)(output, prevOutput);
+
+	THArgCheck(THTensor_(isContiguous)(gatesX) && THTensor_(isContiguous)(gatesH)
+			&& THTensor_(isContiguous)(prevOutput), 2, "gates and state should be contiguous");
+
+	long size = prevOutput->size[prevOutput->nDimension-1];
+	long batches = THTensor_(nElement)(prevOutput) / size;
+	THArgCheck(THTensor_(nElement)(gatesX) == 3*batches*size
+			&& THTensor_(nElement)(gatesH) == 3*batches*size, 2, "expected 3 gates per state element");
+
+	real* h_data = THTensor_(data)(output);
+	real* gx_data = THTensor_(data)(gatesX);
+	real* gh_data = THTensor_(data)(gatesH);
+	real* ph_data = THTensor_(data)(prevOutput);
+
+	long b, j;
+	for(b=0;b<batches;b++){
+		real* gxb = gx_data + b*3*size;
+		real* ghb = gh_data + b*3*size;
+		for(j=0;j<size;j++){
+			// gates are ordered reset, update, new
+			real r = sigm(gxb[j] + ghb[j]);
+			real u = sigm(gxb[size+j] + ghb[size+j]);
+			real n = tanh(gxb[2*size+j] + r * ghb[2*size+j]);
+			gxb[j] = r;
+			gxb[size+j] = u;
+			gxb[2*size+j] = n;
+
+			h_data[b*size+j] = (1 - u) * n + u * ph_data[b*size+j];
+		}
+	}
+#endif
+}
+
+JNIEXPORT void JNICALL Java_be_iminds_iot_dianne_tensor_ModuleOps_gruGradIn
+  (JNIEnv * env, jclass c, jobject gradGx, jobject gradGh, jobject gradPh, jobject gradOut, jobject gx, jobject gh, jobject ph){
+	THTensor* gradGatesX = getTensor(env, gradGx);
+	THTensor* gradGatesH = getTensor(env, gradGh);
+	THTensor* gradPrevOutput = getTensor(env, gradPh);
+	THTensor* gradOutput = getTensor(env, gradOut);
+	THTensor* gatesX = getTensor(env, gx);
+	THTensor* gatesH = getTensor(env, gh);
+	THTensor* prevOutput = getTensor(env, ph);
+
+#ifdef CUDA
+	THCudaModule_gruGradIn(state, gradGatesX, gradGatesH, gradPrevOutput, gradOutput, gatesX, gatesH, prevOutput);
+#else
+	THTensor_(resizeAs)(gradGatesX, gatesX);
+	THTensor_(resizeAs)(gradGatesH, gatesH);
+	THTensor_(resizeAs)(gradPrevOutput, prevOutput);
+
+	THArgCheck(THTensor_(isContiguous)(gradOutput) && THTensor_(isContiguous)(gatesX)
+			&& THTensor_(isContiguous)(gatesH) && THTensor_(isContiguous)(prevOutput), 4, "gradients, gates and state should be contiguous");
+
+	long size = prevOutput->size[prevOutput->nDimension-1];
+	long batches = THTensor_(nElement)(prevOutput) / size;
+
+	real* ggx_data = THTensor_(data)(gradGatesX);
+	real* ggh_data = THTensor_(data)(gradGatesH);
+	real* gph_data = THTensor_(data)(gradPrevOutput);
+	real* gh_data = THTensor_(data)(gradOutput);
+	real* gx_data = THTensor_(data)(gatesX);
+	real* hh_data = THTensor_(data)(gatesH);
+	real* ph_data = THTensor_(data)(prevOutput);
+
+	long b, j;
+	for(b=0;b<batches;b++){
+		real* gxb = gx_data + b*3*size;
+		real* hhb = hh_data + b*3*size;
+		real* ggxb = ggx_data + b*3*size;
+		real* gghb = ggh_data + b*3*size;
+		for(j=0;j<size;j++){
+			real r = gxb[j];
+			real u = gxb[size+j];
+			real n = gxb[2*size+j];
+			real p = ph_data[b*size+j];
+
+			real dh = gh_data[b*size+j];
+			real dn = dh * (1 - u) * (1 - n*n);
+			real du = dh * (p - n) * u * (1 - u);
+			real dr = dn * hhb[2*size+j] * r * (1 - r);
+			ggxb[j] = dr;
+			ggxb[size+j] = du;
+			ggxb[2*size+j] = dn;
+			gghb[j] = dr;
+			gghb[size+j] = du;
+			gghb[2*size+j] = dn * r;
+			gph_data[b*size+j] = dh * u;
+		}
+	}
+#endif
+}
@@ -76,21 +76,16 @@ JNIEXPORT jlong JNICALL Java_be_iminds_iot_dianne_tensor_Tensor_init
 
 	if(data != NULL){
 		jsize len = env->GetArrayLength(data);
-		jfloat * floats = env->GetFloatArrayElements(data, 0);
 
 #ifdef CUDA
+		jfloat * floats = env->GetFloatArrayElements(data, 0);
 		cudaMemcpy(THTensor_(data)(state, tensor), floats, len*sizeof(real), cudaMemcpyHostToDevice);
 	    THCudaCheck(cudaGetLastError());
+		env->ReleaseFloatArrayElements(data, floats, JNI_ABORT);
 #else
-		jfloat* src_ptr = floats;
-		real* dst_ptr = THTensor_(data)(tensor);
-		int i =0;
-		for(i=0;i<len;i++){
-			*(dst_ptr++) = *(src_ptr++);
-		}
+		// copy straight from the Java array into native data
+		env->GetFloatArrayRegion(data, 0, len, THTensor_(data)(tensor));
 #endif
-
-		env->ReleaseFloatArrayElements(data, floats, 0);
 	}
 
 	return (long) tensor;
@@ -99,14 +94,43 @@ JNIEXPORT jlong JNICALL Java_be_iminds_iot_dianne_tensor_Tensor_init
 
 
 JNIEXPORT void JNICALL Java_be_iminds_iot_dianne_tensor_Tensor_free
-  (JNIEnv * env, jobject t){
+  (JNIEnv * env, jclass c, jlong address){
 	THTensor_(free)(
 #ifdef CUDA
 			state,
 #endif
-			getTensor(env, t));
+			(THTensor*) address);
+}
+
+
+JNIEXPORT jint JNICALL Java_be_iminds_iot_dianne_tensor_Tensor_capacity
+  (JNIEnv * env, jclass c, jlong address){
+	THTensor* tensor = (THTensor*) address;
+
+	// only tensors that are the sole owner of a contiguous storage can be reused
+	if(tensor->refcount != 1 || tensor->storage == NULL
+			|| tensor->storage->refcount != 1 || tensor->storageOffset != 0){
+		return -1;
+	}
 
+	if(!THTensor_(isContiguous)(
+#ifdef CUDA
+			state,
+#endif
+			tensor)){
+		return -1;
+	}
 
+	long size = THTensor_(nElement)(
+#ifdef CUDA
+			state,
+#endif
+			tensor);
+	if(size != tensor->storage->size){
+		return -1;
+	}
+
+	return size;
 }
 
 
@@ -450,21 +474,202 @@ JNIEXPORT void JNICALL Java_be_iminds_iot_dianne_tensor_Tensor_set___3F
 	THTensor* tensor = getTensor(env, t);
 
 	jsize len = env->GetArrayLength(data);
-	jfloat * floats = env->GetFloatArrayElements(data, 0);
 
 #ifdef CUDA
+	jfloat * floats = env->GetFloatArrayElements(data, 0);
 	cudaMemcpy(THTensor_(data)(state, tensor), floats, len*sizeof(real), cudaMemcpyHostToDevice);
     THCudaCheck(cudaGetLastError());
+	env->ReleaseFloatArrayElements(data, floats, JNI_ABORT);
 #else
-	jfloat* src_ptr = floats;
-	real* dst_ptr = THTensor_(data)(tensor);
-	int i =0;
-	for(i=0;i<len;i++){
-		*(dst_ptr++) = *(src_ptr++);
+	// copy straight from the Java array into native data
+	env->GetFloatArrayRegion(data, 0, len, THTensor_(data)(tensor));
+#endif
+}
+
+
+
+// get a contiguous tensor to write into, which is the tensor itself if already contiguous
+static THTensor* getContiguous(THTensor* tensor){
+	if(THTensor_(isContiguous)(
+#ifdef CUDA
+			state,
+#endif
+			tensor)){
+		return tensor;
 	}
+
+	THTensor* contiguous = THTensor_(new)(
+#ifdef CUDA
+			state
+#endif
+			);
+	THTensor_(resizeAs)(
+#ifdef CUDA
+			state,
+#endif
+			contiguous, tensor);
+	return contiguous;
+}
+
+// copy back the data written to a contiguous tensor obtained by getContiguous
+static void releaseContiguous(THTensor* tensor, THTensor* contiguous){
+	if(contiguous == tensor){
+		return;
+	}
+
+	THTensor_(copy)(
+#ifdef CUDA
+			state,
+#endif
+			tensor, contiguous);
+	THTensor_(free)(
+#ifdef CUDA
+			state,
+#endif
+			contiguous);
+}
+
+
+
+JNIEXPORT jobject JNICALL Java_be_iminds_iot_dianne_tensor_Tensor_data
+  (JNIEnv * env, jobject t){
+#ifdef CUDA
+	// device memory cannot be exposed as a direct buffer
+	return NULL;
+#else
+	THTensor* tensor = getTensor(env, t);
+
+	if(!THTensor_(isContiguous)(tensor)){
+		return NULL;
+	}
+
+	long size = THTensor_(nElement)(tensor);
+	return env->NewDirectByteBuffer(THTensor_(data)(tensor), size*sizeof(real));
+#endif
+}
+
+
+
+JNIEXPORT void JNICALL Java_be_iminds_iot_dianne_tensor_Tensor_copyToBuffer
+  (JNIEnv * env, jobject t, jobject buffer, jint offset){
+	THTensor* tensor = getTensor(env, t);
+	real* dst = ((real*) env->GetDirectBufferAddress(buffer)) + offset;
+
+	// copy via a contiguous tensor in case of narrowed or selected tensor
+	THTensor* contiguous = THTensor_(newContiguous)(
+#ifdef CUDA
+			state,
+#endif
+			tensor);
+
+	long size = THTensor_(nElement)(
+#ifdef CUDA
+			state,
+#endif
+			contiguous);
+
+#ifdef CUDA
+	cudaMemcpy(dst, THTensor_(data)(state, contiguous), size*sizeof(real), cudaMemcpyDeviceToHost);
+	THCudaCheck(cudaGetLastError());
+#else
+	memcpy(dst, THTensor_(data)(contiguous), size*sizeof(real));
+#endif
+
+	THTensor_(free)(
+#ifdef CUDA
+			state,
+#endif
+			contiguous);
+}
+
+
+
+JNIEXPORT void JNICALL Java_be_iminds_iot_dianne_tensor_Tensor_copyFromBuffer
+  (JNIEnv * env, jobject t, jobject buffer, jint offset){
+	THTensor* tensor = getTensor(env, t);
+	real* src = ((real*) env->GetDirectBufferAddress(buffer)) + offset;
+
+	// copy via a contiguous tensor in case of narrowed or selected tensor
+	THTensor* contiguous = getContiguous(tensor);
+
+	long size = THTensor_(nElement)(
+#ifdef CUDA
+			state,
+#endif
+			contiguous);
+
+#ifdef CUDA
+	cudaMemcpy(THTensor_(data)(state, contiguous), src, size*sizeof(real), cudaMemcpyHostToDevice);
+	THCudaCheck(cudaGetLastError());
+#else
+	memcpy(THTensor_(data)(contiguous), src, size*sizeof(real));
+#endif
+
+	releaseContiguous(tensor, contiguous);
+}
+
+
+
+JNIEXPORT void JNICALL Java_be_iminds_iot_dianne_tensor_Tensor_copyToArray
+  (JNIEnv * env, jobject t, jfloatArray data, jint offset){
+	THTensor* tensor = getTensor(env, t);
+
+	THTensor* contiguous = THTensor_(newContiguous)(
+#ifdef CUDA
+			state,
+#endif
+			tensor);
+
+	long size = THTensor_(nElement)(
+#ifdef CUDA
+			state,
+#endif
+			contiguous);
+
+#ifdef CUDA
+	real* buffer = (real*) malloc(size*sizeof(real));
+	cudaMemcpy(buffer, THTensor_(data)(state, contiguous), size*sizeof(real), cudaMemcpyDeviceToHost);
+	THCudaCheck(cudaGetLastError());
+	env->SetFloatArrayRegion(data, offset, size, buffer);
+	free(buffer);
+#else
+	// copies directly from native data into the Java array
+	env->SetFloatArrayRegion(data, offset, size, THTensor_(data)(contiguous));
+#endif
+
+	THTensor_(free)(
+#ifdef CUDA
+			state,
+#endif
+			contiguous);
+}
+
+
+
+JNIEXPORT void JNICALL Java_be_iminds_iot_dianne_tensor_Tensor_copyFromArray
+  (JNIEnv * env, jobject t, jfloatArray data, jint offset){
+	THTensor* tensor = getTensor(env, t);
+
+	THTensor* contiguous = getContiguous(tensor);
+
+	long size = THTensor_(nElement)(
+#ifdef CUDA
+			state,
+#endif
+			contiguous);
+
+#ifdef CUDA
+	real* buffer = (real*) malloc(size*sizeof(real));
+	env->GetFloatArrayRegion(data, offset, size, buffer);
+	cudaMemcpy(THTensor_(data)(state, contiguous), buffer, size*sizeof(real), cudaMemcpyHostToDevice);
+	THCudaCheck(cudaGetLastError());
+	free(buffer);
+#else
+	// copies directly from the Java array into native data
+	env->GetFloatArrayRegion(data, offset, size, THTensor_(data)(contiguous));
 #endif
 
-	env->ReleaseFloatArrayElements(data, floats, 0);
+	releaseContiguous(tensor, contiguous);
 }
 
 
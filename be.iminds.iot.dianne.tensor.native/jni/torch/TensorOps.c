@@ -580,7 +580,7 @@ JNIEXPORT jfloat JNICALL Java_be_iminds_iot_dianne_tensor_TensorOps_sum
 
 
 
-JNIEXPORT jfloat JNICALL Java_be_iminds_iot_dianne_tensor_TensorOps_max
+JNIEXPORT jfloat JNICALL Java_be_iminds_iot_dianne_tensor_TensorOps_max__Lbe_iminds_iot_dianne_tensor_Tensor_2
   (JNIEnv * env, jclass c, jobject tensor){
 	THTensor* t = getTensor(env, tensor);
 	return THTensor_(maxall)(
@@ -616,7 +616,7 @@ JNIEXPORT jfloat JNICALL Java_be_iminds_iot_dianne_tensor_TensorOps_mean
 
 
 
-JNIEXPORT jint JNICALL Java_be_iminds_iot_dianne_tensor_TensorOps_argmax
+JNIEXPORT jint JNICALL Java_be_iminds_iot_dianne_tensor_TensorOps_argmax__Lbe_iminds_iot_dianne_tensor_Tensor_2
   (JNIEnv * env, jclass c, jobject tensor){
 	THTensor* t = getTensor(env, tensor);
 	THTensor* vec = getVector(t);
@@ -955,3 +955,288 @@ JNIEXPORT jobject JNICALL Java_be_iminds_iot_dianne_tensor_TensorOps_clamp
 	return res == NULL ? createTensorObject(env, r) : res;
 }
 
+
+
+// sizes before, along and after dimension dim
+void getDimSizes(THTensor* t, int dim, long* outer, long* n, long* inner){
+	int i;
+	*outer = 1;
+	*inner = 1;
+	for(i=0;i<dim;i++){
+		*outer *= t->size[i];
+	}
+	*n = t->size[dim];
+	for(i=dim+1;i<t->nDimension;i++){
+		*inner *= t->size[i];
+	}
+}
+
+// resize r to the size of t with size 1 in dimension dim
+void resizeReduced(THTensor* r, THTensor* t, int dim){
+	THLongStorage* size = THTensor_(newSizeOf)(
+#ifdef CUDA
+			state,
+#endif
+			t);
+	size->data[dim] = 1;
+	THTensor_(resize)(
+#ifdef CUDA
+			state,
+#endif
+			r, size, NULL);
+	THLongStorage_free(size);
+}
+
+// keep max value or its index along dimension dim
+void maxDim(THTensor* r, THTensor* t, int dim, int index){
+	resizeReduced(r, t, dim);
+
+#ifdef CUDA
+	THCudaTensor_maxDim(state, r, t, dim, index);
+#else
+	THTensor* src = THTensor_(newContiguous)(t);
+	THTensor* dst = THTensor_(newContiguous)(r);
+
+	long outer, n, inner;
+	getDimSizes(src, dim, &outer, &n, &inner);
+
+	real* src_ptr = THTensor_(data)(src);
+	real* dst_ptr = THTensor_(data)(dst);
+
+	long o, i, k;
+	for(o=0;o<outer;o++){
+		for(i=0;i<inner;i++){
+			real* p = src_ptr + o*n*inner + i;
+			real max = p[0];
+			long arg = 0;
+			for(k=1;k<n;k++){
+				if(max < p[k*inner]){
+					max = p[k*inner];
+					arg = k;
+				}
+			}
+			dst_ptr[o*inner+i] = index ? arg : max;
+		}
+	}
+
+	THTensor_(free)(src);
+	THTensor_(freeCopyTo)(dst, r);
+#endif
+}
+
+
+JNIEXPORT jobject JNICALL Java_be_iminds_iot_dianne_tensor_TensorOps_max__Lbe_iminds_iot_dianne_tensor_Tensor_2Lbe_iminds_iot_dianne_tensor_Tensor_2I
+  (JNIEnv * env, jclass c, jobject res, jobject tensor, jint dim){
+	THTensor* r = getTensor(env, res);
+	THTensor* t = getTensor(env, tensor);
+	maxDim(r, t, dim, 0);
+	return res == NULL ? createTensorObject(env, r) : res;
+}
+
+
+
+JNIEXPORT jobject JNICALL Java_be_iminds_iot_dianne_tensor_TensorOps_argmax__Lbe_iminds_iot_dianne_tensor_Tensor_2Lbe_iminds_iot_dianne_tensor_Tensor_2I
+  (JNIEnv * env, jclass c, jobject res, jobject tensor, jint dim){
+	THTensor* r = getTensor(env, res);
+	THTensor* t = getTensor(env, tensor);
+	maxDim(r, t, dim, 1);
+	return res == NULL ? createTensorObject(env, r) : res;
+}
+
+
+
+// check that idx has the size of t except in dimension dim, and only holds indices into dimension dim of t,
+// as the error handler throws a Java exception and returns, the caller should return when this fails
+int checkIndex(THTensor* t, int dim, THTensor* idx, int arg){
+	int i;
+	if(dim < 0 || dim >= t->nDimension){
+		THArgCheck(0, arg-1, "dimension out of range");
+		return 0;
+	}
+	if(idx->nDimension != t->nDimension){
+		THArgCheck(0, arg, "index should have as many dimensions as the tensor");
+		return 0;
+	}
+	for(i=0;i<t->nDimension;i++){
+		if(i != dim && idx->size[i] != t->size[i]){
+			THArgCheck(0, arg, "index should have the size of the tensor except in the indexed dimension");
+			return 0;
+		}
+	}
+
+	long size = THTensor_(nElement)(
+#ifdef CUDA
+			state,
+#endif
+			idx);
+	if(size > 0){
+		real min = THTensor_(minall)(
+#ifdef CUDA
+			state,
+#endif
+			idx);
+		real max = THTensor_(maxall)(
+#ifdef CUDA
+			state,
+#endif
+			idx);
+		if(min < 0 || max >= t->size[dim]){
+			THArgCheck(0, arg, "index out of range");
+			return 0;
+		}
+	}
+	return 1;
+}
+
+JNIEXPORT jobject JNICALL Java_be_iminds_iot_dianne_tensor_TensorOps_gather
+  (JNIEnv * env, jclass c, jobject res, jobject tensor, jint dim, jobject index){
+	THTensor* r = getTensor(env, res);
+	THTensor* t = getTensor(env, tensor);
+	THTensor* idx = getTensor(env, index);
+
+	// checked here for both the CPU and the CUDA kernel, as these do not check the indices
+	if(!checkIndex(t, dim, idx, 4)){
+		if(res == NULL){
+			THTensor_(free)(
+#ifdef CUDA
+				state,
+#endif
+				r);
+		}
+		return res;
+	}
+
+	THTensor_(resizeAs)(
+#ifdef CUDA
+			state,
+#endif
+			r, idx);
+
+#ifdef CUDA
+	THCudaTensor_gather(state, r, t, dim, idx);
+#else
+	THTensor* src = THTensor_(newContiguous)(t);
+	THTensor* ind = THTensor_(newContiguous)(idx);
+	THTensor* dst = THTensor_(newContiguous)(r);
+
+	long outer, n, inner, m;
+	getDimSizes(src, dim, &outer, &n, &inner);
+	m = ind->size[dim];
+
+	real* src_ptr = THTensor_(data)(src);
+	real* ind_ptr = THTensor_(data)(ind);
+	real* dst_ptr = THTensor_(data)(dst);
+
+	long o, j, i;
+	for(o=0;o<outer;o++){
+		for(j=0;j<m;j++){
+			for(i=0;i<inner;i++){
+				long k = (long)ind_ptr[(o*m+j)*inner+i];
+				dst_ptr[(o*m+j)*inner+i] = src_ptr[(o*n+k)*inner+i];
+			}
+		}
+	}
+
+	THTensor_(free)(src);
+	THTensor_(free)(ind);
+	THTensor_(freeCopyTo)(dst, r);
+#endif
+
+	return res == NULL ? createTensorObject(env, r) : res;
+}
+
+
+
+JNIEXPORT jobject JNICALL Java_be_iminds_iot_dianne_tensor_TensorOps_scatter
+  (JNIEnv * env, jclass c, jobject res, jint dim, jobject index, jobject source){
+	THTensor* r = getTensor(env, res);
+	THTensor* idx = getTensor(env, index);
+	THTensor* s = getTensor(env, source);
+
+	// checked here for both the CPU and the CUDA kernel, as these do not check the indices
+	if(!checkIndex(r, dim, idx, 3))
+		return res;
+	if(!THTensor_(isSameSizeAs)(
+#ifdef CUDA
+			state,
+#endif
+			idx, s)){
+		THArgCheck(0, 4, "source should have the size of the index");
+		return res;
+	}
+
+#ifdef CUDA
+	THCudaTensor_scatter(state, r, dim, idx, s);
+#else
+	THTensor* src = THTensor_(newContiguous)(s);
+	THTensor* ind = THTensor_(newContiguous)(idx);
+	THTensor* dst = THTensor_(newContiguous)(r);
+
+	long outer, n, inner, m;
+	getDimSizes(dst, dim, &outer, &n, &inner);
+	m = ind->size[dim];
+
+	real* src_ptr = THTensor_(data)(src);
+	real* ind_ptr = THTensor_(data)(ind);
+	real* dst_ptr = THTensor_(data)(dst);
+
+	long o, j, i;
+	for(o=0;o<outer;o++){
+		for(j=0;j<m;j++){
+			for(i=0;i<inner;i++){
+				long k = (long)ind_ptr[(o*m+j)*inner+i];
+				dst_ptr[(o*n+k)*inner+i] = src_ptr[(o*m+j)*inner+i];
+			}
+		}
+	}
+
+	THTensor_(free)(src);
+	THTensor_(free)(ind);
+	THTensor_(freeCopyTo)(dst, r);
+#endif
+
+	return res;
+}
+
+
+
+JNIEXPORT jobject JNICALL Java_be_iminds_iot_dianne_tensor_TensorOps_where
+  (JNIEnv * env, jclass c, jobject res, jobject mask, jobject tensor1, jobject tensor2){
+	THTensor* r = getTensor(env, res);
+	THTensor* m = getTensor(env, mask);
+	THTensor* t1 = getTensor(env, tensor1);
+	THTensor* t2 = getTensor(env, tensor2);
+
+	// fill r with one of both tensors and only overwrite with the other where needed,
+	// picking the order such that a result aliasing one of the inputs stays correct
+	int set = 1;
+	THTensor* other = t1;
+	if(r == t1){
+		set = 0;
+		other = t2;
+	} else {
+		THTensor_(resizeAs)(
+#ifdef CUDA
+			state,
+#endif
+			r, t2);
+		if(r != t2){
+			THTensor_(copy)(
+#ifdef CUDA
+				state,
+#endif
+				r, t2);
+		}
+	}
+
+#ifdef CUDA
+	THCudaTensor_where(state, r, m, other, set);
+#else
+	TH_TENSOR_APPLY3(real, r, real, m, real, other,
+			if((*m_data != 0) == set)
+				*r_data = *other_data;
+	);
+#endif
+
+	return res == NULL ? createTensorObject(env, r) : res;
+}
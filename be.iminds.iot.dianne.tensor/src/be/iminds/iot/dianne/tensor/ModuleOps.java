@@ -206,4 +206,44 @@ public class ModuleOps {
 	
 	public static native void linearAccGrad(final Tensor gradWeigths, final Tensor gradBias, final Tensor gradOutput, final Tensor input, final Tensor ones);
 
+	
+	/*
+	 * Fused optimizer updates, reading the gradient in delta and the optimizer state once, 
+	 * and overwriting delta with the parameter update and the state with the new state
+	 */
+	
+	public static native void adamUpdate(Tensor delta, Tensor mt, Tensor vt, float beta1, float beta2, float alpha, float epsilon);
+	
+	public static native void rmspropUpdate(Tensor delta, Tensor meanSquared, float learningRate, float decayRate, float epsilon);
+	
+	public static native void adagradUpdate(Tensor delta, Tensor accumulatedSquared, float learningRate, float epsilon);
+	
+	public static native void adadeltaUpdate(Tensor delta, Tensor meanSquaredGradient, Tensor meanSquaredDelta, float decayRate, float epsilon);
+	
+	public static native void momentumUpdate(Tensor delta, Tensor momentum, float rate);
+	
+	public static native void nesterovUpdate(Tensor delta, Tensor velocity, float rate);
+	
+	public static native void polyakUpdate(Tensor target, Tensor source, float tau);
+
+
+	/*
+	 * Fused recurrent cells, the pre-activations of all gates come from a single linear and
+	 * these apply the gate nonlinearities and state update in one pass
+	 *
+	 * LSTM gates are ordered input, forget, cell, output and are activated in place
+	 * GRU gates are ordered reset, update, new, gatesX is overwritten with the activated gates
+	 * while gatesH keeps the recurrent pre-activations
+	 */
+
+	public static native void lstm(Tensor output, Tensor cell, Tensor gates, final Tensor prevCell);
+
+	public static native void lstmGradIn(Tensor gradGates, Tensor gradPrevCell, final Tensor gradOutput, final Tensor gradCell,
+			final Tensor gates, final Tensor prevCell, final Tensor cell);
+
+	public static native void gru(Tensor output, Tensor gatesX, final Tensor gatesH, final Tensor prevOutput);
+
+	public static native void gruGradIn(Tensor gradGatesX, Tensor gradGatesH, Tensor gradPrevOutput, final Tensor gradOutput,
+			final Tensor gatesX, final Tensor gatesH, final Tensor prevOutput);
+
 }
@@ -37,7 +37,8 @@ import org.osgi.service.component.annotations.Deactivate;
 @Component(
 		service=Object.class,
 		property={"osgi.command.scope=tensor",
-				  "osgi.command.function=option"},
+				  "osgi.command.function=option",
+				  "osgi.command.function=pool"},
 		immediate=true)
 public class NativeTensorLoader {
 
@@ -81,6 +82,7 @@ public class NativeTensorLoader {
 	
 	@Deactivate()
 	public void deactivate(){
+		TensorPool.clear();
 		cleanup();
 	}
 	
@@ -94,6 +96,21 @@ public class NativeTensorLoader {
 		}
 	}
 	
+	// print native memory pool statistics
+	public void pool(){
+		System.out.println("Hits: "+TensorPool.getHits());
+		System.out.println("Misses: "+TensorPool.getMisses());
+		System.out.println("Bytes outstanding: "+TensorPool.getBytesOutstanding());
+		System.out.println("Bytes pooled: "+TensorPool.getBytesPooled());
+	}
+	
+	public void pool(String cmd){
+		if(cmd.equals("clear")){
+			TensorPool.clear();
+		}
+		pool();
+	}
+	
 	// set GPU device id in case of multiple GPUs on machine!
 	private native void init(int device);
 	
@@ -111,6 +128,8 @@ public class NativeTensorLoader {
 			} catch (InterruptedException e) {
 			}
 		}
+		// also hand back pooled memory to the native allocator
+		TensorPool.clear();
 	}
 
 }
@@ -22,6 +22,9 @@
  *******************************************************************************/
 package be.iminds.iot.dianne.tensor;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
 import java.util.Arrays;
 
 /**
@@ -29,14 +32,19 @@ import java.util.Arrays;
  * 
  * The actual implementation should be done in native code
  * 
+ * The native memory of a tensor is returned to the TensorPool when calling release(),
+ * or when the tensor is garbage collected in case it was not released explicitly. A released
+ * tensor (or any narrowed or selected view on it) should no longer be used.
  * 
  * @author tverbele
  *
  */
-public class Tensor {
+public class Tensor implements AutoCloseable {
 
 	public long address;
 	
+	private TensorPool.TensorReference reference;
+	
 	public Tensor(){
 		this(null, null);
 	}
@@ -49,15 +57,64 @@ public class Tensor {
 		int[] d = new int[dims.length+1];
 		d[0] = d0;
 		System.arraycopy(dims, 0, d, 1, dims.length);
-		this.address = init(null, d);
+		allocate(null, d);
 	}
 	
 	public Tensor(float[] data, int... dims) {
-		this.address = init(data, dims);
+		allocate(data, dims);
 	}
 	
 	private Tensor(long address){
 		this.address = address;
+		int capacity = capacity(address);
+		this.reference = TensorPool.track(this, capacity > 0 ? 4L*capacity : 0);
+	}
+	
+	private void allocate(float[] data, int[] dims){
+		int size = 0;
+		if(dims != null && dims.length > 0 && dims.length <= 4){
+			size = 1;
+			for(int d : dims){
+				size *= d;
+			}
+		}
+		
+		if(size > 0){
+			this.address = TensorPool.acquire(size);
+			if(this.address != 0){
+				reshape(dims);
+				if(data != null){
+					set(data);
+				}
+			}
+		}
+		
+		if(this.address == 0){
+			this.address = init(data, dims);
+		}
+		this.reference = TensorPool.track(this, 4L*size);
+	}
+	
+	/**
+	 * Return the native memory of this tensor to the TensorPool. This tensor should no
+	 * longer be used afterwards.
+	 */
+	public void release(){
+		TensorPool.TensorReference r;
+		synchronized(this){
+			r = reference;
+			reference = null;
+		}
+		
+		if(r != null){
+			r.release();
+			address = 0;
+		}
+	}
+	
+	@Override
+	public void close(){
+		release();
 	}
 	
 	/**
@@ -118,6 +175,68 @@ public class Tensor {
 	 */
 	public native void set(final float[] data);
 	
+	/**
+	 * get a view on the raw data of this tensor without copying, only available for 
+	 * contiguous tensors in main memory. The buffer is only valid as long as this tensor
+	 * is not resized or released.
+	 * @return a direct FloatBuffer backed by the native data, or null if not available
+	 */
+	public FloatBuffer asFloatBuffer(){
+		if(size() == 0){
+			return FloatBuffer.allocate(0);
+		}
+		
+		ByteBuffer data = data();
+		if(data == null){
+			return null;
+		}
+		return data.order(ByteOrder.nativeOrder()).asFloatBuffer();
+	}
+	
+	/**
+	 * copy the raw data of this tensor into a buffer, starting at the given offset of the buffer
+	 * the position of the buffer is not changed
+	 */
+	public void copyTo(final FloatBuffer dst, final int offset){
+		int size = size();
+		if(offset < 0 || offset + size > dst.limit()){
+			throw new IndexOutOfBoundsException("Buffer too small to copy tensor of size "+size+" at offset "+offset);
+		}
+		
+		if(dst.isDirect() && dst.order() == ByteOrder.nativeOrder()){
+			copyToBuffer(dst, offset);
+		} else if(dst.hasArray()){
+			copyToArray(dst.array(), dst.arrayOffset()+offset);
+		} else {
+			FloatBuffer d = dst.duplicate();
+			d.position(offset);
+			d.put(get());
+		}
+	}
+	
+	/**
+	 * copy raw data from a buffer into this tensor, starting at the given offset of the buffer
+	 * the position of the buffer is not changed
+	 */
+	public void copyFrom(final FloatBuffer src, final int offset){
+		int size = size();
+		if(offset < 0 || offset + size > src.limit()){
+			throw new IndexOutOfBoundsException("Buffer too small to copy tensor of size "+size+" at offset "+offset);
+		}
+		
+		if(src.isDirect() && src.order() == ByteOrder.nativeOrder()){
+			copyFromBuffer(src, offset);
+		} else if(src.hasArray()){
+			copyFromArray(src.array(), src.arrayOffset()+offset);
+		} else {
+			float[] data = new float[size];
+			FloatBuffer s = src.duplicate();
+			s.position(offset);
+			s.get(data);
+			set(data);
+		}
+	}
+	
 	/**
 	 * fill with fixed value
 	 * @param v the new value
@@ -274,13 +393,21 @@ public class Tensor {
 		return b.toString();
 	}
 	
-	public void finalize(){
-		free();
-	}
-	
 	private native long init(float[] data, int[] dims);
 	
-	private native void free();
+	private native ByteBuffer data();
+	
+	private native void copyToBuffer(FloatBuffer dst, int offset);
+	
+	private native void copyFromBuffer(FloatBuffer src, int offset);
+	
+	private native void copyToArray(float[] dst, int offset);
+	
+	private native void copyFromArray(float[] src, int offset);
+	
+	static native void free(long address);
+	
+	static native int capacity(long address);
 	
 	private native boolean equalsData(Tensor other, float threshold);
 	
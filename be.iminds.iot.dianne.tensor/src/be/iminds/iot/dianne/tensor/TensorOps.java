@@ -228,6 +228,50 @@ public class TensorOps {
 	 * Return index of the min element (treats T as 1 dim vector)
 	 */
 	public static native int argmin(final Tensor tensor);
+	
+	/**
+	 * Return the max elements along dimension dim, the result has the same dimensions
+	 * as tensor with size 1 in dim
+	 */
+	public static native Tensor max(Tensor res, final Tensor tensor, final int dim);
+	
+	/**
+	 * Return the indices of the max elements along dimension dim, the result has the same 
+	 * dimensions as tensor with size 1 in dim
+	 */
+	public static native Tensor argmax(Tensor res, final Tensor tensor, final int dim);
+	
+	/**
+	 * Gather the elements of tensor along dimension dim at the positions given by index, i.e.
+	 * for a 2D tensor and dim 1: res[i][j] = tensor[i][index[i][j]]
+	 * @param res result tensor or null to create a new tensor, gets the dimensions of index
+	 * @param tensor tensor to gather elements from
+	 * @param dim dimension to index
+	 * @param index indices, same dimensions as tensor except for dim
+	 * @return resulting tensor
+	 */
+	public static native Tensor gather(Tensor res, final Tensor tensor, final int dim, final Tensor index);
+	
+	/**
+	 * Scatter the elements of src into res along dimension dim at the positions given by index, i.e.
+	 * for a 2D tensor and dim 1: res[i][index[i][j]] = src[i][j]
+	 * @param res tensor to write elements into
+	 * @param dim dimension to index
+	 * @param index indices, same dimensions as src
+	 * @param src tensor with elements to scatter
+	 * @return res
+	 */
+	public static native Tensor scatter(Tensor res, final int dim, final Tensor index, final Tensor src);
+	
+	/**
+	 * Select elements of tensor1 where mask is non-zero and elements of tensor2 otherwise
+	 * @param res result tensor or null to create a new tensor.
+	 * @param mask mask tensor
+	 * @param tensor1 elements to take where the mask is set
+	 * @param tensor2 elements to take where the mask is zero
+	 * @return resulting tensor
+	 */
+	public static native Tensor where(Tensor res, final Tensor mask, final Tensor tensor1, final Tensor tensor2);
 
 	/**
 	 * Scale (bilinear interpollate) in 2 dimensions
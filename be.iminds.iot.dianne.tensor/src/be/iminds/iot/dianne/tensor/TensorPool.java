@@ -0,0 +1,203 @@
+/*******************************************************************************
+ * DIANNE  - Framework for distributed artificial neural networks
+ * Copyright (C) 2015  iMinds - IBCN - UGent
+ *
+ * This file is part of DIANNE.
+ *
+ * DIANNE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contributors:
+ *     Tim Verbelen, Steven Bohez
+ *******************************************************************************/
+package be.iminds.iot.dianne.tensor;
+
+import java.lang.ref.PhantomReference;
+import java.lang.ref.ReferenceQueue;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pool of native tensor memory.
+ *
+ * Tensors that are released (either explicitly using Tensor.release() or when they
+ * are garbage collected) and that are the sole owner of their native storage are kept
+ * in buckets per number of elements, and are reused for new Tensors of the same size.
+ *
+ * The maximum amount of memory kept in the pool can be configured using the
+ * be.iminds.iot.dianne.tensor.pool system property (in bytes, 0 disables pooling).
+ *
+ * @author tverbele
+ *
+ */
+public final class TensorPool {
+
+	private static final long MAX_POOLED = Long.getLong("be.iminds.iot.dianne.tensor.pool", 256L*1024*1024);
+
+	// pooled native tensor addresses per number of elements
+	private static final Map<Integer, ArrayDeque<Long>> buckets = new HashMap<>();
+
+	private static final AtomicLong hits = new AtomicLong();
+	private static final AtomicLong misses = new AtomicLong();
+	private static final AtomicLong outstanding = new AtomicLong();
+	private static long pooled = 0;
+
+	// reclaim native memory of tensors that are garbage collected without being released
+	private static final ReferenceQueue<Tensor> queue = new ReferenceQueue<>();
+	private static final Set<TensorReference> references = ConcurrentHashMap.newKeySet();
+
+	static {
+		Thread reclaimer = new Thread(() -> {
+			while(true){
+				try {
+					TensorReference r = (TensorReference) queue.remove();
+					r.release();
+				} catch(InterruptedException e){
+					return;
+				} catch(Throwable t){
+					t.printStackTrace();
+				}
+			}
+		}, "Dianne Tensor Reclaimer");
+		reclaimer.setDaemon(true);
+		reclaimer.start();
+	}
+
+	private TensorPool(){}
+
+	/**
+	 * @return number of tensor allocations served from the pool
+	 */
+	public static long getHits(){
+		return hits.get();
+	}
+
+	/**
+	 * @return number of tensor allocations that required new native memory
+	 */
+	public static long getMisses(){
+		return misses.get();
+	}
+
+	/**
+	 * @return number of bytes allocated for tensors that are not yet released
+	 */
+	public static long getBytesOutstanding(){
+		return outstanding.get();
+	}
+
+	/**
+	 * @return number of bytes currently kept in the pool for reuse
+	 */
+	public static long getBytesPooled(){
+		synchronized(buckets){
+			return pooled;
+		}
+	}
+
+	/**
+	 * Free all native memory kept in the pool
+	 */
+	public static void clear(){
+		synchronized(buckets){
+			Iterator<ArrayDeque<Long>> it = buckets.values().iterator();
+			while(it.hasNext()){
+				for(long address : it.next()){
+					Tensor.free(address);
+				}
+				it.remove();
+			}
+			pooled = 0;
+		}
+	}
+
+	/**
+	 * Take a native tensor with a storage of size elements from the pool
+	 * @return the native address, or 0 if no such tensor is pooled
+	 */
+	static long acquire(int size){
+		synchronized(buckets){
+			ArrayDeque<Long> bucket = buckets.get(size);
+			if(bucket != null && !bucket.isEmpty()){
+				pooled -= 4L*size;
+				hits.incrementAndGet();
+				return bucket.pop();
+			}
+		}
+
+		misses.incrementAndGet();
+		return 0;
+	}
+
+	/**
+	 * Return a native tensor to the pool, or free it in case it cannot be reused
+	 */
+	static void release(long address, long bytes){
+		outstanding.addAndGet(-bytes);
+
+		// only pool tensors that own a contiguous storage
+		int size = Tensor.capacity(address);
+		if(size > 0){
+			synchronized(buckets){
+				if(pooled + 4L*size <= MAX_POOLED){
+					ArrayDeque<Long> bucket = buckets.get(size);
+					if(bucket == null){
+						bucket = new ArrayDeque<>();
+						buckets.put(size, bucket);
+					}
+					bucket.push(address);
+					pooled += 4L*size;
+					return;
+				}
+			}
+		}
+
+		Tensor.free(address);
+	}
+
+	/**
+	 * Track a tensor to return its native memory to the pool once released or garbage collected,
+	 * the bytes are accounted as outstanding until then, whether these came from the pool or not
+	 */
+	static TensorReference track(Tensor t, long bytes){
+		outstanding.addAndGet(bytes);
+		
+		TensorReference r = new TensorReference(t, bytes);
+		references.add(r);
+		return r;
+	}
+
+	static final class TensorReference extends PhantomReference<Tensor> {
+
+		private final long address;
+		private final long bytes;
+
+		TensorReference(Tensor t, long bytes){
+			super(t, queue);
+			this.address = t.address;
+			this.bytes = bytes;
+		}
+
+		void release(){
+			if(references.remove(this)){
+				clear();
+				TensorPool.release(address, bytes);
+			}
+		}
+	}
+}
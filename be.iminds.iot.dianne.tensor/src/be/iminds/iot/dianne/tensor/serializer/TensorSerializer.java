@@ -22,6 +22,8 @@
  *******************************************************************************/
 package be.iminds.iot.dianne.tensor.serializer;
 
+import java.nio.FloatBuffer;
+
 import org.osgi.service.component.annotations.Component;
 
 import com.esotericsoftware.kryo.Kryo;
@@ -42,17 +44,38 @@ public class TensorSerializer extends Serializer<Tensor> {
 		int noDims = input.readInt();
 		int[] dims = input.readInts(noDims);
 		int length = input.readInt();
-		float[] data = input.readFloats(length);
-		return new Tensor(data, dims);
+		
+		Tensor t = new Tensor(dims);
+		FloatBuffer data = t.asFloatBuffer();
+		if(data == null || data.capacity() != length){
+			t.set(input.readFloats(length));
+		} else {
+			// read directly into native memory
+			for(int i=0;i<length;i++){
+				data.put(i, input.readFloat());
+			}
+		}
+		return t;
 	}
 
 	@Override
 	public void write(Kryo kryo, Output output, Tensor tensor) {
 		try {
-			output.writeInt(tensor.dims().length);
-			output.writeInts(tensor.dims());
-			output.writeInt(tensor.size());
-			output.writeFloats(tensor.get());
+			int[] dims = tensor.dims();
+			int length = tensor.size();
+			output.writeInt(dims.length);
+			output.writeInts(dims);
+			output.writeInt(length);
+			
+			FloatBuffer data = tensor.asFloatBuffer();
+			if(data == null){
+				output.writeFloats(tensor.get());
+			} else {
+				// write directly from native memory
+				for(int i=0;i<length;i++){
+					output.writeFloat(data.get(i));
+				}
+			}
 		} catch(Throwable t){
 			t.printStackTrace();
 			throw t;
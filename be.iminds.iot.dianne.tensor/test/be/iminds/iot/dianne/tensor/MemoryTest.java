@@ -25,6 +25,7 @@ package be.iminds.iot.dianne.tensor;
 import java.util.ArrayList;
 import java.util.List;
 
+import org.junit.Assert;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
@@ -57,5 +58,26 @@ public class MemoryTest {
 		t.start();
 		t.join();
 	}
+	
+	@Test
+	public void testRelease() {
+		Tensor t1 = new Tensor(3, 4);
+		t1.fill(1.0f);
+		Tensor view = t1.select(0, 1);
+		t1.release();
+		// a view keeps the storage alive, and is never pooled itself
+		Assert.assertEquals(4, view.size());
+		view.release();
+		
+		Tensor t2 = new Tensor(5, 6);
+		t2.release();
+		
+		long hits = TensorPool.getHits();
+		try(Tensor t3 = new Tensor(new float[]{1,2,3,4,5,6,7,8,9,10,11,12,13,14,15,16,17,18,19,20,21,22,23,24,25,26,27,28,29,30}, 6, 5)){
+			Assert.assertEquals(hits+1, TensorPool.getHits());
+			Assert.assertArrayEquals(new int[]{6, 5}, t3.dims());
+			Assert.assertEquals(8.0f, t3.get(1, 2), 0.0f);
+		}
+	}
 
 }
@@ -584,4 +584,94 @@ public class TensorOpsTest {
 		TensorOps.clamp(t1, t1, Float.NEGATIVE_INFINITY, Float.POSITIVE_INFINITY);
 		Assert.assertEquals(exp, t1);
 	}
+	
+	@Test
+	public void testMaxDim() {
+		Tensor t = new Tensor(new float[]{1, 5, 3, 4, 2, 6}, 2, 3);
+		
+		Tensor max = TensorOps.max(null, t, 1);
+		Assert.assertEquals(new Tensor(new float[]{5, 6}, 2, 1), max);
+		
+		Tensor argmax = TensorOps.argmax(null, t, 1);
+		Assert.assertEquals(new Tensor(new float[]{1, 2}, 2, 1), argmax);
+		
+		TensorOps.argmax(argmax, t, 0);
+		Assert.assertEquals(new Tensor(new float[]{1, 0, 1}, 1, 3), argmax);
+	}
+	
+	@Test
+	public void testGather() {
+		Tensor t = new Tensor(new float[]{1, 5, 3, 4, 2, 6}, 2, 3);
+		Tensor index = new Tensor(new float[]{2, 0}, 2, 1);
+		
+		Tensor r = TensorOps.gather(null, t, 1, index);
+		Assert.assertEquals(new Tensor(new float[]{3, 4}, 2, 1), r);
+		
+		index = new Tensor(new float[]{1, 0, 1}, 1, 3);
+		TensorOps.gather(r, t, 0, index);
+		Assert.assertEquals(new Tensor(new float[]{4, 5, 6}, 1, 3), r);
+	}
+	
+	@Test
+	public void testScatter() {
+		Tensor r = new Tensor(2, 3);
+		r.fill(0);
+		Tensor index = new Tensor(new float[]{2, 0}, 2, 1);
+		Tensor src = new Tensor(new float[]{7, 8}, 2, 1);
+		
+		TensorOps.scatter(r, 1, index, src);
+		Assert.assertEquals(new Tensor(new float[]{0, 0, 7, 8, 0, 0}, 2, 3), r);
+	}
+	
+	@Test
+	public void testIndexOutOfRange() {
+		Tensor t = new Tensor(new float[]{1, 5, 3, 4, 2, 6}, 2, 3);
+		Tensor r = new Tensor(2, 3);
+		r.fill(0);
+		Tensor src = new Tensor(new float[]{7, 8}, 2, 1);
+		
+		// indices beyond the indexed dimension
+		Tensor index = new Tensor(new float[]{3, 0}, 2, 1);
+		try {
+			TensorOps.gather(null, t, 1, index);
+			Assert.fail("Expected an exception for an index out of range");
+		} catch(Exception e){}
+		try {
+			TensorOps.scatter(r, 1, index, src);
+			Assert.fail("Expected an exception for an index out of range");
+		} catch(Exception e){}
+		
+		// negative indices
+		index = new Tensor(new float[]{-1, 0}, 2, 1);
+		try {
+			TensorOps.gather(null, t, 1, index);
+			Assert.fail("Expected an exception for a negative index");
+		} catch(Exception e){}
+		
+		// index size does not match the other dimensions
+		index = new Tensor(new float[]{0, 0, 0}, 3, 1);
+		try {
+			TensorOps.gather(null, t, 1, index);
+			Assert.fail("Expected an exception for an index size mismatch");
+		} catch(Exception e){}
+		
+		// nothing was written to the target
+		Assert.assertEquals(new Tensor(new float[]{0, 0, 0, 0, 0, 0}, 2, 3), r);
+	}
+	
+	@Test
+	public void testWhere() {
+		Tensor mask = new Tensor(new float[]{1, 0, 0, 1}, 2, 2);
+		Tensor t1 = new Tensor(new float[]{1, 2, 3, 4}, 2, 2);
+		Tensor t2 = new Tensor(new float[]{5, 6, 7, 8}, 2, 2);
+		
+		Tensor r = TensorOps.where(null, mask, t1, t2);
+		Assert.assertEquals(new Tensor(new float[]{1, 6, 7, 4}, 2, 2), r);
+		
+		TensorOps.where(t2, mask, t1, t2);
+		Assert.assertEquals(new Tensor(new float[]{1, 6, 7, 4}, 2, 2), t2);
+		
+		TensorOps.where(t1, mask, t1, new Tensor(new float[]{0, 0, 0, 0}, 2, 2));
+		Assert.assertEquals(new Tensor(new float[]{1, 0, 0, 4}, 2, 2), t1);
+	}
 }
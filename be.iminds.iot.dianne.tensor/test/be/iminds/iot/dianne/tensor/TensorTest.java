@@ -22,6 +22,10 @@
  *******************************************************************************/
 package be.iminds.iot.dianne.tensor;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
 import org.junit.Assert;
 import org.junit.BeforeClass;
 import org.junit.Test;
@@ -301,4 +305,38 @@ public class TensorTest {
 		expected.set(6.0f, 2);
 		Assert.assertEquals(expected, diag);
 	}
+
+	@Test
+	public void testAsFloatBuffer() {
+		Tensor t = new Tensor(new float[]{0, 1, 2, 3, 4, 5}, 2, 3);
+		FloatBuffer b = t.asFloatBuffer();
+		Assert.assertEquals(6, b.capacity());
+		Assert.assertEquals(4.0f, b.get(4), 0.0f);
+		
+		// writes through the buffer are visible in the tensor
+		b.put(1, 10.0f);
+		Assert.assertEquals(10.0f, t.get(0, 1), 0.0f);
+	}
+	
+	@Test
+	public void testCopyToFrom() {
+		Tensor t = new Tensor(new float[]{0, 1, 2, 3, 4, 5}, 2, 3);
+		Tensor col = t.narrow(1, 1, 2);
+		
+		FloatBuffer direct = ByteBuffer.allocateDirect(4*8).order(ByteOrder.nativeOrder()).asFloatBuffer();
+		col.copyTo(direct, 2);
+		Assert.assertEquals(1.0f, direct.get(2), 0.0f);
+		Assert.assertEquals(5.0f, direct.get(5), 0.0f);
+		
+		float[] array = new float[6];
+		t.copyTo(FloatBuffer.wrap(array), 0);
+		Assert.assertArrayEquals(t.get(), array, 0.0f);
+		
+		Tensor t2 = new Tensor(2, 2);
+		t2.copyFrom(direct, 2);
+		Assert.assertEquals(new Tensor(new float[]{1, 2, 4, 5}, 2, 2), t2);
+		
+		col.copyFrom(FloatBuffer.wrap(new float[]{-1, -2, -3, -4}), 0);
+		Assert.assertEquals(new Tensor(new float[]{0, -1, -2, 3, -3, -4}, 2, 3), t);
+	}
 }